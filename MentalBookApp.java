@@ -619,9 +619,7 @@ public class MentalBookApp {
             JOptionPane.YES_NO_OPTION);
         
         if (confirm == JOptionPane.YES_OPTION) {
-            core.getConversationContext().reset();
-            core.getStateMachine().reset();
-            core.getTopicClusteringSystem().resetClusters();
+            core.resetConversationState();
             
             chatArea.setText("");
             topicListModel.clear();
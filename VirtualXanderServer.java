@@ -12,6 +12,7 @@ public class VirtualXanderServer {
     private static final int PORT = 12345;
     private static Set<ClientConnection> clients = new HashSet<>();
     private static ExecutorService threadPool = Executors.newFixedThreadPool(100);
+    private static TurnScheduler turnScheduler;
     private static VirtualXanderCore virtualXander;
     private static boolean running = false;
     private static ServerSocket serverSocket;
@@ -26,6 +27,9 @@ public class VirtualXanderServer {
         logger = Logger.getInstance();
         logger.info("VirtualXanderServer", "Server starting...");
         
+        // Turns run on the scheduler; connection threads only do I/O
+        turnScheduler = TurnScheduler.fromConfiguration(Configuration.getInstance());
+        
         // Initialize VirtualXander core
         try {
             virtualXander = new VirtualXanderCore();
@@ -36,6 +40,15 @@ public class VirtualXanderServer {
             return;
         }
         
+        // Warm up the JIT before the socket starts accepting
+        if (Configuration.getInstance().getBooleanProperty("server.warmup_enabled", true)) {
+            ServerWarmup warmup = ServerWarmup.fromConfiguration(Configuration.getInstance());
+            System.out.println("Warming up...");
+            warmup.run();
+            System.out.println(warmup.getSummary());
+            logger.info("VirtualXanderServer", warmup.getSummary());
+        }
+        
         // Start server
         startServer();
     }
@@ -101,6 +114,9 @@ public class VirtualXanderServer {
             Thread.currentThread().interrupt();
         }
         
+        turnScheduler.shutdown();
+        logger.info("VirtualXanderServer", turnScheduler.getMetricsSummary());
+        
         // Close server socket
         try {
             if (serverSocket != null) {
@@ -121,6 +137,13 @@ public class VirtualXanderServer {
         return clients.size();
     }
     
+    /**
+     * Gets the turn scheduler
+     */
+    public static TurnScheduler getTurnScheduler() {
+        return turnScheduler;
+    }
+    
     /**
      * Gets the VirtualXanderCore instance
      */
@@ -154,7 +177,7 @@ public class VirtualXanderServer {
         public ClientConnection(Socket socket) {
             this.socket = socket;
             this.clientId = "Client-" + UUID.randomUUID().toString().substring(0, 8);
-            this.clientCore = new VirtualXanderCore();
+            this.clientCore = new VirtualXanderCore(clientId);
             this.authenticated = false;
         }
         
@@ -195,6 +218,10 @@ public class VirtualXanderServer {
                 }
             } finally {
                 close();
+                // Lets queued turns and crisis records finish before the core's journal closes
+                turnScheduler.awaitTurns(clientCore);
+                // Writes out the client's journal and queued saves and releases its session
+                clientCore.stop();
                 clients.remove(this);
                 System.out.println("Client disconnected: " + clientId);
                 logger.info("VirtualXanderServer", "Client disconnected: " + clientId);
@@ -227,6 +254,7 @@ public class VirtualXanderServer {
                 "║  /help     - Show this help message                    ║\n" +
                 "║  /status   - Show server and connection status        ║\n" +
                 "║  /stats    - Show conversation statistics              ║\n" +
+                "║  /metrics  - Show turn latency metrics                 ║\n" +
                 "║  /reset    - Reset conversation                         ║\n" +
                 "║  /clear    - Clear screen                              ║\n" +
                 "║  exit      - Disconnect from server                    ║\n" +
@@ -269,11 +297,12 @@ public class VirtualXanderServer {
             
             // Process through VirtualXanderCore
             try {
-                String response = clientCore.processMessage(message);
+                String response = turnScheduler.submit(clientCore, message).get();
                 sendMessage("Xander: " + response);
                 
                 // Log analytics
-                logger.trackUserInteraction("message", clientCore.getIntentRecognizer().recognizeIntent(message));
+                List<IntentRecognizer.IntentMatch> intents = clientCore.getTurnIntents(message);
+                logger.trackUserInteraction("message", intents.isEmpty() ? "unknown" : intents.get(0).getIntent());
                 
             } catch (Exception e) {
                 logger.error("VirtualXanderServer", "Error processing message", e);
@@ -297,9 +326,12 @@ public class VirtualXanderServer {
                     sendConversationStats();
                     break;
                     
+                case "/metrics":
+                    sendMessage(turnScheduler.getMetricsSummary());
+                    break;
+                    
                 case "/reset":
-                    clientCore.getConversationContext().reset();
-                    clientCore.getStateMachine().reset();
+                    clientCore.resetConversationState();
                     sendMessage("Xander: Conversation reset! Let's start fresh.");
                     break;
                     
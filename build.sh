@@ -32,6 +32,11 @@ javac -d "$BIN_DIR" -sourcepath "$SRC_DIR" "$SRC_DIR"/*.java VirtualXander.java
 echo "✓ Compilation successful!"
 echo ""
 
+# Train the intent classifier from the labeled transcripts
+echo "Step 2c: Training intent classifier..."
+java -cp "$BIN_DIR" IntentClassifier data/intent_training.tsv data/intent.model
+echo ""
+
 # Create JAR file
 echo "Step 3: Creating JAR file..."
 cat > manifest.tmp << EOF
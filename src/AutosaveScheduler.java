@@ -0,0 +1,166 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Autosave Scheduler for VirtualXander
+ * One daemon thread that autosaves every registered ContextEngine in the JVM.
+ * Each registration is saved only when the engine's modification count has
+ * moved since its last save, so idle sessions cost a comparison per tick, and
+ * all the changes made in between are coalesced into that one save. Every
+ * registration starts at a random point of its interval and each following
+ * tick is jittered by context.autosave_jitter of the interval, so thousands of
+ * sessions registered together do not all flush at once.
+ */
+public class AutosaveScheduler {
+
+    private static final Object SHARED_LOCK = new Object();
+    private static volatile AutosaveScheduler shared;
+
+    /**
+     * A registered engine; cancel() stops its autosave
+     */
+    public final class Registration {
+        private final ContextEngine engine;
+        private final BooleanSupplier save;
+        private final long intervalMillis;
+        private long savedModifications;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private Registration(ContextEngine engine, BooleanSupplier save, long intervalMillis) {
+            this.engine = engine;
+            this.save = save;
+            this.intervalMillis = intervalMillis;
+            this.savedModifications = engine.getModificationCount();
+        }
+
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                active.decrementAndGet();
+            }
+        }
+
+        public boolean isCancelled() { return cancelled.get(); }
+
+        /**
+         * Saves now if the engine changed since the last save
+         * @return true if a save ran and succeeded
+         */
+        public boolean saveIfDirty() {
+            synchronized (this) {
+                long modifications = engine.getModificationCount();
+                long changes = modifications - savedModifications;
+                if (changes == 0) {
+                    skipped.incrementAndGet();
+                    return false;
+                }
+                boolean saved;
+                try {
+                    saved = save.getAsBoolean();
+                } catch (RuntimeException e) {
+                    Logger.getInstance().warn("AutosaveScheduler", "Autosave failed: " + e.getMessage());
+                    saved = false;
+                }
+                if (!saved) {
+                    failures.incrementAndGet();
+                    return false;
+                }
+                savedModifications = modifications;
+                saves.incrementAndGet();
+                coalesced.addAndGet(changes - 1);
+                return true;
+            }
+        }
+
+        private void run() {
+            if (cancelled.get()) {
+                return;
+            }
+            saveIfDirty();
+            if (!cancelled.get()) {
+                schedule(this, intervalMillis + jitter(intervalMillis));
+            }
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final double jitterFraction;
+    private final AtomicLong active = new AtomicLong();
+    private final AtomicLong saves = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param jitterFraction how far each tick may move, as a fraction of the interval
+     */
+    public AutosaveScheduler(double jitterFraction) {
+        this.jitterFraction = Math.max(0, Math.min(1, jitterFraction));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "context-autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the process-wide scheduler
+     */
+    public static AutosaveScheduler getShared() {
+        if (shared == null) {
+            synchronized (SHARED_LOCK) {
+                if (shared == null) {
+                    shared = new AutosaveScheduler(
+                        Configuration.getInstance().getDoubleProperty("context.autosave_jitter", 0.1));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Saves the engine about every intervalMillis while it keeps changing
+     * @param save performs the save and reports whether it succeeded
+     */
+    public Registration register(ContextEngine engine, BooleanSupplier save, long intervalMillis) {
+        Registration registration = new Registration(engine, save, Math.max(1, intervalMillis));
+        active.incrementAndGet();
+        schedule(registration, ThreadLocalRandom.current().nextLong(registration.intervalMillis) + 1);
+        return registration;
+    }
+
+    private void schedule(Registration registration, long delayMillis) {
+        try {
+            scheduler.schedule(registration::run, Math.max(1, delayMillis), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            registration.cancel();
+        }
+    }
+
+    private long jitter(long intervalMillis) {
+        long range = (long) (intervalMillis * jitterFraction);
+        return range > 0 ? ThreadLocalRandom.current().nextLong(-range, range + 1) : 0;
+    }
+
+    /**
+     * Stops the thread; no further autosaves run
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Gets autosave statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("registrations", active.get());
+        stats.put("saves", saves.get());
+        stats.put("skippedSaves", skipped.get());
+        stats.put("coalescedSaves", coalesced.get());
+        stats.put("failedSaves", failures.get());
+        return stats;
+    }
+}
@@ -67,6 +67,27 @@ public class Configuration {
         setProperty("conversation.max_history_size", "50");
         setProperty("conversation.context_timeout_minutes", "30");
         setProperty("conversation.auto_reset_enabled", "true");
+        // Turns each conversation thread keeps verbatim; older ones are compacted into a summary
+        setProperty("conversation.thread_retained_turns", "50");
+        // Resolution of the timing wheel that expires context entities
+        setProperty("context.expiry_tick_ms", "1000");
+        // Save context memory as binary snapshots rather than the older text format
+        setProperty("context.binary_snapshots", "true");
+        // Journaled context persistence (see ContextJournal)
+        setProperty("context.journal_enabled", "false");
+        setProperty("context.journal_path", "data/journal");
+        setProperty("context.journal_session", "default");
+        setProperty("context.journal_commit_interval_ms", "20");
+        setProperty("context.journal_compact_interval_seconds", "60");
+        setProperty("context.journal_compact_min_bytes", "1048576");
+        // Autosave ticks move by up to this fraction of their interval
+        setProperty("context.autosave_jitter", "0.1");
+        // Off-heap long-term store (see LongTermStore)
+        setProperty("context.longterm_store_enabled", "false");
+        setProperty("context.longterm_store_path", "data/longterm");
+        setProperty("context.longterm_segment_bytes", "67108864");
+        // Write-behind persistence (see WriteBehindQueue)
+        setProperty("context.write_behind_capacity", "64");
         
         // Response settings
         setProperty("response.enable_templates", "true");
@@ -77,11 +98,32 @@ public class Configuration {
         setProperty("emotion.detection_enabled", "true");
         setProperty("emotion.min_confidence_threshold", "0.3");
         setProperty("emotion.crisis_detection_enabled", "true");
+        // "patterns" runs the regexes, "lexicon" scores all patterns in one pass over the words
+        setProperty("emotion.scoring_mode", "patterns");
+        setProperty("emotion.trajectory_half_life_turns", "3");
         
         // Topic clustering settings
         setProperty("topics.clustering_enabled", "true");
         setProperty("topics.max_active_clusters", "5");
         setProperty("topics.relevance_decay_minutes", "30");
+        // Cross-session topic discovery (off until enough traffic to cluster)
+        setProperty("topics.discovery_enabled", "false");
+        setProperty("topics.discovery_interval_seconds", "60");
+        setProperty("topics.discovery_min_support", "8");
+        setProperty("topics.discovery_min_sessions", "2");
+        // Free-form phrases are counted in a fixed-size sketch until they recur
+        setProperty("topics.phrase_sketch_capacity", "256");
+        setProperty("topics.phrase_promotion_turns", "2");
+        
+        // Turn pipeline settings
+        setProperty("pipeline.stage_order", "");
+        setProperty("pipeline.disabled_stages", "");
+        setProperty("pipeline.turn_budget_ms", "50");
+        
+        // Intent classifier settings (regexes only until a model is trained from data/intent_training.tsv)
+        setProperty("intent.classifier_enabled", "false");
+        setProperty("intent.classifier_model_path", "data/intent.model");
+        setProperty("intent.classifier_min_confidence", "0.9");
         
         // Logging settings
         setProperty("logging.enabled", "true");
@@ -112,6 +154,13 @@ public class Configuration {
         setProperty("server.enabled", "false");
         setProperty("server.port", "8080");
         setProperty("server.host", "localhost");
+        setProperty("server.turn_workers", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        setProperty("server.crisis_workers", "1");
+        setProperty("server.crisis_latency_bound_ms", "100");
+        setProperty("server.warmup_enabled", "true");
+        setProperty("server.warmup_iterations", "50");
+        setProperty("server.warmup_max_ms", "15000");
+        setProperty("server.warmup_steady_tolerance", "0.10");
     }
     
     /**
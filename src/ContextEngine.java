@@ -75,6 +75,15 @@ public class ContextEngine {
             this.attributes = new HashMap<>();
         }
 
+        /**
+         * Recreates a persisted entity with its original id
+         */
+        ReferenceEntity(String entityId, String name, String type, MemoryTier memoryTier, long createdAt) {
+            this(name, type, memoryTier);
+            this.entityId = entityId;
+            this.createdAt = createdAt;
+        }
+
         public String getEntityId() { return entityId; }
         public String getName() { return name; }
         public void setName(String name) { this.name = name; updateLastAccessed(); }
@@ -427,11 +436,21 @@ public class ContextEngine {
             private String sender;
             private String content;
             private long timestamp;
+            // Filled in once by addMessage: start and end offsets of each sentence in
+            // content, the keywords of every sentence in order, and where each
+            // sentence's keywords end, so compaction does not tokenize the turn again
+            private int[] sentenceBounds;
+            private String[] keywords;
+            private int[] sentenceKeywordEnds;
 
             public ConversationTurn(String sender, String content) {
+                this(sender, content, System.currentTimeMillis());
+            }
+
+            ConversationTurn(String sender, String content, long timestamp) {
                 this.sender = sender;
                 this.content = content;
-                this.timestamp = System.currentTimeMillis();
+                this.timestamp = timestamp;
             }
 
             public String getSender() { return sender; }
@@ -445,68 +464,353 @@ public class ContextEngine {
             }
         }
 
+        // Shared by every thread; keywords are words of three or more letters not in this set
+        private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "the", "and", "but", "or", "nor", "in", "on", "at", "to", "for",
+            "of", "with", "by", "from", "about", "i", "you", "he", "she", "it", "we",
+            "they", "me", "him", "her", "us", "them", "my", "your", "his", "its",
+            "our", "their", "is", "am", "are", "was", "were", "be", "been", "being",
+            "have", "has", "had", "do", "does", "did", "will", "would", "could",
+            "should", "may", "might", "can", "must", "this", "that", "these", "those",
+            "what", "which", "who", "whom", "whose", "when", "where", "why", "how",
+            "all", "each", "every", "both", "few", "more", "most", "other", "some",
+            "such", "no", "not", "only", "own", "same", "so", "than", "too", "very",
+            "just", "also"
+        ));
+        // Sentences of compacted turns kept in the summary
+        static final int SUMMARY_SENTENCES = 5;
+        // Approximate heap cost of a turn besides its text: the turn, its String and the String's array
+        private static final int TURN_OVERHEAD_BYTES = 72;
+        private static final java.util.regex.Pattern SENTENCE_END = java.util.regex.Pattern.compile("(?<=[.!?])\\s+");
+        private static final java.util.regex.Pattern NON_LETTERS = java.util.regex.Pattern.compile("[^a-zA-Z\\s]");
+        private static final java.util.regex.Pattern WHITESPACE = java.util.regex.Pattern.compile("\\s+");
+
         private String threadId;
         private String topic;
-        private List<ConversationTurn> messages;
+        // The most recent turns, oldest at head; older turns are compacted into the summary
+        private ConversationTurn[] retainedTurns;
+        private int head;
+        private int retainedCount;
+        private final int maxRetainedTurns;
+        private final List<ConversationTurn> messagesView;
+        private int totalTurns;
+        private int compactedTurns;
+        private long compactedBytes;
+        // Extractive summary of compacted turns: the highest scoring sentences and the turn each came from
+        private final String[] summarySentences;
+        private final double[] summaryScores;
+        private final int[] summaryTurns;
+        private int summaryCount;
         private Map<String, Integer> keywordFrequency;
         private ThreadStatus status;
         private long createdAt;
         private long lastActivityAt;
-        private Set<String> stopWords;
+        // MinHash of the keywords; see ThreadIndex
+        private final long[] signature;
+        // Index of the owning engine, told about every new keyword
+        private ThreadIndex index;
+        private int ordinal;
 
+        /**
+         * Keeps conversation.thread_retained_turns turns verbatim
+         */
         public ConversationThread(String topic) {
+            this(topic, Configuration.getInstance().getIntProperty("conversation.thread_retained_turns", 50));
+        }
+
+        /**
+         * @param maxRetainedTurns turns kept verbatim before older ones are compacted into the summary
+         */
+        public ConversationThread(String topic, int maxRetainedTurns) {
             this.threadId = UUID.randomUUID().toString();
             this.topic = topic;
-            this.messages = new ArrayList<>();
+            this.maxRetainedTurns = Math.max(1, maxRetainedTurns);
+            this.retainedTurns = new ConversationTurn[Math.min(8, this.maxRetainedTurns)];
+            this.messagesView = new AbstractList<ConversationTurn>() {
+                @Override
+                public ConversationTurn get(int i) {
+                    Objects.checkIndex(i, retainedCount);
+                    return retainedTurns[(head + i) % retainedTurns.length];
+                }
+
+                @Override
+                public int size() {
+                    return retainedCount;
+                }
+            };
+            this.summarySentences = new String[SUMMARY_SENTENCES];
+            this.summaryScores = new double[SUMMARY_SENTENCES];
+            this.summaryTurns = new int[SUMMARY_SENTENCES];
             this.keywordFrequency = new HashMap<>();
             this.status = ThreadStatus.ACTIVE;
             this.createdAt = System.currentTimeMillis();
             this.lastActivityAt = System.currentTimeMillis();
-            this.stopWords = initializeStopWords();
-        }
-
-        private Set<String> initializeStopWords() {
-            Set<String> stopWords = new HashSet<>();
-            stopWords.addAll(Arrays.asList(
-                "a", "an", "the", "and", "but", "or", "nor", "in", "on", "at", "to", "for",
-                "of", "with", "by", "from", "about", "i", "you", "he", "she", "it", "we",
-                "they", "me", "him", "her", "us", "them", "my", "your", "his", "its",
-                "our", "their", "is", "am", "are", "was", "were", "be", "been", "being",
-                "have", "has", "had", "do", "does", "did", "will", "would", "could",
-                "should", "may", "might", "can", "must", "this", "that", "these", "those",
-                "what", "which", "who", "whom", "whose", "when", "where", "why", "how",
-                "all", "each", "every", "both", "few", "more", "most", "other", "some",
-                "such", "no", "not", "only", "own", "same", "so", "than", "too", "very",
-                "just", "also"
-            ));
-            return stopWords;
+            this.signature = ThreadIndex.emptySignature();
         }
 
         public void addMessage(String sender, String content) {
+            addMessage(sender, content, System.currentTimeMillis());
+        }
+
+        /**
+         * Adds a turn that was made at the given time, as when a stored thread is rebuilt
+         */
+        void addMessage(String sender, String content, long timestamp) {
             if (content == null) content = "";
-            ConversationTurn turn = new ConversationTurn(sender, content);
-            messages.add(turn);
-            lastActivityAt = System.currentTimeMillis();
-            extractKeywords(content);
+            ConversationTurn turn = new ConversationTurn(sender, content, timestamp);
+            analyze(turn);
+            if (retainedCount == maxRetainedTurns) {
+                compact(retainedTurns[head]);
+                retainedTurns[head] = null;
+                head = (head + 1) % retainedTurns.length;
+                retainedCount--;
+            } else if (retainedCount == retainedTurns.length) {
+                ConversationTurn[] grown = new ConversationTurn[Math.min(retainedTurns.length * 2, maxRetainedTurns)];
+                for (int i = 0; i < retainedCount; i++) {
+                    grown[i] = retainedTurns[(head + i) % retainedTurns.length];
+                }
+                retainedTurns = grown;
+                head = 0;
+            }
+            retainedTurns[(head + retainedCount) % retainedTurns.length] = turn;
+            retainedCount++;
+            totalTurns++;
+            lastActivityAt = timestamp;
+            for (String keyword : turn.keywords) {
+                countKeyword(keyword, 1);
+            }
+        }
+
+        /**
+         * Splits a turn into sentences and finds each sentence's keywords, once
+         */
+        private static void analyze(ConversationTurn turn) {
+            String content = turn.getContent();
+            int start = 0;
+            int end = content.length();
+            while (start < end && content.charAt(start) <= ' ') start++;
+            while (end > start && content.charAt(end - 1) <= ' ') end--;
+            List<String> keywords = new ArrayList<>();
+            int[] bounds = new int[8];
+            int[] keywordEnds = new int[4];
+            int sentences = 0;
+            java.util.regex.Matcher boundary = SENTENCE_END.matcher(content).region(start, end);
+            int sentenceStart = start;
+            while (sentenceStart <= end) {
+                int sentenceEnd = boundary.find() ? boundary.start() : end;
+                if (sentences == keywordEnds.length) {
+                    bounds = Arrays.copyOf(bounds, sentences * 4);
+                    keywordEnds = Arrays.copyOf(keywordEnds, sentences * 2);
+                }
+                forEachKeyword(content.substring(sentenceStart, sentenceEnd), keywords::add);
+                bounds[2 * sentences] = sentenceStart;
+                bounds[2 * sentences + 1] = sentenceEnd;
+                keywordEnds[sentences++] = keywords.size();
+                if (sentenceEnd == end) {
+                    break;
+                }
+                sentenceStart = boundary.end();
+            }
+            turn.sentenceBounds = Arrays.copyOf(bounds, 2 * sentences);
+            turn.keywords = keywords.toArray(new String[0]);
+            turn.sentenceKeywordEnds = Arrays.copyOf(keywordEnds, sentences);
+        }
+
+        /**
+         * Folds a turn leaving the ring buffer into the summary. Its keywords are already
+         * counted; each sentence is scored by how often the thread uses its keywords and
+         * replaces the lowest scoring summary sentence if it beats it.
+         */
+        private void compact(ConversationTurn turn) {
+            int turnNumber = totalTurns - retainedCount;
+            compactedTurns++;
+            compactedBytes += estimateBytes(turn.getContent());
+            int keyword = 0;
+            for (int sentence = 0; sentence < turn.sentenceKeywordEnds.length; sentence++) {
+                int first = keyword;
+                double total = 0;
+                for (; keyword < turn.sentenceKeywordEnds[sentence]; keyword++) {
+                    total += keywordFrequency.getOrDefault(turn.keywords[keyword], 0);
+                }
+                if (keyword > first) {
+                    double score = total / (keyword - first);
+                    int slot = summarySlot(score);
+                    if (slot >= 0) {
+                        setSummarySentence(slot, turn.getContent().substring(turn.sentenceBounds[2 * sentence],
+                            turn.sentenceBounds[2 * sentence + 1]), score, turnNumber);
+                    }
+                }
+            }
+        }
+
+        private void offerSummarySentence(String sentence, double score, int turnNumber) {
+            int slot = summarySlot(score);
+            if (slot >= 0) {
+                setSummarySentence(slot, sentence, score, turnNumber);
+            }
+        }
+
+        /**
+         * The slot a sentence with this score goes in: a free one, else the lowest
+         * scoring one if the sentence beats it, else -1
+         */
+        private int summarySlot(double score) {
+            if (summaryCount < SUMMARY_SENTENCES) {
+                return summaryCount;
+            }
+            int slot = 0;
+            for (int s = 1; s < summaryCount; s++) {
+                if (summaryScores[s] < summaryScores[slot]) {
+                    slot = s;
+                }
+            }
+            return summaryScores[slot] < score ? slot : -1;
         }
 
-        private void extractKeywords(String content) {
+        private void setSummarySentence(int slot, String sentence, double score, int turnNumber) {
+            if (slot == summaryCount) {
+                summaryCount++;
+            }
+            summarySentences[slot] = sentence;
+            summaryScores[slot] = score;
+            summaryTurns[slot] = turnNumber;
+        }
+
+        private static long estimateBytes(String content) {
+            return TURN_OVERHEAD_BYTES + (content != null ? content.length() : 0);
+        }
+
+        private void countKeyword(String word, int count) {
+            if (keywordFrequency.merge(word, count, Integer::sum) == count) {
+                ThreadIndex.addToSignature(signature, word);
+                if (index != null) {
+                    index.addKeyword(this, word);
+                }
+            }
+        }
+
+        private static void forEachKeyword(String content, java.util.function.Consumer<String> action) {
             if (content == null || content.isEmpty()) return;
-            String cleaned = content.toLowerCase().replaceAll("[^a-zA-Z\\s]", "");
-            String[] words = cleaned.split("\\s+");
+            String cleaned = NON_LETTERS.matcher(content.toLowerCase()).replaceAll("");
+            String[] words = WHITESPACE.split(cleaned);
             for (String word : words) {
-                if (!word.isEmpty() && word.length() > 2 && !stopWords.contains(word)) {
-                    keywordFrequency.merge(word, 1, Integer::sum);
+                if (!word.isEmpty() && word.length() > 2 && !STOP_WORDS.contains(word)) {
+                    action.accept(word);
+                }
+            }
+        }
+
+        /**
+         * Number of turns ever added, including compacted ones
+         */
+        public int getMessageCount() { return totalTurns; }
+
+        /**
+         * Live read-only view of the turns still kept verbatim, oldest first
+         */
+        public List<ConversationTurn> getMessages() { return messagesView; }
+
+        public int getRetainedMessageCount() { return retainedCount; }
+        public int getCompactedMessageCount() { return compactedTurns; }
+
+        /**
+         * Extractive summary of the compacted turns, in conversation order; empty until a turn is compacted
+         */
+        public String getCompactedSummary() {
+            StringBuilder summary = new StringBuilder();
+            for (int s : summaryOrder()) {
+                if (summary.length() > 0) {
+                    summary.append(' ');
+                }
+                summary.append(summarySentences[s]);
+            }
+            return summary.toString();
+        }
+
+        private Integer[] summaryOrder() {
+            Integer[] order = new Integer[summaryCount];
+            for (int s = 0; s < summaryCount; s++) {
+                order[s] = s;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(summaryTurns[a], summaryTurns[b]));
+            return order;
+        }
+
+        /**
+         * Approximate bytes of turn text released by compaction, less what the summary keeps
+         */
+        public long getBytesSaved() {
+            long kept = 0;
+            for (int s = 0; s < summaryCount; s++) {
+                kept += summarySentences[s].length();
+            }
+            return Math.max(0, compactedBytes - kept);
+        }
+
+        /**
+         * Keyword counts of the compacted turns alone: the thread's counts less those
+         * of the turns still kept verbatim
+         */
+        public Map<String, Integer> getCompactedKeywordCounts() {
+            Map<String, Integer> counts = new HashMap<>(keywordFrequency);
+            for (ConversationTurn turn : messagesView) {
+                for (String keyword : turn.keywords) {
+                    counts.computeIfPresent(keyword, (word, count) -> count > 1 ? count - 1 : null);
                 }
             }
+            return counts;
+        }
+
+        /**
+         * Summary sentences in conversation order, as getCompactedSummary joins them
+         */
+        public List<String> getSummarySentences() {
+            List<String> sentences = new ArrayList<>(summaryCount);
+            for (int s : summaryOrder()) {
+                sentences.add(summarySentences[s]);
+            }
+            return sentences;
+        }
+
+        /**
+         * Scores of getSummarySentences(), in the same order
+         */
+        public List<Double> getSummaryScores() {
+            List<Double> scores = new ArrayList<>(summaryCount);
+            for (int s : summaryOrder()) {
+                scores.add(summaryScores[s]);
+            }
+            return scores;
+        }
+
+        /**
+         * Gives a new, empty thread the compacted turns of a persisted one: their
+         * count, summary and keyword counts. Retained turns are added after it.
+         */
+        void restoreCompacted(int turns, List<String> sentences, List<Double> scores, Map<String, Integer> keywordCounts) {
+            if (totalTurns > 0) {
+                throw new IllegalStateException("Compacted turns must be restored before any turn is added");
+            }
+            compactedTurns = turns;
+            totalTurns = turns;
+            for (int s = 0; s < Math.min(sentences.size(), SUMMARY_SENTENCES); s++) {
+                setSummarySentence(s, sentences.get(s), s < scores.size() ? scores.get(s) : 0.0, s);
+            }
+            keywordCounts.forEach(this::countKeyword);
         }
 
-        public int getMessageCount() { return messages.size(); }
-        public List<ConversationTurn> getMessages() { return new ArrayList<>(messages); }
         public String getTopic() { return topic; }
         public void setTopic(String topic) { this.topic = topic; }
         public String getThreadId() { return threadId; }
         public long getCreatedAt() { return createdAt; }
+
+        /**
+         * Gives a thread rebuilt from persisted turns its original id and creation time
+         */
+        void restoreIdentity(String threadId, long createdAt) {
+            this.threadId = threadId;
+            this.createdAt = createdAt;
+        }
         public long getLastActivityAt() { return lastActivityAt; }
         public ThreadStatus getStatus() { return status; }
         public void setStatus(ThreadStatus status) { this.status = status; }
@@ -523,30 +827,52 @@ public class ContextEngine {
         }
 
         public double getCoherenceScore() {
-            if (messages.size() < 2) return 1.0;
+            if (totalTurns < 2) return 1.0;
             if (keywordFrequency.isEmpty()) return 0.5;
             int total = keywordFrequency.values().stream().mapToInt(Integer::intValue).sum();
             double repeatedRatio = keywordFrequency.values().stream().filter(f -> f > 1).mapToInt(f -> f).sum() / (double) total;
-            double lengthFactor = Math.min(1.0, messages.size() / 10.0) * 0.3;
+            double lengthFactor = Math.min(1.0, totalTurns / 10.0) * 0.3;
             return Math.min(1.0, Math.max(0.0, repeatedRatio * 0.7 + lengthFactor));
         }
 
         public double getTopicSimilarity(ConversationThread other) {
             if (other == null) return 0.0;
-            Set<String> thisKeys = keywordFrequency.keySet();
-            Set<String> otherKeys = other.keywordFrequency.keySet();
-            if (thisKeys.isEmpty() && otherKeys.isEmpty()) return 0.5;
-            if (thisKeys.isEmpty() || otherKeys.isEmpty()) return 0.2;
-            Set<String> intersection = new HashSet<>(thisKeys);
-            intersection.retainAll(otherKeys);
-            Set<String> union = new HashSet<>(thisKeys);
-            union.addAll(otherKeys);
-            return (double) intersection.size() / union.size();
+            if (keywordFrequency.isEmpty() && other.keywordFrequency.isEmpty()) return 0.5;
+            if (keywordFrequency.isEmpty() || other.keywordFrequency.isEmpty()) return 0.2;
+            return keywordJaccard(other);
+        }
+
+        /**
+         * Jaccard similarity of the keyword sets, counting shared keywords from the
+         * smaller set instead of building the intersection and union
+         */
+        double keywordJaccard(ConversationThread other) {
+            Map<String, Integer> smaller = keywordFrequency.size() <= other.keywordFrequency.size()
+                ? keywordFrequency : other.keywordFrequency;
+            Map<String, Integer> larger = smaller == keywordFrequency ? other.keywordFrequency : keywordFrequency;
+            int shared = 0;
+            for (String keyword : smaller.keySet()) {
+                if (larger.containsKey(keyword)) {
+                    shared++;
+                }
+            }
+            int union = keywordFrequency.size() + other.keywordFrequency.size() - shared;
+            return union == 0 ? 0.0 : (double) shared / union;
         }
 
         public void mergeThread(ConversationThread other) {
             if (other == null || other == this) return;
-            for (ConversationTurn turn : other.messages) {
+            if (other.compactedTurns > 0) {
+                // Only the other thread's keyword counts and summary are left of its compacted turns
+                other.getCompactedKeywordCounts().forEach(this::countKeyword);
+                for (int s = 0; s < other.summaryCount; s++) {
+                    offerSummarySentence(other.summarySentences[s], other.summaryScores[s], totalTurns + other.summaryTurns[s]);
+                }
+                totalTurns += other.compactedTurns;
+                compactedTurns += other.compactedTurns;
+                compactedBytes += other.compactedBytes;
+            }
+            for (ConversationTurn turn : other.messagesView) {
                 addMessage(turn.getSender(), turn.getContent());
             }
             if ((topic == null || topic.isEmpty()) && other.topic != null && !other.topic.isEmpty()) {
@@ -557,7 +883,10 @@ public class ContextEngine {
         public String getSummary() {
             StringBuilder sb = new StringBuilder();
             sb.append("Thread: ").append(topic != null ? topic : "Untitled").append("\n");
-            sb.append("Messages: ").append(messages.size()).append("\n");
+            sb.append("Messages: ").append(totalTurns).append("\n");
+            if (summaryCount > 0) {
+                sb.append("Earlier: ").append(getCompactedSummary()).append("\n");
+            }
             sb.append("Status: ").append(status).append("\n");
             sb.append("Coherence: ").append(String.format("%.2f", getCoherenceScore()));
             return sb.toString();
@@ -565,7 +894,285 @@ public class ContextEngine {
 
         @Override
         public String toString() {
-            return "ConversationThread{topic='" + topic + "', messages=" + messages.size() + "}";
+            return "ConversationThread{topic='" + topic + "', messages=" + totalTurns + "}";
+        }
+    }
+
+    /**
+     * ThreadIndex - Inverted index from keyword to the threads that use it, plus a
+     * MinHash signature per thread, for finding the thread most similar to a message
+     * without comparing it against every thread. Candidates come from the postings of
+     * the query's rarer keywords, which also count how many keywords each shares; a
+     * candidate is only compared exactly if that count, plus every common keyword it
+     * might share, could beat the best similarity so far. Queries made only of common
+     * keywords compare the candidates with the closest MinHash signatures.
+     * Threads report new keywords as messages arrive, so the index is always current;
+     * keywords are never removed.
+     */
+    static class ThreadIndex {
+        static final int SIGNATURE_SIZE = 32;
+        // Candidates compared exactly when only common keywords generated them
+        static final int EXACT_CANDIDATES = 16;
+        // Keywords in more threads than this (or 1/8 of the threads) are too common to generate candidates
+        private static final int MIN_COMMON_POSTINGS = 64;
+        private static final long[] SEEDS = new long[SIGNATURE_SIZE];
+        static {
+            Random random = new Random(0x7EADL);
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                SEEDS[i] = random.nextLong();
+            }
+        }
+
+        /**
+         * Threads using one keyword, by ordinal in increasing order
+         */
+        private static class Postings {
+            int[] ordinals = new int[4];
+            int size;
+
+            void add(int ordinal) {
+                if (size == ordinals.length) {
+                    ordinals = Arrays.copyOf(ordinals, size * 2);
+                }
+                ordinals[size++] = ordinal;
+            }
+        }
+
+        private final List<ConversationThread> threads = new ArrayList<>();
+        private final Map<String, Postings> postings = new HashMap<>();
+        // Threads without keywords yet, in registration order
+        private final Set<ConversationThread> emptyThreads = new LinkedHashSet<>();
+        private int[] candidateStamps = new int[16];
+        private int[] sharedCounts = new int[16];
+        private int stamp;
+        private int[] candidates = new int[16];
+        // Set by collectCandidates: whether rare keywords generated the candidates, and how many were skipped
+        private boolean generatedFromRare;
+        private int skippedKeywords;
+        private long queries;
+        private long candidatesGenerated;
+        private long exactComparisons;
+
+        static long[] emptySignature() {
+            long[] signature = new long[SIGNATURE_SIZE];
+            Arrays.fill(signature, Long.MAX_VALUE);
+            return signature;
+        }
+
+        static void addToSignature(long[] signature, String keyword) {
+            long hash = keyword.hashCode();
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                long value = mix(hash ^ SEEDS[i]);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+
+        /**
+         * Fraction of matching MinHash values, an estimate of the Jaccard similarity
+         */
+        static double estimateSimilarity(long[] a, long[] b) {
+            int matches = 0;
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                if (a[i] == b[i]) {
+                    matches++;
+                }
+            }
+            return matches / (double) SIGNATURE_SIZE;
+        }
+
+        // SplitMix64 finalizer
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+
+        void register(ConversationThread thread) {
+            thread.index = this;
+            thread.ordinal = threads.size();
+            threads.add(thread);
+            if (candidateStamps.length < threads.size()) {
+                candidateStamps = Arrays.copyOf(candidateStamps, candidateStamps.length * 2);
+                sharedCounts = Arrays.copyOf(sharedCounts, candidateStamps.length);
+            }
+            if (thread.keywordFrequency.isEmpty()) {
+                emptyThreads.add(thread);
+            }
+            for (String keyword : thread.keywordFrequency.keySet()) {
+                postings.computeIfAbsent(keyword, k -> new Postings()).add(thread.ordinal);
+            }
+        }
+
+        void addKeyword(ConversationThread thread, String keyword) {
+            emptyThreads.remove(thread);
+            postings.computeIfAbsent(keyword, k -> new Postings()).add(thread.ordinal);
+        }
+
+        void clear() {
+            for (ConversationThread thread : threads) {
+                thread.index = null;
+            }
+            threads.clear();
+            postings.clear();
+            emptyThreads.clear();
+        }
+
+        int getKeywordCount() { return postings.size(); }
+
+        /**
+         * Thread most similar to the query by keyword Jaccard similarity, as comparing
+         * it with every thread would find: a thread without keywords scores 0.2 against
+         * a query with keywords (0.5 against one without), and ties go to the older
+         * thread. Threads sharing only common keywords are not considered.
+         * @param exclude thread to skip, e.g. the current one; may be null
+         */
+        ConversationThread findMostSimilar(ConversationThread query, ConversationThread exclude) {
+            ConversationThread first = null;
+            for (int i = 0; i < threads.size() && first == null; i++) {
+                if (threads.get(i) != exclude) {
+                    first = threads.get(i);
+                }
+            }
+            if (first == null) {
+                return null;
+            }
+            ConversationThread firstEmpty = null;
+            for (ConversationThread thread : emptyThreads) {
+                if (thread != exclude) {
+                    firstEmpty = thread;
+                    break;
+                }
+            }
+            if (query.keywordFrequency.isEmpty()) {
+                return firstEmpty != null ? firstEmpty : first;
+            }
+            queries++;
+
+            ConversationThread best = firstEmpty != null ? firstEmpty : first;
+            double bestScore = firstEmpty != null ? 0.2 : 0.0;
+            int count = collectCandidates(query, exclude);
+            if (!generatedFromRare && count > EXACT_CANDIDATES) {
+                count = keepMostSimilar(query, count);
+            }
+            if (generatedFromRare && count > 0) {
+                // Start from the candidate sharing the most rare keywords so the bound prunes early
+                int seed = 0;
+                for (int c = 1; c < count; c++) {
+                    if (sharedCounts[candidates[c]] > sharedCounts[candidates[seed]]) {
+                        seed = c;
+                    }
+                }
+                int swap = candidates[0];
+                candidates[0] = candidates[seed];
+                candidates[seed] = swap;
+            }
+
+            int querySize = query.keywordFrequency.size();
+            for (int c = 0; c < count; c++) {
+                ConversationThread thread = threads.get(candidates[c]);
+                if (generatedFromRare) {
+                    int threadSize = thread.keywordFrequency.size();
+                    int shared = Math.min(sharedCounts[thread.ordinal] + skippedKeywords, Math.min(querySize, threadSize));
+                    double bound = (double) shared / (querySize + threadSize - shared);
+                    if (bound < bestScore || (bound == bestScore && thread.ordinal > best.ordinal)) {
+                        continue;
+                    }
+                }
+                exactComparisons++;
+                double score = query.keywordJaccard(thread);
+                if (score > bestScore || (score == bestScore && thread.ordinal < best.ordinal)) {
+                    best = thread;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+
+        private int collectCandidates(ConversationThread query, ConversationThread exclude) {
+            int common = Math.max(MIN_COMMON_POSTINGS, threads.size() / 8);
+            Postings rarest = null;
+            boolean anyRare = false;
+            for (String keyword : query.keywordFrequency.keySet()) {
+                Postings list = postings.get(keyword);
+                if (list != null) {
+                    anyRare |= list.size <= common;
+                    if (rarest == null || list.size < rarest.size) {
+                        rarest = list;
+                    }
+                }
+            }
+            generatedFromRare = anyRare;
+            skippedKeywords = 0;
+            if (rarest == null) {
+                return 0;
+            }
+
+            if (++stamp == 0) {
+                Arrays.fill(candidateStamps, 0);
+                stamp = 1;
+            }
+            int count = 0;
+            for (String keyword : query.keywordFrequency.keySet()) {
+                Postings list = postings.get(keyword);
+                if (list == null) {
+                    continue;
+                }
+                if (anyRare ? list.size > common : list != rarest) {
+                    skippedKeywords++;
+                    continue;
+                }
+                for (int p = 0; p < list.size; p++) {
+                    int ordinal = list.ordinals[p];
+                    if (candidateStamps[ordinal] == stamp) {
+                        sharedCounts[ordinal]++;
+                    } else if (threads.get(ordinal) != exclude) {
+                        candidateStamps[ordinal] = stamp;
+                        sharedCounts[ordinal] = 1;
+                        if (count == candidates.length) {
+                            candidates = Arrays.copyOf(candidates, count * 2);
+                        }
+                        candidates[count++] = ordinal;
+                    }
+                }
+            }
+            candidatesGenerated += count;
+            return count;
+        }
+
+        /**
+         * Moves the EXACT_CANDIDATES candidates with the highest MinHash estimate to the front
+         */
+        private int keepMostSimilar(ConversationThread query, int count) {
+            double[] estimates = new double[EXACT_CANDIDATES];
+            int kept = 0;
+            for (int c = 0; c < count; c++) {
+                int ordinal = candidates[c];
+                double estimate = estimateSimilarity(query.signature, threads.get(ordinal).signature);
+                if (kept == EXACT_CANDIDATES && estimate <= estimates[kept - 1]) {
+                    continue;
+                }
+                int position = kept < EXACT_CANDIDATES ? kept++ : kept - 1;
+                while (position > 0 && estimates[position - 1] < estimate) {
+                    estimates[position] = estimates[position - 1];
+                    candidates[position] = candidates[position - 1];
+                    position--;
+                }
+                estimates[position] = estimate;
+                candidates[position] = ordinal;
+            }
+            return kept;
+        }
+
+        Map<String, Object> getStatistics() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("indexedThreads", threads.size());
+            stats.put("indexedKeywords", postings.size());
+            stats.put("similarityQueries", queries);
+            stats.put("averageCandidates", queries > 0 ? candidatesGenerated / (double) queries : 0.0);
+            stats.put("averageExactComparisons", queries > 0 ? exactComparisons / (double) queries : 0.0);
+            return stats;
         }
     }
 
@@ -621,6 +1228,16 @@ public class ContextEngine {
             this.answerText = answerText;
         }
 
+        /**
+         * Gives a recreated question its original id, status and answer
+         */
+        void restoreState(String questionId, QuestionStatus status, long createdAt, String answerText) {
+            this.questionId = questionId;
+            this.status = status;
+            this.createdAt = createdAt;
+            this.answerText = answerText;
+        }
+
         public boolean isAnswered() { return status == QuestionStatus.ANSWERED; }
         public void defer(String reason) { this.status = QuestionStatus.DEFERRED; }
         public void drop() { this.status = QuestionStatus.DROPPED; }
@@ -655,12 +1272,38 @@ public class ContextEngine {
     private List<ConversationThread> conversationThreads;
     private List<OpenQuestion> openQuestions;
     private ConversationThread currentThread;
+    private ThreadIndex threadIndex;
     private long lastContextUpdate;
     private int maxWorkingMemory;
     private int maxShortTermMemory;
     private int maxLongTermMemory;
+    private final ExpiryService expiryService;
+    private final Map<String, ExpiryService.Timeout> expiryTimeouts;
+    private final Set<MemoryTier> enforcementPending;
+    private ExpiryHandler expiryHandler;
+    private LongTermStore longTermStore;
+    private String longTermUser;
+    private boolean closed;
+    private volatile ChangeListener changeListener;
+    // Bumped by every change a listener hears about; autosave compares it with the count it last saved
+    private final java.util.concurrent.atomic.AtomicLong modifications = new java.util.concurrent.atomic.AtomicLong();
+    private long expiredEntities;
+    private long demotedEntities;
 
+    /**
+     * Expires entities through the JVM-wide ExpiryService
+     */
     public ContextEngine() {
+        this(ExpiryService.getShared());
+    }
+
+    /**
+     * @param expiryService wheel that expires this engine's entities
+     */
+    public ContextEngine(ExpiryService expiryService) {
+        this.expiryService = expiryService;
+        this.expiryTimeouts = new HashMap<>();
+        this.enforcementPending = EnumSet.noneOf(MemoryTier.class);
         this.entities = new HashMap<>();
         this.tieredEntities = new HashMap<>();
         for (MemoryTier tier : MemoryTier.values()) {
@@ -669,8 +1312,9 @@ public class ContextEngine {
         this.referenceResolution = new ReferenceResolution();
         this.conversationThreads = new ArrayList<>();
         this.openQuestions = new ArrayList<>();
+        this.threadIndex = new ThreadIndex();
         this.currentThread = new ConversationThread("General");
-        this.conversationThreads.add(currentThread);
+        addThread(currentThread);
         this.lastContextUpdate = System.currentTimeMillis();
         this.maxWorkingMemory = 10;
         this.maxShortTermMemory = 50;
@@ -679,108 +1323,439 @@ public class ContextEngine {
     }
 
     // ==================== ENTITY MANAGEMENT ====================
+    // Entity state is guarded by this engine's monitor, since the expiry service
+    // expires entities and enforces tier limits from its own thread.
 
-    public ReferenceEntity addEntity(String name, String type, MemoryTier tier) {
+    public synchronized ReferenceEntity addEntity(String name, String type, MemoryTier tier) {
         ReferenceEntity entity = new ReferenceEntity(name, type, tier);
         entities.put(entity.getEntityId(), entity);
         tieredEntities.get(tier).add(entity.getEntityId());
-        enforceMemoryLimits(tier);
+        scheduleExpiry(entity);
+        enforceMemoryLimitsLater(tier);
+        notifyEntityChanged(entity);
         return entity;
     }
 
-    public ReferenceEntity getEntity(String entityId) {
+    public synchronized ReferenceEntity getEntity(String entityId) {
         ReferenceEntity entity = entities.get(entityId);
+        if (entity == null && longTermStore != null) {
+            entity = pageIn(longTermStore.getEntity(longTermUser, entityId));
+        }
         if (entity != null) entity.updateLastAccessed();
         return entity;
     }
 
-    public ReferenceEntity findEntityByName(String name) {
-        return entities.values().stream().filter(e -> name.equalsIgnoreCase(e.getName())).findFirst().orElse(null);
+    public synchronized ReferenceEntity findEntityByName(String name) {
+        ReferenceEntity entity = entities.values().stream().filter(e -> name.equalsIgnoreCase(e.getName())).findFirst().orElse(null);
+        if (entity == null && longTermStore != null) {
+            entity = pageIn(longTermStore.findEntity(longTermUser, name));
+        }
+        return entity;
     }
 
-    public List<ReferenceEntity> findEntitiesByType(String type) {
+    public synchronized List<ReferenceEntity> findEntitiesByType(String type) {
         return entities.values().stream().filter(e -> type.equalsIgnoreCase(e.getType())).toList();
     }
 
-    public void moveEntityToTier(String entityId, MemoryTier newTier) {
-        ReferenceEntity entity = entities.get(entityId);
-        if (entity != null) {
-            tieredEntities.get(entity.getMemoryTier()).remove(entityId);
-            entity.setMemoryTier(newTier);
-            tieredEntities.get(newTier).add(entityId);
+    public synchronized void moveEntityToTier(String entityId, MemoryTier newTier) {
+        ReferenceEntity entity = entities.get(entityId);
+        if (entity != null) {
+            tieredEntities.get(entity.getMemoryTier()).remove(entityId);
+            entity.setMemoryTier(newTier);
+            tieredEntities.get(newTier).add(entityId);
+            scheduleExpiry(entity);
+            enforceMemoryLimitsLater(newTier);
+            notifyEntityChanged(entity);
+        }
+    }
+
+    /**
+     * Sets an attribute on a stored entity and reports the change to the change
+     * listener; setting it on the entity directly is not reported
+     */
+    public synchronized void setEntityAttribute(String entityId, String key, Object value) {
+        ReferenceEntity entity = entities.get(entityId);
+        if (entity != null) {
+            entity.setAttribute(key, value);
+            notifyEntityChanged(entity);
+        }
+    }
+
+    public synchronized void removeEntity(String entityId) {
+        ReferenceEntity entity = entities.remove(entityId);
+        if (entity != null) {
+            tieredEntities.get(entity.getMemoryTier()).remove(entityId);
+            cancelExpiry(entityId);
+            referenceResolution.removePronoun(entity.getName());
+            notifyEntityRemoved(entity);
+        }
+    }
+
+    public synchronized List<ReferenceEntity> getAllEntities() { return new ArrayList<>(entities.values()); }
+
+    public synchronized List<ReferenceEntity> getEntitiesByTier(MemoryTier tier) {
+        return tieredEntities.get(tier).stream().map(entities::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Adds a persisted entity back to its tier
+     */
+    synchronized void restoreEntity(ReferenceEntity entity) {
+        entities.put(entity.getEntityId(), entity);
+        tieredEntities.get(entity.getMemoryTier()).add(entity.getEntityId());
+        scheduleExpiry(entity);
+        enforceMemoryLimitsLater(entity.getMemoryTier());
+    }
+
+    private int tierLimit(MemoryTier tier) {
+        return switch (tier) {
+            case WORKING -> maxWorkingMemory;
+            case SHORT_TERM -> maxShortTermMemory;
+            case LONG_TERM -> maxLongTermMemory;
+            case FLASHBULB -> Integer.MAX_VALUE;
+        };
+    }
+
+    // ==================== ENTITY EXPIRY ====================
+
+    /**
+     * Decides what happens to an entity whose TTL passed or that no longer fits its tier
+     */
+    public interface ExpiryHandler {
+        /**
+         * Called on the expiry thread with the engine locked; may persist the entity
+         * @param overCapacity true if the entity is the oldest in a full tier rather than expired
+         * @return the tier to move the entity to, or null to drop it
+         */
+        MemoryTier onExpire(ContextEngine engine, ReferenceEntity entity, boolean overCapacity);
+    }
+
+    /**
+     * Expires one entity when its TTL has passed since it was last accessed; an
+     * entity accessed in the meantime is simply due again later. The wheel is
+     * shared by every engine, so the task only holds its engine weakly: an engine
+     * that is dropped without close() is not kept alive by its pending timeouts.
+     */
+    private static final class EntityExpiry implements ExpiryService.Task {
+        private final java.lang.ref.WeakReference<ContextEngine> engine;
+        private final String entityId;
+        private final MemoryTier tier;
+
+        EntityExpiry(ContextEngine engine, String entityId, MemoryTier tier) {
+            this.engine = new java.lang.ref.WeakReference<>(engine);
+            this.entityId = entityId;
+            this.tier = tier;
+        }
+
+        @Override
+        public long expire(long now) {
+            ContextEngine owner = engine.get();
+            return owner != null ? owner.expireIfDue(entityId, tier, now) : -1;
+        }
+    }
+
+    /**
+     * @return a later deadline if the entity was used since it was scheduled, else -1
+     */
+    private synchronized long expireIfDue(String entityId, MemoryTier tier, long now) {
+        ReferenceEntity entity = entities.get(entityId);
+        if (closed || entity == null || entity.getMemoryTier() != tier) {
+            return -1;
+        }
+        long deadline = entity.getLastAccessed() + tier.getTimeToLive();
+        if (deadline > now) {
+            return deadline;
+        }
+        expiryTimeouts.remove(entityId);
+        expireEntity(entity, false);
+        return -1;
+    }
+
+    private void scheduleExpiry(ReferenceEntity entity) {
+        cancelExpiry(entity.getEntityId());
+        MemoryTier tier = entity.getMemoryTier();
+        if (!tier.isPermanent() && !closed) {
+            expiryTimeouts.put(entity.getEntityId(), expiryService.schedule(
+                entity.getLastAccessed() + tier.getTimeToLive(), new EntityExpiry(this, entity.getEntityId(), tier)));
+        }
+    }
+
+    private void cancelExpiry(String entityId) {
+        ExpiryService.Timeout timeout = expiryTimeouts.remove(entityId);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Trims a tier that is over its limit on the expiry thread, oldest entities first
+     */
+    private void enforceMemoryLimitsLater(MemoryTier tier) {
+        if (tieredEntities.get(tier).size() > tierLimit(tier) && !enforcementPending.contains(tier) && !closed) {
+            enforcementPending.add(tier);
+            expiryService.schedule(System.currentTimeMillis(), enforcement(new java.lang.ref.WeakReference<>(this), tier));
+        }
+    }
+
+    private static ExpiryService.Task enforcement(java.lang.ref.WeakReference<ContextEngine> engine, MemoryTier tier) {
+        return now -> {
+            ContextEngine owner = engine.get();
+            if (owner != null) {
+                synchronized (owner) {
+                    owner.enforcementPending.remove(tier);
+                    if (!owner.closed) {
+                        owner.enforceMemoryLimits(tier);
+                    }
+                }
+            }
+            return -1;
+        };
+    }
+
+    /**
+     * Takes the engine's entities off the expiry wheel; they no longer expire or
+     * get trimmed. Call when the session ends so the shared wheel drops its work.
+     */
+    public synchronized void close() {
+        closed = true;
+        expiryTimeouts.values().forEach(ExpiryService.Timeout::cancel);
+        expiryTimeouts.clear();
+    }
+
+    private void enforceMemoryLimits(MemoryTier tier) {
+        Set<String> tierSet = tieredEntities.get(tier);
+        int limit = tierLimit(tier);
+
+        while (tierSet.size() > limit) {
+            String oldestId = tierSet.iterator().next();
+            ReferenceEntity oldest = entities.get(oldestId);
+            if (oldest != null && oldest.getMemoryTier() == tier && !tier.isPermanent()) {
+                cancelExpiry(oldestId);
+                expireEntity(oldest, true);
+            }
+            tierSet.remove(oldestId);
+        }
+    }
+
+    /**
+     * Hands an entity leaving its tier to the expiry handler: it moves to the tier
+     * the handler returns, or is dropped
+     */
+    private void expireEntity(ReferenceEntity entity, boolean overCapacity) {
+        MemoryTier from = entity.getMemoryTier();
+        MemoryTier to = expiryHandler != null ? expiryHandler.onExpire(this, entity, overCapacity) : null;
+        tieredEntities.get(from).remove(entity.getEntityId());
+        if (to != null && to != from) {
+            entity.setMemoryTier(to);
+            tieredEntities.get(to).add(entity.getEntityId());
+            scheduleExpiry(entity);
+            enforceMemoryLimitsLater(to);
+            demotedEntities++;
+            notifyEntityChanged(entity);
+        } else {
+            entities.remove(entity.getEntityId());
+            expiredEntities++;
+            notifyEntityRemoved(entity);
+        }
+    }
+
+    private void notifyEntityChanged(ReferenceEntity entity) {
+        modifications.incrementAndGet();
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onEntityChanged(entity);
+        }
+    }
+
+    private void notifyEntityRemoved(ReferenceEntity entity) {
+        modifications.incrementAndGet();
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onEntityRemoved(entity);
+        }
+    }
+
+    /**
+     * Sets what happens to expired entities; null (the default) drops them
+     */
+    public synchronized void setExpiryHandler(ExpiryHandler expiryHandler) {
+        this.expiryHandler = expiryHandler;
+    }
+
+    // ==================== LONG-TERM STORE ====================
+
+    /**
+     * Keeps this engine's long-term memory off the heap in a LongTermStore, under
+     * the user's id. LONG_TERM entities that expire or overflow their tier move
+     * to the store (this replaces the expiry handler), archived threads move there
+     * when merged, and offloadLongTerm() moves the rest. Looking an entity up by
+     * id or name, or a thread by id, pages it back in.
+     * @param store the store, or null to keep everything on the heap again
+     */
+    public synchronized void setLongTermStore(LongTermStore store, String userId) {
+        this.longTermStore = store;
+        this.longTermUser = userId;
+        this.expiryHandler = store != null ? store.expiryHandler(userId) : null;
+    }
+
+    /**
+     * Moves LONG_TERM entities and threads that are no longer active into the
+     * long-term store and drops them from the heap
+     * @return the number of entities and threads moved; 0 without a store
+     */
+    public synchronized int offloadLongTerm() {
+        if (longTermStore == null) {
+            return 0;
+        }
+        List<ReferenceEntity> longTerm = getEntitiesByTier(MemoryTier.LONG_TERM);
+        for (ReferenceEntity entity : longTerm) {
+            longTermStore.putEntity(longTermUser, entity);
+            removeEntity(entity.getEntityId());
+        }
+        List<ConversationThread> finished = conversationThreads.stream()
+            .filter(t -> t != currentThread && t.getStatus() != ConversationThread.ThreadStatus.ACTIVE).toList();
+        offloadThreads(finished);
+        return longTerm.size() + finished.size();
+    }
+
+    private synchronized void offloadThreads(List<ConversationThread> threads) {
+        if (threads.isEmpty()) {
+            return;
+        }
+        for (ConversationThread thread : threads) {
+            longTermStore.putThread(longTermUser, thread);
         }
+        conversationThreads.removeAll(threads);
+        // The index cannot drop threads, so it is rebuilt from the ones left
+        threadIndex.clear();
+        conversationThreads.forEach(threadIndex::register);
+        modifications.incrementAndGet();
     }
 
-    public void removeEntity(String entityId) {
-        ReferenceEntity entity = entities.remove(entityId);
-        if (entity != null) {
-            tieredEntities.get(entity.getMemoryTier()).remove(entityId);
-            referenceResolution.removePronoun(entity.getName());
+    /**
+     * Returns a stored entity to its tier and removes it from the store
+     */
+    private ReferenceEntity pageIn(ReferenceEntity stored) {
+        if (stored != null) {
+            longTermStore.removeEntity(longTermUser, stored.getEntityId());
+            restoreEntity(stored);
+            notifyEntityChanged(stored);
         }
+        return stored;
     }
 
-    public List<ReferenceEntity> getAllEntities() { return new ArrayList<>(entities.values()); }
+    // ==================== CHANGE NOTIFICATION ====================
 
-    public List<ReferenceEntity> getEntitiesByTier(MemoryTier tier) {
-        return tieredEntities.get(tier).stream().map(entities::get).filter(Objects::nonNull).toList();
+    /**
+     * Told about every turn, entity change and question update, e.g. to journal them.
+     * Entity callbacks run with the engine locked and must not block.
+     */
+    public interface ChangeListener {
+        void onTurn(ConversationThread thread, ConversationThread.ConversationTurn turn);
+        void onEntityChanged(ReferenceEntity entity);
+        void onEntityRemoved(ReferenceEntity entity);
+        void onQuestionChanged(OpenQuestion question);
+        void onCleared();
     }
 
-    private void enforceMemoryLimits(MemoryTier tier) {
-        Set<String> tierSet = tieredEntities.get(tier);
-        int limit = switch (tier) {
-            case WORKING -> maxWorkingMemory;
-            case SHORT_TERM -> maxShortTermMemory;
-            case LONG_TERM -> maxLongTermMemory;
-            case FLASHBULB -> Integer.MAX_VALUE;
-        };
+    /**
+     * Sets the listener told about changes, or null for none; restoring persisted state is not reported
+     */
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
 
-        while (tierSet.size() > limit) {
-            String oldestId = tierSet.iterator().next();
-            ReferenceEntity oldest = entities.get(oldestId);
-            tierSet.remove(oldestId);
-            if (oldest != null && oldest.getMemoryTier() == tier && !tier.isPermanent()) {
-                entities.remove(oldestId);
-            }
-        }
+    /**
+     * Number of changes made so far; an engine is dirty when this has moved since it was last saved
+     */
+    public long getModificationCount() {
+        return modifications.get();
     }
 
     // ==================== CONVERSATION THREAD MANAGEMENT ====================
 
     public ConversationThread createThread(String topic) {
         ConversationThread thread = new ConversationThread(topic);
-        conversationThreads.add(thread);
+        addThread(thread);
         return thread;
     }
 
+    private void addThread(ConversationThread thread) {
+        conversationThreads.add(thread);
+        threadIndex.register(thread);
+    }
+
     public void setCurrentThread(ConversationThread thread) { this.currentThread = thread; }
     public ConversationThread getCurrentThread() { return currentThread; }
 
     public void addMessageToCurrentThread(String sender, String content) {
         if (currentThread == null) {
             currentThread = new ConversationThread("General");
-            conversationThreads.add(currentThread);
+            addThread(currentThread);
         }
         currentThread.addMessage(sender, content);
         lastContextUpdate = System.currentTimeMillis();
+        modifications.incrementAndGet();
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            List<ConversationThread.ConversationTurn> turns = currentThread.getMessages();
+            listener.onTurn(currentThread, turns.get(turns.size() - 1));
+        }
+    }
+
+    /**
+     * Adds a persisted thread
+     */
+    void restoreThread(ConversationThread thread) {
+        addThread(thread);
     }
 
     public List<ConversationThread> getAllThreads() { return new ArrayList<>(conversationThreads); }
 
+    /**
+     * Finds a thread by id, paging it back in from the long-term store if it was offloaded
+     */
+    public synchronized ConversationThread getThread(String threadId) {
+        for (ConversationThread thread : conversationThreads) {
+            if (thread.getThreadId().equals(threadId)) {
+                return thread;
+            }
+        }
+        ConversationThread stored = longTermStore != null ? longTermStore.getThread(longTermUser, threadId) : null;
+        if (stored != null) {
+            longTermStore.removeThread(longTermUser, threadId);
+            addThread(stored);
+        }
+        return stored;
+    }
+
     public List<ConversationThread> getActiveThreads() {
         return conversationThreads.stream().filter(t -> t.getStatus() == ConversationThread.ThreadStatus.ACTIVE).toList();
     }
 
+    /**
+     * Finds the thread (other than the current one) whose keywords are most similar
+     * to the content's, using the thread index rather than comparing every thread
+     */
     public ConversationThread findMostSimilarThread(String content) {
         ConversationThread tempThread = new ConversationThread("temp");
         tempThread.addMessage("User", content);
-        return conversationThreads.stream().filter(t -> t != currentThread)
-            .max((a, b) -> Double.compare(a.getTopicSimilarity(tempThread), b.getTopicSimilarity(tempThread)))
-            .orElse(null);
+        return threadIndex.findMostSimilar(tempThread, currentThread);
+    }
+
+    /**
+     * Gets thread index statistics
+     */
+    public Map<String, Object> getThreadIndexStatistics() {
+        return threadIndex.getStatistics();
     }
 
-    public void mergeThreads(ConversationThread source, ConversationThread target) {
+    public synchronized void mergeThreads(ConversationThread source, ConversationThread target) {
         target.mergeThread(source);
         source.setStatus(ConversationThread.ThreadStatus.ARCHIVED);
+        if (longTermStore != null && source != currentThread) {
+            offloadThreads(List.of(source));
+        }
     }
 
     // ==================== OPEN QUESTION MANAGEMENT ====================
@@ -788,6 +1763,7 @@ public class ContextEngine {
     public OpenQuestion createOpenQuestion(String questionText, String askedBy, String context) {
         OpenQuestion question = new OpenQuestion(questionText, askedBy, context);
         openQuestions.add(question);
+        notifyQuestionChanged(question);
         return question;
     }
 
@@ -795,12 +1771,31 @@ public class ContextEngine {
         OpenQuestion question = new OpenQuestion(questionText, askedBy, context);
         question.setPriority(priority);
         openQuestions.add(question);
+        notifyQuestionChanged(question);
         return question;
     }
 
     public void markQuestionAnswered(String questionId, String answer) {
         openQuestions.stream().filter(q -> q.getQuestionId().equals(questionId)).findFirst()
-            .ifPresent(q -> q.markAsAnswered(answer));
+            .ifPresent(q -> {
+                q.markAsAnswered(answer);
+                notifyQuestionChanged(q);
+            });
+    }
+
+    /**
+     * Adds a persisted question
+     */
+    void restoreQuestion(OpenQuestion question) {
+        openQuestions.add(question);
+    }
+
+    private void notifyQuestionChanged(OpenQuestion question) {
+        modifications.incrementAndGet();
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onQuestionChanged(question);
+        }
     }
 
     public List<OpenQuestion> getOpenQuestions() {
@@ -868,40 +1863,61 @@ public class ContextEngine {
 
     // ==================== CLEANUP ====================
 
-    public void cleanupExpiredEntities() {
+    /**
+     * Expires every entity past its TTL now rather than on the expiry thread's next tick
+     */
+    public synchronized void cleanupExpiredEntities() {
         long now = System.currentTimeMillis();
         for (MemoryTier tier : MemoryTier.values()) {
             if (tier.isPermanent()) continue;
-            Set<String> tierSet = tieredEntities.get(tier);
-            Iterator<String> iterator = tierSet.iterator();
-            while (iterator.hasNext()) {
-                String entityId = iterator.next();
+            List<ReferenceEntity> expired = new ArrayList<>();
+            for (String entityId : tieredEntities.get(tier)) {
                 ReferenceEntity entity = entities.get(entityId);
                 if (entity != null && now - entity.getLastAccessed() > tier.getTimeToLive()) {
-                    iterator.remove();
-                    entities.remove(entityId);
+                    expired.add(entity);
                 }
             }
+            for (ReferenceEntity entity : expired) {
+                cancelExpiry(entity.getEntityId());
+                expireEntity(entity, false);
+            }
         }
     }
 
     public void clearAll() {
-        entities.clear();
-        tieredEntities.forEach((tier, set) -> set.clear());
+        synchronized (this) {
+            expiryTimeouts.values().forEach(ExpiryService.Timeout::cancel);
+            expiryTimeouts.clear();
+            entities.clear();
+            tieredEntities.forEach((tier, set) -> set.clear());
+        }
         referenceResolution.clearPronouns();
         conversationThreads.clear();
+        threadIndex.clear();
         openQuestions.clear();
         currentThread = new ConversationThread("General");
-        conversationThreads.add(currentThread);
+        addThread(currentThread);
         lastContextUpdate = System.currentTimeMillis();
+        modifications.incrementAndGet();
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onCleared();
+        }
     }
 
     // ==================== STATISTICS ====================
 
     public Map<String, Object> getStatistics() {
         Map<String, Object> stats = new HashMap<>();
-        stats.put("entityCount", entities.size());
+        synchronized (this) {
+            stats.put("entityCount", entities.size());
+            stats.put("expiredEntities", expiredEntities);
+            stats.put("demotedEntities", demotedEntities);
+        }
         stats.put("threadCount", conversationThreads.size());
+        stats.put("indexedKeywords", threadIndex.getKeywordCount());
+        stats.put("compactedTurns", conversationThreads.stream().mapToInt(ConversationThread::getCompactedMessageCount).sum());
+        stats.put("threadBytesSaved", conversationThreads.stream().mapToLong(ConversationThread::getBytesSaved).sum());
         stats.put("activeThreadCount", getActiveThreads().size());
         stats.put("openQuestionCount", getOpenQuestions().size());
         stats.put("resolvedQuestionCount", openQuestions.stream().filter(q -> q.isAnswered()).count());
@@ -936,6 +1952,8 @@ public class ContextEngine {
             private int mentionCount;
             private Set<String> relatedKeywords;
             private Set<String> contextPhrases;
+            // Last processText pass that reported this topic
+            private int detectedPass;
 
             public TrackedTopic(String topicName, String category, double confidence) {
                 this.topicId = UUID.randomUUID().toString();
@@ -989,99 +2007,303 @@ public class ContextEngine {
             }
         }
 
-        private static final Map<String, Set<String>> TOPIC_PATTERNS = new HashMap<>();
+        private static final Map<String, List<String>> TOPIC_PATTERNS = new LinkedHashMap<>();
         
         static {
-            TOPIC_PATTERNS.put("technology", Set.of(
+            TOPIC_PATTERNS.put("technology", List.of(
                 "computer", "software", "app", "phone", "internet", "code", "programming",
                 "ai", "robot", "device", "digital", "online", "website", "data"
             ));
-            TOPIC_PATTERNS.put("gaming", Set.of(
+            TOPIC_PATTERNS.put("gaming", List.of(
                 "game", "play", "player", "level", "win", "score", "gaming", "video game",
                 "fortnite", "minecraft", "cs2", "console", "gamer", "multiplayer"
             ));
-            TOPIC_PATTERNS.put("academics", Set.of(
+            TOPIC_PATTERNS.put("academics", List.of(
                 "school", "college", "university", "study", "homework", "exam", "test",
                 "grade", "class", "subject", "teacher", "assignment", "quiz"
             ));
-            TOPIC_PATTERNS.put("relationships", Set.of(
+            TOPIC_PATTERNS.put("relationships", List.of(
                 "friend", "family", "relationship", "dating", "marriage", "love", "partner",
                 "parents", "sibling", "boyfriend", "girlfriend"
             ));
-            TOPIC_PATTERNS.put("health", Set.of(
+            TOPIC_PATTERNS.put("health", List.of(
                 "health", "exercise", "fitness", "workout", "gym", "diet", "nutrition",
                 "sleep", "mental health", "anxiety", "depression", "stress"
             ));
-            TOPIC_PATTERNS.put("entertainment", Set.of(
+            TOPIC_PATTERNS.put("entertainment", List.of(
                 "movie", "film", "series", "show", "music", "song", "book", "reading",
                 "tv", "netflix", "youtube", "streaming", "anime"
             ));
-            TOPIC_PATTERNS.put("food", Set.of(
+            TOPIC_PATTERNS.put("food", List.of(
                 "food", "eat", "cooking", "recipe", "restaurant", "breakfast", "lunch", 
                 "dinner", "snack", "healthy", "delicious", "cuisine"
             ));
-            TOPIC_PATTERNS.put("travel", Set.of(
+            TOPIC_PATTERNS.put("travel", List.of(
                 "travel", "trip", "vacation", "holiday", "flight", "hotel", "destination",
                 "tourism", "adventure", "country", "city", "beach"
             ));
-            TOPIC_PATTERNS.put("work", Set.of(
+            TOPIC_PATTERNS.put("work", List.of(
                 "job", "work", "career", "office", "boss", "employee", "salary",
                 "interview", "resume", "profession", "business"
             ));
         }
 
-        private Map<String, TrackedTopic> trackedTopics;
-        private Deque<TrackedTopic> topicHistory;
+        // Short phrases that say nothing about a topic
+        private static final String[] COMMON_PHRASES = {
+            "i think", "i feel", "i want", "i need", "i like", "i love",
+            "what about", "how about", "do you", "can you", "would you"
+        };
+
+        private static final KeywordTrie KEYWORDS = new KeywordTrie(TOPIC_PATTERNS);
+
+        // Phrases are runs of up to this many words separated only by whitespace
+        private static final int MAX_PHRASE_WORDS = 3;
+
+        /**
+         * Character trie over every category keyword, with multi-word keywords joined
+         * by a single space. Built once; matching walks it from each word start.
+         */
+        private static final class KeywordTrie {
+            private static final char WORD_SEPARATOR = ' ';
+
+            final String[] keywords;
+            final String[] categories;
+            // Index into categories of each keyword; keywords are grouped by category
+            final int[] keywordCategory;
+            private final char[][] edgeChars;
+            private final int[][] edgeTargets;
+            // Keyword ending at each state, or -1
+            private final int[] terminalKeyword;
+
+            KeywordTrie(Map<String, List<String>> patterns) {
+                List<String> keywordList = new ArrayList<>();
+                List<Integer> categoryList = new ArrayList<>();
+                this.categories = patterns.keySet().toArray(new String[0]);
+                int c = 0;
+                for (List<String> keywordsOfCategory : patterns.values()) {
+                    for (String keyword : keywordsOfCategory) {
+                        keywordList.add(keyword);
+                        categoryList.add(c);
+                    }
+                    c++;
+                }
+                this.keywords = keywordList.toArray(new String[0]);
+                this.keywordCategory = new int[keywords.length];
+
+                List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+                List<Integer> terminals = new ArrayList<>();
+                trie.add(new TreeMap<>());
+                terminals.add(-1);
+                for (int k = 0; k < keywords.length; k++) {
+                    keywordCategory[k] = categoryList.get(k);
+                    int state = 0;
+                    for (int i = 0; i < keywords[k].length(); i++) {
+                        Integer next = trie.get(state).get(keywords[k].charAt(i));
+                        if (next == null) {
+                            next = trie.size();
+                            trie.add(new TreeMap<>());
+                            terminals.add(-1);
+                            trie.get(state).put(keywords[k].charAt(i), next);
+                        }
+                        state = next;
+                    }
+                    if (terminals.get(state) < 0) {
+                        terminals.set(state, k);
+                    }
+                }
+
+                int states = trie.size();
+                this.edgeChars = new char[states][];
+                this.edgeTargets = new int[states][];
+                this.terminalKeyword = new int[states];
+                for (int s = 0; s < states; s++) {
+                    TreeMap<Character, Integer> edges = trie.get(s);
+                    edgeChars[s] = new char[edges.size()];
+                    edgeTargets[s] = new int[edges.size()];
+                    int e = 0;
+                    for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                        edgeChars[s][e] = edge.getKey();
+                        edgeTargets[s][e] = edge.getValue();
+                        e++;
+                    }
+                    terminalKeyword[s] = terminals.get(s);
+                }
+            }
+
+            /**
+             * Walks the keywords starting at a word start. A keyword ending at a word end
+             * counts as an occurrence; one ending inside a word ("play" in "playing")
+             * only marks the keyword as seen.
+             */
+            void match(String text, int position, int[] occurrences, boolean[] seen) {
+                int length = text.length();
+                int state = 0;
+                while (position < length) {
+                    char c = fold(text.charAt(position));
+                    if (isWordChar(c)) {
+                        state = step(state, c);
+                        if (state < 0) {
+                            return;
+                        }
+                        position++;
+                        int keyword = terminalKeyword[state];
+                        if (keyword >= 0) {
+                            seen[keyword] = true;
+                            if (position == length || !isWordChar(fold(text.charAt(position)))) {
+                                occurrences[keyword]++;
+                            }
+                        }
+                    } else if (isWhitespace(c)) {
+                        while (position < length && isWhitespace(text.charAt(position))) {
+                            position++;
+                        }
+                        state = step(state, WORD_SEPARATOR);
+                        if (state < 0) {
+                            return;
+                        }
+                    } else {
+                        return;
+                    }
+                }
+            }
+
+            private int step(int state, char c) {
+                int edge = Arrays.binarySearch(edgeChars[state], c);
+                return edge >= 0 ? edgeTargets[state][edge] : -1;
+            }
+        }
+
+        private final Map<String, TrackedTopic> trackedTopics;
         private int maxTrackedTopics;
         private double minConfidence;
-        private Pattern ngramPattern;
+        // Per-message scratch, cleared after every message
+        private final int[] keywordOccurrences;
+        private final boolean[] keywordSeen;
+        private char[] phraseBuffer;
+        private int pass;
+        // Phrases are only tracked once they recur in this many turns
+        private final int phrasePromotionTurns;
+        private final SpaceSavingSketch phraseSketch;
 
+        /**
+         * Uses topics.phrase_sketch_capacity and topics.phrase_promotion_turns from Configuration
+         */
         public ImplicitTopicTracker() {
-            this.trackedTopics = new HashMap<>();
-            this.topicHistory = new ArrayDeque<>(20);
+            this(Configuration.getInstance().getIntProperty("topics.phrase_sketch_capacity", 256),
+                Configuration.getInstance().getIntProperty("topics.phrase_promotion_turns", 2));
+        }
+
+        /**
+         * @param phraseSketchCapacity number of candidate phrases counted per session
+         * @param phrasePromotionTurns turns a phrase must recur in before it is tracked
+         */
+        public ImplicitTopicTracker(int phraseSketchCapacity, int phrasePromotionTurns) {
             this.maxTrackedTopics = 50;
             this.minConfidence = 0.3;
-            this.ngramPattern = Pattern.compile("\\b\\w+(?:\\s+\\w+){0,2}\\b");
+            this.phrasePromotionTurns = Math.max(1, phrasePromotionTurns);
+            this.phraseSketch = new SpaceSavingSketch(phraseSketchCapacity);
+            // Ordered by last mention: getOrCreateTopic re-inserts a mentioned topic, so the
+            // eldest entry is the least recently mentioned one and reads never reorder it
+            this.trackedTopics = new LinkedHashMap<>(64) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TrackedTopic> eldest) {
+                    return size() > maxTrackedTopics;
+                }
+            };
+            this.keywordOccurrences = new int[KEYWORDS.keywords.length];
+            this.keywordSeen = new boolean[KEYWORDS.keywords.length];
+            this.phraseBuffer = new char[64];
         }
 
+        /**
+         * Detects the category topics and free-form phrases in a text in one pass per
+         * matcher. Keywords match at word starts; a category's confidence grows with the
+         * whole-word occurrences of its best keyword. Phrases are runs of up to three
+         * words, as the previous \b\w+(?:\s+\w+){0,2}\b scan found them; they are
+         * counted in a fixed-size sketch and only become topics once they recur.
+         * Every candidate phrase is still made into a String to count it, so a message
+         * allocates in proportion to its length, about 150 KB for 20 paragraphs.
+         */
         public List<TrackedTopic> processText(String text) {
             List<TrackedTopic> detectedTopics = new ArrayList<>();
             if (text == null || text.isEmpty()) return detectedTopics;
+            pass++;
 
-            String lowerText = text.toLowerCase();
-            
-            for (Map.Entry<String, Set<String>> entry : TOPIC_PATTERNS.entrySet()) {
-                String category = entry.getKey();
-                Set<String> keywords = entry.getValue();
-                
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                if (isWordChar(fold(text.charAt(i))) && (i == 0 || !isWordChar(fold(text.charAt(i - 1))))) {
+                    KEYWORDS.match(text, i, keywordOccurrences, keywordSeen);
+                }
+            }
+
+            int k = 0;
+            for (int c = 0; c < KEYWORDS.categories.length; c++) {
                 double maxConfidence = 0;
-                String bestMatch = null;
-                
-                for (String keyword : keywords) {
-                    if (lowerText.contains(keyword)) {
-                        int count = countOccurrences(lowerText, keyword);
-                        double confidence = Math.min(1.0, 0.3 + (count * 0.1));
+                int bestMatch = -1;
+                for (; k < KEYWORDS.keywords.length && KEYWORDS.keywordCategory[k] == c; k++) {
+                    if (keywordSeen[k]) {
+                        double confidence = Math.min(1.0, 0.3 + (keywordOccurrences[k] * 0.1));
                         if (confidence > maxConfidence) {
                             maxConfidence = confidence;
-                            bestMatch = keyword;
+                            bestMatch = k;
                         }
+                        keywordSeen[k] = false;
+                        keywordOccurrences[k] = 0;
                     }
                 }
-                
-                if (bestMatch != null && maxConfidence >= minConfidence) {
-                    TrackedTopic topic = getOrCreateTopic(bestMatch, category, maxConfidence);
-                    detectedTopics.add(topic);
+                if (bestMatch >= 0 && maxConfidence >= minConfidence) {
+                    TrackedTopic topic = getOrCreateTopic(KEYWORDS.keywords[bestMatch], KEYWORDS.categories[c], maxConfidence);
+                    markDetected(topic, detectedTopics);
                 }
             }
-            
-            Matcher matcher = ngramPattern.matcher(lowerText);
-            while (matcher.find()) {
-                String phrase = matcher.group().trim();
-                if (phrase.length() > 3 && !isCommonPhrase(phrase)) {
-                    TrackedTopic topic = getOrCreateTopic(phrase, "custom", 0.4);
-                    topic.addContextPhrase(phrase);
-                    if (!detectedTopics.contains(topic)) {
-                        detectedTopics.add(topic);
+
+            int position = 0;
+            while (position < length) {
+                while (position < length && !isWordChar(fold(text.charAt(position)))) {
+                    position++;
+                }
+                if (position >= length) {
+                    break;
+                }
+                int start = position;
+                int words = 0;
+                int end = position;
+                while (true) {
+                    while (position < length && isWordChar(fold(text.charAt(position)))) {
+                        position++;
+                    }
+                    end = position;
+                    if (++words == MAX_PHRASE_WORDS) {
+                        break;
+                    }
+                    int gap = position;
+                    while (gap < length && isWhitespace(text.charAt(gap))) {
+                        gap++;
+                    }
+                    if (gap == position || gap >= length || !isWordChar(fold(text.charAt(gap)))) {
+                        break;
+                    }
+                    position = gap;
+                }
+                position = end;
+
+                int phraseLength = end - start;
+                if (phraseLength > 3) {
+                    if (phraseBuffer.length < phraseLength) {
+                        phraseBuffer = new char[Math.max(phraseLength, phraseBuffer.length * 2)];
+                    }
+                    for (int i = 0; i < phraseLength; i++) {
+                        phraseBuffer[i] = fold(text.charAt(start + i));
+                    }
+                    if (!isCommonPhrase(phraseBuffer, phraseLength)) {
+                        String phrase = new String(phraseBuffer, 0, phraseLength);
+                        if (!trackedTopics.containsKey(phrase)
+                                && phraseSketch.offer(phrase, pass) < phrasePromotionTurns) {
+                            continue;
+                        }
+                        TrackedTopic topic = getOrCreateTopic(phrase, "custom", 0.4);
+                        topic.addContextPhrase(phrase);
+                        markDetected(topic, detectedTopics);
                     }
                 }
             }
@@ -1089,44 +2311,61 @@ public class ContextEngine {
             return detectedTopics;
         }
 
+        private void markDetected(TrackedTopic topic, List<TrackedTopic> detectedTopics) {
+            if (topic.detectedPass != pass) {
+                topic.detectedPass = pass;
+                detectedTopics.add(topic);
+            }
+        }
+
         private TrackedTopic getOrCreateTopic(String topicName, String category, double confidence) {
             String key = topicName.toLowerCase();
-            TrackedTopic topic = trackedTopics.get(key);
+            // Re-inserting moves the topic to the most recent end; put() may evict the eldest
+            TrackedTopic topic = trackedTopics.remove(key);
             
             if (topic == null) {
                 topic = new TrackedTopic(topicName, category, confidence);
-                trackedTopics.put(key, topic);
-                topicHistory.addFirst(topic);
-                
-                if (trackedTopics.size() > maxTrackedTopics) {
-                    TrackedTopic removed = topicHistory.removeLast();
-                    if (removed != null) {
-                        trackedTopics.remove(removed.getTopicName().toLowerCase());
-                    }
-                }
             } else {
                 topic.update(confidence);
-                topicHistory.remove(topic);
-                topicHistory.addFirst(topic);
             }
+            trackedTopics.put(key, topic);
             
             return topic;
         }
 
-        private int countOccurrences(String text, String word) {
-            Pattern pattern = Pattern.compile("\\b" + Pattern.quote(word) + "\\b");
-            Matcher matcher = pattern.matcher(text);
-            int count = 0;
-            while (matcher.find()) count++;
-            return count;
+        private static boolean isCommonPhrase(char[] phrase, int length) {
+            for (String common : COMMON_PHRASES) {
+                if (common.length() == length) {
+                    int i = 0;
+                    while (i < length && common.charAt(i) == phrase[i]) {
+                        i++;
+                    }
+                    if (i == length) {
+                        return true;
+                    }
+                }
+            }
+            return false;
         }
 
-        private boolean isCommonPhrase(String phrase) {
-            Set<String> common = Set.of(
-                "i think", "i feel", "i want", "i need", "i like", "i love",
-                "what about", "how about", "do you", "can you", "would you"
-            );
-            return common.contains(phrase);
+        private static char fold(char c) {
+            return c < 128 ? (c >= 'A' && c <= 'Z' ? (char) (c + 32) : c) : Character.toLowerCase(c);
+        }
+
+        // Word characters as \w matched them: ASCII letters, digits and underscore
+        private static boolean isWordChar(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+        }
+
+        /**
+         * Category keywords in definition order
+         */
+        static Map<String, List<String>> getTopicPatterns() {
+            return Collections.unmodifiableMap(TOPIC_PATTERNS);
         }
 
         public List<TrackedTopic> getTopTopics(int limit) {
@@ -1141,10 +2380,15 @@ public class ContextEngine {
         }
 
         public List<TrackedTopic> getRecentTopics(int limit) {
-            return topicHistory.stream()
-                .filter(t -> System.currentTimeMillis() - t.getLastMention() < 1000 * 60 * 10)
-                .limit(limit)
-                .toList();
+            List<TrackedTopic> recent = new ArrayList<>();
+            List<TrackedTopic> byAccess = new ArrayList<>(trackedTopics.values());
+            for (int i = byAccess.size() - 1; i >= 0 && recent.size() < limit; i--) {
+                TrackedTopic topic = byAccess.get(i);
+                if (System.currentTimeMillis() - topic.getLastMention() < 1000 * 60 * 10) {
+                    recent.add(topic);
+                }
+            }
+            return recent;
         }
 
         public List<TrackedTopic> detectTopicTransitions() {
@@ -1189,12 +2433,13 @@ public class ContextEngine {
 
         public void clear() {
             trackedTopics.clear();
-            topicHistory.clear();
+            phraseSketch.clear();
         }
 
         public Map<String, Object> getStatistics() {
             Map<String, Object> stats = new HashMap<>();
             stats.put("totalTopics", trackedTopics.size());
+            stats.put("candidatePhrases", phraseSketch.size());
             stats.put("dominantTopic", getDominantTopic() != null ? getDominantTopic().getTopicName() : null);
             stats.put("categoriesFound", trackedTopics.values().stream()
                 .map(TrackedTopic::getCategory)
@@ -1468,7 +2713,7 @@ public class ContextEngine {
             private String type;
             private String memoryTier;
             private long createdAt;
-            private Map<String, Object> attributes;
+            private Map<String, Object> attributes = new HashMap<>();
 
             public String getEntityId() { return entityId; }
             public void setEntityId(String entityId) { this.entityId = entityId; }
@@ -1493,6 +2738,11 @@ public class ContextEngine {
             private long createdAt;
             private long lastActivityAt;
             private List<PersistedTurn> messages;
+            // What is left of turns compacted out of the thread; see ConversationThread.restoreCompacted
+            private int compactedTurns;
+            private List<String> summarySentences = new ArrayList<>();
+            private List<Double> summaryScores = new ArrayList<>();
+            private Map<String, Integer> compactedKeywords = new HashMap<>();
 
             public String getThreadId() { return threadId; }
             public void setThreadId(String threadId) { this.threadId = threadId; }
@@ -1504,6 +2754,14 @@ public class ContextEngine {
             public void setLastActivityAt(long lastActivityAt) { this.lastActivityAt = lastActivityAt; }
             public List<PersistedTurn> getMessages() { return messages; }
             public void setMessages(List<PersistedTurn> messages) { this.messages = messages; }
+            public int getCompactedTurns() { return compactedTurns; }
+            public void setCompactedTurns(int compactedTurns) { this.compactedTurns = compactedTurns; }
+            public List<String> getSummarySentences() { return summarySentences; }
+            public void setSummarySentences(List<String> summarySentences) { this.summarySentences = summarySentences; }
+            public List<Double> getSummaryScores() { return summaryScores; }
+            public void setSummaryScores(List<Double> summaryScores) { this.summaryScores = summaryScores; }
+            public Map<String, Integer> getCompactedKeywords() { return compactedKeywords; }
+            public void setCompactedKeywords(Map<String, Integer> compactedKeywords) { this.compactedKeywords = compactedKeywords; }
         }
 
         /**
@@ -1551,15 +2809,30 @@ public class ContextEngine {
         }
 
         private String basePath;
+        private boolean binarySnapshots;
+        private volatile WriteBehindQueue writeBehindQueue;
+        // Archive lines waiting for their file's queued append, by file name
+        private final Map<String, StringBuilder> archiveBuffers = new HashMap<>();
 
         public PersistenceManager() {
-            this.basePath = "data/context";
+            this("data/context");
         }
 
         public PersistenceManager(String basePath) {
             this.basePath = basePath;
+            this.binarySnapshots = Configuration.getInstance().getBooleanProperty("context.binary_snapshots", true);
+        }
+
+        /**
+         * Chooses between the binary snapshot format (see ContextSnapshot) and the
+         * older text format for saves; loading reads either
+         */
+        public void setBinarySnapshots(boolean binarySnapshots) {
+            this.binarySnapshots = binarySnapshots;
         }
 
+        public boolean isBinarySnapshots() { return binarySnapshots; }
+
         /**
          * Serialize entity to persisted format
          */
@@ -1598,6 +2871,13 @@ public class ContextEngine {
             pt.setCreatedAt(thread.getCreatedAt());
             pt.setLastActivityAt(thread.getLastActivityAt());
             
+            if (thread.getCompactedMessageCount() > 0) {
+                // Compacted turns survive as their summary and keyword counts
+                pt.setCompactedTurns(thread.getCompactedMessageCount());
+                pt.setSummarySentences(thread.getSummarySentences());
+                pt.setSummaryScores(thread.getSummaryScores());
+                pt.setCompactedKeywords(thread.getCompactedKeywordCounts());
+            }
             List<PersistedTurn> turns = new ArrayList<>();
             for (ConversationThread.ConversationTurn turn : thread.getMessages()) {
                 PersistedTurn ptTurn = new PersistedTurn();
@@ -1616,12 +2896,23 @@ public class ContextEngine {
         private ConversationThread deserializeThread(PersistedThread pt) {
             ConversationThread thread = new ConversationThread(pt.getTopic());
             // Can't restore threadId, messages will be added
+            restoreCompacted(thread, pt);
             for (PersistedTurn turn : pt.getMessages()) {
                 thread.addMessage(turn.getSender(), turn.getContent());
             }
             return thread;
         }
 
+        /**
+         * Restores a persisted thread's compacted turns into a new, empty thread
+         */
+        static void restoreCompacted(ConversationThread thread, PersistedThread pt) {
+            if (pt.getCompactedTurns() > 0) {
+                thread.restoreCompacted(pt.getCompactedTurns(), pt.getSummarySentences(),
+                    pt.getSummaryScores(), pt.getCompactedKeywords());
+            }
+        }
+
         /**
          * Serialize question to persisted format
          */
@@ -1669,39 +2960,7 @@ public class ContextEngine {
          */
         public boolean saveToFile(ContextEngine engine, String filename, MemoryTier tier) {
             try {
-                PersistedData data = new PersistedData();
-                data.setTimestamp(System.currentTimeMillis());
-
-                // Serialize entities for the tier
-                List<PersistedEntity> persistedEntities = new ArrayList<>();
-                for (ReferenceEntity entity : engine.getEntitiesByTier(tier)) {
-                    persistedEntities.add(serializeEntity(entity));
-                }
-                data.setEntities(persistedEntities);
-
-                // Serialize active threads for LONG_TERM, or all for SHORT_TERM
-                List<PersistedThread> persistedThreads = new ArrayList<>();
-                List<ConversationThread> threadsToSave = tier == MemoryTier.LONG_TERM
-                    ? engine.getActiveThreads()
-                    : engine.getAllThreads();
-                for (ConversationThread thread : threadsToSave) {
-                    persistedThreads.add(serializeThread(thread));
-                }
-                data.setThreads(persistedThreads);
-
-                // Serialize open questions
-                List<PersistedQuestion> persistedQuestions = new ArrayList<>();
-                for (OpenQuestion question : engine.getOpenQuestions()) {
-                    persistedQuestions.add(serializeQuestion(question));
-                }
-                data.setQuestions(persistedQuestions);
-
-                // Simple JSON-like serialization (could use Jackson/Gson for full JSON)
-                String serialized = serializeToString(data);
-                java.nio.file.Files.write(
-                    java.nio.file.Paths.get(basePath + "/" + filename),
-                    serialized.getBytes()
-                );
+                writeData(filename, capture(engine, tier));
                 return true;
             } catch (Exception e) {
                 e.printStackTrace();
@@ -1709,6 +2968,86 @@ public class ContextEngine {
             }
         }
 
+        /**
+         * Saves short-term memory on the write-behind queue
+         */
+        public java.util.concurrent.CompletableFuture<Boolean> saveShortTermMemoryLater(ContextEngine engine, String filename) {
+            return saveToFileLater(engine, filename, MemoryTier.SHORT_TERM);
+        }
+
+        /**
+         * Captures the tier now and hands the write to the write-behind queue, so
+         * the caller does not wait on the disk. Blocks only while the queue is full.
+         * @return completes with whether the file was written
+         */
+        public java.util.concurrent.CompletableFuture<Boolean> saveToFileLater(ContextEngine engine, String filename, MemoryTier tier) {
+            PersistedData data = capture(engine, tier);
+            return writeBehind().submit(java.nio.file.Paths.get(basePath, filename).toAbsolutePath().toString(),
+                () -> writeData(filename, data));
+        }
+
+        /**
+         * Waits until every save handed to the write-behind queue so far is on disk
+         */
+        public void flushSaves() {
+            writeBehind().flush();
+        }
+
+        /**
+         * Uses the given queue for saveToFileLater instead of the shared one
+         */
+        public void setWriteBehindQueue(WriteBehindQueue writeBehindQueue) {
+            this.writeBehindQueue = writeBehindQueue;
+        }
+
+        private WriteBehindQueue writeBehind() {
+            WriteBehindQueue queue = writeBehindQueue;
+            return queue != null ? queue : WriteBehindQueue.getShared();
+        }
+
+        /**
+         * Copies a tier, the threads and the open questions out of the engine into
+         * a PersistedData that later changes to the engine do not affect
+         */
+        PersistedData capture(ContextEngine engine, MemoryTier tier) {
+            PersistedData data = new PersistedData();
+            data.setTimestamp(System.currentTimeMillis());
+
+            // Serialize entities for the tier
+            List<PersistedEntity> persistedEntities = new ArrayList<>();
+            for (ReferenceEntity entity : engine.getEntitiesByTier(tier)) {
+                persistedEntities.add(serializeEntity(entity));
+            }
+            data.setEntities(persistedEntities);
+
+            // Serialize active threads for LONG_TERM, or all for SHORT_TERM
+            List<PersistedThread> persistedThreads = new ArrayList<>();
+            List<ConversationThread> threadsToSave = tier == MemoryTier.LONG_TERM
+                ? engine.getActiveThreads()
+                : engine.getAllThreads();
+            for (ConversationThread thread : threadsToSave) {
+                persistedThreads.add(serializeThread(thread));
+            }
+            data.setThreads(persistedThreads);
+
+            // Serialize open questions
+            List<PersistedQuestion> persistedQuestions = new ArrayList<>();
+            for (OpenQuestion question : engine.getOpenQuestions()) {
+                persistedQuestions.add(serializeQuestion(question));
+            }
+            data.setQuestions(persistedQuestions);
+            return data;
+        }
+
+        private void writeData(String filename, PersistedData data) throws java.io.IOException {
+            java.nio.file.Path path = java.nio.file.Paths.get(basePath + "/" + filename);
+            if (binarySnapshots) {
+                ContextSnapshot.write(path, data);
+            } else {
+                java.nio.file.Files.write(path, serializeToString(data).getBytes());
+            }
+        }
+
         /**
          * Simple serialization to string (basic format)
          */
@@ -1718,20 +3057,26 @@ public class ContextEngine {
             sb.append("TIMESTAMP:").append(data.getTimestamp()).append("\n");
             sb.append("ENTITIES:\n");
             for (PersistedEntity entity : data.getEntities()) {
-                sb.append("  ENTITY|").append(entity.getEntityId())
-                  .append("|").append(entity.getName())
-                  .append("|").append(entity.getType())
-                  .append("|").append(entity.getMemoryTier())
-                  .append("|").append(entity.getCreatedAt()).append("\n");
+                appendEntityLine(sb, entity.getEntityId(), entity.getName(), entity.getType(),
+                    entity.getMemoryTier(), entity.getCreatedAt());
             }
             sb.append("THREADS:\n");
             for (PersistedThread thread : data.getThreads()) {
                 sb.append("  THREAD|").append(thread.getThreadId())
                   .append("|").append(thread.getTopic())
-                  .append("|").append(thread.getCreatedAt()).append("\n");
+                  .append("|").append(thread.getCreatedAt())
+                  .append("|").append(thread.getCompactedTurns()).append("\n");
+                for (int s = 0; s < thread.getSummarySentences().size(); s++) {
+                    sb.append("    SUMMARY|").append(thread.getSummaryScores().get(s))
+                      .append("|").append(escapeField(thread.getSummarySentences().get(s))).append("\n");
+                }
+                for (Map.Entry<String, Integer> keyword : thread.getCompactedKeywords().entrySet()) {
+                    sb.append("    KEYWORD|").append(keyword.getKey())
+                      .append("|").append(keyword.getValue()).append("\n");
+                }
                 for (PersistedTurn turn : thread.getMessages()) {
-                    sb.append("    TURN|").append(turn.getSender())
-                      .append("|").append(turn.getContent().replace("\n", "\\n"))
+                    sb.append("    TURN|").append(escapeField(turn.getSender()))
+                      .append("|").append(escapeField(turn.getContent()))
                       .append("|").append(turn.getTimestamp()).append("\n");
                 }
             }
@@ -1770,20 +3115,17 @@ public class ContextEngine {
                     return false;
                 }
 
-                String content = new String(java.nio.file.Files.readAllBytes(path));
-                PersistedData data = deserializeFromString(content);
+                PersistedData data = readFile(filename);
 
                 // Load entities
                 for (PersistedEntity pe : data.getEntities()) {
-                    ReferenceEntity entity = deserializeEntity(pe);
-                    engine.entities.put(entity.getEntityId(), entity);
-                    engine.tieredEntities.get(MemoryTier.valueOf(pe.getMemoryTier())).add(entity.getEntityId());
+                    engine.restoreEntity(deserializeEntity(pe));
                 }
 
                 // Load threads
                 for (PersistedThread pt : data.getThreads()) {
                     ConversationThread thread = deserializeThread(pt);
-                    engine.conversationThreads.add(thread);
+                    engine.addThread(thread);
                 }
 
                 // Load questions
@@ -1799,6 +3141,17 @@ public class ContextEngine {
             }
         }
 
+        /**
+         * Reads a saved memory file in either the binary snapshot or the text format
+         */
+        public PersistedData readFile(String filename) throws java.io.IOException {
+            java.nio.file.Path path = java.nio.file.Paths.get(basePath + "/" + filename);
+            if (ContextSnapshot.isSnapshot(path)) {
+                return ContextSnapshot.read(path);
+            }
+            return deserializeFromString(new String(java.nio.file.Files.readAllBytes(path)));
+        }
+
         /**
          * Simple deserialization from string
          */
@@ -1827,9 +3180,9 @@ public class ContextEngine {
                     while (i < lines.length && lines[i].startsWith("  ENTITY|")) {
                         String[] parts = lines[i].split("\\|");
                         PersistedEntity pe = new PersistedEntity();
-                        pe.setEntityId(parts[1]);
-                        pe.setName(parts[2]);
-                        pe.setType(parts[3]);
+                        pe.setEntityId(unescapeField(parts[1]));
+                        pe.setName(unescapeField(parts[2]));
+                        pe.setType(unescapeField(parts[3]));
                         pe.setMemoryTier(parts[4]);
                         pe.setCreatedAt(Long.parseLong(parts[5]));
                         entities.add(pe);
@@ -1843,14 +3196,29 @@ public class ContextEngine {
                         pt.setThreadId(parts[1]);
                         pt.setTopic(parts[2]);
                         pt.setCreatedAt(Long.parseLong(parts[3]));
+                        if (parts.length > 4) {
+                            pt.setCompactedTurns(Integer.parseInt(parts[4]));
+                        }
                         i++;
 
+                        while (i < lines.length && lines[i].startsWith("    SUMMARY|")) {
+                            String[] summaryParts = lines[i].split("\\|", 3);
+                            pt.getSummaryScores().add(Double.parseDouble(summaryParts[1]));
+                            pt.getSummarySentences().add(unescapeField(summaryParts[2]));
+                            i++;
+                        }
+                        while (i < lines.length && lines[i].startsWith("    KEYWORD|")) {
+                            String[] keywordParts = lines[i].split("\\|");
+                            pt.getCompactedKeywords().put(keywordParts[1], Integer.parseInt(keywordParts[2]));
+                            i++;
+                        }
+
                         List<PersistedTurn> turns = new ArrayList<>();
                         while (i < lines.length && lines[i].startsWith("    TURN|")) {
                             String[] turnParts = lines[i].split("\\|");
                             PersistedTurn ptTurn = new PersistedTurn();
-                            ptTurn.setSender(turnParts[1]);
-                            ptTurn.setContent(turnParts[2].replace("\\n", "\n"));
+                            ptTurn.setSender(unescapeField(turnParts[1]));
+                            ptTurn.setContent(unescapeField(turnParts[2]));
                             ptTurn.setTimestamp(Long.parseLong(turnParts[3]));
                             turns.add(ptTurn);
                             i++;
@@ -1883,16 +3251,133 @@ public class ContextEngine {
         }
 
         /**
-         * Auto-save short-term memory periodically
+         * Expiry handler that keeps frequently used entities by moving them to the
+         * next longer-lived tier and appends the rest to an archive file, which
+         * loadFromFile reads like any saved memory, before they are dropped. The
+         * append runs on the write-behind queue, not on the expiry thread.
          */
-        public void autoSaveShortTerm(ContextEngine engine, String filename, long intervalMs) {
-            java.util.Timer timer = new java.util.Timer();
-            timer.schedule(new java.util.TimerTask() {
-                @Override
-                public void run() {
-                    saveShortTermMemory(engine, filename);
+        public ExpiryHandler archivingExpiryHandler(String filename) {
+            return (engine, entity, overCapacity) -> {
+                MemoryTier next = switch (entity.getMemoryTier()) {
+                    case WORKING -> MemoryTier.SHORT_TERM;
+                    case SHORT_TERM -> MemoryTier.LONG_TERM;
+                    default -> null;
+                };
+                if (next != null && entity.getAccessCount() >= 3) {
+                    return next;
+                }
+                archiveEntity(entity, filename);
+                return null;
+            };
+        }
+
+        /**
+         * Buffers the entity's archive line and queues one append for the file;
+         * lines archived before that append runs go out with it
+         */
+        private void archiveEntity(ReferenceEntity entity, String filename) {
+            StringBuilder line = new StringBuilder();
+            appendEntityLine(line, entity.getEntityId(), entity.getName(), entity.getType(),
+                entity.getMemoryTier().name(), entity.getCreatedAt());
+            boolean queued;
+            synchronized (archiveBuffers) {
+                StringBuilder buffer = archiveBuffers.get(filename);
+                queued = buffer != null;
+                if (buffer == null) {
+                    buffer = new StringBuilder();
+                    archiveBuffers.put(filename, buffer);
+                }
+                buffer.append(line);
+            }
+            if (!queued) {
+                try {
+                    writeBehind().submit("archive:" + java.nio.file.Paths.get(basePath, filename).toAbsolutePath(),
+                        () -> appendArchive(filename));
+                } catch (IllegalStateException e) {
+                    synchronized (archiveBuffers) {
+                        archiveBuffers.remove(filename);
+                    }
+                    Logger.getInstance().warn("PersistenceManager", "Could not archive entity: " + e.getMessage());
+                }
+            }
+        }
+
+        private void appendArchive(String filename) throws java.io.IOException {
+            String lines;
+            synchronized (archiveBuffers) {
+                StringBuilder buffer = archiveBuffers.remove(filename);
+                if (buffer == null) {
+                    return;
                 }
-            }, intervalMs, intervalMs);
+                lines = buffer.toString();
+            }
+            java.nio.file.Path path = java.nio.file.Paths.get(basePath + "/" + filename);
+            StringBuilder sb = new StringBuilder();
+            if (!java.nio.file.Files.exists(path)) {
+                java.nio.file.Files.createDirectories(path.toAbsolutePath().getParent());
+                sb.append("VERSION:1.0\n");
+                sb.append("TIMESTAMP:").append(System.currentTimeMillis()).append("\n");
+                sb.append("ENTITIES:\n");
+            }
+            sb.append(lines);
+            java.nio.file.Files.write(path, sb.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
+        }
+
+        private static void appendEntityLine(StringBuilder sb, String entityId, String name, String type,
+                                             String tier, long createdAt) {
+            sb.append("  ENTITY|").append(escapeField(entityId))
+              .append("|").append(escapeField(name))
+              .append("|").append(escapeField(type))
+              .append("|").append(tier)
+              .append("|").append(createdAt).append("\n");
+        }
+
+        /**
+         * Escapes a text-format field so it holds no raw '|' or line break:
+         * backslash becomes \\, '|' becomes \p and a newline becomes \n
+         */
+        static String escapeField(String value) {
+            if (value == null) {
+                return "";
+            }
+            StringBuilder sb = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\' -> sb.append("\\\\");
+                    case '|' -> sb.append("\\p");
+                    case '\n' -> sb.append("\\n");
+                    default -> sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        static String unescapeField(String value) {
+            if (value.indexOf('\\') < 0) {
+                return value;
+            }
+            StringBuilder sb = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' && i + 1 < value.length()) {
+                    char next = value.charAt(++i);
+                    sb.append(next == 'p' ? '|' : next == 'n' ? '\n' : next);
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Auto-saves short-term memory about every intervalMs on the shared
+         * AutosaveScheduler, skipping ticks where the engine has not changed
+         * @return the registration; cancel it to stop saving
+         */
+        public AutosaveScheduler.Registration autoSaveShortTerm(ContextEngine engine, String filename, long intervalMs) {
+            return AutosaveScheduler.getShared().register(engine, () -> saveShortTermMemory(engine, filename), intervalMs);
         }
 
         /**
@@ -1963,6 +3448,21 @@ public class ContextEngine {
         return persistenceManager.saveShortTermMemory(this, filename);
     }
 
+    /**
+     * Save short-term memory to specified file on the write-behind queue,
+     * returning as soon as the state is captured
+     */
+    public java.util.concurrent.CompletableFuture<Boolean> saveShortTermMemoryLater(String filename) {
+        return persistenceManager.saveShortTermMemoryLater(this, filename);
+    }
+
+    /**
+     * Wait until every save queued by this engine's persistence manager is written
+     */
+    public void flushSaves() {
+        persistenceManager.flushSaves();
+    }
+
     /**
      * Save long-term memory to default file
      */
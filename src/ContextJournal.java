@@ -0,0 +1,714 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Context Journal for VirtualXander
+ * Journaled persistence for one session's ContextEngine. Every turn, entity
+ * change and question update is appended to the session's log as a small
+ * checksummed record instead of rewriting a full snapshot, and a background
+ * compactor folds the log into a ContextSnapshot so recovery stays short.
+ *
+ * Appends only buffer the record. A shared daemon thread commits each
+ * journal's buffered records every context.journal_commit_interval_ms with one
+ * write and one fsync (group commit); sync() commits on the caller's thread.
+ *
+ * Entity records carry the entity's attributes as they are at that change.
+ * Attributes set through ContextEngine.setEntityAttribute are journaled at
+ * once; ones set on the entity object directly are only picked up by its next
+ * journaled change and are lost by recovery until then.
+ *
+ * A session is held by one journal at a time: open() takes an exclusive lock
+ * on <session>.lock and fails while another journal, in this JVM or another
+ * process, holds the session.
+ *
+ * Files are <session>.<generation>.journal and <session>.<generation>.snapshot.
+ * Snapshot g holds everything up to the start of log g. Compaction switches
+ * appends to a new log, folds the base snapshot and every log from its
+ * generation up to the new one into a snapshot of the new log's generation and
+ * deletes what it folded, so a crash at any point leaves a snapshot plus the
+ * logs after it. Recovery reads the newest snapshot, replays the logs from its
+ * generation on and truncates a torn record at the end of the last log. It can
+ * leave several live logs (after a crash mid-compaction, or when an old-format
+ * log is followed by a new one); the next compaction folds them all.
+ *
+ * Log layout: int magic, int format version, then records of
+ * int payload length, payload, int CRC32 of the payload.
+ */
+public class ContextJournal implements ContextEngine.ChangeListener, Closeable {
+
+    public static final int MAGIC = 0x56584A4C; // "VXJL"
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int HEADER_BYTES = 8;
+    private static final byte RECORD_TURN = 1;
+    private static final byte RECORD_ENTITY = 2;
+    private static final byte RECORD_ENTITY_REMOVED = 3;
+    private static final byte RECORD_QUESTION = 4;
+    private static final byte RECORD_CLEAR = 5;
+
+    private static final byte TAG_STRING = 0;
+    private static final byte TAG_LONG = 1;
+    private static final byte TAG_DOUBLE = 2;
+    private static final byte TAG_BOOLEAN = 3;
+
+    private static final Object SCHEDULER_LOCK = new Object();
+    private static ScheduledExecutorService scheduler;
+
+    private final Path directory;
+    private final String sessionId;
+    private final Pattern fileName;
+    private final ContextEngine engine;
+    private final int retainedTurns;
+    private final long compactMinBytes;
+
+    // Encoded records waiting for the next commit; guarded by this
+    private ByteArrayOutputStream pending;
+    private ByteArrayOutputStream committing;
+    private final ByteArrayOutputStream recordBytes;
+    private final DataOutputStream record;
+    private final CRC32 crc;
+    private long appendedRecords;
+    private long pendingRecords;
+
+    // Log state; guarded by commitLock
+    private final Object commitLock = new Object();
+    private FileChannel log;
+    private long generation;
+    private long logBytes;
+    private long committedRecords;
+    private long commits;
+
+    private final Object compactLock = new Object();
+    // Generation of the snapshot the live logs start from; guarded by compactLock
+    private long baseGeneration;
+    private long compactions;
+    private long recoveredRecords;
+    private long truncatedBytes;
+    private final List<ScheduledFuture<?>> tasks;
+    private FileChannel lockChannel;
+    private FileLock sessionLock;
+    private volatile boolean closed;
+
+    private ContextJournal(Path directory, String sessionId, ContextEngine engine) {
+        Configuration config = Configuration.getInstance();
+        this.directory = directory;
+        this.sessionId = sessionId;
+        this.fileName = Pattern.compile(Pattern.quote(sessionId) + "\\.(\\d+)\\.(journal|snapshot)");
+        this.engine = engine;
+        this.retainedTurns = config.getIntProperty("conversation.thread_retained_turns", 50);
+        this.compactMinBytes = config.getIntProperty("context.journal_compact_min_bytes", 1024 * 1024);
+        this.pending = new ByteArrayOutputStream();
+        this.committing = new ByteArrayOutputStream();
+        this.recordBytes = new ByteArrayOutputStream();
+        this.record = new DataOutputStream(recordBytes);
+        this.crc = new CRC32();
+        this.tasks = new ArrayList<>();
+    }
+
+    /**
+     * Recovers a session's journaled state into an empty engine, then journals
+     * every further change to it and starts group commit and compaction
+     */
+    public static ContextJournal open(Path directory, String sessionId, ContextEngine engine) throws IOException {
+        Files.createDirectories(directory);
+        ContextJournal journal = new ContextJournal(directory, sessionId, engine);
+        journal.lockSession();
+        try {
+            journal.recover();
+        } catch (IOException | RuntimeException e) {
+            journal.unlockSession();
+            throw e;
+        }
+        engine.setChangeListener(journal);
+
+        Configuration config = Configuration.getInstance();
+        long commitInterval = Math.max(1, config.getIntProperty("context.journal_commit_interval_ms", 20));
+        long compactInterval = Math.max(1, config.getIntProperty("context.journal_compact_interval_seconds", 60));
+        ScheduledExecutorService executor = getScheduler();
+        journal.tasks.add(executor.scheduleWithFixedDelay(journal::commitQuietly,
+            commitInterval, commitInterval, TimeUnit.MILLISECONDS));
+        journal.tasks.add(executor.scheduleWithFixedDelay(journal::compactIfLarge,
+            compactInterval, compactInterval, TimeUnit.SECONDS));
+        return journal;
+    }
+
+    private static ScheduledExecutorService getScheduler() {
+        synchronized (SCHEDULER_LOCK) {
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "context-journal");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return scheduler;
+        }
+    }
+
+    private void lockSession() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(sessionId + ".lock"),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            sessionLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            sessionLock = null;
+        }
+        if (sessionLock == null) {
+            lockChannel.close();
+            throw new IOException("Context journal session " + sessionId + " is already open");
+        }
+    }
+
+    private void unlockSession() throws IOException {
+        if (lockChannel != null) {
+            // Closing the channel releases the lock
+            lockChannel.close();
+            lockChannel = null;
+            sessionLock = null;
+        }
+    }
+
+    // ==================== APPENDING ====================
+
+    @Override
+    public void onTurn(ContextEngine.ConversationThread thread, ContextEngine.ConversationThread.ConversationTurn turn) {
+        append(out -> {
+            out.writeByte(RECORD_TURN);
+            writeString(out, thread.getThreadId());
+            writeString(out, thread.getTopic());
+            out.writeLong(thread.getCreatedAt());
+            writeString(out, turn.getSender());
+            writeString(out, turn.getContent());
+            out.writeLong(turn.getTimestamp());
+        });
+    }
+
+    @Override
+    public void onEntityChanged(ContextEngine.ReferenceEntity entity) {
+        append(out -> {
+            out.writeByte(RECORD_ENTITY);
+            writeString(out, entity.getEntityId());
+            writeString(out, entity.getName());
+            writeString(out, entity.getType());
+            writeString(out, entity.getMemoryTier().name());
+            out.writeLong(entity.getCreatedAt());
+            Map<String, Object> attributes = entity.getAttributes();
+            out.writeInt(attributes.size());
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                writeString(out, attribute.getKey());
+                writeAttribute(out, attribute.getValue());
+            }
+        });
+    }
+
+    @Override
+    public void onEntityRemoved(ContextEngine.ReferenceEntity entity) {
+        append(out -> {
+            out.writeByte(RECORD_ENTITY_REMOVED);
+            writeString(out, entity.getEntityId());
+        });
+    }
+
+    @Override
+    public void onQuestionChanged(ContextEngine.OpenQuestion question) {
+        append(out -> {
+            out.writeByte(RECORD_QUESTION);
+            writeString(out, question.getQuestionId());
+            writeString(out, question.getQuestionText());
+            writeString(out, question.getAskedBy());
+            writeString(out, question.getContext());
+            writeString(out, question.getStatus().name());
+            out.writeLong(question.getCreatedAt());
+            writeString(out, question.getAnswerText());
+        });
+    }
+
+    @Override
+    public void onCleared() {
+        append(out -> out.writeByte(RECORD_CLEAR));
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private synchronized void append(RecordWriter writer) {
+        if (closed) {
+            return;
+        }
+        try {
+            recordBytes.reset();
+            writer.write(record);
+            record.flush();
+            byte[] payload = recordBytes.toByteArray();
+            crc.reset();
+            crc.update(payload);
+            DataOutputStream out = new DataOutputStream(pending);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeInt((int) crc.getValue());
+            appendedRecords++;
+            pendingRecords++;
+        } catch (IOException e) {
+            // Writes to in-memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes and fsyncs every record appended so far
+     */
+    public void sync() throws IOException {
+        synchronized (commitLock) {
+            long records;
+            synchronized (this) {
+                if (pending.size() == 0) {
+                    return;
+                }
+                ByteArrayOutputStream batch = pending;
+                pending = committing;
+                committing = batch;
+                records = pendingRecords;
+                pendingRecords = 0;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(committing.toByteArray());
+            committing.reset();
+            while (buffer.hasRemaining()) {
+                logBytes += log.write(buffer);
+            }
+            log.force(false);
+            committedRecords += records;
+            commits++;
+        }
+    }
+
+    private void commitQuietly() {
+        try {
+            if (!closed) {
+                sync();
+            }
+        } catch (IOException | RuntimeException e) {
+            Logger.getInstance().warn("ContextJournal", "Commit failed for session " + sessionId + ": " + e.getMessage());
+        }
+    }
+
+    // ==================== COMPACTION ====================
+
+    /**
+     * Folds the log into a new snapshot; appends carry on into the next log meanwhile
+     */
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            if (closed) {
+                return;
+            }
+            long folded;
+            synchronized (commitLock) {
+                sync();
+                folded = generation;
+                log.close();
+                generation++;
+                log = openLog(generation);
+                logBytes = log.size();
+            }
+            State state = new State();
+            Path snapshot = snapshotPath(baseGeneration);
+            if (Files.exists(snapshot)) {
+                state.load(ContextSnapshot.read(snapshot));
+            }
+            for (long logGeneration = baseGeneration; logGeneration <= folded; logGeneration++) {
+                replay(logPath(logGeneration), state, false);
+            }
+            ContextSnapshot.write(snapshotPath(folded + 1), state.toData());
+            Files.deleteIfExists(snapshot);
+            for (long logGeneration = baseGeneration; logGeneration <= folded; logGeneration++) {
+                Files.deleteIfExists(logPath(logGeneration));
+            }
+            baseGeneration = folded + 1;
+            compactions++;
+        }
+    }
+
+    private void compactIfLarge() {
+        try {
+            long size;
+            synchronized (commitLock) {
+                size = logBytes;
+            }
+            if (!closed && size >= compactMinBytes) {
+                compact();
+            }
+        } catch (IOException | RuntimeException e) {
+            Logger.getInstance().warn("ContextJournal", "Compaction failed for session " + sessionId + ": " + e.getMessage());
+        }
+    }
+
+    // ==================== RECOVERY ====================
+
+    private void recover() throws IOException {
+        long snapshotGeneration = -1;
+        TreeSet<Long> logGenerations = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = fileName.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    long fileGeneration = Long.parseLong(matcher.group(1));
+                    if (matcher.group(2).equals("snapshot")) {
+                        snapshotGeneration = Math.max(snapshotGeneration, fileGeneration);
+                    } else {
+                        logGenerations.add(fileGeneration);
+                    }
+                }
+            }
+        }
+
+        State state = new State();
+        if (snapshotGeneration >= 0) {
+            state.load(ContextSnapshot.read(snapshotPath(snapshotGeneration)));
+        }
+        long base = Math.max(snapshotGeneration, 0);
+        // Leftovers of a compaction that finished writing its snapshot
+        for (long stale : logGenerations.headSet(base)) {
+            Files.deleteIfExists(logPath(stale));
+        }
+        for (long stale = 0; stale < snapshotGeneration; stale++) {
+            Files.deleteIfExists(snapshotPath(stale));
+        }
+        baseGeneration = base;
+        SortedSet<Long> live = logGenerations.tailSet(base);
+        for (long logGeneration : live) {
+            replay(logPath(logGeneration), state, logGeneration == live.last());
+        }
+
+        generation = live.isEmpty() ? base : live.last();
+        log = openLog(generation);
+        if (logVersion(log) < FORMAT_VERSION) {
+            // Records go to a log of the current format; the old one is replayed as it is
+            log.close();
+            generation++;
+            log = openLog(generation);
+        }
+        logBytes = log.size();
+        log.position(logBytes);
+        state.applyTo(engine);
+    }
+
+    /**
+     * Applies a log's records to the state, stopping at the first torn or corrupt
+     * record; in the active log that record and everything after it is cut off
+     */
+    private void replay(Path path, State state, boolean truncateTorn) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (in.remaining() < HEADER_BYTES) {
+            // Created but never written: the process died before the header was synced
+            if (truncateTorn && in.remaining() > 0) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(0);
+                }
+            }
+            return;
+        }
+        int version = in.getInt() == MAGIC ? in.getInt() : -1;
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Not a context journal: " + path);
+        }
+        CRC32 check = new CRC32();
+        int end = in.position();
+        while (in.remaining() >= 4) {
+            int length = in.getInt();
+            if (length < 1 || length > in.remaining() - 4) {
+                break;
+            }
+            check.reset();
+            check.update(in.array(), in.position(), length);
+            if ((int) check.getValue() != in.getInt(in.position() + length)) {
+                break;
+            }
+            state.apply(new DataInputStream(new ByteArrayInputStream(in.array(), in.position(), length)), version);
+            in.position(in.position() + length + 4);
+            end = in.position();
+            recoveredRecords++;
+        }
+        if (end < in.limit()) {
+            Logger.getInstance().warn("ContextJournal", "Dropping " + (in.limit() - end)
+                + " bytes of torn records from " + path);
+            if (truncateTorn) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                    channel.force(true);
+                }
+                truncatedBytes += in.limit() - end;
+            }
+        }
+    }
+
+    private FileChannel openLog(long logGeneration) throws IOException {
+        FileChannel channel = FileChannel.open(logPath(logGeneration), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+        return channel;
+    }
+
+    private static int logVersion(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        int read;
+        do {
+            read = channel.read(header, header.position());
+        } while (read > 0 && header.hasRemaining());
+        return header.hasRemaining() ? -1 : header.getInt(4);
+    }
+
+    private Path logPath(long logGeneration) {
+        return directory.resolve(sessionId + "." + logGeneration + ".journal");
+    }
+
+    private Path snapshotPath(long snapshotGeneration) {
+        return directory.resolve(sessionId + "." + snapshotGeneration + ".snapshot");
+    }
+
+    /**
+     * Commits outstanding records, stops the background tasks and detaches from the engine
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        engine.setChangeListener(null);
+        tasks.forEach(task -> task.cancel(false));
+        synchronized (compactLock) {
+            synchronized (commitLock) {
+                try {
+                    sync();
+                } finally {
+                    closed = true;
+                    log.close();
+                    unlockSession();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets journal statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (commitLock) {
+            stats.put("generation", generation);
+            stats.put("logBytes", logBytes);
+            stats.put("committedRecords", committedRecords);
+            stats.put("commits", commits);
+        }
+        synchronized (this) {
+            stats.put("appendedRecords", appendedRecords);
+            stats.put("pendingRecords", pendingRecords);
+        }
+        stats.put("compactions", compactions);
+        stats.put("recoveredRecords", recoveredRecords);
+        stats.put("truncatedBytes", truncatedBytes);
+        return stats;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeAttribute(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TAG_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            out.writeByte(TAG_STRING);
+            writeString(out, value != null ? value.toString() : null);
+        }
+    }
+
+    private static Object readAttribute(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_LONG: return in.readLong();
+            case TAG_DOUBLE: return in.readDouble();
+            case TAG_BOOLEAN: return in.readBoolean();
+            case TAG_STRING: return readString(in);
+            default: throw new IOException("Unknown attribute tag " + tag);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ==================== FOLDED STATE ====================
+
+    /**
+     * Session state rebuilt from a snapshot and log records. Threads keep their
+     * most recent conversation.thread_retained_turns turns, as the engine does,
+     * but turns dropped here are not folded into the thread's summary: a
+     * recovered thread keeps the summary and keyword counts its snapshot had.
+     */
+    private class State {
+        final Map<String, ContextEngine.PersistenceManager.PersistedEntity> entities = new LinkedHashMap<>();
+        final Map<String, ContextEngine.PersistenceManager.PersistedThread> threads = new LinkedHashMap<>();
+        final Map<String, ContextEngine.PersistenceManager.PersistedQuestion> questions = new LinkedHashMap<>();
+
+        void load(ContextEngine.PersistenceManager.PersistedData data) {
+            data.getEntities().forEach(entity -> entities.put(entity.getEntityId(), entity));
+            data.getThreads().forEach(thread -> threads.put(thread.getThreadId(), thread));
+            data.getQuestions().forEach(question -> questions.put(question.getQuestionId(), question));
+        }
+
+        /**
+         * @param version format version of the log the record came from; version 1
+         *        entity records have no attributes
+         */
+        void apply(DataInputStream in, int version) throws IOException {
+            byte type = in.readByte();
+            switch (type) {
+                case RECORD_TURN: {
+                    String threadId = readString(in);
+                    String topic = readString(in);
+                    long createdAt = in.readLong();
+                    ContextEngine.PersistenceManager.PersistedThread thread = threads.computeIfAbsent(threadId, id -> {
+                        ContextEngine.PersistenceManager.PersistedThread created = new ContextEngine.PersistenceManager.PersistedThread();
+                        created.setThreadId(id);
+                        created.setTopic(topic);
+                        created.setCreatedAt(createdAt);
+                        created.setMessages(new ArrayList<>());
+                        return created;
+                    });
+                    ContextEngine.PersistenceManager.PersistedTurn turn = new ContextEngine.PersistenceManager.PersistedTurn();
+                    turn.setSender(readString(in));
+                    turn.setContent(readString(in));
+                    turn.setTimestamp(in.readLong());
+                    List<ContextEngine.PersistenceManager.PersistedTurn> turns = thread.getMessages();
+                    turns.add(turn);
+                    if (turns.size() > retainedTurns) {
+                        turns.remove(0);
+                    }
+                    thread.setLastActivityAt(turn.getTimestamp());
+                    break;
+                }
+                case RECORD_ENTITY: {
+                    ContextEngine.PersistenceManager.PersistedEntity entity = new ContextEngine.PersistenceManager.PersistedEntity();
+                    entity.setEntityId(readString(in));
+                    entity.setName(readString(in));
+                    entity.setType(readString(in));
+                    entity.setMemoryTier(readString(in));
+                    entity.setCreatedAt(in.readLong());
+                    if (version >= 2) {
+                        int attributes = in.readInt();
+                        for (int a = 0; a < attributes; a++) {
+                            entity.getAttributes().put(readString(in), readAttribute(in));
+                        }
+                    }
+                    entities.put(entity.getEntityId(), entity);
+                    break;
+                }
+                case RECORD_ENTITY_REMOVED:
+                    entities.remove(readString(in));
+                    break;
+                case RECORD_QUESTION: {
+                    ContextEngine.PersistenceManager.PersistedQuestion question = new ContextEngine.PersistenceManager.PersistedQuestion();
+                    question.setQuestionId(readString(in));
+                    question.setQuestionText(readString(in));
+                    question.setAskedBy(readString(in));
+                    question.setContext(readString(in));
+                    question.setStatus(readString(in));
+                    question.setCreatedAt(in.readLong());
+                    question.setAnswerText(readString(in));
+                    questions.put(question.getQuestionId(), question);
+                    break;
+                }
+                case RECORD_CLEAR:
+                    entities.clear();
+                    threads.clear();
+                    questions.clear();
+                    break;
+                default:
+                    throw new IOException("Unknown context journal record type " + type);
+            }
+        }
+
+        ContextEngine.PersistenceManager.PersistedData toData() {
+            ContextEngine.PersistenceManager.PersistedData data = new ContextEngine.PersistenceManager.PersistedData();
+            data.setEntities(new ArrayList<>(entities.values()));
+            data.setThreads(new ArrayList<>(threads.values()));
+            data.setQuestions(new ArrayList<>(questions.values()));
+            return data;
+        }
+
+        void applyTo(ContextEngine target) {
+            for (ContextEngine.PersistenceManager.PersistedEntity entity : entities.values()) {
+                ContextEngine.ReferenceEntity restored = new ContextEngine.ReferenceEntity(entity.getEntityId(),
+                    entity.getName(), entity.getType(), ContextEngine.MemoryTier.valueOf(entity.getMemoryTier()),
+                    entity.getCreatedAt());
+                entity.getAttributes().forEach(restored::setAttribute);
+                target.restoreEntity(restored);
+            }
+            ContextEngine.ConversationThread latest = null;
+            long latestActivity = Long.MIN_VALUE;
+            for (ContextEngine.PersistenceManager.PersistedThread thread : threads.values()) {
+                ContextEngine.ConversationThread restored = new ContextEngine.ConversationThread(thread.getTopic());
+                restored.restoreIdentity(thread.getThreadId(), thread.getCreatedAt());
+                ContextEngine.PersistenceManager.restoreCompacted(restored, thread);
+                for (ContextEngine.PersistenceManager.PersistedTurn turn : thread.getMessages()) {
+                    restored.addMessage(turn.getSender(), turn.getContent());
+                }
+                target.restoreThread(restored);
+                if (thread.getLastActivityAt() >= latestActivity) {
+                    latest = restored;
+                    latestActivity = thread.getLastActivityAt();
+                }
+            }
+            if (latest != null) {
+                target.setCurrentThread(latest);
+            }
+            for (ContextEngine.PersistenceManager.PersistedQuestion question : questions.values()) {
+                ContextEngine.OpenQuestion restored = new ContextEngine.OpenQuestion(
+                    question.getQuestionText(), question.getAskedBy(), question.getContext());
+                restored.restoreState(question.getQuestionId(), ContextEngine.QuestionStatus.valueOf(question.getStatus()),
+                    question.getCreatedAt(), question.getAnswerText());
+                target.restoreQuestion(restored);
+            }
+        }
+    }
+}
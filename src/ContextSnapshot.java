@@ -0,0 +1,532 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Context Snapshot for VirtualXander
+ * Binary file format for ContextEngine.PersistenceManager. Written and read in
+ * one streaming pass through a FileChannel and a direct buffer, so loading
+ * never holds the whole file or splits it into lines.
+ *
+ * File layout:
+ *   int magic, int format version, then the body:
+ *   table string data version, varint timestamp
+ *   varint entity count, per entity: string id, string name, table string type,
+ *     table string tier, time createdAt, varint attribute count, per attribute:
+ *     table string key, byte tag, value
+ *   varint thread count, per thread: string id, table string topic, time createdAt,
+ *     time lastActivityAt, varint turn count, per turn: table string sender,
+ *     string content, varint timestamp delta from the previous turn (zigzag),
+ *     then (since version 2) varint compacted turn count, varint summary sentence
+ *     count, per sentence: string sentence, long score bits, varint compacted
+ *     keyword count, per keyword: table string keyword, varint count
+ *   varint question count, per question: string id, string text, table string
+ *     askedBy, string context, table string status, time createdAt, string answer
+ *   int CRC32 of everything before it
+ *
+ * Strings are a varint of length + 1 (0 for null) followed by UTF-8 bytes. Table
+ * strings are 0 for null, 1 followed by a string the first time a value is seen,
+ * or index + 2 of a value seen before, so repeated senders and topics cost a
+ * byte or two. Times are zigzag varint deltas from the snapshot timestamp.
+ */
+public class ContextSnapshot {
+
+    public static final int MAGIC = 0x56584353; // "VXCS"
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte TAG_STRING = 0;
+    private static final byte TAG_LONG = 1;
+    private static final byte TAG_DOUBLE = 2;
+    private static final byte TAG_BOOLEAN = 3;
+
+    private ContextSnapshot() {
+    }
+
+    /**
+     * Checks whether a file starts with the snapshot magic number
+     */
+    public static boolean isSnapshot(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the magic number is complete
+            }
+            return !header.hasRemaining() && header.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes a snapshot next to the target and moves it into place, so a failed
+     * write never leaves a half-written file behind
+     */
+    public static void write(Path path, ContextEngine.PersistenceManager.PersistedData data) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Encoder out = new Encoder(channel);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeBody(out, data);
+            out.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot
+     * @throws IOException if the file is not a snapshot, is truncated or fails its checksum
+     */
+    public static ContextEngine.PersistenceManager.PersistedData read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 12) {
+                throw new IOException("Truncated context snapshot: " + path);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            while (trailer.hasRemaining() && channel.read(trailer, size - 4 + trailer.position()) >= 0) {
+                // positional reads leave the channel at the start of the file
+            }
+            Decoder in = new Decoder(channel, size - 4);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a context snapshot: " + path);
+            }
+            int formatVersion = in.readInt();
+            if (formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+                throw new IOException("Unsupported context snapshot format " + formatVersion + " in " + path);
+            }
+            ContextEngine.PersistenceManager.PersistedData data;
+            try {
+                data = readBody(in, formatVersion);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt context snapshot: " + path, e);
+            }
+            if (!in.isFinished()) {
+                throw new IOException("Unexpected data after context snapshot: " + path);
+            }
+            if ((int) in.getChecksum() != trailer.getInt(0)) {
+                throw new IOException("Checksum mismatch in context snapshot: " + path);
+            }
+            return data;
+        }
+    }
+
+    private static void writeBody(Encoder out, ContextEngine.PersistenceManager.PersistedData data) throws IOException {
+        long base = data.getTimestamp();
+        out.writeTableString(data.getVersion());
+        out.writeVarLong(base);
+
+        out.writeVarLong(data.getEntities().size());
+        for (ContextEngine.PersistenceManager.PersistedEntity entity : data.getEntities()) {
+            out.writeString(entity.getEntityId());
+            out.writeString(entity.getName());
+            out.writeTableString(entity.getType());
+            out.writeTableString(entity.getMemoryTier());
+            out.writeZigZag(entity.getCreatedAt() - base);
+            Map<String, Object> attributes = entity.getAttributes() != null ? entity.getAttributes() : Map.of();
+            out.writeVarLong(attributes.size());
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                out.writeTableString(attribute.getKey());
+                writeAttribute(out, attribute.getValue());
+            }
+        }
+
+        out.writeVarLong(data.getThreads().size());
+        for (ContextEngine.PersistenceManager.PersistedThread thread : data.getThreads()) {
+            out.writeString(thread.getThreadId());
+            out.writeTableString(thread.getTopic());
+            out.writeZigZag(thread.getCreatedAt() - base);
+            out.writeZigZag(thread.getLastActivityAt() - base);
+            List<ContextEngine.PersistenceManager.PersistedTurn> turns =
+                thread.getMessages() != null ? thread.getMessages() : List.of();
+            out.writeVarLong(turns.size());
+            long previous = thread.getCreatedAt();
+            for (ContextEngine.PersistenceManager.PersistedTurn turn : turns) {
+                out.writeTableString(turn.getSender());
+                out.writeString(turn.getContent());
+                out.writeZigZag(turn.getTimestamp() - previous);
+                previous = turn.getTimestamp();
+            }
+            out.writeVarLong(thread.getCompactedTurns());
+            List<String> sentences = thread.getSummarySentences();
+            out.writeVarLong(sentences.size());
+            for (int s = 0; s < sentences.size(); s++) {
+                out.writeString(sentences.get(s));
+                out.writeLong(Double.doubleToLongBits(thread.getSummaryScores().get(s)));
+            }
+            out.writeVarLong(thread.getCompactedKeywords().size());
+            for (Map.Entry<String, Integer> keyword : thread.getCompactedKeywords().entrySet()) {
+                out.writeTableString(keyword.getKey());
+                out.writeVarLong(keyword.getValue());
+            }
+        }
+
+        out.writeVarLong(data.getQuestions().size());
+        for (ContextEngine.PersistenceManager.PersistedQuestion question : data.getQuestions()) {
+            out.writeString(question.getQuestionId());
+            out.writeString(question.getQuestionText());
+            out.writeTableString(question.getAskedBy());
+            out.writeString(question.getContext());
+            out.writeTableString(question.getStatus());
+            out.writeZigZag(question.getCreatedAt() - base);
+            out.writeString(question.getAnswerText());
+        }
+    }
+
+    private static ContextEngine.PersistenceManager.PersistedData readBody(Decoder in, int formatVersion) throws IOException {
+        ContextEngine.PersistenceManager.PersistedData data = new ContextEngine.PersistenceManager.PersistedData();
+        data.setVersion(in.readTableString());
+        long base = in.readVarLong();
+        data.setTimestamp(base);
+
+        long entityCount = in.readVarLong();
+        List<ContextEngine.PersistenceManager.PersistedEntity> entities = new ArrayList<>();
+        for (long i = 0; i < entityCount; i++) {
+            ContextEngine.PersistenceManager.PersistedEntity entity = new ContextEngine.PersistenceManager.PersistedEntity();
+            entity.setEntityId(in.readString());
+            entity.setName(in.readString());
+            entity.setType(in.readTableString());
+            entity.setMemoryTier(in.readTableString());
+            entity.setCreatedAt(base + in.readZigZag());
+            long attributeCount = in.readVarLong();
+            Map<String, Object> attributes = new HashMap<>();
+            for (long a = 0; a < attributeCount; a++) {
+                String key = in.readTableString();
+                attributes.put(key, readAttribute(in));
+            }
+            entity.setAttributes(attributes);
+            entities.add(entity);
+        }
+        data.setEntities(entities);
+
+        long threadCount = in.readVarLong();
+        List<ContextEngine.PersistenceManager.PersistedThread> threads = new ArrayList<>();
+        for (long i = 0; i < threadCount; i++) {
+            ContextEngine.PersistenceManager.PersistedThread thread = new ContextEngine.PersistenceManager.PersistedThread();
+            thread.setThreadId(in.readString());
+            thread.setTopic(in.readTableString());
+            thread.setCreatedAt(base + in.readZigZag());
+            thread.setLastActivityAt(base + in.readZigZag());
+            long turnCount = in.readVarLong();
+            List<ContextEngine.PersistenceManager.PersistedTurn> turns = new ArrayList<>();
+            long previous = thread.getCreatedAt();
+            for (long t = 0; t < turnCount; t++) {
+                ContextEngine.PersistenceManager.PersistedTurn turn = new ContextEngine.PersistenceManager.PersistedTurn();
+                turn.setSender(in.readTableString());
+                turn.setContent(in.readString());
+                previous += in.readZigZag();
+                turn.setTimestamp(previous);
+                turns.add(turn);
+            }
+            thread.setMessages(turns);
+            if (formatVersion >= 2) {
+                thread.setCompactedTurns((int) in.readVarLong());
+                long sentenceCount = in.readVarLong();
+                for (long s = 0; s < sentenceCount; s++) {
+                    thread.getSummarySentences().add(in.readString());
+                    thread.getSummaryScores().add(Double.longBitsToDouble(in.readLong()));
+                }
+                long keywordCount = in.readVarLong();
+                for (long k = 0; k < keywordCount; k++) {
+                    thread.getCompactedKeywords().put(in.readTableString(), (int) in.readVarLong());
+                }
+            }
+            threads.add(thread);
+        }
+        data.setThreads(threads);
+
+        long questionCount = in.readVarLong();
+        List<ContextEngine.PersistenceManager.PersistedQuestion> questions = new ArrayList<>();
+        for (long i = 0; i < questionCount; i++) {
+            ContextEngine.PersistenceManager.PersistedQuestion question = new ContextEngine.PersistenceManager.PersistedQuestion();
+            question.setQuestionId(in.readString());
+            question.setQuestionText(in.readString());
+            question.setAskedBy(in.readTableString());
+            question.setContext(in.readString());
+            question.setStatus(in.readTableString());
+            question.setCreatedAt(base + in.readZigZag());
+            question.setAnswerText(in.readString());
+            questions.add(question);
+        }
+        data.setQuestions(questions);
+        return data;
+    }
+
+    /**
+     * Strings, whole numbers, decimals and booleans keep their type; anything else is stored as its string form
+     */
+    private static void writeAttribute(Encoder out, Object value) throws IOException {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TAG_LONG);
+            out.writeZigZag(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeByte((Boolean) value ? 1 : 0);
+        } else {
+            out.writeByte(TAG_STRING);
+            out.writeString(value != null ? value.toString() : null);
+        }
+    }
+
+    private static Object readAttribute(Decoder in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_LONG: return in.readZigZag();
+            case TAG_DOUBLE: return Double.longBitsToDouble(in.readLong());
+            case TAG_BOOLEAN: return in.readByte() != 0;
+            case TAG_STRING: return in.readString();
+            default: throw new IllegalStateException("Unknown attribute tag " + tag);
+        }
+    }
+
+    // ==================== ENCODING ====================
+
+    /**
+     * Buffered writer of snapshot primitives that checksums everything it writes
+     */
+    static final class Encoder {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer;
+        private final CRC32 crc;
+        private final Map<String, Integer> table;
+
+        Encoder(WritableByteChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.crc = new CRC32();
+            this.table = new HashMap<>();
+        }
+
+        void writeByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void writeZigZag(long value) throws IOException {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        void writeTableString(String value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            Integer index = table.get(value);
+            if (index != null) {
+                writeVarLong(index + 2L);
+            } else {
+                table.put(value, table.size());
+                writeVarLong(1);
+                writeString(value);
+            }
+        }
+
+        /**
+         * Writes out buffered bytes followed by the checksum, which is not itself checksummed
+         */
+        void finish() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer);
+            buffer.rewind();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Buffered reader of snapshot primitives that checksums everything it reads
+     * and never reads past the end of the body
+     */
+    static final class Decoder {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer;
+        private final CRC32 crc;
+        private final List<String> table;
+        private long unread;
+        private byte[] scratch;
+
+        Decoder(ReadableByteChannel channel, long length) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.buffer.flip();
+            this.crc = new CRC32();
+            this.table = new ArrayList<>();
+            this.unread = length;
+            this.scratch = new byte[256];
+        }
+
+        byte readByte() throws IOException {
+            fill(1);
+            return buffer.get();
+        }
+
+        int readInt() throws IOException {
+            fill(4);
+            return buffer.getInt();
+        }
+
+        long readLong() throws IOException {
+            fill(8);
+            return buffer.getLong();
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in context snapshot");
+        }
+
+        long readZigZag() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() throws IOException {
+            long header = readVarLong();
+            if (header == 0) {
+                return null;
+            }
+            long length = header - 1;
+            if (length > unread + buffer.remaining()) {
+                throw new EOFException("String runs past the end of the context snapshot");
+            }
+            if (scratch.length < length) {
+                scratch = new byte[(int) Math.max(length, scratch.length * 2L)];
+            }
+            int offset = 0;
+            while (offset < length) {
+                fill(1);
+                int chunk = (int) Math.min(buffer.remaining(), length - offset);
+                buffer.get(scratch, offset, chunk);
+                offset += chunk;
+            }
+            return new String(scratch, 0, (int) length, StandardCharsets.UTF_8);
+        }
+
+        String readTableString() throws IOException {
+            long header = readVarLong();
+            if (header == 0) {
+                return null;
+            }
+            if (header == 1) {
+                String value = readString();
+                table.add(value);
+                return value;
+            }
+            long index = header - 2;
+            if (index >= table.size()) {
+                throw new IOException("String table reference out of range in context snapshot");
+            }
+            return table.get((int) index);
+        }
+
+        /**
+         * True once every byte of the body has been consumed
+         */
+        boolean isFinished() {
+            return unread == 0 && !buffer.hasRemaining();
+        }
+
+        long getChecksum() {
+            return crc.getValue();
+        }
+
+        private void fill(int needed) throws IOException {
+            if (buffer.remaining() >= needed) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < needed && unread > 0) {
+                int start = buffer.position();
+                buffer.limit((int) Math.min(buffer.capacity(), start + unread));
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+                ByteBuffer chunk = buffer.duplicate();
+                chunk.limit(buffer.position());
+                chunk.position(start);
+                crc.update(chunk);
+                unread -= read;
+            }
+            buffer.flip();
+            if (buffer.remaining() < needed) {
+                throw new EOFException("Truncated context snapshot");
+            }
+        }
+    }
+}
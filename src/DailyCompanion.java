@@ -18,6 +18,8 @@ public class DailyCompanion {
     private Random random;
     private LocalDate lastCheckIn;
     private LocalTime lastMorningGreeting;
+    // Session mood over recent turns, set by VirtualXanderCore
+    private EmotionalTrajectory trajectory;
     
     public DailyCompanion() {
         this.checkIns = new ArrayList<>();
@@ -33,6 +35,13 @@ public class DailyCompanion {
         initializeMorningGreetings();
     }
     
+    /**
+     * Sets the session trajectory used to summarize mood between check-ins
+     */
+    public void setEmotionalTrajectory(EmotionalTrajectory trajectory) {
+        this.trajectory = trajectory;
+    }
+    
     /**
      * Daily check-in structure
      */
@@ -807,6 +816,11 @@ public class DailyCompanion {
         }
         
         if (todayEntries.isEmpty()) {
+            if (trajectory != null && trajectory.getTurnCount() > 0
+                    && trajectory.getDominantEmotion() != EmotionDetector.Emotion.NEUTRAL) {
+                return "No check-ins yet today, but from our chat you seem mostly " +
+                       trajectory.getDominantEmotion().getName() + describeTrend() + ". How are you feeling right now?";
+            }
             return "No mood entries recorded today. How are you feeling right now?";
         }
         
@@ -818,7 +832,17 @@ public class DailyCompanion {
         
         String dominant = Collections.max(moodCounts.entrySet(), Map.Entry.comparingByValue()).getKey();
         
-        return "Today you've been mostly feeling " + dominant + ". You've had " + todayEntries.size() + " check-in(s) today.";
+        return "Today you've been mostly feeling " + dominant + ". You've had " + todayEntries.size() + " check-in(s) today." +
+               (trajectory != null && trajectory.getTrend() != EmotionalTrajectory.Trend.STEADY
+                   ? " Right now things seem to be " + trajectory.getTrend().getName() + "." : "");
+    }
+    
+    /**
+     * Trend clause for mood summaries, e.g. " and things seem to be improving"
+     */
+    private String describeTrend() {
+        EmotionalTrajectory.Trend trend = trajectory.getTrend();
+        return trend == EmotionalTrajectory.Trend.STEADY ? "" : " and things seem to be " + trend.getName();
     }
     
     // ==================== Energy Assessments ====================
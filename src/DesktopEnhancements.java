@@ -540,6 +540,11 @@ public class DesktopEnhancements {
         minimizeToTrayOnClose = prefs.getBoolean(PREF_MINIMIZE_TRAY, true);
         globalHotkeysEnabled = prefs.getBoolean(PREF_GLOBAL_HOTKEYS, true);
         
+        // No window to restore in CLI mode
+        if (mainFrame == null) {
+            return;
+        }
+        
         // Restore window position and size
         int x = prefs.getInt(PREF_WINDOW_X, -1);
         int y = prefs.getInt(PREF_WINDOW_Y, -1);
@@ -7,19 +7,53 @@ import java.util.regex.*;
  */
 public class EmotionDetector {
     
+    private static final Emotion[] EMOTIONS = Emotion.values();
+    
     private Map<Emotion, List<Pattern>> emotionPatterns;
     private Map<String, Emotion> keywordEmotions;
     private Map<Emotion, List<String>> emotionResponses;
     private Random random;
+    // Skips patterns whose required keywords are absent from the input; indexed
+    // in emotionPatterns iteration order
+    private KeywordPrefilter prefilter;
+    // Phrase trie used instead of the regexes when emotion.scoring_mode is "lexicon"
+    private EmotionLexicon lexicon;
+    private boolean lexiconScoring;
     
     public EmotionDetector() {
-        this.emotionPatterns = new HashMap<>();
+        // Ordinal order, so equal scores resolve to the earlier emotion
+        this.emotionPatterns = new EnumMap<>(Emotion.class);
         this.keywordEmotions = new HashMap<>();
         this.emotionResponses = new HashMap<>();
         this.random = new Random();
         initializeEmotionPatterns();
         initializeKeywordMappings();
         initializeEmotionResponses();
+        buildPrefilter();
+        this.lexicon = new EmotionLexicon(emotionPatterns, keywordEmotions);
+        this.lexiconScoring = "lexicon".equalsIgnoreCase(
+            Configuration.getInstance().getProperty("emotion.scoring_mode", "patterns"));
+    }
+    
+    /**
+     * Switches between regex pattern scoring and single-pass lexicon scoring
+     */
+    public void setLexiconScoring(boolean lexiconScoring) {
+        this.lexiconScoring = lexiconScoring;
+    }
+    
+    public boolean isLexiconScoring() {
+        return lexiconScoring;
+    }
+    
+    private void buildPrefilter() {
+        List<String> regexes = new ArrayList<>();
+        for (List<Pattern> patterns : emotionPatterns.values()) {
+            for (Pattern pattern : patterns) {
+                regexes.add(pattern.pattern());
+            }
+        }
+        prefilter = new KeywordPrefilter(regexes, Pattern.CASE_INSENSITIVE);
     }
     
     /**
@@ -123,7 +157,7 @@ public class EmotionDetector {
             this.isPositive = isPositiveEmotion(primaryEmotion);
         }
         
-        private static boolean isNegativeEmotion(Emotion emotion) {
+        static boolean isNegativeEmotion(Emotion emotion) {
             return emotion == Emotion.SAD || emotion == Emotion.STRESSED ||
                    emotion == Emotion.ANXIOUS || emotion == Emotion.LONELY ||
                    emotion == Emotion.ANGRY || emotion == Emotion.OVERWHELMED ||
@@ -138,7 +172,7 @@ public class EmotionDetector {
                    emotion == Emotion.VULNERABLE;
         }
         
-        private static boolean isPositiveEmotion(Emotion emotion) {
+        static boolean isPositiveEmotion(Emotion emotion) {
             return emotion == Emotion.HAPPY || emotion == Emotion.EXCITED ||
                    emotion == Emotion.MOTIVATED || emotion == Emotion.GRATEFUL ||
                    emotion == Emotion.CONFIDENT || emotion == Emotion.RELAXED ||
@@ -821,15 +855,31 @@ public class EmotionDetector {
             return new EmotionResult(Emotion.NEUTRAL, 1.0, new HashMap<>());
         }
         
-        String normalizedInput = input.toLowerCase().trim();
-        Map<Emotion, Double> emotionScores = new HashMap<>();
+        if (lexiconScoring) {
+            return resultFromScores(lexicon.score(input));
+        }
+        return detectEmotionWithPatterns(input.toLowerCase().trim());
+    }
+    
+    /**
+     * Pattern mode: evaluates the candidate regexes, then looks up each word in the keyword map;
+     * ties go to the earlier emotion
+     */
+    private EmotionResult detectEmotionWithPatterns(String normalizedInput) {
+        Map<Emotion, Double> emotionScores = new EnumMap<>(Emotion.class);
+        boolean[] candidates = new boolean[prefilter.getPatternCount()];
+        prefilter.select(normalizedInput, candidates);
         
         // Score each emotion based on pattern matches
+        int patternIndex = 0;
         for (Map.Entry<Emotion, List<Pattern>> entry : emotionPatterns.entrySet()) {
             Emotion emotion = entry.getKey();
             double score = 0;
             
             for (Pattern pattern : entry.getValue()) {
+                if (!candidates[patternIndex++]) {
+                    continue;
+                }
                 Matcher matcher = pattern.matcher(normalizedInput);
                 if (matcher.find()) {
                     // Higher score for exact matches
@@ -863,7 +913,7 @@ public class EmotionDetector {
         // Normalize scores to confidence values
         if (!emotionScores.isEmpty()) {
             double maxScore = emotionScores.values().stream().mapToDouble(Double::doubleValue).max().orElse(1.0);
-            Map<Emotion, Double> normalizedScores = new HashMap<>();
+            Map<Emotion, Double> normalizedScores = new EnumMap<>(Emotion.class);
             
             for (Map.Entry<Emotion, Double> entry : emotionScores.entrySet()) {
                 normalizedScores.put(entry.getKey(), entry.getValue() / maxScore);
@@ -882,6 +932,47 @@ public class EmotionDetector {
         return new EmotionResult(Emotion.NEUTRAL, 1.0, new HashMap<>());
     }
     
+    /**
+     * Lexicon mode: normalizes per-ordinal scores the same way as the pattern mode;
+     * ties go to the earlier emotion
+     */
+    private EmotionResult resultFromScores(double[] scores) {
+        int primary = -1;
+        for (int e = 0; e < scores.length; e++) {
+            if (scores[e] > 0 && (primary < 0 || scores[e] > scores[primary])) {
+                primary = e;
+            }
+        }
+        if (primary < 0) {
+            return new EmotionResult(Emotion.NEUTRAL, 1.0, new HashMap<>());
+        }
+        Map<Emotion, Double> normalizedScores = new HashMap<>();
+        for (int e = 0; e < scores.length; e++) {
+            if (scores[e] > 0) {
+                normalizedScores.put(EMOTIONS[e], scores[e] / scores[primary]);
+            }
+        }
+        return new EmotionResult(EMOTIONS[primary], 1.0, normalizedScores);
+    }
+    
+    /**
+     * Gets keyword prefilter statistics, including candidate patterns evaluated per message
+     */
+    public Map<String, Object> getPrefilterStatistics() {
+        return prefilter.getStatistics();
+    }
+    
+    /**
+     * Gets lexicon statistics: patterns expanded into phrases and patterns left as regexes
+     */
+    public Map<String, Object> getLexiconStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("phrasePatterns", lexicon.getPhrasePatternCount());
+        stats.put("fallbackPatterns", lexicon.getFallbackPatternCount());
+        stats.put("active", lexiconScoring);
+        return stats;
+    }
+    
     /**
      * Gets a supportive response based on detected emotion
      * @param emotion The detected emotion
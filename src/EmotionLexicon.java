@@ -0,0 +1,296 @@
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * Emotion Lexicon for VirtualXander
+ * Phrase trie built from EmotionDetector's patterns and keywords. Most emotion
+ * patterns are word-bounded alternations of phrases, so they are expanded into
+ * their phrases; scoring then walks the trie once per word of the input and adds
+ * into an array indexed by Emotion.ordinal(), with no per-message allocation.
+ *
+ * Scores follow the pattern mode: each pattern counts once, at its leftmost
+ * phrase, with 10 if the phrase is the whole input, 5 if it starts or ends the
+ * input and 2 otherwise; each keyword occurrence adds 5. Phrases match whole
+ * words, and words are runs of letters, digits and apostrophes.
+ */
+public class EmotionLexicon {
+
+    private static final int MAX_PHRASES_PER_PATTERN = 256;
+    private static final double KEYWORD_SCORE = 5.0;
+    private static final char WORD_SEPARATOR = ' ';
+
+    private final int emotionCount;
+    private final int[] groupEmotion;
+
+    // Trie over phrases, words joined by WORD_SEPARATOR; per state sorted edge chars and targets
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    // Pattern groups and keyword emotions whose phrase ends at each state
+    private final int[][] terminalGroups;
+    private final int[][] terminalKeywords;
+
+    // Patterns that are not a finite phrase list, still matched with java.util.regex
+    private final Pattern[] fallbackPatterns;
+    private final int[] fallbackEmotion;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * Per-thread scoring state reused across messages
+     */
+    private static class Scratch {
+        final double[] scores;
+        final boolean[] groupSeen;
+
+        Scratch(int emotionCount, int groupCount) {
+            this.scores = new double[emotionCount];
+            this.groupSeen = new boolean[groupCount];
+        }
+    }
+
+    /**
+     * @param patterns the detector's patterns, each compiled with CASE_INSENSITIVE
+     * @param keywords single-word or multi-word keywords
+     */
+    public EmotionLexicon(Map<EmotionDetector.Emotion, List<Pattern>> patterns,
+                          Map<String, EmotionDetector.Emotion> keywords) {
+        this.emotionCount = EmotionDetector.Emotion.values().length;
+
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> groupsAt = new ArrayList<>();
+        List<List<Integer>> keywordsAt = new ArrayList<>();
+        addState(trie, groupsAt, keywordsAt);
+
+        List<Integer> groups = new ArrayList<>();
+        List<Pattern> fallbacks = new ArrayList<>();
+        List<Integer> fallbackEmotions = new ArrayList<>();
+        for (Map.Entry<EmotionDetector.Emotion, List<Pattern>> entry : patterns.entrySet()) {
+            int emotion = entry.getKey().ordinal();
+            for (Pattern pattern : entry.getValue()) {
+                Set<String> phrases = MultiPatternMatcher.exactStrings(pattern.pattern(), pattern.flags(),
+                    MAX_PHRASES_PER_PATTERN);
+                List<String> words = new ArrayList<>();
+                if (phrases != null) {
+                    for (String phrase : phrases) {
+                        String joined = joinWords(phrase);
+                        if (joined.isEmpty()) {
+                            phrases = null;
+                            break;
+                        }
+                        words.add(joined);
+                    }
+                }
+                if (phrases == null) {
+                    fallbacks.add(pattern);
+                    fallbackEmotions.add(emotion);
+                    continue;
+                }
+                int group = groups.size();
+                groups.add(emotion);
+                for (String phrase : words) {
+                    int state = insert(trie, groupsAt, keywordsAt, phrase);
+                    if (!groupsAt.get(state).contains(group)) {
+                        groupsAt.get(state).add(group);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, EmotionDetector.Emotion> keyword : keywords.entrySet()) {
+            String phrase = joinWords(keyword.getKey());
+            if (!phrase.isEmpty()) {
+                keywordsAt.get(insert(trie, groupsAt, keywordsAt, phrase)).add(keyword.getValue().ordinal());
+            }
+        }
+
+        this.groupEmotion = toArray(groups);
+        this.fallbackPatterns = fallbacks.toArray(new Pattern[0]);
+        this.fallbackEmotion = toArray(fallbackEmotions);
+
+        int states = trie.size();
+        this.edgeChars = new char[states][];
+        this.edgeTargets = new int[states][];
+        this.terminalGroups = new int[states][];
+        this.terminalKeywords = new int[states][];
+        for (int s = 0; s < states; s++) {
+            TreeMap<Character, Integer> edges = trie.get(s);
+            edgeChars[s] = new char[edges.size()];
+            edgeTargets[s] = new int[edges.size()];
+            int e = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[s][e] = edge.getKey();
+                edgeTargets[s][e] = edge.getValue();
+                e++;
+            }
+            terminalGroups[s] = toArray(groupsAt.get(s));
+            terminalKeywords[s] = toArray(keywordsAt.get(s));
+        }
+
+        int groupCount = groupEmotion.length;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(emotionCount, groupCount));
+    }
+
+    /**
+     * Scores the input. Case is folded and surrounding whitespace ignored on the fly,
+     * so the input does not need normalizing first.
+     * @return per-emotion scores indexed by Emotion.ordinal(); the array belongs to the
+     *         calling thread and is overwritten by its next call
+     */
+    public double[] score(String input) {
+        Scratch s = scratch.get();
+        Arrays.fill(s.scores, 0.0);
+        Arrays.fill(s.groupSeen, false);
+        // Same bounds as String.trim()
+        int from = 0;
+        int to = input.length();
+        while (from < to && input.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && input.charAt(to - 1) <= ' ') {
+            to--;
+        }
+
+        int position = from;
+        while (position < to) {
+            // Find the next word start
+            while (position < to && !isWordChar(input.charAt(position))) {
+                position++;
+            }
+            if (position >= to) {
+                break;
+            }
+            walk(input, position, from, to, s);
+            // Move past this word
+            while (position < to && isWordChar(input.charAt(position))) {
+                position++;
+            }
+        }
+
+        if (fallbackPatterns.length > 0) {
+            String normalizedInput = input.substring(from, to).toLowerCase();
+            for (int f = 0; f < fallbackPatterns.length; f++) {
+                Matcher matcher = fallbackPatterns[f].matcher(normalizedInput);
+                if (matcher.find()) {
+                    s.scores[fallbackEmotion[f]] += positionScore(matcher.start(), matcher.end(), 0, normalizedInput.length());
+                }
+            }
+        }
+        return s.scores;
+    }
+
+    /**
+     * Follows the trie from the word at start, one word at a time, scoring every
+     * phrase that ends on a word boundary
+     */
+    private void walk(String input, int start, int from, int to, Scratch s) {
+        int state = 0;
+        int position = start;
+        while (true) {
+            // Consume one word
+            while (position < to && isWordChar(input.charAt(position))) {
+                state = step(state, Character.toLowerCase(input.charAt(position)));
+                if (state < 0) {
+                    return;
+                }
+                position++;
+            }
+            for (int group : terminalGroups[state]) {
+                if (!s.groupSeen[group]) {
+                    s.groupSeen[group] = true;
+                    s.scores[groupEmotion[group]] += positionScore(start, position, from, to);
+                }
+            }
+            for (int emotion : terminalKeywords[state]) {
+                s.scores[emotion] += KEYWORD_SCORE;
+            }
+            // Continue into the next word, if any phrase does
+            while (position < to && !isWordChar(input.charAt(position))) {
+                position++;
+            }
+            if (position >= to) {
+                return;
+            }
+            state = step(state, WORD_SEPARATOR);
+            if (state < 0) {
+                return;
+            }
+        }
+    }
+
+    private static double positionScore(int start, int end, int from, int to) {
+        if (start == from && end == to) {
+            return 10;
+        }
+        return start == from || end == to ? 5 : 2;
+    }
+
+    private int step(int state, char c) {
+        int index = Arrays.binarySearch(edgeChars[state], c);
+        return index >= 0 ? edgeTargets[state][index] : -1;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '\'';
+    }
+
+    /**
+     * Lowercases a phrase and joins its words with single separators, e.g.
+     * " Self-assured " becomes "self assured"
+     */
+    private static String joinWords(String phrase) {
+        StringBuilder joined = new StringBuilder();
+        boolean inWord = false;
+        for (int i = 0; i < phrase.length(); i++) {
+            char c = Character.toLowerCase(phrase.charAt(i));
+            if (isWordChar(c)) {
+                if (!inWord && joined.length() > 0) {
+                    joined.append(WORD_SEPARATOR);
+                }
+                joined.append(c);
+                inWord = true;
+            } else {
+                inWord = false;
+            }
+        }
+        return joined.toString();
+    }
+
+    private static int insert(List<TreeMap<Character, Integer>> trie, List<List<Integer>> groupsAt,
+                              List<List<Integer>> keywordsAt, String phrase) {
+        int state = 0;
+        for (int i = 0; i < phrase.length(); i++) {
+            Integer next = trie.get(state).get(phrase.charAt(i));
+            if (next == null) {
+                next = trie.size();
+                addState(trie, groupsAt, keywordsAt);
+                trie.get(state).put(phrase.charAt(i), next);
+            }
+            state = next;
+        }
+        return state;
+    }
+
+    private static void addState(List<TreeMap<Character, Integer>> trie, List<List<Integer>> groupsAt,
+                                 List<List<Integer>> keywordsAt) {
+        trie.add(new TreeMap<>());
+        groupsAt.add(new ArrayList<>());
+        keywordsAt.add(new ArrayList<>());
+    }
+
+    /**
+     * Number of patterns expanded into phrases
+     */
+    public int getPhrasePatternCount() { return groupEmotion.length; }
+
+    /**
+     * Number of patterns that are not phrase lists and still run as regexes
+     */
+    public int getFallbackPatternCount() { return fallbackPatterns.length; }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,199 @@
+import java.util.*;
+
+/**
+ * Emotional Trajectory for VirtualXander
+ * Per-session running state of the user's emotions. Each turn's EmotionResult is
+ * folded into exponentially decayed per-emotion weights in O(#emotions), along with
+ * a smoothed valence (-1 negative to +1 positive), its velocity and its volatility,
+ * so MoodEngine, EmpathyEngine and DailyCompanion can read the session's mood
+ * without rescanning the conversation.
+ *
+ * Decay is per turn: a turn's weight halves every halfLifeTurns turns. Not
+ * thread-safe; each session (VirtualXanderCore) owns its own trajectory.
+ */
+public class EmotionalTrajectory {
+
+    /**
+     * Direction the session's valence is moving in
+     */
+    public enum Trend {
+        IMPROVING("improving"),
+        STEADY("steady"),
+        WORSENING("worsening");
+
+        private final String name;
+
+        Trend(String name) {
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+    }
+
+    private static final EmotionDetector.Emotion[] EMOTIONS = EmotionDetector.Emotion.values();
+    // +1 for positive emotions, -1 for negative ones, 0 otherwise
+    private static final double[] VALENCE = new double[EMOTIONS.length];
+    static {
+        for (EmotionDetector.Emotion emotion : EMOTIONS) {
+            if (EmotionDetector.EmotionResult.isPositiveEmotion(emotion)) {
+                VALENCE[emotion.ordinal()] = 1.0;
+            } else if (EmotionDetector.EmotionResult.isNegativeEmotion(emotion)) {
+                VALENCE[emotion.ordinal()] = -1.0;
+            }
+        }
+    }
+
+    // Velocity beyond which the trend counts as improving or worsening
+    private static final double TREND_THRESHOLD = 0.05;
+
+    private final double halfLifeTurns;
+    private final double decay;
+    private final double[] weights;
+    private int dominant;
+    private double valence;
+    private double velocity;
+    private double variance;
+    private long turns;
+
+    /**
+     * Uses emotion.trajectory_half_life_turns from Configuration
+     */
+    public EmotionalTrajectory() {
+        this(Configuration.getInstance().getIntProperty("emotion.trajectory_half_life_turns", 3));
+    }
+
+    /**
+     * @param halfLifeTurns number of turns after which a turn's contribution has halved
+     */
+    public EmotionalTrajectory(double halfLifeTurns) {
+        this.halfLifeTurns = Math.max(halfLifeTurns, 0.5);
+        this.decay = Math.pow(0.5, 1.0 / this.halfLifeTurns);
+        this.weights = new double[EMOTIONS.length];
+        this.dominant = -1;
+    }
+
+    /**
+     * Folds one turn into the trajectory. Every detected emotion contributes its share
+     * of the turn's scores; a neutral turn only lets the existing weights decay.
+     */
+    public void record(EmotionDetector.EmotionResult result) {
+        Map<EmotionDetector.Emotion, Double> scores = result != null
+            ? result.getAllEmotions() : Collections.emptyMap();
+        double total = 0;
+        for (double score : scores.values()) {
+            total += score;
+        }
+
+        double gain = 1.0 - decay;
+        for (int e = 0; e < weights.length; e++) {
+            weights[e] *= decay;
+        }
+        double observed = 0;
+        if (total > 0) {
+            for (Map.Entry<EmotionDetector.Emotion, Double> entry : scores.entrySet()) {
+                double share = entry.getValue() / total;
+                weights[entry.getKey().ordinal()] += gain * share;
+                observed += VALENCE[entry.getKey().ordinal()] * share;
+            }
+        }
+        dominant = -1;
+        for (int e = 0; e < weights.length; e++) {
+            if (weights[e] > 0 && (dominant < 0 || weights[e] > weights[dominant])) {
+                dominant = e;
+            }
+        }
+
+        // Exponentially weighted mean and variance of the observed valence
+        double difference = observed - valence;
+        double increment = gain * difference;
+        valence += increment;
+        variance = decay * (variance + difference * increment);
+        velocity = turns == 0 ? 0.0 : increment;
+        turns++;
+    }
+
+    /**
+     * Clears the trajectory, e.g. when a new conversation starts
+     */
+    public void reset() {
+        Arrays.fill(weights, 0.0);
+        dominant = -1;
+        valence = 0;
+        velocity = 0;
+        variance = 0;
+        turns = 0;
+    }
+
+    /**
+     * Decayed weight of one emotion; weights of all emotions sum to at most 1
+     */
+    public double getWeight(EmotionDetector.Emotion emotion) {
+        return weights[emotion.ordinal()];
+    }
+
+    /**
+     * Emotion with the largest decayed weight, or NEUTRAL if nothing has been felt yet
+     */
+    public EmotionDetector.Emotion getDominantEmotion() {
+        return dominant >= 0 ? EMOTIONS[dominant] : EmotionDetector.Emotion.NEUTRAL;
+    }
+
+    /**
+     * Current blend of emotions with a weight of at least minWeight, strongest first
+     */
+    public Map<EmotionDetector.Emotion, Double> getBlend(double minWeight) {
+        List<EmotionDetector.Emotion> present = new ArrayList<>();
+        for (int e = 0; e < weights.length; e++) {
+            if (weights[e] > 0 && weights[e] >= minWeight) {
+                present.add(EMOTIONS[e]);
+            }
+        }
+        present.sort((a, b) -> Double.compare(weights[b.ordinal()], weights[a.ordinal()]));
+        Map<EmotionDetector.Emotion, Double> blend = new LinkedHashMap<>();
+        for (EmotionDetector.Emotion emotion : present) {
+            blend.put(emotion, weights[emotion.ordinal()]);
+        }
+        return blend;
+    }
+
+    /**
+     * Smoothed valence, from -1 (entirely negative) to +1 (entirely positive)
+     */
+    public double getValence() { return valence; }
+
+    /**
+     * Change in smoothed valence over the last turn; positive means improving
+     */
+    public double getVelocity() { return velocity; }
+
+    /**
+     * Exponentially weighted standard deviation of the per-turn valence
+     */
+    public double getVolatility() { return Math.sqrt(variance); }
+
+    public Trend getTrend() {
+        if (velocity > TREND_THRESHOLD) {
+            return Trend.IMPROVING;
+        }
+        return velocity < -TREND_THRESHOLD ? Trend.WORSENING : Trend.STEADY;
+    }
+
+    public long getTurnCount() { return turns; }
+
+    public double getHalfLifeTurns() { return halfLifeTurns; }
+
+    /**
+     * Gets trajectory statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("turns", turns);
+        stats.put("halfLifeTurns", halfLifeTurns);
+        stats.put("dominantEmotion", getDominantEmotion().getName());
+        stats.put("valence", valence);
+        stats.put("velocity", velocity);
+        stats.put("volatility", getVolatility());
+        stats.put("trend", getTrend().getName());
+        return stats;
+    }
+}
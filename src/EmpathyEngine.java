@@ -10,6 +10,8 @@ public class EmpathyEngine {
     
     private Random random;
     private EmotionDetector emotionDetector;
+    // Session mood over recent turns; null when the engine is used on single messages
+    private EmotionalTrajectory trajectory;
     private Map<EmotionDetector.Emotion, String> intensityModifiers;
     private Map<EmotionDetector.Emotion, List<String>> emotionReflections;
     private Map<EmotionDetector.Emotion, List<String>> validationResponses;
@@ -27,6 +29,9 @@ public class EmpathyEngine {
     private Map<String, List<String>> physicalSpaceAcknowledgments;
     private Map<String, List<String>> timeAcknowledgments;
     
+    // Trajectory weight a session emotion needs before it is reflected back on a neutral message
+    private static final double CARRIED_EMOTION_MIN_WEIGHT = 0.15;
+    
     public EmpathyEngine() {
         this.random = new Random();
         this.emotionDetector = new EmotionDetector();
@@ -39,6 +44,13 @@ public class EmpathyEngine {
         initializeAllMappings();
     }
     
+    /**
+     * Sets the session trajectory used when a single message shows no emotion
+     */
+    public void setEmotionalTrajectory(EmotionalTrajectory trajectory) {
+        this.trajectory = trajectory;
+    }
+    
     // ==================== INNER CLASSES ====================
     
     public static class EmotionalMirrorResponse {
@@ -1026,9 +1038,17 @@ public class EmpathyEngine {
         
         EmotionDetector.EmotionResult result = emotionDetector.detectEmotion(input);
         EmotionDetector.Emotion emotion = result.getPrimaryEmotion();
+        double confidence = result.getConfidence();
+        
+        // A message without emotional words ("yeah, I guess") carries the session's mood
+        if (result.isNeutral() && trajectory != null
+                && trajectory.getWeight(trajectory.getDominantEmotion()) >= CARRIED_EMOTION_MIN_WEIGHT) {
+            emotion = trajectory.getDominantEmotion();
+            confidence = trajectory.getWeight(emotion);
+        }
         
         response.setPrimaryEmotion(emotion);
-        response.setConfidence(result.getConfidence());
+        response.setConfidence(confidence);
         response.setValid(true);
         
         List<String> reflections = emotionReflections.get(emotion);
@@ -0,0 +1,272 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Expiry Service for VirtualXander
+ * Hierarchical timing wheel shared by every ContextEngine in the JVM. Four
+ * levels of 64 slots cover 64, 64^2, 64^3 and 64^4 ticks; a timeout sits in
+ * the lowest level whose range reaches its deadline and moves down a level each
+ * time the wheel above it turns, so scheduling, cancelling and firing are O(1)
+ * per timeout. Deadlines beyond the top level wait there and are re-placed.
+ *
+ * Tasks run on the service thread, outside the wheel's lock. A task may return
+ * a later deadline instead of finishing, which is how an entity that was used
+ * again since it was scheduled pushes its expiry back without touching the
+ * wheel on every access.
+ */
+public class ExpiryService {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private static final Object SHARED_LOCK = new Object();
+    private static volatile ExpiryService shared;
+
+    /**
+     * Work to do when a deadline passes
+     */
+    public interface Task {
+        /**
+         * @param now current time in milliseconds
+         * @return a later deadline to run again at, or a negative value when done
+         */
+        long expire(long now);
+    }
+
+    /**
+     * A scheduled task; cancel() removes it from the wheel
+     */
+    public static final class Timeout {
+        private final ExpiryService service;
+        private final Task task;
+        private long deadlineTick;
+        private Timeout previous;
+        private Timeout next;
+        private int level = -1;
+        private int slot;
+        private boolean cancelled;
+
+        private Timeout(ExpiryService service, Task task) {
+            this.service = service;
+            this.task = task;
+        }
+
+        public void cancel() {
+            service.cancel(this);
+        }
+
+        public boolean isCancelled() {
+            synchronized (service) {
+                return cancelled;
+            }
+        }
+    }
+
+    private final long tickMillis;
+    private final Timeout[][] slots;
+    private long currentTick;
+    private int pending;
+    private long fired;
+    private long rescheduled;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a wheel that only moves when advance() is called
+     * @param tickMillis resolution of deadlines
+     */
+    public ExpiryService(long tickMillis) {
+        this(tickMillis, System.currentTimeMillis());
+    }
+
+    /**
+     * @param startMillis time the wheel starts at
+     */
+    public ExpiryService(long tickMillis, long startMillis) {
+        this.tickMillis = Math.max(1, tickMillis);
+        this.slots = new Timeout[LEVELS][SLOTS];
+        this.currentTick = startMillis / this.tickMillis;
+    }
+
+    /**
+     * Gets the process-wide service, advancing every context.expiry_tick_ms on a daemon thread
+     */
+    public static ExpiryService getShared() {
+        if (shared == null) {
+            synchronized (SHARED_LOCK) {
+                if (shared == null) {
+                    ExpiryService service = new ExpiryService(
+                        Configuration.getInstance().getIntProperty("context.expiry_tick_ms", 1000));
+                    service.start();
+                    shared = service;
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Advances the wheel with the clock on a daemon thread
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "context-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                advance(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                Logger.getInstance().warn("ExpiryService", "Expiry failed: " + e.getMessage());
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Schedules a task; a deadline already past runs on the next tick
+     */
+    public synchronized Timeout schedule(long deadlineMillis, Task task) {
+        Timeout timeout = new Timeout(this, task);
+        timeout.deadlineTick = ceilTick(deadlineMillis);
+        insert(timeout);
+        return timeout;
+    }
+
+    private synchronized void cancel(Timeout timeout) {
+        timeout.cancelled = true;
+        unlink(timeout);
+    }
+
+    /**
+     * Runs every task whose deadline has passed by now
+     * @return the number of tasks run
+     */
+    public int advance(long now) {
+        List<Timeout> due = new ArrayList<>();
+        synchronized (this) {
+            long target = now / tickMillis;
+            while (currentTick < target) {
+                currentTick++;
+                // Move the timeouts of each wheel that turned down to the levels below
+                for (int level = 1; level < LEVELS; level++) {
+                    if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                        break;
+                    }
+                    int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+                    Timeout timeout = slots[level][slot];
+                    slots[level][slot] = null;
+                    while (timeout != null) {
+                        Timeout next = timeout.next;
+                        timeout.level = -1;
+                        pending--;
+                        insertOrCollect(timeout, due);
+                        timeout = next;
+                    }
+                }
+                int slot = (int) (currentTick & (SLOTS - 1));
+                Timeout timeout = slots[0][slot];
+                slots[0][slot] = null;
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    timeout.level = -1;
+                    pending--;
+                    insertOrCollect(timeout, due);
+                    timeout = next;
+                }
+            }
+        }
+
+        for (Timeout timeout : due) {
+            long next = timeout.task.expire(now);
+            synchronized (this) {
+                fired++;
+                if (next >= 0 && !timeout.cancelled) {
+                    timeout.deadlineTick = ceilTick(next);
+                    insert(timeout);
+                    rescheduled++;
+                }
+            }
+        }
+        return due.size();
+    }
+
+    private void insertOrCollect(Timeout timeout, List<Timeout> due) {
+        if (timeout.deadlineTick <= currentTick) {
+            due.add(timeout);
+        } else {
+            insert(timeout);
+        }
+    }
+
+    private void insert(Timeout timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        long tick = delta <= 0 ? currentTick + 1 : timeout.deadlineTick;
+        if (delta > MAX_DELTA) {
+            tick = currentTick + MAX_DELTA;
+        }
+        long span = Math.max(1, tick - currentTick);
+        int level = 0;
+        while (level < LEVELS - 1 && span >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.previous = null;
+        timeout.next = slots[level][slot];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        slots[level][slot] = timeout;
+        pending++;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.level < 0) {
+            return;
+        }
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.level = -1;
+        pending--;
+    }
+
+    private long ceilTick(long millis) {
+        return Math.floorDiv(millis + tickMillis - 1, tickMillis);
+    }
+
+    public long getTickMillis() { return tickMillis; }
+
+    /**
+     * Gets expiry statistics
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tickMillis", tickMillis);
+        stats.put("pending", pending);
+        stats.put("fired", fired);
+        stats.put("rescheduled", rescheduled);
+        stats.put("running", scheduler != null);
+        return stats;
+    }
+}
@@ -0,0 +1,491 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Intent Classifier for VirtualXander
+ * Multinomial naive Bayes over hashed word unigrams, word bigrams and character
+ * trigrams. It is trained offline from a labeled transcript file (one
+ * "intent<TAB>message" per line) and saved as a compact model holding only the
+ * (feature, intent) counts seen in training. Classifying a message costs one
+ * lookup per feature, however many intents or patterns there are.
+ *
+ * Train with: java IntentClassifier <labeled file> [model path]
+ */
+public class IntentClassifier {
+
+    public static final int MAGIC = 0x56584943; // "VXIC"
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int HASH_BITS = 20;
+    private static final double ALPHA = 0.5;
+    // Character trigrams are many per word, so each counts for less than a word
+    private static final float CHAR_GRAM_WEIGHT = 0.25f;
+
+    private static final int WORD = 1, BIGRAM = 2, CHAR_GRAM = 3;
+
+    private static final Object SHARED_LOCK = new Object();
+    private static volatile IntentClassifier shared;
+    private static volatile boolean sharedLoaded = false;
+
+    private final String[] intents;
+    private final double[] logPrior;
+    // log(alpha / (total weight of the intent + alpha * vocabulary)), the log-likelihood of an unseen feature
+    private final double[] logUnseen;
+    // Sorted features seen in training; feature i owns entries [entryStart[i], entryStart[i + 1])
+    private final int[] featureKeys;
+    private final int[] entryStart;
+    private final short[] entryIntent;
+    // log((count + alpha) / alpha): what the feature adds over an unseen one
+    private final float[] entryBoost;
+
+    /**
+     * One predicted intent
+     */
+    public static class Prediction {
+        private final String intent;
+        private final double confidence;
+
+        public Prediction(String intent, double confidence) {
+            this.intent = intent;
+            this.confidence = confidence;
+        }
+
+        public String getIntent() { return intent; }
+
+        /** Posterior probability, between 0 and 1 */
+        public double getConfidence() { return confidence; }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%.2f)", intent, confidence);
+        }
+    }
+
+    private IntentClassifier(String[] intents, double[] logPrior, double[] logUnseen,
+                             int[] featureKeys, int[] entryStart, short[] entryIntent, float[] entryBoost) {
+        this.intents = intents;
+        this.logPrior = logPrior;
+        this.logUnseen = logUnseen;
+        this.featureKeys = featureKeys;
+        this.entryStart = entryStart;
+        this.entryIntent = entryIntent;
+        this.entryBoost = entryBoost;
+    }
+
+    // ==================== INFERENCE ====================
+
+    /**
+     * Predicts the k most likely intents, best first
+     * @return the predictions, or an empty list if none of the message's features was seen in training
+     */
+    public List<Prediction> predict(String text, int k) {
+        List<Prediction> predictions = new ArrayList<>();
+        if (text == null || k <= 0) {
+            return predictions;
+        }
+        Features features = extract(text);
+        double[] scores = new double[intents.length];
+        double totalWeight = 0;
+        boolean known = false;
+        for (int f = 0; f < features.size; f++) {
+            totalWeight += features.weights[f];
+            int index = Arrays.binarySearch(featureKeys, features.keys[f]);
+            if (index < 0) {
+                continue;
+            }
+            known = true;
+            for (int e = entryStart[index]; e < entryStart[index + 1]; e++) {
+                scores[entryIntent[e]] += features.weights[f] * entryBoost[e];
+            }
+        }
+        if (!known) {
+            return predictions;
+        }
+
+        double max = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < intents.length; c++) {
+            scores[c] += logPrior[c] + totalWeight * logUnseen[c];
+            max = Math.max(max, scores[c]);
+        }
+        double sum = 0;
+        for (int c = 0; c < intents.length; c++) {
+            scores[c] = Math.exp(scores[c] - max);
+            sum += scores[c];
+        }
+
+        boolean[] taken = new boolean[intents.length];
+        for (int r = 0; r < Math.min(k, intents.length); r++) {
+            int best = -1;
+            for (int c = 0; c < intents.length; c++) {
+                if (!taken[c] && (best < 0 || scores[c] > scores[best])) {
+                    best = c;
+                }
+            }
+            taken[best] = true;
+            predictions.add(new Prediction(intents[best], scores[best] / sum));
+        }
+        return predictions;
+    }
+
+    public int getIntentCount() { return intents.length; }
+    public int getFeatureCount() { return featureKeys.length; }
+
+    public List<String> getIntents() {
+        return Collections.unmodifiableList(Arrays.asList(intents));
+    }
+
+    // ==================== FEATURES ====================
+
+    /**
+     * Hashed features of one message with their weights
+     */
+    private static class Features {
+        int[] keys = new int[64];
+        float[] weights = new float[64];
+        int size;
+
+        void add(int key, float weight) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            keys[size] = key;
+            weights[size] = weight;
+            size++;
+        }
+    }
+
+    /**
+     * Lowercases the text, drops apostrophes (so "what's" and "whats" agree) and
+     * splits it into words; '?' and '!' are words of their own
+     */
+    private static Features extract(String text) {
+        char[] chars = new char[text.length()];
+        int[] tokenStart = new int[text.length() + 1];
+        int[] tokenEnd = new int[text.length() + 1];
+        int length = 0;
+        int tokens = 0;
+        boolean inToken = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\'' || c == '\u2019') {
+                continue;
+            }
+            boolean wordChar = Character.isLetterOrDigit(c);
+            if (inToken && !wordChar) {
+                tokenEnd[tokens++] = length;
+                inToken = false;
+            }
+            if (wordChar) {
+                if (!inToken) {
+                    tokenStart[tokens] = length;
+                    inToken = true;
+                }
+                chars[length++] = Character.toLowerCase(c);
+            } else if (c == '?' || c == '!') {
+                tokenStart[tokens] = length;
+                chars[length++] = c;
+                tokenEnd[tokens++] = length;
+            }
+        }
+        if (inToken) {
+            tokenEnd[tokens++] = length;
+        }
+
+        Features features = new Features();
+        for (int t = 0; t < tokens; t++) {
+            features.add(hash(hashStart(WORD), chars, tokenStart[t], tokenEnd[t]), 1f);
+            if (t > 0) {
+                int h = hash(hashStart(BIGRAM), chars, tokenStart[t - 1], tokenEnd[t - 1]);
+                h = mix(h, ' ');
+                features.add(hash(h, chars, tokenStart[t], tokenEnd[t]), 1f);
+            }
+            // Trigrams of the word padded with a boundary mark on both sides
+            int wordLength = tokenEnd[t] - tokenStart[t];
+            if (wordLength > 1) {
+                for (int i = -1; i + 2 <= wordLength; i++) {
+                    int h = hashStart(CHAR_GRAM);
+                    for (int j = i; j < i + 3; j++) {
+                        h = mix(h, j < 0 || j >= wordLength ? ' ' : chars[tokenStart[t] + j]);
+                    }
+                    features.add(finish(h), CHAR_GRAM_WEIGHT);
+                }
+            }
+        }
+        return features;
+    }
+
+    // FNV-1a, seeded per feature kind so a word and a trigram with the same letters differ
+    private static int hashStart(int kind) {
+        return 0x811C9DC5 ^ (kind * 0x9E3779B9);
+    }
+
+    private static int mix(int h, char c) {
+        return (h ^ c) * 16777619;
+    }
+
+    private static int hash(int h, char[] chars, int from, int to) {
+        for (int i = from; i < to; i++) {
+            h = mix(h, chars[i]);
+        }
+        return finish(h);
+    }
+
+    private static int finish(int h) {
+        return (h ^ (h >>> HASH_BITS)) & ((1 << HASH_BITS) - 1);
+    }
+
+    // ==================== TRAINING ====================
+
+    /**
+     * Accumulates labeled examples and builds a classifier
+     */
+    public static class Trainer {
+        private final Map<String, Integer> intentIds = new LinkedHashMap<>();
+        private final List<Integer> examplesPerIntent = new ArrayList<>();
+        private final List<Double> weightPerIntent = new ArrayList<>();
+        private final Map<Integer, Map<Integer, Double>> counts = new HashMap<>();
+        private int examples;
+
+        public Trainer add(String intent, String message) {
+            Integer id = intentIds.get(intent);
+            if (id == null) {
+                id = intentIds.size();
+                intentIds.put(intent, id);
+                examplesPerIntent.add(0);
+                weightPerIntent.add(0.0);
+            }
+            examplesPerIntent.set(id, examplesPerIntent.get(id) + 1);
+            Features features = extract(message);
+            for (int f = 0; f < features.size; f++) {
+                counts.computeIfAbsent(features.keys[f], key -> new HashMap<>())
+                      .merge(id, (double) features.weights[f], Double::sum);
+                weightPerIntent.set(id, weightPerIntent.get(id) + features.weights[f]);
+            }
+            examples++;
+            return this;
+        }
+
+        public int getExampleCount() { return examples; }
+
+        public IntentClassifier build() {
+            int intentCount = intentIds.size();
+            if (intentCount == 0 || intentCount > Short.MAX_VALUE) {
+                throw new IllegalStateException("Cannot train on " + intentCount + " intents");
+            }
+            String[] intents = intentIds.keySet().toArray(new String[0]);
+            int vocabulary = counts.size();
+            double[] logPrior = new double[intentCount];
+            double[] logUnseen = new double[intentCount];
+            for (int c = 0; c < intentCount; c++) {
+                logPrior[c] = Math.log((double) examplesPerIntent.get(c) / examples);
+                logUnseen[c] = Math.log(ALPHA / (weightPerIntent.get(c) + ALPHA * vocabulary));
+            }
+
+            int[] featureKeys = new int[vocabulary];
+            int i = 0;
+            for (int key : counts.keySet()) {
+                featureKeys[i++] = key;
+            }
+            Arrays.sort(featureKeys);
+            int entries = 0;
+            for (Map<Integer, Double> perIntent : counts.values()) {
+                entries += perIntent.size();
+            }
+            int[] entryStart = new int[vocabulary + 1];
+            short[] entryIntent = new short[entries];
+            float[] entryBoost = new float[entries];
+            int e = 0;
+            for (int f = 0; f < vocabulary; f++) {
+                entryStart[f] = e;
+                for (Map.Entry<Integer, Double> count : new TreeMap<>(counts.get(featureKeys[f])).entrySet()) {
+                    entryIntent[e] = (short) (int) count.getKey();
+                    entryBoost[e] = (float) Math.log((count.getValue() + ALPHA) / ALPHA);
+                    e++;
+                }
+            }
+            entryStart[vocabulary] = e;
+            return new IntentClassifier(intents, logPrior, logUnseen, featureKeys, entryStart, entryIntent, entryBoost);
+        }
+    }
+
+    /**
+     * Reads a labeled transcript: one "intent<TAB>message" per line; blank lines
+     * and lines starting with # are skipped
+     * @return {intent, message} pairs
+     * @throws IOException if the file cannot be read or a line has no tab
+     */
+    public static List<String[]> readLabeled(Path path) throws IOException {
+        List<String[]> examples = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            if (tab <= 0) {
+                throw new IOException(path + ":" + lineNumber + ": expected intent<TAB>message");
+            }
+            examples.add(new String[] { line.substring(0, tab).trim(), line.substring(tab + 1).trim() });
+        }
+        return examples;
+    }
+
+    public static IntentClassifier train(List<String[]> examples) {
+        Trainer trainer = new Trainer();
+        for (String[] example : examples) {
+            trainer.add(example[0], example[1]);
+        }
+        return trainer.build();
+    }
+
+    // ==================== MODEL FILE ====================
+
+    /**
+     * Writes the model (big-endian): magic, format version, hash bits, intent count,
+     * per intent name + log prior + unseen log-likelihood, feature count, then per
+     * feature its key and entry count followed by (intent, boost) pairs
+     */
+    public void save(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(HASH_BITS);
+            out.writeInt(intents.length);
+            for (int c = 0; c < intents.length; c++) {
+                out.writeUTF(intents[c]);
+                out.writeDouble(logPrior[c]);
+                out.writeDouble(logUnseen[c]);
+            }
+            out.writeInt(featureKeys.length);
+            for (int f = 0; f < featureKeys.length; f++) {
+                out.writeInt(featureKeys[f]);
+                out.writeShort(entryStart[f + 1] - entryStart[f]);
+                for (int e = entryStart[f]; e < entryStart[f + 1]; e++) {
+                    out.writeShort(entryIntent[e]);
+                    out.writeFloat(entryBoost[e]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a model written by save
+     * @throws IOException if the file is missing, truncated or from another format or feature hashing
+     */
+    public static IntentClassifier load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an intent model: " + path);
+            }
+            int formatVersion = in.readInt();
+            int hashBits = in.readInt();
+            if (formatVersion != FORMAT_VERSION || hashBits != HASH_BITS) {
+                throw new IOException("Intent model " + path + " was built by another version - retrain it");
+            }
+            String[] intents = new String[in.readInt()];
+            double[] logPrior = new double[intents.length];
+            double[] logUnseen = new double[intents.length];
+            for (int c = 0; c < intents.length; c++) {
+                intents[c] = in.readUTF();
+                logPrior[c] = in.readDouble();
+                logUnseen[c] = in.readDouble();
+            }
+            int vocabulary = in.readInt();
+            int[] featureKeys = new int[vocabulary];
+            int[] entryStart = new int[vocabulary + 1];
+            List<Short> intentList = new ArrayList<>();
+            List<Float> boostList = new ArrayList<>();
+            for (int f = 0; f < vocabulary; f++) {
+                featureKeys[f] = in.readInt();
+                entryStart[f] = intentList.size();
+                int entries = in.readShort();
+                for (int e = 0; e < entries; e++) {
+                    intentList.add(in.readShort());
+                    boostList.add(in.readFloat());
+                }
+            }
+            entryStart[vocabulary] = intentList.size();
+            short[] entryIntent = new short[intentList.size()];
+            float[] entryBoost = new float[boostList.size()];
+            for (int e = 0; e < entryIntent.length; e++) {
+                entryIntent[e] = intentList.get(e);
+                entryBoost[e] = boostList.get(e);
+            }
+            return new IntentClassifier(intents, logPrior, logUnseen, featureKeys, entryStart, entryIntent, entryBoost);
+        } catch (EOFException e) {
+            throw new IOException("Truncated intent model: " + path, e);
+        }
+    }
+
+    /**
+     * Gets the model shared by every IntentRecognizer in this JVM, loading it on first use.
+     * Returns null when intent.classifier_enabled is off or the model file is missing or
+     * unreadable, in which case recognizers use their regexes only.
+     */
+    public static IntentClassifier getShared() {
+        if (!sharedLoaded) {
+            synchronized (SHARED_LOCK) {
+                if (!sharedLoaded) {
+                    shared = loadShared();
+                    sharedLoaded = true;
+                }
+            }
+        }
+        return shared;
+    }
+
+    private static IntentClassifier loadShared() {
+        Configuration config = Configuration.getInstance();
+        if (!config.getBooleanProperty("intent.classifier_enabled", false)) {
+            return null;
+        }
+        Path path = Paths.get(config.getProperty("intent.classifier_model_path", "data/intent.model"));
+        if (!Files.isRegularFile(path)) {
+            Logger.getInstance().warn("IntentClassifier", "Intent model " + path + " not found, using regexes only");
+            return null;
+        }
+        try {
+            IntentClassifier classifier = load(path);
+            Logger.getInstance().info("IntentClassifier", "Loaded intent model " + path + " ("
+                + classifier.getIntentCount() + " intents, " + classifier.getFeatureCount() + " features)");
+            return classifier;
+        } catch (IOException e) {
+            Logger.getInstance().warn("IntentClassifier", "Ignoring intent model: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Trainer: java IntentClassifier <labeled file> [model path]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java IntentClassifier <labeled file> [model path]");
+            return;
+        }
+        Path path = Paths.get(args.length > 1 ? args[1]
+            : Configuration.getInstance().getProperty("intent.classifier_model_path", "data/intent.model"));
+        List<String[]> examples = readLabeled(Paths.get(args[0]));
+        IntentClassifier classifier = train(examples);
+        classifier.save(path);
+
+        int correct = 0;
+        for (String[] example : examples) {
+            List<Prediction> predicted = classifier.predict(example[1], 1);
+            if (!predicted.isEmpty() && predicted.get(0).getIntent().equals(example[0])) {
+                correct++;
+            }
+        }
+        System.out.println("Wrote intent model " + path + " (" + Files.size(path) + " bytes)");
+        System.out.printf("  %d examples, %d intents, %d features, training accuracy %.1f%%%n",
+            examples.size(), classifier.getIntentCount(), classifier.getFeatureCount(),
+            100.0 * correct / examples.size());
+    }
+}
@@ -1,5 +1,5 @@
 // Created in Version 0.1.0.0
-// Last Updated in Version 0.1.0.3
+// Last Updated in Version 0.2.0.3
 import java.util.*;
 import java.util.regex.*;
 
@@ -9,13 +9,67 @@ import java.util.regex.*;
  */
 public class IntentRecognizer {
     
+    // Score mass reserved for "none of the above" when normalizing scores into
+    // confidences, so a single weak match is not reported as certain
+    private static final double UNKNOWN_PRIOR = 5.0;
+    
     private Map<String, List<Pattern>> intentPatterns;
-    private Map<String, Double> intentConfidence;
+    
+    // Every intent pattern compiled into one single-pass matcher. Intents get dense
+    // ids in intentPatterns iteration order; patternIntent maps pattern index -> intent id.
+    private MultiPatternMatcher combinedMatcher;
+    private String[] intentNames;
+    private int[] intentHash;
+    private int[] patternIntent;
+    // Skips patterns whose required keywords are absent from the input
+    private KeywordPrefilter prefilter;
+    
+    // Optional trained classifier, tried before the regexes; null when disabled
+    private IntentClassifier classifier;
+    private double classifierMinConfidence;
+    private long classifierAnswers;
+    private long regexFallbacks;
     
     public IntentRecognizer() {
         this.intentPatterns = new HashMap<>();
-        this.intentConfidence = new HashMap<>();
         initializeIntentPatterns();
+        buildCombinedMatcher();
+        this.classifier = IntentClassifier.getShared();
+        this.classifierMinConfidence = Double.parseDouble(
+            Configuration.getInstance().getProperty("intent.classifier_min_confidence", "0.9"));
+    }
+    
+    /**
+     * Sets the classifier tried before the regexes, or null for regexes only
+     * @param minConfidence posterior below which the regexes decide instead
+     */
+    public void setClassifier(IntentClassifier classifier, double minConfidence) {
+        this.classifier = classifier;
+        this.classifierMinConfidence = minConfidence;
+    }
+    
+    private void buildCombinedMatcher() {
+        List<String> regexes = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        intentNames = new String[intentPatterns.size()];
+        intentHash = new int[intentPatterns.size()];
+        int id = 0;
+        for (Map.Entry<String, List<Pattern>> entry : intentPatterns.entrySet()) {
+            intentNames[id] = entry.getKey();
+            int h = entry.getKey().hashCode();
+            intentHash[id] = h ^ (h >>> 16);
+            for (Pattern pattern : entry.getValue()) {
+                regexes.add(pattern.pattern());
+                owners.add(id);
+            }
+            id++;
+        }
+        patternIntent = new int[owners.size()];
+        for (int i = 0; i < patternIntent.length; i++) {
+            patternIntent[i] = owners.get(i);
+        }
+        combinedMatcher = new MultiPatternMatcher(regexes, Pattern.CASE_INSENSITIVE);
+        prefilter = new KeywordPrefilter(regexes, Pattern.CASE_INSENSITIVE);
     }
     
     private void initializeIntentPatterns() {
@@ -135,11 +189,6 @@ public class IntentRecognizer {
         addIntentPattern("milestone_celebration", "(i got|i've got|i got promoted|i graduated|i won|i achieved|i finished|i completed)");
         addIntentPattern("milestone_celebration", "\\b(promoted|graduated|won|achieved|finished|completed)\\b");
         addIntentPattern("milestone_celebration", "(promotion|graduation|championship|trophy|award)");
-        
-        // Initialize confidence scores
-        for (String intent : intentPatterns.keySet()) {
-            intentConfidence.put(intent, 0.5);
-        }
     }
     
     private void addIntentPattern(String intent, String regex) {
@@ -148,6 +197,47 @@ public class IntentRecognizer {
         );
     }
     
+    /**
+     * One ranked intent with its confidence and the spans its patterns matched
+     */
+    public static class IntentMatch {
+        private final String intent;
+        private final int score;
+        private final double confidence;
+        private final List<int[]> spans;
+        
+        public IntentMatch(String intent, int score, double confidence, List<int[]> spans) {
+            this.intent = intent;
+            this.score = score;
+            this.confidence = confidence;
+            this.spans = spans;
+        }
+        
+        public String getIntent() { return intent; }
+        
+        /**
+         * Regex match score; 0 when the classifier answered
+         */
+        public int getScore() { return score; }
+        
+        /**
+         * Share of the total match score, between 0 and 1; the confidences of all
+         * intents for one input add up to less than 1
+         */
+        public double getConfidence() { return confidence; }
+        
+        /**
+         * Matched {start, end} offsets, ordered by start, in the lowercased and trimmed
+         * input; empty when the classifier answered
+         */
+        public List<int[]> getSpans() { return spans; }
+        
+        @Override
+        public String toString() {
+            return String.format("%s (%.2f)", intent, confidence);
+        }
+    }
+    
     /**
      * Recognizes the primary intent from user input
      * @param input User's input text
@@ -158,18 +248,175 @@ public class IntentRecognizer {
             return "unknown";
         }
         
+        String normalizedInput = input.toLowerCase().trim();
+        List<IntentClassifier.Prediction> predicted = classify(normalizedInput, 1);
+        if (predicted != null) {
+            return predicted.get(0).getIntent();
+        }
+        int[] starts = new int[patternIntent.length];
+        int[] ends = new int[patternIntent.length];
+        int[] ranked = rankIntents(scoreIntents(normalizedInput, starts, ends), 1);
+        return ranked.length > 0 ? intentNames[ranked[0]] : "unknown";
+    }
+    
+    /**
+     * Recognizes the top-k intents, best first. The first entry is always the
+     * intent recognizeIntent returns.
+     * @param input User's input text
+     * @param k Maximum number of intents to return
+     * @return Ranked intents; empty if nothing matched
+     */
+    public List<IntentMatch> recognizeIntents(String input, int k) {
+        if (input == null || input.trim().isEmpty() || k <= 0) {
+            return new ArrayList<>();
+        }
+        
+        String normalizedInput = input.toLowerCase().trim();
+        List<IntentMatch> matches = new ArrayList<>();
+        List<IntentClassifier.Prediction> predicted = classify(normalizedInput, k);
+        if (predicted != null) {
+            for (IntentClassifier.Prediction prediction : predicted) {
+                matches.add(new IntentMatch(prediction.getIntent(), 0, prediction.getConfidence(),
+                    Collections.emptyList()));
+            }
+            return matches;
+        }
+        
+        int[] starts = new int[patternIntent.length];
+        int[] ends = new int[patternIntent.length];
+        int[] scores = scoreIntents(normalizedInput, starts, ends);
+        int total = 0;
+        for (int score : scores) {
+            total += score;
+        }
+        
+        for (int id : rankIntents(scores, k)) {
+            List<int[]> spans = new ArrayList<>();
+            for (int p = 0; p < patternIntent.length; p++) {
+                if (patternIntent[p] == id && starts[p] >= 0) {
+                    spans.add(new int[] { starts[p], ends[p] });
+                }
+            }
+            spans.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+            matches.add(new IntentMatch(intentNames[id], scores[id], scores[id] / (total + UNKNOWN_PRIOR),
+                Collections.unmodifiableList(spans)));
+        }
+        return matches;
+    }
+    
+    /**
+     * Asks the classifier for the top-k intents
+     * @return the predictions, or null if there is no classifier or it is not confident
+     *         enough and the regexes should decide
+     */
+    private List<IntentClassifier.Prediction> classify(String normalizedInput, int k) {
+        if (classifier == null) {
+            return null;
+        }
+        List<IntentClassifier.Prediction> predicted = classifier.predict(normalizedInput, k);
+        if (predicted.isEmpty() || predicted.get(0).getConfidence() < classifierMinConfidence) {
+            regexFallbacks++;
+            return null;
+        }
+        classifierAnswers++;
+        return predicted;
+    }
+    
+    /**
+     * Gets how often the classifier answered and how often it fell back to the regexes
+     */
+    public Map<String, Object> getClassifierStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", classifier != null);
+        stats.put("minConfidence", classifierMinConfidence);
+        stats.put("classifierAnswers", classifierAnswers);
+        stats.put("regexFallbacks", regexFallbacks);
+        return stats;
+    }
+    
+    /**
+     * Scores every intent in one pass of the combined matcher. A pattern adds 10 when
+     * its match is the whole input, 5 when the matched text starts or ends the input,
+     * and 2 otherwise.
+     * @param starts receives each pattern's match start, or -1
+     * @param ends receives each pattern's match end, or -1
+     */
+    private int[] scoreIntents(String normalizedInput, int[] starts, int[] ends) {
+        boolean[] candidates = new boolean[patternIntent.length];
+        prefilter.select(normalizedInput, candidates);
+        combinedMatcher.findAll(normalizedInput, starts, ends, candidates);
+        
+        int[] scores = new int[intentNames.length];
+        int length = normalizedInput.length();
+        for (int p = 0; p < patternIntent.length; p++) {
+            if (starts[p] < 0) {
+                continue;
+            }
+            int matchLength = ends[p] - starts[p];
+            if (matchLength == length) {
+                scores[patternIntent[p]] += 10;
+            } else if (normalizedInput.regionMatches(0, normalizedInput, starts[p], matchLength) ||
+                       normalizedInput.regionMatches(length - matchLength, normalizedInput, starts[p], matchLength)) {
+                scores[patternIntent[p]] += 5;
+            } else {
+                scores[patternIntent[p]] += 2;
+            }
+        }
+        return scores;
+    }
+    
+    /**
+     * Ranks up to k scored intents by score. Ties resolve the way the former HashMap
+     * of scores iterated: by hash bucket for a map holding the scored intents, then
+     * by intent order.
+     */
+    private int[] rankIntents(int[] scores, int k) {
+        int scored = 0;
+        for (int score : scores) {
+            if (score > 0) {
+                scored++;
+            }
+        }
+        int capacity = 16;
+        while (scored > capacity * 3 / 4) {
+            capacity <<= 1;
+        }
+        int[] ranked = new int[Math.min(k, scored)];
+        boolean[] taken = new boolean[scores.length];
+        for (int r = 0; r < ranked.length; r++) {
+            int best = -1;
+            for (int id = 0; id < scores.length; id++) {
+                if (scores[id] == 0 || taken[id]) {
+                    continue;
+                }
+                if (best < 0 || scores[id] > scores[best] ||
+                    (scores[id] == scores[best] && (intentHash[id] & (capacity - 1)) < (intentHash[best] & (capacity - 1)))) {
+                    best = id;
+                }
+            }
+            ranked[r] = best;
+            taken[best] = true;
+        }
+        return ranked;
+    }
+    
+    /**
+     * Reference implementation with one Matcher.find() per pattern, kept for the
+     * correctness suite and the throughput benchmark
+     */
+    String recognizeIntentWithRegexLoop(String input) {
+        if (input == null || input.trim().isEmpty()) {
+            return "unknown";
+        }
+        
         String normalizedInput = input.toLowerCase().trim();
         Map<String, Integer> intentScores = new HashMap<>();
         
-        // Score each intent based on pattern matches
         for (Map.Entry<String, List<Pattern>> entry : intentPatterns.entrySet()) {
-            String intent = entry.getKey();
             int score = 0;
-            
             for (Pattern pattern : entry.getValue()) {
                 Matcher matcher = pattern.matcher(normalizedInput);
                 if (matcher.find()) {
-                    // Give higher score for exact matches and multiple matches
                     if (matcher.group().equals(normalizedInput)) {
                         score += 10;
                     } else if (normalizedInput.startsWith(matcher.group()) || 
@@ -180,17 +427,11 @@ public class IntentRecognizer {
                     }
                 }
             }
-            
             if (score > 0) {
-                intentScores.put(intent, score);
+                intentScores.put(entry.getKey(), score);
             }
         }
         
-        // Return the highest scoring intent
-        if (intentScores.isEmpty()) {
-            return "unknown";
-        }
-        
         return intentScores.entrySet().stream()
             .max(Map.Entry.comparingByValue())
             .map(Map.Entry::getKey)
@@ -203,11 +444,8 @@ public class IntentRecognizer {
      * @return Confidence score between 0 and 1
      */
     public double getConfidence(String input) {
-        String intent = recognizeIntent(input);
-        if (intent.equals("unknown")) {
-            return 0.0;
-        }
-        return intentConfidence.getOrDefault(intent, 0.5);
+        List<IntentMatch> best = recognizeIntents(input, 1);
+        return best.isEmpty() ? 0.0 : best.get(0).getConfidence();
     }
     
     /**
@@ -219,25 +457,27 @@ public class IntentRecognizer {
         Map<String, Integer> intentScores = new HashMap<>();
         String normalizedInput = input.toLowerCase().trim();
         
-        for (Map.Entry<String, List<Pattern>> entry : intentPatterns.entrySet()) {
-            String intent = entry.getKey();
-            int score = 0;
-            
-            for (Pattern pattern : entry.getValue()) {
-                Matcher matcher = pattern.matcher(normalizedInput);
-                if (matcher.find()) {
-                    score += 2;
-                }
-            }
-            
-            if (score > 0) {
-                intentScores.put(intent, score);
+        int[] starts = new int[patternIntent.length];
+        int[] ends = new int[patternIntent.length];
+        boolean[] candidates = new boolean[patternIntent.length];
+        prefilter.select(normalizedInput, candidates);
+        combinedMatcher.findAll(normalizedInput, starts, ends, candidates);
+        for (int p = 0; p < patternIntent.length; p++) {
+            if (starts[p] >= 0) {
+                intentScores.merge(intentNames[patternIntent[p]], 2, Integer::sum);
             }
         }
         
         return intentScores;
     }
     
+    /**
+     * Gets keyword prefilter statistics, including candidate patterns evaluated per message
+     */
+    public Map<String, Object> getPrefilterStatistics() {
+        return prefilter.getStatistics();
+    }
+    
     /**
      * Extracts entities from input (e.g., subjects, topics)
      * @param input User's input text
@@ -0,0 +1,198 @@
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * Keyword Prefilter for VirtualXander
+ * Most detector patterns are alternations of literal words. At construction the
+ * literals every match of a pattern must contain are extracted and compiled into
+ * one keyword automaton (Aho-Corasick); a single scan of the input then tells
+ * which patterns can possibly match, and only those need to be evaluated.
+ * Patterns without a usable literal requirement are always evaluated.
+ */
+public class KeywordPrefilter {
+
+    private final int patternCount;
+    private final boolean caseInsensitive;
+    private final int[] alwaysEvaluated;
+    private final int keywordCount;
+
+    // Automaton: per state, sorted edge characters with their target states
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] failure;
+    // Patterns whose keyword ends at each state, including keywords reached via failure links
+    private final int[][] outputs;
+
+    private long messages;
+    private long candidatesEvaluated;
+    private int lastCandidates;
+
+    /**
+     * @param regexes the patterns, indexed as the caller evaluates them
+     * @param flags java.util.regex flags the patterns are compiled with
+     */
+    public KeywordPrefilter(List<String> regexes, int flags) {
+        this.patternCount = regexes.size();
+        this.caseInsensitive = (flags & Pattern.CASE_INSENSITIVE) != 0;
+
+        // Trie over every required literal
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(new ArrayList<>());
+        List<Integer> always = new ArrayList<>();
+        Set<String> keywords = new HashSet<>();
+
+        boolean literalFlagsOnly = (flags & ~Pattern.CASE_INSENSITIVE) == 0;
+        for (int p = 0; p < patternCount; p++) {
+            Set<String> literals = literalFlagsOnly ? MultiPatternMatcher.requiredLiterals(regexes.get(p), flags) : null;
+            if (literals == null || literals.isEmpty()) {
+                always.add(p);
+                continue;
+            }
+            for (String literal : literals) {
+                keywords.add(literal);
+                int state = 0;
+                for (int i = 0; i < literal.length(); i++) {
+                    Integer next = trie.get(state).get(literal.charAt(i));
+                    if (next == null) {
+                        next = trie.size();
+                        trie.add(new TreeMap<>());
+                        terminal.add(new ArrayList<>());
+                        trie.get(state).put(literal.charAt(i), next);
+                    }
+                    state = next;
+                }
+                if (!terminal.get(state).contains(p)) {
+                    terminal.get(state).add(p);
+                }
+            }
+        }
+        this.alwaysEvaluated = toArray(always);
+        this.keywordCount = keywords.size();
+
+        int states = trie.size();
+        this.edgeChars = new char[states][];
+        this.edgeTargets = new int[states][];
+        for (int s = 0; s < states; s++) {
+            TreeMap<Character, Integer> edges = trie.get(s);
+            edgeChars[s] = new char[edges.size()];
+            edgeTargets[s] = new int[edges.size()];
+            int e = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[s][e] = edge.getKey();
+                edgeTargets[s][e] = edge.getValue();
+                e++;
+            }
+        }
+
+        // Failure links and merged outputs, breadth first so parents are done before children
+        this.failure = new int[states];
+        this.outputs = new int[states][];
+        outputs[0] = toArray(terminal.get(0));
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int target : edgeTargets[0]) {
+            failure[target] = 0;
+            queue.add(target);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            Set<Integer> merged = new LinkedHashSet<>(terminal.get(state));
+            for (int p : outputs[failure[state]]) {
+                merged.add(p);
+            }
+            outputs[state] = toArray(new ArrayList<>(merged));
+            for (int e = 0; e < edgeChars[state].length; e++) {
+                int child = edgeTargets[state][e];
+                int fallback = failure[state];
+                int next = step(fallback, edgeChars[state][e]);
+                while (next < 0 && fallback != 0) {
+                    fallback = failure[fallback];
+                    next = step(fallback, edgeChars[state][e]);
+                }
+                failure[child] = next >= 0 ? next : 0;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Marks the patterns that can match the input and records the candidate count
+     * @param selected receives true for every pattern worth evaluating
+     * @return the number of selected patterns
+     */
+    public int select(String input, boolean[] selected) {
+        Arrays.fill(selected, 0, patternCount, false);
+        for (int p : alwaysEvaluated) {
+            selected[p] = true;
+        }
+        int state = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (caseInsensitive) {
+                c = (char) MultiPatternMatcher.foldAscii(c);
+            }
+            int next = step(state, c);
+            while (next < 0 && state != 0) {
+                state = failure[state];
+                next = step(state, c);
+            }
+            state = next >= 0 ? next : 0;
+            for (int p : outputs[state]) {
+                selected[p] = true;
+            }
+        }
+
+        int count = 0;
+        for (int p = 0; p < patternCount; p++) {
+            if (selected[p]) {
+                count++;
+            }
+        }
+        messages++;
+        candidatesEvaluated += count;
+        lastCandidates = count;
+        return count;
+    }
+
+    private int step(int state, char c) {
+        int index = Arrays.binarySearch(edgeChars[state], c);
+        return index >= 0 ? edgeTargets[state][index] : -1;
+    }
+
+    public int getPatternCount() { return patternCount; }
+
+    /**
+     * Number of patterns with no literal requirement, evaluated for every message
+     */
+    public int getAlwaysEvaluatedCount() { return alwaysEvaluated.length; }
+
+    public int getLastCandidateCount() { return lastCandidates; }
+
+    public double getAverageCandidatesPerMessage() {
+        return messages == 0 ? 0.0 : (double) candidatesEvaluated / messages;
+    }
+
+    /**
+     * Gets prefilter statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("patterns", patternCount);
+        stats.put("keywords", keywordCount);
+        stats.put("alwaysEvaluated", alwaysEvaluated.length);
+        stats.put("messages", messages);
+        stats.put("candidatesEvaluated", candidatesEvaluated);
+        stats.put("lastCandidates", lastCandidates);
+        stats.put("averageCandidatesPerMessage", getAverageCandidatesPerMessage());
+        return stats;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,747 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Long-Term Store for VirtualXander
+ * Off-heap home for LONG_TERM entities and conversation threads of many users.
+ * A ContextEngine given a store (see ContextEngine.setLongTermStore) moves its
+ * LONG_TERM entities and finished threads here and pages them back in when
+ * they are looked up again.
+ * Records live in memory-mapped segment files; the heap only holds two
+ * open-addressing hash tables of longs, from the hash of a user/record key to
+ * the record's offset and from the hash of a user id to that user's newest
+ * record. Entities and threads are decoded from the mapping each time they are
+ * read and never cached, so heap use stays flat as users are added.
+ *
+ * Records are appended and never moved. Writing a record again appends the new
+ * version and marks the old one dead in place; dead bytes are reported in the
+ * statistics and only reclaimed by starting a new store. Opening a store scans
+ * the segments to rebuild the tables, stopping at the first record that is torn
+ * or fails its checksum, as a crash mid-write leaves it; that record and the
+ * rest of its segment are cleared and the next write goes there. Writes reach
+ * the files when the OS flushes the mapping or on flush() and close().
+ *
+ * Record layout: int payload length, byte kind, byte live flag, long offset of
+ * the user's previous record (-1 for none), the payload, then int CRC32 of the
+ * payload. The payload holds the user id, record
+ * id, and the entity or thread fields, with strings as int length + UTF-8.
+ * Entity attributes are tagged as string, long, double or boolean, as in
+ * ContextJournal, so they decode to the type they were stored as.
+ * A thread stores its status, its compacted turn count, summary sentences with
+ * their scores and compacted keyword counts, then its retained turns with the
+ * time each was made.
+ */
+public class LongTermStore implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".lts";
+    private static final int HEADER_BYTES = 14;
+    private static final int CHECKSUM_BYTES = 4;
+    private static final byte KIND_ENTITY = 1;
+    private static final byte KIND_THREAD = 2;
+    private static final byte TAG_STRING = 0;
+    private static final byte TAG_LONG = 1;
+    private static final byte TAG_DOUBLE = 2;
+    private static final byte TAG_BOOLEAN = 3;
+    private static final int INITIAL_TABLE_SIZE = 1024;
+    private static final Object SHARED_LOCK = new Object();
+    private static volatile LongTermStore shared;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final List<MappedByteBuffer> segments;
+    private long writeOffset;
+
+    // Record index: key hash -> offset, with -1 marking a removed entry
+    private long[] recordHashes;
+    private long[] recordOffsets;
+    private int recordCount;
+    private int recordSlotsUsed;
+    // User index: user hash -> offset of the user's newest record
+    private long[] userHashes;
+    private long[] userHeads;
+    private int userCount;
+
+    private long liveBytes;
+    private long deadBytes;
+    private long decodes;
+    private long droppedRecords;
+
+    /**
+     * Opens or creates a store, rebuilding its index from existing segments
+     * @param segmentBytes size of each mapped segment file; a record may not be larger
+     */
+    public LongTermStore(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segments = new ArrayList<>();
+        this.recordHashes = new long[INITIAL_TABLE_SIZE];
+        this.recordOffsets = new long[INITIAL_TABLE_SIZE];
+        this.userHashes = new long[INITIAL_TABLE_SIZE];
+        this.userHeads = new long[INITIAL_TABLE_SIZE];
+        Files.createDirectories(directory);
+        while (Files.exists(segmentPath(segments.size()))) {
+            mapSegment(segments.size());
+        }
+        rebuildIndex();
+    }
+
+    /**
+     * Opens the store at context.longterm_store_path with context.longterm_segment_bytes segments
+     */
+    public static LongTermStore open() throws IOException {
+        Configuration config = Configuration.getInstance();
+        return new LongTermStore(Paths.get(config.getProperty("context.longterm_store_path", "data/longterm")),
+            config.getIntProperty("context.longterm_segment_bytes", 64 * 1024 * 1024));
+    }
+
+    /**
+     * Gets the process-wide store, opened by open() on first use; every core keeps
+     * its user's records in it, since two stores must not map the same files
+     */
+    public static LongTermStore getShared() throws IOException {
+        if (shared == null) {
+            synchronized (SHARED_LOCK) {
+                if (shared == null) {
+                    shared = open();
+                }
+            }
+        }
+        return shared;
+    }
+
+    // ==================== ENTITIES ====================
+
+    /**
+     * Stores an entity, replacing an earlier version with the same id
+     */
+    public synchronized void putEntity(String userId, ContextEngine.ReferenceEntity entity) {
+        write(userId, entity.getEntityId(), KIND_ENTITY, out -> {
+            writeString(out, entity.getName());
+            writeString(out, entity.getType());
+            writeString(out, entity.getMemoryTier().name());
+            out.writeLong(entity.getCreatedAt());
+            Map<String, Object> attributes = entity.getAttributes();
+            out.writeInt(attributes.size());
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                writeString(out, attribute.getKey());
+                writeAttribute(out, attribute.getValue());
+            }
+        });
+    }
+
+    /**
+     * Finds a user's entity by name, ignoring case, or returns null. Only names
+     * are read while scanning; the match is the only entity decoded.
+     */
+    public synchronized ContextEngine.ReferenceEntity findEntity(String userId, String name) {
+        for (long offset : userRecords(userId, KIND_ENTITY)) {
+            int[] cursor = { (int) (offset % segmentBytes) + HEADER_BYTES };
+            MappedByteBuffer segment = segmentFor(offset);
+            readString(segment, cursor);
+            readString(segment, cursor);
+            if (name.equalsIgnoreCase(readString(segment, cursor))) {
+                return decodeEntity(offset);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes a stored entity, or returns null if there is none. Each call
+     * returns a new object; changing it does not change the store.
+     */
+    public synchronized ContextEngine.ReferenceEntity getEntity(String userId, String entityId) {
+        long offset = find(userId, entityId, KIND_ENTITY);
+        return offset >= 0 ? decodeEntity(offset) : null;
+    }
+
+    public synchronized boolean removeEntity(String userId, String entityId) {
+        return remove(userId, entityId, KIND_ENTITY);
+    }
+
+    /**
+     * A user's entities, newest first, as of this call. The list holds offsets
+     * only and decodes an entity each time one is read.
+     */
+    public synchronized List<ContextEngine.ReferenceEntity> getEntities(String userId) {
+        long[] offsets = userRecords(userId, KIND_ENTITY);
+        return new AbstractList<ContextEngine.ReferenceEntity>() {
+            @Override
+            public ContextEngine.ReferenceEntity get(int i) {
+                synchronized (LongTermStore.this) {
+                    return decodeEntity(offsets[Objects.checkIndex(i, offsets.length)]);
+                }
+            }
+
+            @Override
+            public int size() {
+                return offsets.length;
+            }
+        };
+    }
+
+    // ==================== THREADS ====================
+
+    /**
+     * Stores a thread: its retained turns, and the summary and keyword counts of its compacted ones
+     */
+    public synchronized void putThread(String userId, ContextEngine.ConversationThread thread) {
+        List<ContextEngine.ConversationThread.ConversationTurn> turns = thread.getMessages();
+        List<String> sentences = thread.getSummarySentences();
+        List<Double> scores = thread.getSummaryScores();
+        Map<String, Integer> keywords = thread.getCompactedKeywordCounts();
+        write(userId, thread.getThreadId(), KIND_THREAD, out -> {
+            writeString(out, thread.getTopic());
+            out.writeLong(thread.getCreatedAt());
+            writeString(out, thread.getStatus().name());
+            out.writeInt(thread.getCompactedMessageCount());
+            out.writeInt(sentences.size());
+            for (int s = 0; s < sentences.size(); s++) {
+                writeString(out, sentences.get(s));
+                out.writeDouble(scores.get(s));
+            }
+            out.writeInt(thread.getCompactedMessageCount() > 0 ? keywords.size() : 0);
+            if (thread.getCompactedMessageCount() > 0) {
+                for (Map.Entry<String, Integer> keyword : keywords.entrySet()) {
+                    writeString(out, keyword.getKey());
+                    out.writeInt(keyword.getValue());
+                }
+            }
+            out.writeInt(turns.size());
+            for (ContextEngine.ConversationThread.ConversationTurn turn : turns) {
+                writeString(out, turn.getSender());
+                writeString(out, turn.getContent());
+                out.writeLong(turn.getTimestamp());
+            }
+        });
+    }
+
+    /**
+     * Decodes a stored thread, or returns null if there is none
+     */
+    public synchronized ContextEngine.ConversationThread getThread(String userId, String threadId) {
+        long offset = find(userId, threadId, KIND_THREAD);
+        return offset >= 0 ? decodeThread(offset) : null;
+    }
+
+    public synchronized boolean removeThread(String userId, String threadId) {
+        return remove(userId, threadId, KIND_THREAD);
+    }
+
+    /**
+     * A user's threads, newest first, as of this call, decoded each time one is read
+     */
+    public synchronized List<ContextEngine.ConversationThread> getThreads(String userId) {
+        long[] offsets = userRecords(userId, KIND_THREAD);
+        return new AbstractList<ContextEngine.ConversationThread>() {
+            @Override
+            public ContextEngine.ConversationThread get(int i) {
+                synchronized (LongTermStore.this) {
+                    return decodeThread(offsets[Objects.checkIndex(i, offsets.length)]);
+                }
+            }
+
+            @Override
+            public int size() {
+                return offsets.length;
+            }
+        };
+    }
+
+    // ==================== ENGINE INTEGRATION ====================
+
+    /**
+     * Expiry handler that moves LONG_TERM entities leaving the engine into the
+     * store instead of dropping them; entities of other tiers are dropped as usual
+     */
+    public ContextEngine.ExpiryHandler expiryHandler(String userId) {
+        return (engine, entity, overCapacity) -> {
+            if (entity.getMemoryTier() == ContextEngine.MemoryTier.LONG_TERM) {
+                putEntity(userId, entity);
+            }
+            return null;
+        };
+    }
+
+    // ==================== RECORDS ====================
+
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void write(String userId, String recordId, byte kind, PayloadWriter writer) {
+        byte[] payload;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, userId);
+            writeString(out, recordId);
+            writer.write(out);
+            out.flush();
+            payload = bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int length = HEADER_BYTES + payload.length + CHECKSUM_BYTES;
+        if (length > segmentBytes) {
+            throw new IllegalArgumentException("Record of " + length + " bytes does not fit a "
+                + segmentBytes + " byte segment");
+        }
+        if (writeOffset % segmentBytes + length > segmentBytes) {
+            writeOffset = (writeOffset / segmentBytes + 1) * (long) segmentBytes;
+        }
+        long offset = writeOffset;
+        MappedByteBuffer segment = segmentFor(offset);
+        int position = (int) (offset % segmentBytes);
+        long keyHash = hash(userId, recordId, kind);
+        long userHash = hash(userId, null, (byte) 0);
+        int slot = findSlot(keyHash, userId, recordId, kind);
+        segment.putInt(position, payload.length);
+        segment.put(position + 4, kind);
+        segment.put(position + 5, (byte) 1);
+        segment.putLong(position + 6, userHead(userHash));
+        segment.put(position + HEADER_BYTES, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        segment.putInt(position + HEADER_BYTES + payload.length, (int) crc.getValue());
+        writeOffset = offset + length;
+        liveBytes += length;
+        index(slot, keyHash, offset);
+        putUserHead(userHash, offset);
+    }
+
+    /**
+     * Points a key's slot at a new record, marking the version it replaces dead
+     * @param slot the key's slot, or -1 if the key is new
+     */
+    private void index(int slot, long keyHash, long offset) {
+        if (slot >= 0) {
+            markDead(recordOffsets[slot]);
+            recordOffsets[slot] = offset;
+        } else {
+            insertRecord(keyHash, offset);
+        }
+    }
+
+    private boolean remove(String userId, String recordId, byte kind) {
+        long keyHash = hash(userId, recordId, kind);
+        int slot = findSlot(keyHash, userId, recordId, kind);
+        if (slot < 0) {
+            return false;
+        }
+        markDead(recordOffsets[slot]);
+        recordOffsets[slot] = -1;
+        recordCount--;
+        return true;
+    }
+
+    private void markDead(long offset) {
+        MappedByteBuffer segment = segmentFor(offset);
+        int position = (int) (offset % segmentBytes);
+        segment.put(position + 5, (byte) 0);
+        long length = HEADER_BYTES + segment.getInt(position) + CHECKSUM_BYTES;
+        liveBytes -= length;
+        deadBytes += length;
+    }
+
+    private long[] userRecords(String userId, byte kind) {
+        long[] offsets = new long[8];
+        int count = 0;
+        long offset = userHead(hash(userId, null, (byte) 0));
+        while (offset >= 0) {
+            MappedByteBuffer segment = segmentFor(offset);
+            int position = (int) (offset % segmentBytes);
+            if (segment.get(position + 4) == kind && segment.get(position + 5) == 1
+                    && userId.equals(readString(segment, position + HEADER_BYTES))) {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = offset;
+            }
+            offset = segment.getLong(position + 6);
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    private ContextEngine.ReferenceEntity decodeEntity(long offset) {
+        decodes++;
+        MappedByteBuffer segment = segmentFor(offset);
+        int[] cursor = { (int) (offset % segmentBytes) + HEADER_BYTES };
+        readString(segment, cursor);
+        String entityId = readString(segment, cursor);
+        String name = readString(segment, cursor);
+        String type = readString(segment, cursor);
+        ContextEngine.MemoryTier tier = ContextEngine.MemoryTier.valueOf(readString(segment, cursor));
+        long createdAt = segment.getLong(cursor[0]);
+        cursor[0] += 8;
+        ContextEngine.ReferenceEntity entity = new ContextEngine.ReferenceEntity(entityId, name, type, tier, createdAt);
+        int attributes = segment.getInt(cursor[0]);
+        cursor[0] += 4;
+        for (int a = 0; a < attributes; a++) {
+            String key = readString(segment, cursor);
+            entity.setAttribute(key, readAttribute(segment, cursor));
+        }
+        return entity;
+    }
+
+    private ContextEngine.ConversationThread decodeThread(long offset) {
+        decodes++;
+        MappedByteBuffer segment = segmentFor(offset);
+        int[] cursor = { (int) (offset % segmentBytes) + HEADER_BYTES };
+        readString(segment, cursor);
+        String threadId = readString(segment, cursor);
+        String topic = readString(segment, cursor);
+        long createdAt = segment.getLong(cursor[0]);
+        cursor[0] += 8;
+        ContextEngine.ConversationThread.ThreadStatus status =
+            ContextEngine.ConversationThread.ThreadStatus.valueOf(readString(segment, cursor));
+        ContextEngine.ConversationThread thread = new ContextEngine.ConversationThread(topic);
+        thread.restoreIdentity(threadId, createdAt);
+        int compactedTurns = readInt(segment, cursor);
+        List<String> sentences = new ArrayList<>();
+        List<Double> scores = new ArrayList<>();
+        for (int s = readInt(segment, cursor); s > 0; s--) {
+            sentences.add(readString(segment, cursor));
+            scores.add(segment.getDouble(cursor[0]));
+            cursor[0] += 8;
+        }
+        Map<String, Integer> keywords = new HashMap<>();
+        for (int k = readInt(segment, cursor); k > 0; k--) {
+            keywords.put(readString(segment, cursor), readInt(segment, cursor));
+        }
+        if (compactedTurns > 0) {
+            thread.restoreCompacted(compactedTurns, sentences, scores, keywords);
+        }
+        for (int t = readInt(segment, cursor); t > 0; t--) {
+            String sender = readString(segment, cursor);
+            String content = readString(segment, cursor);
+            thread.addMessage(sender, content, readLong(segment, cursor));
+        }
+        thread.setStatus(status);
+        return thread;
+    }
+
+    // ==================== INDEX ====================
+
+    /**
+     * Offset of the live record for a key, or -1
+     */
+    private long find(String userId, String recordId, byte kind) {
+        int slot = findSlot(hash(userId, recordId, kind), userId, recordId, kind);
+        return slot >= 0 ? recordOffsets[slot] : -1;
+    }
+
+    private int findSlot(long keyHash, String userId, String recordId, byte kind) {
+        int mask = recordHashes.length - 1;
+        for (int slot = (int) keyHash & mask; recordHashes[slot] != 0; slot = (slot + 1) & mask) {
+            if (recordHashes[slot] == keyHash && recordOffsets[slot] >= 0
+                    && matches(recordOffsets[slot], userId, recordId, kind)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(long offset, String userId, String recordId, byte kind) {
+        MappedByteBuffer segment = segmentFor(offset);
+        int[] cursor = { (int) (offset % segmentBytes) + HEADER_BYTES };
+        return segment.get(cursor[0] - HEADER_BYTES + 4) == kind
+            && userId.equals(readString(segment, cursor)) && recordId.equals(readString(segment, cursor));
+    }
+
+    private void insertRecord(long keyHash, long offset) {
+        if ((recordSlotsUsed + 1) * 4L > recordHashes.length * 3L) {
+            resizeRecords();
+        }
+        int mask = recordHashes.length - 1;
+        int slot = (int) keyHash & mask;
+        while (recordHashes[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        recordHashes[slot] = keyHash;
+        recordOffsets[slot] = offset;
+        recordCount++;
+        recordSlotsUsed++;
+    }
+
+    private void resizeRecords() {
+        long[] oldHashes = recordHashes;
+        long[] oldOffsets = recordOffsets;
+        // Removed entries are dropped, so the table only grows when live ones need the room
+        int capacity = oldHashes.length;
+        while ((recordCount + 1) * 2L > capacity) {
+            capacity *= 2;
+        }
+        recordHashes = new long[capacity];
+        recordOffsets = new long[capacity];
+        recordSlotsUsed = 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] != 0 && oldOffsets[i] >= 0) {
+                int slot = (int) oldHashes[i] & mask;
+                while (recordHashes[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                recordHashes[slot] = oldHashes[i];
+                recordOffsets[slot] = oldOffsets[i];
+                recordSlotsUsed++;
+            }
+        }
+    }
+
+    private long userHead(long userHash) {
+        int mask = userHashes.length - 1;
+        for (int slot = (int) userHash & mask; userHashes[slot] != 0; slot = (slot + 1) & mask) {
+            if (userHashes[slot] == userHash) {
+                return userHeads[slot];
+            }
+        }
+        return -1;
+    }
+
+    private void putUserHead(long userHash, long offset) {
+        int mask = userHashes.length - 1;
+        int slot = (int) userHash & mask;
+        while (userHashes[slot] != 0) {
+            if (userHashes[slot] == userHash) {
+                userHeads[slot] = offset;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((userCount + 1) * 4L > userHashes.length * 3L) {
+            long[] oldHashes = userHashes;
+            long[] oldHeads = userHeads;
+            userHashes = new long[oldHashes.length * 2];
+            userHeads = new long[oldHashes.length * 2];
+            userCount = 0;
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    putUserHead(oldHashes[i], oldHeads[i]);
+                }
+            }
+            putUserHead(userHash, offset);
+            return;
+        }
+        userHashes[slot] = userHash;
+        userHeads[slot] = offset;
+        userCount++;
+    }
+
+    /**
+     * 64-bit FNV-1a over the key, never 0 since 0 marks an empty slot
+     */
+    private static long hash(String userId, String recordId, byte kind) {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ kind) * 0x100000001b3L;
+        for (int i = 0; i < userId.length(); i++) {
+            h = (h ^ userId.charAt(i)) * 0x100000001b3L;
+        }
+        if (recordId != null) {
+            h = (h ^ 0xFFFF) * 0x100000001b3L;
+            for (int i = 0; i < recordId.length(); i++) {
+                h = (h ^ recordId.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        h ^= h >>> 29;
+        return h != 0 ? h : 1;
+    }
+
+    /**
+     * Replays every segment in write order: the newest live version of each key
+     * wins and older live versions left by a crash are marked dead. Replay stops
+     * at the first torn or corrupt record, where the next write goes.
+     */
+    private void rebuildIndex() {
+        CRC32 crc = new CRC32();
+        for (int s = 0; s < segments.size(); s++) {
+            MappedByteBuffer segment = segments.get(s);
+            int position = 0;
+            while (position + HEADER_BYTES <= segmentBytes) {
+                int payloadLength = segment.getInt(position);
+                if (payloadLength == 0) {
+                    // The rest of this segment was never written
+                    break;
+                }
+                long offset = (long) s * segmentBytes + position;
+                if (!isIntact(segment, position, payloadLength, offset, crc)) {
+                    droppedRecords++;
+                    Logger.getInstance().warn("LongTermStore", "Dropping torn record at offset " + offset
+                        + " and everything written after it");
+                    // Cleared so a later write that moves on to the next segment leaves no garbage behind
+                    ByteBuffer tail = segment.duplicate();
+                    tail.position(position);
+                    byte[] zeros = new byte[Math.min(8192, tail.remaining())];
+                    while (tail.hasRemaining()) {
+                        tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+                    }
+                    writeOffset = offset;
+                    return;
+                }
+                int length = HEADER_BYTES + payloadLength + CHECKSUM_BYTES;
+                int[] cursor = { position + HEADER_BYTES };
+                String userId = readString(segment, cursor);
+                if (segment.get(position + 5) == 1) {
+                    byte kind = segment.get(position + 4);
+                    String recordId = readString(segment, cursor);
+                    long keyHash = hash(userId, recordId, kind);
+                    liveBytes += length;
+                    index(findSlot(keyHash, userId, recordId, kind), keyHash, offset);
+                } else {
+                    deadBytes += length;
+                }
+                // Dead records stay in their user's chain, so the head is the user's last record of any kind
+                putUserHead(hash(userId, null, (byte) 0), offset);
+                position += length;
+                writeOffset = offset + length;
+            }
+        }
+    }
+
+    /**
+     * Checks a record's header fields and payload checksum
+     */
+    private boolean isIntact(MappedByteBuffer segment, int position, int payloadLength, long offset, CRC32 crc) {
+        if (payloadLength < 0 || payloadLength > segmentBytes - position - HEADER_BYTES - CHECKSUM_BYTES) {
+            return false;
+        }
+        byte kind = segment.get(position + 4);
+        byte live = segment.get(position + 5);
+        long previous = segment.getLong(position + 6);
+        if ((kind != KIND_ENTITY && kind != KIND_THREAD) || (live != 0 && live != 1)
+                || previous < -1 || previous >= offset) {
+            return false;
+        }
+        ByteBuffer payload = segment.duplicate();
+        payload.limit(position + HEADER_BYTES + payloadLength).position(position + HEADER_BYTES);
+        crc.reset();
+        crc.update(payload);
+        return (int) crc.getValue() == segment.getInt(position + HEADER_BYTES + payloadLength);
+    }
+
+    // ==================== SEGMENTS ====================
+
+    private MappedByteBuffer segmentFor(long offset) {
+        int index = (int) (offset / segmentBytes);
+        while (index >= segments.size()) {
+            try {
+                mapSegment(segments.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map long-term store segment", e);
+            }
+        }
+        return segments.get(index);
+    }
+
+    private void mapSegment(int index) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(index), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("segment-%05d%s", index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Writes every mapped segment to disk
+     */
+    public synchronized void flush() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        segments.clear();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeAttribute(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TAG_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            out.writeByte(TAG_STRING);
+            writeString(out, value != null ? value.toString() : null);
+        }
+    }
+
+    private static Object readAttribute(ByteBuffer segment, int[] cursor) {
+        byte tag = segment.get(cursor[0]++);
+        switch (tag) {
+            case TAG_LONG: return readLong(segment, cursor);
+            case TAG_DOUBLE: {
+                double value = segment.getDouble(cursor[0]);
+                cursor[0] += 8;
+                return value;
+            }
+            case TAG_BOOLEAN: return segment.get(cursor[0]++) != 0;
+            case TAG_STRING: return readString(segment, cursor);
+            default: throw new IllegalStateException("Unknown attribute tag " + tag);
+        }
+    }
+
+    private static String readString(ByteBuffer segment, int position) {
+        return readString(segment, new int[] { position });
+    }
+
+    private static int readInt(ByteBuffer segment, int[] cursor) {
+        int value = segment.getInt(cursor[0]);
+        cursor[0] += 4;
+        return value;
+    }
+
+    private static long readLong(ByteBuffer segment, int[] cursor) {
+        long value = segment.getLong(cursor[0]);
+        cursor[0] += 8;
+        return value;
+    }
+
+    /**
+     * Reads a string at cursor[0] and moves the cursor past it
+     */
+    private static String readString(ByteBuffer segment, int[] cursor) {
+        int length = segment.getInt(cursor[0]);
+        byte[] bytes = new byte[length];
+        segment.get(cursor[0] + 4, bytes);
+        cursor[0] += 4 + length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets store statistics
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("records", recordCount);
+        stats.put("users", userCount);
+        stats.put("segments", segments.size());
+        stats.put("liveBytes", liveBytes);
+        stats.put("deadBytes", deadBytes);
+        stats.put("indexBytes", (recordHashes.length + userHashes.length) * 16L);
+        stats.put("decodes", decodes);
+        stats.put("droppedRecords", droppedRecords);
+        return stats;
+    }
+}
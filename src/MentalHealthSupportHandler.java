@@ -13,6 +13,12 @@ public class MentalHealthSupportHandler {
     private Map<String, SupportCategory> keywordMapping;
     private Random random;
     
+    // Compiled once - this is the pre-screen every server message goes through
+    private static final Pattern CRISIS_PATTERN = Pattern.compile(
+        "want to die|end it all|kill myself|hurt myself|better off dead|self.?harm|suicidal|suicide",
+        Pattern.CASE_INSENSITIVE
+    );
+    
     public MentalHealthSupportHandler(
         EmotionDetector emotionDetector,
         ComfortEngine comfortEngine
@@ -517,22 +523,7 @@ public class MentalHealthSupportHandler {
      * Checks for crisis-level content
      */
     public boolean isCrisisLevel(String input) {
-        String lowerInput = input.toLowerCase();
-        
-        Pattern[] crisisPatterns = {
-            Pattern.compile("want to die|end it all|kill myself"),
-            Pattern.compile("hurt myself|better off dead"),
-            Pattern.compile("self.?harm"),
-            Pattern.compile("suicidal|suicide")
-        };
-        
-        for (Pattern pattern : crisisPatterns) {
-            if (pattern.matcher(lowerInput).find()) {
-                return true;
-            }
-        }
-        
-        return false;
+        return CRISIS_PATTERN.matcher(input).find();
     }
     
     /**
@@ -15,6 +15,8 @@ import java.util.regex.*;
 public class MoodEngine {
     
     private EmotionDetector emotionDetector;
+    // Session mood over recent turns; null when the engine is used on single messages
+    private EmotionalTrajectory trajectory;
     private Random random;
     
     // Subtext patterns - detecting hidden meanings
@@ -1220,6 +1222,12 @@ public class MoodEngine {
                    "). The person may be hiding their true feelings. Create a safe space for them to open up.";
         }
         
+        if (trajectory != null && trajectory.getTrend() == EmotionalTrajectory.Trend.WORSENING
+                && trajectory.getValence() < 0) {
+            return "Their mood has been sliding over the last few messages (mostly " +
+                   trajectory.getDominantEmotion().getName() + "). Slow down and check in on how they're doing.";
+        }
+        
         return "The emotion appears genuine. Respond naturally to the expressed emotion.";
     }
     
@@ -1256,6 +1264,17 @@ public class MoodEngine {
         return emotionDetector;
     }
     
+    /**
+     * Sets the session trajectory consulted for mood trends
+     */
+    public void setEmotionalTrajectory(EmotionalTrajectory trajectory) {
+        this.trajectory = trajectory;
+    }
+    
+    public EmotionalTrajectory getEmotionalTrajectory() {
+        return trajectory;
+    }
+    
     /**
      * Gets detailed emotion result from underlying detector
      * @param input User input
@@ -0,0 +1,1079 @@
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * Multi-Pattern Matcher for VirtualXander
+ * Compiles a set of regular expressions into one program and finds the
+ * leftmost match of every pattern in a single pass over the input, instead of
+ * one Matcher.find() scan per pattern. The match found for each pattern is the
+ * same one Matcher.find() returns.
+ *
+ * Supported syntax: literals and escapes, [classes], ., \d \w \s (and negations),
+ * groups and (?:groups), |, ?, *, + (greedy or lazy), ^, $, \b and \B.
+ * Patterns using anything else are matched with java.util.regex instead.
+ */
+public class MultiPatternMatcher {
+
+    // Instruction opcodes
+    private static final int CHAR = 0;
+    private static final int ANY = 1;
+    private static final int CLASS = 2;
+    private static final int SPLIT = 3;
+    private static final int JMP = 4;
+    private static final int BOL = 5;
+    private static final int EOL = 6;
+    private static final int WORD_BOUNDARY = 7;
+    private static final int NOT_WORD_BOUNDARY = 8;
+    private static final int MATCH = 9;
+
+    /**
+     * Whether \b treats every Unicode letter or digit as a word character (Java 17)
+     * or only ASCII word characters (Java 19 and later)
+     */
+    private static final boolean UNICODE_WORD_BOUNDARY = Pattern.compile("\\b").matcher("\u00e9").find();
+
+    private final boolean caseInsensitive;
+    private final int patternCount;
+
+    // Program: one instruction per index
+    private int[] op;
+    private int[] argX;
+    private int[] argY;
+    private int[] instructionPattern;
+    private int programLength;
+    private final List<CharClass> classes;
+
+    private final int[] patternStart;
+    private final Pattern[] fallbackPatterns;
+    private int fallbackCount;
+
+    // Which patterns can begin at a given first character
+    private final int[][] seedsByAscii;
+    private int[] seedsNonAscii;
+    private int[] seedsAlways;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * @param regexes the patterns, in the order their matches are reported
+     * @param flags java.util.regex flags; only CASE_INSENSITIVE is compiled, any other
+     *              flag sends every pattern to java.util.regex
+     */
+    public MultiPatternMatcher(List<String> regexes, int flags) {
+        this.caseInsensitive = (flags & Pattern.CASE_INSENSITIVE) != 0;
+        this.patternCount = regexes.size();
+        this.op = new int[64];
+        this.argX = new int[64];
+        this.argY = new int[64];
+        this.instructionPattern = new int[64];
+        this.classes = new ArrayList<>();
+        this.patternStart = new int[patternCount];
+        this.fallbackPatterns = new Pattern[patternCount];
+
+        boolean compilable = (flags & ~Pattern.CASE_INSENSITIVE) == 0;
+        for (int p = 0; p < patternCount; p++) {
+            String regex = regexes.get(p);
+            int mark = programLength;
+            int classMark = classes.size();
+            try {
+                if (!compilable) {
+                    throw new UnsupportedOperationException("flags");
+                }
+                Node node = new Parser(regex).parse();
+                Pattern.compile(regex, flags); // reject anything java.util.regex would reject
+                patternStart[p] = programLength;
+                compile(node, p);
+                emit(MATCH, p, 0, p);
+            } catch (UnsupportedOperationException | PatternSyntaxException e) {
+                programLength = mark;
+                classes.subList(classMark, classes.size()).clear();
+                patternStart[p] = -1;
+                fallbackPatterns[p] = Pattern.compile(regex, flags);
+                fallbackCount++;
+            }
+        }
+
+        this.seedsByAscii = new int[128][];
+        buildSeedTables();
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(programLength, patternCount));
+    }
+
+    public int getPatternCount() { return patternCount; }
+
+    /**
+     * Number of patterns matched with java.util.regex because they use unsupported syntax
+     */
+    public int getFallbackCount() { return fallbackCount; }
+
+    /**
+     * Finds the leftmost match of every pattern
+     * @param starts receives each pattern's match start, or -1 if it did not match
+     * @param ends receives each pattern's match end, or -1 if it did not match
+     */
+    public void findAll(String input, int[] starts, int[] ends) {
+        findAll(input, starts, ends, null);
+    }
+
+    /**
+     * Finds the leftmost match of the selected patterns; unselected patterns report -1
+     * @param selected which patterns to evaluate, or null for all of them
+     */
+    public void findAll(String input, int[] starts, int[] ends, boolean[] selected) {
+        Arrays.fill(starts, 0, patternCount, -1);
+        Arrays.fill(ends, 0, patternCount, -1);
+        if (programLength > 0) {
+            run(input, starts, ends, selected, scratch.get());
+        }
+        if (fallbackCount > 0) {
+            for (int p = 0; p < patternCount; p++) {
+                if (fallbackPatterns[p] != null && (selected == null || selected[p])) {
+                    Matcher matcher = fallbackPatterns[p].matcher(input);
+                    if (matcher.find()) {
+                        starts[p] = matcher.start();
+                        ends[p] = matcher.end();
+                    }
+                }
+            }
+        }
+    }
+
+    // ==================== EXECUTION ====================
+
+    /**
+     * Reusable per-thread state for one run
+     */
+    private static class Scratch {
+        int[] currentPcs, currentStarts, nextPcs, nextStarts;
+        int currentCount, nextCount;
+        final int[] onList;
+        int listMark;
+        final int[] cutoff;
+        final boolean[] found;
+
+        Scratch(int programLength, int patternCount) {
+            int size = Math.max(1, programLength);
+            currentPcs = new int[size];
+            currentStarts = new int[size];
+            nextPcs = new int[size];
+            nextStarts = new int[size];
+            onList = new int[size];
+            cutoff = new int[patternCount];
+            found = new boolean[patternCount];
+        }
+
+        void swap() {
+            int[] pcs = currentPcs; currentPcs = nextPcs; nextPcs = pcs;
+            int[] st = currentStarts; currentStarts = nextStarts; nextStarts = st;
+            currentCount = nextCount;
+            nextCount = 0;
+        }
+    }
+
+    /**
+     * Runs every pattern in lockstep (Pike VM). Threads are kept in priority order
+     * per pattern, so each pattern reports the same leftmost, first-alternative
+     * match a backtracking Matcher.find() would.
+     */
+    private void run(String input, int[] starts, int[] ends, boolean[] selected, Scratch s) {
+        int length = input.length();
+        Arrays.fill(s.found, false);
+        Arrays.fill(s.cutoff, 0);
+        int remaining = patternCount - fallbackCount;
+        if (selected != null) {
+            for (int p = 0; p < patternCount; p++) {
+                if (!selected[p] && patternStart[p] >= 0) {
+                    s.found[p] = true;
+                    remaining--;
+                }
+            }
+        }
+
+        s.currentCount = 0;
+        s.nextCount = 0;
+        s.listMark++;
+        int step = 0;
+        int position = 0;
+        while (true) {
+            step++;
+            int codePoint = position < length ? input.codePointAt(position) : -1;
+
+            // Seed new threads (lowest priority) for patterns that have not matched yet
+            if (remaining > 0) {
+                seed(s, seedsAlways, input, position);
+                if (codePoint >= 0) {
+                    seed(s, codePoint < 128 ? seedsByAscii[codePoint] : seedsNonAscii, input, position);
+                }
+            }
+            if (s.currentCount == 0 && (remaining == 0 || codePoint < 0)) {
+                break;
+            }
+
+            int next = codePoint < 0 ? position : position + Character.charCount(codePoint);
+            s.listMark++;
+            for (int i = 0; i < s.currentCount; i++) {
+                int pc = s.currentPcs[i];
+                int pattern = instructionPattern[pc];
+                if (s.cutoff[pattern] == step) {
+                    continue; // lower priority than a match found this step
+                }
+                int start = s.currentStarts[i];
+                switch (op[pc]) {
+                    case MATCH:
+                        if (!s.found[pattern]) {
+                            s.found[pattern] = true;
+                            remaining--;
+                        }
+                        starts[pattern] = start;
+                        ends[pattern] = position;
+                        s.cutoff[pattern] = step;
+                        break;
+                    case CHAR:
+                        if (codePoint >= 0 && charMatches(argX[pc], codePoint)) {
+                            addThread(s, pc + 1, start, input, next);
+                        }
+                        break;
+                    case ANY:
+                        if (codePoint >= 0 && !isLineTerminator(codePoint)) {
+                            addThread(s, pc + 1, start, input, next);
+                        }
+                        break;
+                    case CLASS:
+                        if (codePoint >= 0 && classes.get(argX[pc]).matches(codePoint, caseInsensitive)) {
+                            addThread(s, pc + 1, start, input, next);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            s.swap();
+            if (codePoint < 0) {
+                break;
+            }
+            position = next;
+        }
+    }
+
+    private void seed(Scratch s, int[] seeds, String input, int position) {
+        for (int pattern : seeds) {
+            if (!s.found[pattern]) {
+                addThreadCurrent(s, patternStart[pattern], position, input, position);
+            }
+        }
+    }
+
+    /**
+     * Adds a thread to the list being built for the next position, following
+     * jumps, splits and assertions
+     */
+    private void addThread(Scratch s, int pc, int start, String input, int position) {
+        if (s.onList[pc] == s.listMark) {
+            return;
+        }
+        s.onList[pc] = s.listMark;
+        switch (op[pc]) {
+            case JMP:
+                addThread(s, argX[pc], start, input, position);
+                return;
+            case SPLIT:
+                addThread(s, argX[pc], start, input, position);
+                addThread(s, argY[pc], start, input, position);
+                return;
+            case BOL:
+            case EOL:
+            case WORD_BOUNDARY:
+            case NOT_WORD_BOUNDARY:
+                if (assertionHolds(op[pc], input, position)) {
+                    addThread(s, pc + 1, start, input, position);
+                }
+                return;
+            case CHAR:
+                // Threads that cannot consume the next character would die on the next step
+                if (position >= input.length() || !charMatches(argX[pc], input.codePointAt(position))) {
+                    return;
+                }
+                s.nextPcs[s.nextCount] = pc;
+                s.nextStarts[s.nextCount] = start;
+                s.nextCount++;
+                return;
+            default:
+                s.nextPcs[s.nextCount] = pc;
+                s.nextStarts[s.nextCount] = start;
+                s.nextCount++;
+        }
+    }
+
+    /**
+     * Same as addThread, but appends to the list for the current position (used for seeding)
+     */
+    private void addThreadCurrent(Scratch s, int pc, int start, String input, int position) {
+        int[] pcs = s.nextPcs, starts = s.nextStarts;
+        int count = s.nextCount;
+        s.nextPcs = s.currentPcs;
+        s.nextStarts = s.currentStarts;
+        s.nextCount = s.currentCount;
+        addThread(s, pc, start, input, position);
+        s.currentPcs = s.nextPcs;
+        s.currentStarts = s.nextStarts;
+        s.currentCount = s.nextCount;
+        s.nextPcs = pcs;
+        s.nextStarts = starts;
+        s.nextCount = count;
+    }
+
+    private boolean charMatches(int literal, int codePoint) {
+        if (literal == codePoint) {
+            return true;
+        }
+        return caseInsensitive && codePoint < 128 && literal < 128
+            && Character.isLetter(literal) && asciiLower(literal) == asciiLower(codePoint);
+    }
+
+    private static int asciiLower(int c) {
+        return (c >= 'A' && c <= 'Z') ? c + 32 : c;
+    }
+
+    private static boolean isLineTerminator(int c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isWord(int c) {
+        if (UNICODE_WORD_BOUNDARY) {
+            return c == '_' || Character.isLetterOrDigit(c);
+        }
+        return c == '_' || (c < 128 && Character.isLetterOrDigit(c));
+    }
+
+    private static boolean assertionHolds(int assertion, String input, int position) {
+        int length = input.length();
+        switch (assertion) {
+            case BOL:
+                return position == 0;
+            case EOL:
+                // Without MULTILINE, $ also matches before a final line terminator
+                if (position == length) {
+                    return true;
+                }
+                if (position == length - 2) {
+                    return input.charAt(position) == '\r' && input.charAt(position + 1) == '\n';
+                }
+                if (position == length - 1) {
+                    char c = input.charAt(position);
+                    if (c == '\n' && position > 0 && input.charAt(position - 1) == '\r') {
+                        return false;
+                    }
+                    return isLineTerminator(c);
+                }
+                return false;
+            default:
+                boolean left = position > 0 && isWord(input.codePointBefore(position));
+                boolean right = position < length && isWord(input.codePointAt(position));
+                return (left != right) == (assertion == WORD_BOUNDARY);
+        }
+    }
+
+    // ==================== COMPILATION ====================
+
+    private void compile(Node node, int pattern) {
+        switch (node.type) {
+            case Node.LITERAL:
+                emit(CHAR, node.value, 0, pattern);
+                break;
+            case Node.ANY:
+                emit(ANY, 0, 0, pattern);
+                break;
+            case Node.CLASS:
+                classes.add(node.charClass);
+                emit(CLASS, classes.size() - 1, 0, pattern);
+                break;
+            case Node.ASSERT:
+                emit(node.value, 0, 0, pattern);
+                break;
+            case Node.SEQUENCE:
+                for (Node child : node.children) {
+                    compile(child, pattern);
+                }
+                break;
+            case Node.ALTERNATION: {
+                List<Integer> jumps = new ArrayList<>();
+                for (int i = 0; i < node.children.size(); i++) {
+                    if (i < node.children.size() - 1) {
+                        int split = emit(SPLIT, 0, 0, pattern);
+                        argX[split] = programLength;
+                        compile(node.children.get(i), pattern);
+                        jumps.add(emit(JMP, 0, 0, pattern));
+                        argY[split] = programLength;
+                    } else {
+                        compile(node.children.get(i), pattern);
+                    }
+                }
+                for (int jump : jumps) {
+                    argX[jump] = programLength;
+                }
+                break;
+            }
+            case Node.REPEAT: {
+                Node body = node.children.get(0);
+                if (node.min == 0 && node.max == 1) {
+                    int split = emit(SPLIT, 0, 0, pattern);
+                    int bodyStart = programLength;
+                    compile(body, pattern);
+                    setSplit(split, bodyStart, programLength, node.greedy);
+                } else if (node.min == 0) {
+                    int split = emit(SPLIT, 0, 0, pattern);
+                    int bodyStart = programLength;
+                    compile(body, pattern);
+                    emit(JMP, split, 0, pattern);
+                    setSplit(split, bodyStart, programLength, node.greedy);
+                } else {
+                    int bodyStart = programLength;
+                    compile(body, pattern);
+                    int split = emit(SPLIT, 0, 0, pattern);
+                    setSplit(split, bodyStart, programLength, node.greedy);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private void setSplit(int split, int body, int exit, boolean greedy) {
+        argX[split] = greedy ? body : exit;
+        argY[split] = greedy ? exit : body;
+    }
+
+    private int emit(int opcode, int x, int y, int pattern) {
+        if (programLength == op.length) {
+            int size = op.length * 2;
+            op = Arrays.copyOf(op, size);
+            argX = Arrays.copyOf(argX, size);
+            argY = Arrays.copyOf(argY, size);
+            instructionPattern = Arrays.copyOf(instructionPattern, size);
+        }
+        op[programLength] = opcode;
+        argX[programLength] = x;
+        argY[programLength] = y;
+        instructionPattern[programLength] = pattern;
+        return programLength++;
+    }
+
+    /**
+     * Works out which first characters can start each pattern, so a pattern is
+     * only seeded at positions where it could match
+     */
+    private void buildSeedTables() {
+        List<List<Integer>> byAscii = new ArrayList<>();
+        for (int c = 0; c < 128; c++) {
+            byAscii.add(new ArrayList<>());
+        }
+        List<Integer> nonAscii = new ArrayList<>();
+        List<Integer> always = new ArrayList<>();
+
+        for (int p = 0; p < patternCount; p++) {
+            if (patternStart[p] < 0) {
+                continue;
+            }
+            boolean[] first = new boolean[128];
+            boolean[] flags = new boolean[2]; // [0] non-ASCII possible, [1] can match empty
+            collectFirst(patternStart[p], first, flags, new HashSet<>());
+            if (flags[1]) {
+                always.add(p);
+                continue;
+            }
+            for (int c = 0; c < 128; c++) {
+                if (first[c]) {
+                    byAscii.get(c).add(p);
+                }
+            }
+            if (flags[0]) {
+                nonAscii.add(p);
+            }
+        }
+        for (int c = 0; c < 128; c++) {
+            seedsByAscii[c] = toArray(byAscii.get(c));
+        }
+        seedsNonAscii = toArray(nonAscii);
+        seedsAlways = toArray(always);
+    }
+
+    private void collectFirst(int pc, boolean[] first, boolean[] flags, Set<Integer> visited) {
+        if (!visited.add(pc)) {
+            return;
+        }
+        switch (op[pc]) {
+            case JMP:
+                collectFirst(argX[pc], first, flags, visited);
+                break;
+            case SPLIT:
+                collectFirst(argX[pc], first, flags, visited);
+                collectFirst(argY[pc], first, flags, visited);
+                break;
+            case BOL:
+            case EOL:
+            case WORD_BOUNDARY:
+            case NOT_WORD_BOUNDARY:
+                collectFirst(pc + 1, first, flags, visited);
+                break;
+            case MATCH:
+                flags[1] = true;
+                break;
+            case CHAR:
+                for (int c = 0; c < 128; c++) {
+                    first[c] |= charMatches(argX[pc], c);
+                }
+                flags[0] |= argX[pc] >= 128;
+                break;
+            case ANY:
+                Arrays.fill(first, true);
+                flags[0] = true;
+                break;
+            case CLASS:
+                for (int c = 0; c < 128; c++) {
+                    first[c] |= classes.get(argX[pc]).matches(c, caseInsensitive);
+                }
+                flags[0] = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    // ==================== LITERAL EXTRACTION ====================
+
+    private static final int MAX_EXACT_STRINGS = 16;
+    private static final int MAX_CLASS_EXPANSION = 8;
+
+    /**
+     * Works out literals one of which every match of the regex must contain, so a
+     * keyword scan can rule the pattern out before it is evaluated. With
+     * CASE_INSENSITIVE the literals are ASCII-lowercased.
+     * @return the literals, or null if the pattern has no usable requirement or
+     *         uses syntax outside the supported subset
+     */
+    static Set<String> requiredLiterals(String regex, int flags) {
+        Node node;
+        try {
+            node = new Parser(regex).parse();
+        } catch (UnsupportedOperationException | StringIndexOutOfBoundsException e) {
+            return null;
+        }
+        return new LiteralAnalysis((flags & Pattern.CASE_INSENSITIVE) != 0, MAX_EXACT_STRINGS).required(node);
+    }
+
+    /**
+     * Expands a regex that matches a finite set of strings, such as an alternation
+     * of phrases. Assertions (\b, ^, $) are dropped. With CASE_INSENSITIVE the
+     * strings are ASCII-lowercased.
+     * @return the strings, or null if there are more than maxStrings, infinitely
+     *         many, or the pattern uses syntax outside the supported subset
+     */
+    static Set<String> exactStrings(String regex, int flags, int maxStrings) {
+        Node node;
+        try {
+            node = new Parser(regex).parse();
+        } catch (UnsupportedOperationException | StringIndexOutOfBoundsException e) {
+            return null;
+        }
+        return new LiteralAnalysis((flags & Pattern.CASE_INSENSITIVE) != 0, maxStrings).exact(node);
+    }
+
+    /**
+     * Lowercases ASCII letters, the only case folding CASE_INSENSITIVE does without UNICODE_CASE
+     */
+    static int foldAscii(int c) {
+        return c >= 'A' && c <= 'Z' ? c + 32 : c;
+    }
+
+    /**
+     * Per node, either the exact (small, finite) set of strings it matches, or
+     * literals one of which any match must contain. Assertions match "".
+     */
+    private static class LiteralAnalysis {
+        private final boolean caseInsensitive;
+        private final int maxExact;
+
+        LiteralAnalysis(boolean caseInsensitive, int maxExact) {
+            this.caseInsensitive = caseInsensitive;
+            this.maxExact = maxExact;
+        }
+
+        /** Required literals of a node, or null if it has none */
+        Set<String> required(Node node) {
+            Set<String> exact = exact(node);
+            if (exact != null) {
+                return exact.contains("") ? null : exact;
+            }
+            switch (node.type) {
+                case Node.SEQUENCE:
+                    return requiredOfSequence(node);
+                case Node.ALTERNATION: {
+                    Set<String> union = new HashSet<>();
+                    for (Node child : node.children) {
+                        Set<String> childRequired = required(child);
+                        if (childRequired == null) {
+                            return null;
+                        }
+                        union.addAll(childRequired);
+                    }
+                    return union;
+                }
+                case Node.REPEAT:
+                    return node.min > 0 ? required(node.children.get(0)) : null;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Concatenates runs of exact children while their cross product stays small
+         * and keeps the most selective requirement among the runs and the other children
+         */
+        private Set<String> requiredOfSequence(Node node) {
+            Set<String> best = null;
+            Set<String> run = Collections.singleton("");
+            for (Node child : node.children) {
+                Set<String> childExact = exact(child);
+                if (childExact != null && run.size() * childExact.size() <= maxExact) {
+                    run = concat(run, childExact);
+                    continue;
+                }
+                best = moreSelective(best, run.contains("") ? null : run);
+                if (childExact != null) {
+                    run = childExact;
+                } else {
+                    best = moreSelective(best, required(child));
+                    run = Collections.singleton("");
+                }
+            }
+            return moreSelective(best, run.contains("") ? null : run);
+        }
+
+        /** Exact strings a node matches, or null if there are too many or infinitely many */
+        Set<String> exact(Node node) {
+            switch (node.type) {
+                case Node.LITERAL:
+                    return Collections.singleton(new String(Character.toChars(fold(node.value))));
+                case Node.ASSERT:
+                    return Collections.singleton("");
+                case Node.CLASS:
+                    return expandClass(node.charClass);
+                case Node.SEQUENCE: {
+                    Set<String> strings = Collections.singleton("");
+                    for (Node child : node.children) {
+                        Set<String> childExact = exact(child);
+                        if (childExact == null || strings.size() * childExact.size() > maxExact) {
+                            return null;
+                        }
+                        strings = concat(strings, childExact);
+                    }
+                    return strings;
+                }
+                case Node.ALTERNATION: {
+                    Set<String> strings = new HashSet<>();
+                    for (Node child : node.children) {
+                        Set<String> childExact = exact(child);
+                        if (childExact == null) {
+                            return null;
+                        }
+                        strings.addAll(childExact);
+                        if (strings.size() > maxExact) {
+                            return null;
+                        }
+                    }
+                    return strings;
+                }
+                case Node.REPEAT: {
+                    Set<String> childExact = node.max == 1 ? exact(node.children.get(0)) : null;
+                    if (childExact == null || (node.min == 0 && childExact.size() >= maxExact)) {
+                        return null;
+                    }
+                    Set<String> strings = new HashSet<>(childExact);
+                    if (node.min == 0) {
+                        strings.add("");
+                    }
+                    return strings;
+                }
+                default:
+                    return null;
+            }
+        }
+
+        private Set<String> expandClass(CharClass charClass) {
+            if (charClass.negated) {
+                return null;
+            }
+            Set<String> strings = new HashSet<>();
+            for (int[] range : charClass.ranges) {
+                if (range[1] - range[0] >= MAX_CLASS_EXPANSION) {
+                    return null;
+                }
+                for (int c = range[0]; c <= range[1]; c++) {
+                    strings.add(new String(Character.toChars(fold(c))));
+                }
+                if (strings.size() > MAX_CLASS_EXPANSION) {
+                    return null;
+                }
+            }
+            return strings;
+        }
+
+        private int fold(int c) {
+            return caseInsensitive ? foldAscii(c) : c;
+        }
+
+        private static Set<String> concat(Set<String> prefixes, Set<String> suffixes) {
+            Set<String> strings = new HashSet<>();
+            for (String prefix : prefixes) {
+                for (String suffix : suffixes) {
+                    strings.add(prefix + suffix);
+                }
+            }
+            return strings;
+        }
+
+        /**
+         * Prefers the requirement whose shortest literal is longest (rarer in text),
+         * then the one with fewer literals
+         */
+        private static Set<String> moreSelective(Set<String> a, Set<String> b) {
+            if (a == null) {
+                return b;
+            }
+            if (b == null) {
+                return a;
+            }
+            int shortestA = shortest(a);
+            int shortestB = shortest(b);
+            if (shortestA != shortestB) {
+                return shortestA > shortestB ? a : b;
+            }
+            return a.size() <= b.size() ? a : b;
+        }
+
+        private static int shortest(Set<String> strings) {
+            int shortest = Integer.MAX_VALUE;
+            for (String s : strings) {
+                shortest = Math.min(shortest, s.length());
+            }
+            return shortest;
+        }
+    }
+
+    // ==================== PARSING ====================
+
+    /**
+     * Character class as a list of inclusive ranges
+     */
+    private static class CharClass {
+        final List<int[]> ranges = new ArrayList<>();
+        boolean negated;
+
+        void add(int from, int to) {
+            ranges.add(new int[] { from, to });
+        }
+
+        boolean contains(int c) {
+            for (int[] range : ranges) {
+                if (c >= range[0] && c <= range[1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean matches(int c, boolean caseInsensitive) {
+            boolean in = contains(c);
+            if (!in && caseInsensitive && c < 128 && Character.isLetter(c)) {
+                in = contains(Character.isUpperCase(c) ? c + 32 : c - 32);
+            }
+            return in != negated;
+        }
+    }
+
+    /**
+     * Parsed regex node
+     */
+    private static class Node {
+        static final int LITERAL = 0, ANY = 1, CLASS = 2, ASSERT = 3, SEQUENCE = 4, ALTERNATION = 5, REPEAT = 6;
+
+        final int type;
+        int value;
+        CharClass charClass;
+        List<Node> children = new ArrayList<>();
+        int min, max;
+        boolean greedy = true;
+
+        Node(int type) {
+            this.type = type;
+        }
+
+        boolean canBeEmpty() {
+            switch (type) {
+                case ASSERT:
+                    return true;
+                case SEQUENCE:
+                    for (Node child : children) {
+                        if (!child.canBeEmpty()) {
+                            return false;
+                        }
+                    }
+                    return true;
+                case ALTERNATION:
+                    for (Node child : children) {
+                        if (child.canBeEmpty()) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case REPEAT:
+                    return min == 0 || children.get(0).canBeEmpty();
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Recursive-descent parser for the supported subset; throws
+     * UnsupportedOperationException for anything else
+     */
+    private static class Parser {
+        private final String regex;
+        private int position;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Node parse() {
+            Node node = parseAlternation();
+            if (position < regex.length()) {
+                throw new UnsupportedOperationException("unbalanced ')'");
+            }
+            return node;
+        }
+
+        private Node parseAlternation() {
+            Node first = parseSequence();
+            if (!peek('|')) {
+                return first;
+            }
+            Node alternation = new Node(Node.ALTERNATION);
+            alternation.children.add(first);
+            while (peek('|')) {
+                position++;
+                alternation.children.add(parseSequence());
+            }
+            return alternation;
+        }
+
+        private Node parseSequence() {
+            Node sequence = new Node(Node.SEQUENCE);
+            while (position < regex.length() && !peek('|') && !peek(')')) {
+                sequence.children.add(parseRepeat());
+            }
+            return sequence;
+        }
+
+        private Node parseRepeat() {
+            Node atom = parseAtom();
+            while (position < regex.length()) {
+                char c = regex.charAt(position);
+                if (c != '?' && c != '*' && c != '+') {
+                    if (c == '{') {
+                        throw new UnsupportedOperationException("bounded repeat");
+                    }
+                    break;
+                }
+                position++;
+                if (atom.type == Node.ASSERT) {
+                    throw new UnsupportedOperationException("quantified assertion");
+                }
+                Node repeat = new Node(Node.REPEAT);
+                repeat.children.add(atom);
+                repeat.min = c == '+' ? 1 : 0;
+                repeat.max = c == '?' ? 1 : Integer.MAX_VALUE;
+                if (peek('?')) {
+                    position++;
+                    repeat.greedy = false;
+                } else if (peek('+')) {
+                    throw new UnsupportedOperationException("possessive quantifier");
+                }
+                if (repeat.max > 1 && atom.canBeEmpty()) {
+                    throw new UnsupportedOperationException("repeat of empty-matching group");
+                }
+                atom = repeat;
+            }
+            return atom;
+        }
+
+        private Node parseAtom() {
+            char c = regex.charAt(position++);
+            switch (c) {
+                case '(': {
+                    if (peek('?')) {
+                        if (position + 1 < regex.length() && regex.charAt(position + 1) == ':') {
+                            position += 2;
+                        } else {
+                            throw new UnsupportedOperationException("special group");
+                        }
+                    }
+                    Node group = parseAlternation();
+                    if (!peek(')')) {
+                        throw new UnsupportedOperationException("unclosed group");
+                    }
+                    position++;
+                    return group;
+                }
+                case '[':
+                    return classNode(parseClass());
+                case '.':
+                    return new Node(Node.ANY);
+                case '^':
+                    return assertion(BOL);
+                case '$':
+                    return assertion(EOL);
+                case '\\':
+                    return parseEscape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                case ')':
+                    throw new UnsupportedOperationException("dangling metacharacter");
+                default:
+                    if (Character.isHighSurrogate(c) && position < regex.length()) {
+                        int codePoint = regex.codePointAt(position - 1);
+                        position++;
+                        return literal(codePoint);
+                    }
+                    return literal(c);
+            }
+        }
+
+        private Node parseEscape() {
+            if (position >= regex.length()) {
+                throw new UnsupportedOperationException("trailing backslash");
+            }
+            char c = regex.charAt(position++);
+            switch (c) {
+                case 'b': return assertion(WORD_BOUNDARY);
+                case 'B': return assertion(NOT_WORD_BOUNDARY);
+                case 'd': case 'D': case 'w': case 'W': case 's': case 'S': {
+                    CharClass charClass = new CharClass();
+                    addShorthand(charClass, Character.toLowerCase(c));
+                    charClass.negated = Character.isUpperCase(c);
+                    return classNode(charClass);
+                }
+                default:
+                    return literal(escapedLiteral(c));
+            }
+        }
+
+        private CharClass parseClass() {
+            CharClass charClass = new CharClass();
+            if (peek('^')) {
+                position++;
+                charClass.negated = true;
+            }
+            boolean first = true;
+            while (true) {
+                if (position >= regex.length()) {
+                    throw new UnsupportedOperationException("unclosed class");
+                }
+                char c = regex.charAt(position);
+                if (c == ']' && !first) {
+                    position++;
+                    return charClass;
+                }
+                if ((c == ']' && first) || c == '[' || (c == '&' && position + 1 < regex.length() && regex.charAt(position + 1) == '&')) {
+                    throw new UnsupportedOperationException("nested class");
+                }
+                first = false;
+                position++;
+                int from;
+                if (c == '\\') {
+                    char e = regex.charAt(position++);
+                    if (e == 'd' || e == 'w' || e == 's') {
+                        addShorthand(charClass, e);
+                        continue;
+                    }
+                    from = escapedLiteral(e);
+                } else {
+                    from = c;
+                }
+                if (peek('-') && position + 1 < regex.length() && regex.charAt(position + 1) != ']') {
+                    position++;
+                    char t = regex.charAt(position++);
+                    int to = t == '\\' ? escapedLiteral(regex.charAt(position++)) : t;
+                    charClass.add(from, to);
+                } else {
+                    charClass.add(from, from);
+                }
+            }
+        }
+
+        private static void addShorthand(CharClass charClass, char shorthand) {
+            switch (shorthand) {
+                case 'd':
+                    charClass.add('0', '9');
+                    break;
+                case 'w':
+                    charClass.add('a', 'z');
+                    charClass.add('A', 'Z');
+                    charClass.add('0', '9');
+                    charClass.add('_', '_');
+                    break;
+                default:
+                    charClass.add(' ', ' ');
+                    charClass.add('\t', '\r');
+                    break;
+            }
+        }
+
+        private static int escapedLiteral(char c) {
+            switch (c) {
+                case 'n': return '\n';
+                case 't': return '\t';
+                case 'r': return '\r';
+                case 'f': return '\f';
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw new UnsupportedOperationException("escape \\" + c);
+                    }
+                    return c;
+            }
+        }
+
+        private boolean peek(char c) {
+            return position < regex.length() && regex.charAt(position) == c;
+        }
+
+        private static Node literal(int c) {
+            Node node = new Node(Node.LITERAL);
+            node.value = c;
+            return node;
+        }
+
+        private static Node assertion(int opcode) {
+            Node node = new Node(Node.ASSERT);
+            node.value = opcode;
+            return node;
+        }
+
+        private static Node classNode(CharClass charClass) {
+            Node node = new Node(Node.CLASS);
+            node.charClass = charClass;
+            return node;
+        }
+    }
+}
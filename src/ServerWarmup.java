@@ -0,0 +1,165 @@
+import java.util.*;
+
+/**
+ * Server Warm-up for VirtualXander
+ * Replays a synthetic corpus through a throwaway session before the server
+ * starts accepting, so the JIT has compiled the regex-heavy paths
+ * (IntentRecognizer, EmotionDetector, NaturalProcessor, ResponseRouter)
+ * before the first real user arrives.
+ */
+public class ServerWarmup {
+
+    /**
+     * Synthetic corpus covering greetings, wellbeing, school, gaming, emotions,
+     * slang and typos. Crisis phrases are left out so warm-up never logs a crisis.
+     */
+    private static final String[] CORPUS = {
+        "hello",
+        "hey, how are you doing?",
+        "what's your name?",
+        "i'm good thanks, hbu",
+        "not so good today, kinda tired",
+        "nothin much, just chilling",
+        "can you help with my math homework?",
+        "i need help studying for my physics test",
+        "i'm so stressed about exams",
+        "feeling a bit lonely lately",
+        "i'm really excited about the weekend!",
+        "i feel proud, i finally finished my project",
+        "let's play minecraft",
+        "any game recommendations?",
+        "i love playing valorant with my friends",
+        "tell me a story",
+        "tell me a joke lol",
+        "what do you think about music and art?",
+        "idk, ngl it's been a weird day tbh",
+        "i'm grateful for my family",
+        "my friend is mad at me and i don't know why",
+        "what should i do about my job?",
+        "how was your day?",
+        "that's cool, thanks",
+        "i feel overwhelmed with everything",
+        "wyd",
+        "i'm anxious about tomorrow",
+        "good morning",
+        "what's up",
+        "thanks, that really helps"
+    };
+
+    private static final int STEADY_WINDOW = 5;
+
+    private final int maxIterations;
+    private final long maxMillis;
+    private final double steadyTolerance;
+
+    private final List<Double> passAverages;
+    private int steadyAtIteration;
+    private long elapsedMillis;
+
+    /**
+     * @param maxIterations number of passes over the corpus
+     * @param maxMillis time limit for the whole warm-up
+     * @param steadyTolerance relative spread (e.g. 0.10) allowed across the last passes to call latency steady
+     */
+    public ServerWarmup(int maxIterations, long maxMillis, double steadyTolerance) {
+        this.maxIterations = maxIterations;
+        this.maxMillis = maxMillis;
+        this.steadyTolerance = steadyTolerance;
+        this.passAverages = new ArrayList<>();
+        this.steadyAtIteration = -1;
+    }
+
+    /**
+     * Creates a warm-up from server.warmup_iterations, server.warmup_max_ms and server.warmup_steady_tolerance
+     */
+    public static ServerWarmup fromConfiguration(Configuration config) {
+        return new ServerWarmup(
+            config.getIntProperty("server.warmup_iterations", 50),
+            config.getIntProperty("server.warmup_max_ms", 15000),
+            Double.parseDouble(config.getProperty("server.warmup_steady_tolerance", "0.10"))
+        );
+    }
+
+    /**
+     * Runs the corpus until the iteration count or the time limit is reached
+     */
+    public void run() {
+        long start = System.currentTimeMillis();
+        // Never journaled nor offered to topic discovery, so the synthetic corpus
+        // stays out of real sessions and discovered clusters
+        VirtualXanderCore session = new VirtualXanderCore(null);
+        session.getTopicClusteringSystem().setDiscovery(null);
+        NaturalProcessor naturalProcessor = new NaturalProcessor();
+        ResponseRouter responseRouter = new ResponseRouter();
+        List<String> history = new ArrayList<>();
+
+        for (int iteration = 1; iteration <= maxIterations; iteration++) {
+            long passStart = System.nanoTime();
+            for (String line : CORPUS) {
+                String response = session.processMessage(line);
+                naturalProcessor.process(line);
+
+                responseRouter.clearCandidates();
+                responseRouter.addCandidate(response != null ? response : "", "warmup");
+                responseRouter.addCandidate("I hear you. Tell me more.", "warmup");
+                responseRouter.selectBestResponse(line, "general", "neutral", "unknown", history);
+                responseRouter.detectEmotionalComplexity(line);
+
+                history.add(line);
+                if (history.size() > 10) {
+                    history.remove(0);
+                }
+            }
+            passAverages.add((System.nanoTime() - passStart) / 1_000_000.0 / CORPUS.length);
+
+            if (steadyAtIteration < 0 && isSteady()) {
+                steadyAtIteration = iteration;
+                Logger.getInstance().info("ServerWarmup", String.format(
+                    "Steady-state latency reached after %d iterations (%.2f ms/turn)",
+                    iteration, passAverages.get(passAverages.size() - 1)));
+            }
+            if (System.currentTimeMillis() - start >= maxMillis) {
+                break;
+            }
+        }
+        elapsedMillis = System.currentTimeMillis() - start;
+        session.stop();
+    }
+
+    /**
+     * Latency is steady once the last few pass averages are within the tolerance of each other
+     */
+    private boolean isSteady() {
+        if (passAverages.size() < STEADY_WINDOW) {
+            return false;
+        }
+        List<Double> recent = passAverages.subList(passAverages.size() - STEADY_WINDOW, passAverages.size());
+        double min = Collections.min(recent);
+        double max = Collections.max(recent);
+        return max <= min * (1.0 + steadyTolerance);
+    }
+
+    public boolean isSteadyStateReached() { return steadyAtIteration > 0; }
+    public int getSteadyAtIteration() { return steadyAtIteration; }
+    public int getIterationsRun() { return passAverages.size(); }
+    public long getElapsedMillis() { return elapsedMillis; }
+
+    public double getFirstPassAverageMs() {
+        return passAverages.isEmpty() ? 0.0 : passAverages.get(0);
+    }
+
+    public double getLastPassAverageMs() {
+        return passAverages.isEmpty() ? 0.0 : passAverages.get(passAverages.size() - 1);
+    }
+
+    /**
+     * Gets a one-line summary of the warm-up
+     */
+    public String getSummary() {
+        String steady = isSteadyStateReached()
+            ? "steady after " + steadyAtIteration + " iterations"
+            : "steady state not reached";
+        return String.format("Warm-up: %d iterations in %d ms, %.2f -> %.2f ms/turn, %s",
+            getIterationsRun(), elapsedMillis, getFirstPassAverageMs(), getLastPassAverageMs(), steady);
+    }
+}
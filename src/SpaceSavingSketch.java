@@ -0,0 +1,173 @@
+import java.util.*;
+
+/**
+ * Space-Saving Sketch for VirtualXander
+ * Heavy-hitter counts over an unbounded stream of strings in a fixed number of
+ * counters. When every counter is taken, a new item replaces the one with the
+ * smallest count and inherits that count as its error, so counts are
+ * overestimates by at most their error and count - error is a guaranteed
+ * lower bound. The smallest counter sits at the top of an indexed min-heap, so
+ * an offer is O(log capacity).
+ *
+ * Offers carry a turn number and an item is counted at most once per turn, so
+ * counts are the number of turns an item recurred in. Not thread-safe.
+ */
+public class SpaceSavingSketch {
+
+    private final int capacity;
+    private final Map<String, Integer> slots;
+    private final String[] items;
+    private final long[] counts;
+    private final long[] errors;
+    private final long[] lastTurns;
+    // Min-heap of slots by count, and each slot's position in it
+    private final int[] heap;
+    private final int[] heapPositions;
+    private int size;
+    private long evictions;
+
+    public SpaceSavingSketch(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.slots = new HashMap<>(this.capacity * 2);
+        this.items = new String[this.capacity];
+        this.counts = new long[this.capacity];
+        this.errors = new long[this.capacity];
+        this.lastTurns = new long[this.capacity];
+        this.heap = new int[this.capacity];
+        this.heapPositions = new int[this.capacity];
+    }
+
+    /**
+     * Counts one occurrence of an item in a turn; repeats within the same turn are ignored
+     * @return the item's guaranteed count (number of turns it certainly occurred in)
+     */
+    public long offer(String item, long turn) {
+        Integer existing = slots.get(item);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+            if (lastTurns[slot] == turn) {
+                return counts[slot] - errors[slot];
+            }
+            counts[slot]++;
+        } else if (size < capacity) {
+            slot = size;
+            items[slot] = item;
+            counts[slot] = 1;
+            errors[slot] = 0;
+            heap[size] = slot;
+            heapPositions[slot] = size;
+            size++;
+            slots.put(item, slot);
+            siftUp(heapPositions[slot]);
+        } else {
+            slot = heap[0];
+            slots.remove(items[slot]);
+            items[slot] = item;
+            errors[slot] = counts[slot];
+            counts[slot]++;
+            slots.put(item, slot);
+            evictions++;
+        }
+        lastTurns[slot] = turn;
+        siftDown(heapPositions[slot]);
+        return counts[slot] - errors[slot];
+    }
+
+    /**
+     * Estimated count, an overestimate by at most getError; 0 if the item is not tracked
+     */
+    public long getCount(String item) {
+        Integer slot = slots.get(item);
+        return slot != null ? counts[slot] : 0;
+    }
+
+    public long getError(String item) {
+        Integer slot = slots.get(item);
+        return slot != null ? errors[slot] : 0;
+    }
+
+    /**
+     * Count the item is certain to have reached
+     */
+    public long getGuaranteedCount(String item) {
+        Integer slot = slots.get(item);
+        return slot != null ? counts[slot] - errors[slot] : 0;
+    }
+
+    /**
+     * Tracked items with the largest estimated counts, largest first
+     */
+    public List<String> getTop(int limit) {
+        Integer[] order = new Integer[size];
+        for (int s = 0; s < size; s++) {
+            order[s] = s;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        List<String> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, size); i++) {
+            top.add(items[order[i]]);
+        }
+        return top;
+    }
+
+    public void clear() {
+        slots.clear();
+        Arrays.fill(items, null);
+        size = 0;
+        evictions = 0;
+    }
+
+    public int size() { return size; }
+
+    public int getCapacity() { return capacity; }
+
+    /**
+     * Gets sketch statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("capacity", capacity);
+        stats.put("tracked", size);
+        stats.put("evictions", evictions);
+        stats.put("minCount", size > 0 ? counts[heap[0]] : 0);
+        return stats;
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (counts[heap[parent]] <= counts[slot]) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(slot, position);
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[heap[child]] >= counts[slot]) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(slot, position);
+    }
+
+    private void place(int slot, int position) {
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.*;
+
+/**
+ * Sparse Term Vector for VirtualXander
+ * Term weights keyed by ids interned in a Vocabulary, kept as parallel sorted
+ * int/double arrays so dot products are a merge of two sorted lists. Products
+ * and norms take per-term weights (e.g. IDF) indexed by term id, so vectors
+ * can stay raw term frequencies while the weights change.
+ */
+public class SparseTermVector {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Words too common to say anything about a topic
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+        "a", "an", "the", "and", "but", "or", "nor", "in", "on", "at", "to", "for",
+        "of", "with", "by", "from", "about", "i", "you", "he", "she", "it", "we",
+        "they", "me", "him", "her", "us", "them", "my", "your", "his", "its",
+        "our", "their", "is", "am", "are", "was", "were", "be", "been", "being",
+        "have", "has", "had", "do", "does", "did", "will", "would", "could",
+        "should", "may", "might", "can", "must", "this", "that", "these", "those",
+        "what", "which", "who", "whom", "whose", "when", "where", "why", "how",
+        "all", "each", "every", "both", "few", "more", "most", "other", "some",
+        "such", "no", "not", "only", "own", "same", "so", "than", "too", "very",
+        "just", "also", "i'm", "it's", "don't", "really", "like"
+    ));
+
+    /**
+     * Interns terms into dense int ids
+     */
+    public static class Vocabulary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> terms = new ArrayList<>();
+
+        /**
+         * Gets the term's id, assigning the next one if it is new
+         */
+        public int intern(String term) {
+            Integer id = ids.get(term);
+            if (id == null) {
+                id = terms.size();
+                ids.put(term, id);
+                terms.add(term);
+            }
+            return id;
+        }
+
+        /**
+         * Gets the term's id, or -1 if it has never been interned
+         */
+        public int idOf(String term) {
+            Integer id = ids.get(term);
+            return id != null ? id : -1;
+        }
+
+        public String termOf(int id) { return terms.get(id); }
+
+        public int size() { return terms.size(); }
+    }
+
+    private int[] ids;
+    private double[] weights;
+    private int size;
+
+    public SparseTermVector() {
+        this.ids = new int[INITIAL_CAPACITY];
+        this.weights = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Term frequencies of a text. Terms are lowercased words without stop words and
+     * with a plural "s" dropped; with intern false, terms missing from the
+     * vocabulary are skipped since they cannot match any other vector.
+     */
+    public static SparseTermVector of(String text, Vocabulary vocabulary, boolean intern) {
+        SparseTermVector vector = new SparseTermVector();
+        forEachTerm(text, term -> {
+            int id = intern ? vocabulary.intern(term) : vocabulary.idOf(term);
+            if (id >= 0) {
+                vector.add(id, 1.0);
+            }
+        });
+        return vector;
+    }
+
+    /**
+     * Distinct terms of a text, normalized as in of()
+     */
+    public static Set<String> termSet(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        forEachTerm(text, terms::add);
+        return terms;
+    }
+
+    private static void forEachTerm(String text, java.util.function.Consumer<String> action) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int position = 0;
+        while (position < length) {
+            while (position < length && !isWordChar(text.charAt(position))) {
+                position++;
+            }
+            int start = position;
+            while (position < length && isWordChar(text.charAt(position))) {
+                position++;
+            }
+            if (position > start) {
+                String term = normalize(text.substring(start, position));
+                if (term != null) {
+                    action.accept(term);
+                }
+            }
+        }
+    }
+
+    private static String normalize(String word) {
+        String term = word.toLowerCase();
+        if (term.length() < 2 || STOP_WORDS.contains(term)) {
+            return null;
+        }
+        if (term.length() > 3 && term.endsWith("s") && !term.endsWith("ss")) {
+            term = term.substring(0, term.length() - 1);
+        }
+        return term;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '\'';
+    }
+
+    /**
+     * Adds weight to a term
+     * @return true if the term was not in the vector before
+     */
+    public boolean add(int id, double weight) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            weights[index] += weight;
+            return false;
+        }
+        int insertAt = -index - 1;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            weights = Arrays.copyOf(weights, size * 2);
+        }
+        System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+        System.arraycopy(weights, insertAt, weights, insertAt + 1, size - insertAt);
+        ids[insertAt] = id;
+        weights[insertAt] = weight;
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds scale times every term of other, e.g. to fold a message into a centroid
+     */
+    public void addAll(SparseTermVector other, double scale) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.ids[i], other.weights[i] * scale);
+        }
+    }
+
+    /**
+     * Multiplies every weight by factor and drops terms that fall below minWeight
+     */
+    public void scale(double factor, double minWeight) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            double weight = weights[i] * factor;
+            if (weight >= minWeight) {
+                ids[kept] = ids[i];
+                weights[kept] = weight;
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    public double get(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        return index >= 0 ? weights[index] : 0.0;
+    }
+
+    /**
+     * Dot product with every shared term weighted by termWeights[id] squared
+     */
+    public double dot(SparseTermVector other, double[] termWeights) {
+        double sum = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (ids[i] < other.ids[j]) {
+                i++;
+            } else if (ids[i] > other.ids[j]) {
+                j++;
+            } else {
+                double termWeight = termWeights[ids[i]];
+                sum += weights[i] * other.weights[j] * termWeight * termWeight;
+                i++;
+                j++;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Euclidean norm with every term weighted by termWeights[id]
+     */
+    public double norm(double[] termWeights) {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            double weighted = weights[i] * termWeights[ids[i]];
+            sum += weighted * weighted;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Cosine similarity under termWeights; 0 if either vector is empty
+     */
+    public double cosine(SparseTermVector other, double[] termWeights) {
+        double norms = norm(termWeights) * other.norm(termWeights);
+        return norms == 0 ? 0.0 : dot(other, termWeights) / norms;
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public int idAt(int index) { return ids[index]; }
+
+    public double weightAt(int index) { return weights[index]; }
+}
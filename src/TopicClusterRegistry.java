@@ -0,0 +1,66 @@
+import java.util.*;
+
+/**
+ * Topic Cluster Registry for VirtualXander
+ * Process-wide list of clusters discovered at runtime (see TopicDiscovery).
+ * Publishing copies the list and swaps it in, so sessions read it without
+ * locking; each TopicClusteringSystem compares the version with the one it
+ * last synced and copies in the clusters it does not have yet.
+ */
+public class TopicClusterRegistry {
+
+    private static final TopicClusterRegistry SHARED = new TopicClusterRegistry();
+
+    private volatile List<TopicClusteringSystem.TopicCluster> clusters = Collections.emptyList();
+    private volatile long version;
+
+    public static TopicClusterRegistry getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Publishes a cluster to every session; a cluster with the same id is replaced
+     */
+    public synchronized void publish(TopicClusteringSystem.TopicCluster cluster) {
+        List<TopicClusteringSystem.TopicCluster> updated = new ArrayList<>(clusters.size() + 1);
+        for (TopicClusteringSystem.TopicCluster existing : clusters) {
+            if (!existing.clusterId.equals(cluster.clusterId)) {
+                updated.add(existing);
+            }
+        }
+        updated.add(cluster);
+        clusters = Collections.unmodifiableList(updated);
+        version++;
+    }
+
+    /**
+     * Removes every published cluster; sessions keep the copies they already have
+     */
+    public synchronized void clear() {
+        clusters = Collections.emptyList();
+        version++;
+    }
+
+    /**
+     * Published clusters as templates; sessions copy them before use
+     */
+    public List<TopicClusteringSystem.TopicCluster> getClusters() {
+        return clusters;
+    }
+
+    public boolean contains(String clusterId) {
+        for (TopicClusteringSystem.TopicCluster cluster : clusters) {
+            if (cluster.clusterId.equals(clusterId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Incremented on every change
+     */
+    public long getVersion() {
+        return version;
+    }
+}
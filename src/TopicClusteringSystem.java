@@ -1,5 +1,4 @@
 import java.util.*;
-import java.util.regex.*;
 import java.util.stream.Collectors;
 
 /**
@@ -8,25 +7,68 @@ import java.util.stream.Collectors;
  */
 public class TopicClusteringSystem {
     
+    // Definition order is the clusters' priority when identified topics tie
     private Map<String, TopicCluster> topicClusters;
-    private Map<String, String> topicKeywords;
-    private Map<String, TopicCluster> activeClusters;
+    // Active clusters, least relevant at the root; evicted by decayed relevance
+    private ActiveClusterHeap activeClusters;
+    private List<TopicCluster> activeSnapshot;
     private int maxClusterHistory;
+    private long relevanceDecayMillis;
     private Random random;
+    // Keywords and related topics of every cluster; rebuilt after clusters change
+    private KeywordIndex keywordIndex;
+    
+    // Term space: clusters' term frequencies, seeded from their keywords and learned from
+    // the turns they win, with IDF over clusters recomputed only after terms change
+    private static final double LEARNING_RATE = 0.1;
+    private static final int MAX_CLUSTER_TERMS = 512;
+    // Rolling centroid of recent turns: older turns fade by CENTROID_DECAY per turn
+    private static final double CENTROID_DECAY = 0.7;
+    private static final double MIN_CENTROID_WEIGHT = 0.05;
+    private SparseTermVector.Vocabulary vocabulary;
+    private int[] documentFrequency;
+    private double[] idf;
+    private long idfVersion;
+    private boolean idfStale;
+    private SparseTermVector sessionCentroid;
+    
+    // Clusters discovered across sessions; synced when the registry version moves
+    private TopicClusterRegistry registry;
+    private long registryVersion;
+    // Where this session's turns are offered for discovery; null keeps them out
+    private TopicDiscovery discovery;
+    // Distinguishes this session's messages in topic discovery without identifying it
+    private final int sessionToken;
     
     public TopicClusteringSystem() {
-        this.topicClusters = new HashMap<>();
-        this.topicKeywords = new HashMap<>();
-        this.activeClusters = new HashMap<>();
-        this.maxClusterHistory = 5;
+        this.topicClusters = new LinkedHashMap<>();
+        Configuration config = Configuration.getInstance();
+        this.maxClusterHistory = Math.max(1, config.getIntProperty("topics.max_active_clusters", 5));
+        this.relevanceDecayMillis = Math.max(1, config.getIntProperty("topics.relevance_decay_minutes", 30)) * 60_000L;
+        this.activeClusters = new ActiveClusterHeap(maxClusterHistory + 1);
         this.random = new Random();
+        this.vocabulary = new SparseTermVector.Vocabulary();
+        this.documentFrequency = new int[64];
+        this.idf = new double[0];
+        this.idfStale = true;
+        this.sessionCentroid = new SparseTermVector();
+        this.registry = TopicClusterRegistry.getShared();
+        this.registryVersion = -1;
+        this.discovery = TopicDiscovery.getShared();
+        this.sessionToken = random.nextInt();
         initializeTopicClusters();
+        for (TopicCluster cluster : topicClusters.values()) {
+            cluster.decayMillis = relevanceDecayMillis;
+            seedTermVector(cluster);
+        }
     }
     
     /**
      * Topic cluster definition
      */
     public static class TopicCluster {
+        private static final long DEFAULT_DECAY_MILLIS = 30 * 60_000L;
+        
         String clusterId;
         String clusterName;
         List<String> relatedTopics;
@@ -34,6 +76,15 @@ public class TopicClusteringSystem {
         double relevanceScore;
         long lastActiveTime;
         int visitCount;
+        // Activations decayed exponentially with time constant decayMillis, as of lastActiveTime
+        double activationMass;
+        long decayMillis;
+        // Position in the active cluster heap, -1 when not active
+        int heapIndex;
+        SparseTermVector termVector;
+        // Norm of termVector under the IDF of termNormVersion, -1 when stale
+        double termNorm;
+        long termNormVersion;
         
         public TopicCluster(String clusterId, String clusterName, List<String> relatedTopics, List<String> keywords) {
             this.clusterId = clusterId;
@@ -43,23 +94,174 @@ public class TopicClusteringSystem {
             this.relevanceScore = 0.5;
             this.lastActiveTime = System.currentTimeMillis();
             this.visitCount = 0;
+            this.decayMillis = DEFAULT_DECAY_MILLIS;
+            this.heapIndex = -1;
+            this.termVector = new SparseTermVector();
+            this.termNorm = -1;
         }
         
         public void activate() {
-            this.lastActiveTime = System.currentTimeMillis();
+            activate(System.currentTimeMillis());
+        }
+        
+        void activate(long now) {
+            this.activationMass = getDecayedActivations(now) + 1.0;
+            this.lastActiveTime = Math.max(lastActiveTime, now);
             this.visitCount++;
         }
         
+        /**
+         * Activations so far, each counting exp(-age / decayMillis)
+         */
+        public double getDecayedActivations(long now) {
+            return activationMass * Math.exp(-Math.max(0, now - lastActiveTime) / (double) decayMillis);
+        }
+        
         public double getRelevanceScore() {
+            return getRelevanceScore(System.currentTimeMillis());
+        }
+        
+        double getRelevanceScore(long now) {
             // Recency boost
-            long timeSinceActive = System.currentTimeMillis() - lastActiveTime;
-            double recencyBoost = Math.max(0, 1.0 - (timeSinceActive / (1000 * 60 * 30))); // 30 minute decay
+            double recencyBoost = Math.exp(-Math.max(0, now - lastActiveTime) / (double) decayMillis);
             
             // Frequency boost
-            double frequencyBoost = Math.min(0.5, visitCount * 0.05);
+            double frequencyBoost = Math.min(0.5, getDecayedActivations(now) * 0.05);
             
             return Math.min(1.0, relevanceScore + recencyBoost + frequencyBoost);
         }
+        
+        /**
+         * Orders clusters by decayed activations at any common time: since every mass
+         * decays at the same rate, ln(mass) + lastActiveTime / decayMillis does not
+         * change until the cluster is activated again
+         */
+        double relevanceKey() {
+            return Math.log(activationMass) + lastActiveTime / (double) decayMillis;
+        }
+    }
+    
+    /**
+     * Indexed min-heap of active clusters by relevanceKey(). Keys only grow when a
+     * cluster is activated, so an update sifts down, and the most relevant cluster
+     * is tracked alongside the heap.
+     */
+    private static class ActiveClusterHeap {
+        private TopicCluster[] heap;
+        private int size;
+        private TopicCluster top;
+        
+        ActiveClusterHeap(int capacity) {
+            this.heap = new TopicCluster[capacity];
+        }
+        
+        /**
+         * Inserts a newly activated cluster or restores order after its key grew
+         */
+        void update(TopicCluster cluster) {
+            if (cluster.heapIndex < 0) {
+                if (size == heap.length) {
+                    heap = Arrays.copyOf(heap, size * 2);
+                }
+                heap[size] = cluster;
+                cluster.heapIndex = size;
+                size++;
+                siftUp(cluster.heapIndex);
+            } else {
+                siftDown(cluster.heapIndex);
+            }
+            if (top == null || cluster.relevanceKey() >= top.relevanceKey()) {
+                top = cluster;
+            }
+        }
+        
+        TopicCluster pollLeastRelevant() {
+            TopicCluster least = heap[0];
+            remove(least);
+            return least;
+        }
+        
+        void remove(TopicCluster cluster) {
+            int index = cluster.heapIndex;
+            if (index < 0) {
+                return;
+            }
+            size--;
+            TopicCluster last = heap[size];
+            heap[size] = null;
+            cluster.heapIndex = -1;
+            if (index < size) {
+                heap[index] = last;
+                last.heapIndex = index;
+                siftDown(index);
+                siftUp(last.heapIndex);
+            }
+            if (cluster == top) {
+                // Only when the last or the most relevant cluster leaves
+                top = null;
+                for (int i = 0; i < size; i++) {
+                    if (top == null || heap[i].relevanceKey() >= top.relevanceKey()) {
+                        top = heap[i];
+                    }
+                }
+            }
+        }
+        
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                heap[i].heapIndex = -1;
+                heap[i] = null;
+            }
+            size = 0;
+            top = null;
+        }
+        
+        private void siftUp(int index) {
+            TopicCluster cluster = heap[index];
+            double key = cluster.relevanceKey();
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (heap[parent].relevanceKey() <= key) {
+                    break;
+                }
+                place(heap[parent], index);
+                index = parent;
+            }
+            place(cluster, index);
+        }
+        
+        private void siftDown(int index) {
+            TopicCluster cluster = heap[index];
+            double key = cluster.relevanceKey();
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1].relevanceKey() < heap[child].relevanceKey()) {
+                    child++;
+                }
+                if (heap[child].relevanceKey() >= key) {
+                    break;
+                }
+                place(heap[child], index);
+                index = child;
+            }
+            place(cluster, index);
+        }
+        
+        private void place(TopicCluster cluster, int index) {
+            heap[index] = cluster;
+            cluster.heapIndex = index;
+        }
+        
+        int size() { return size; }
+        
+        TopicCluster top() { return top; }
+        
+        List<TopicCluster> toList() {
+            return new ArrayList<>(Arrays.asList(heap).subList(0, size));
+        }
     }
     
     /**
@@ -151,20 +353,52 @@ public class TopicClusteringSystem {
             Arrays.asList("life", "purpose", "meaning", "philosophy", "think", "believe", "opinion", "idea", "worldview", "values")
         );
         topicClusters.put("philosophy", philosophy);
-        
-        // Initialize keyword mappings
-        for (TopicCluster cluster : topicClusters.values()) {
-            for (String keyword : cluster.keywords) {
-                topicKeywords.put(keyword.toLowerCase(), cluster.clusterId);
+    }
+    
+    /**
+     * Adds (or replaces) a cluster; it is identified from the next message on
+     */
+    public void addCluster(TopicCluster cluster) {
+        TopicCluster replaced = topicClusters.put(cluster.clusterId, cluster);
+        cluster.decayMillis = relevanceDecayMillis;
+        if (replaced != null) {
+            activeClusters.remove(replaced);
+            activeSnapshot = null;
+            for (int i = 0; i < replaced.termVector.size(); i++) {
+                documentFrequency[replaced.termVector.idAt(i)]--;
             }
-            for (String topic : cluster.relatedTopics) {
-                topicKeywords.put(topic.toLowerCase(), cluster.clusterId);
+        }
+        seedTermVector(cluster);
+        keywordIndex = null;
+        idfStale = true;
+    }
+    
+    /**
+     * Copies in the registry's clusters this session does not have yet
+     */
+    private void syncDiscoveredClusters() {
+        long version = registry.getVersion();
+        for (TopicCluster published : registry.getClusters()) {
+            if (!topicClusters.containsKey(published.clusterId)) {
+                addCluster(new TopicCluster(published.clusterId, published.clusterName,
+                    new ArrayList<>(published.relatedTopics), new ArrayList<>(published.keywords)));
             }
         }
+        registryVersion = version;
+    }
+    
+    /**
+     * The built-in clusters, e.g. to tell discovered topics apart from known ones
+     */
+    static List<TopicCluster> defaultClusters() {
+        return new TopicClusteringSystem().getAllClusters();
     }
     
     /**
-     * Identifies topics in user input
+     * Identifies topics in user input. A cluster is found when one of its keywords or
+     * related topics appears as whole words, optionally inflected ("games" matches
+     * "game", "start" does not match "art"). Clusters come back with the most
+     * keyword hits first, ties in cluster definition order.
      */
     public List<String> identifyTopics(String input) {
         List<String> topics = new ArrayList<>();
@@ -172,32 +406,226 @@ public class TopicClusteringSystem {
             return topics;
         }
         
-        String lowerInput = input.toLowerCase();
-        Set<String> foundClusters = new HashSet<>();
+        if (registry.getVersion() != registryVersion) {
+            syncDiscoveredClusters();
+        }
+        KeywordIndex index = keywordIndex;
+        if (index == null) {
+            index = new KeywordIndex(topicClusters.values());
+            keywordIndex = index;
+        }
+        index.identify(input, topics);
         
-        // Check for direct keyword matches
-        for (String keyword : topicKeywords.keySet()) {
-            if (lowerInput.contains(keyword)) {
-                String clusterId = topicKeywords.get(keyword);
-                if (!foundClusters.contains(clusterId)) {
-                    foundClusters.add(clusterId);
-                    topics.add(clusterId);
+        return topics;
+    }
+    
+    /**
+     * Word trie over every cluster's keywords and related topics. Multi-word phrases
+     * are stored with single spaces between words, and a scan walks the trie once
+     * from each word start of the input.
+     */
+    static class KeywordIndex {
+        // Endings accepted after a keyword so that plurals and verb forms still match
+        private static final String[] INFLECTIONS = {"s", "es", "ed", "ing", "er", "ers"};
+        private static final char WORD_SEPARATOR = ' ';
+        
+        final String[] clusterIds;
+        private final char[][] edgeChars;
+        private final int[][] edgeTargets;
+        // Clusters whose keyword ends at each state
+        private final int[][] terminalClusters;
+        private final ThreadLocal<Scratch> scratch;
+        
+        /**
+         * Per-thread hit counts, cleared after every message
+         */
+        private static class Scratch {
+            final int[] hits;
+            final int[] found;
+            int foundCount;
+            
+            Scratch(int clusterCount) {
+                this.hits = new int[clusterCount];
+                this.found = new int[clusterCount];
+            }
+        }
+        
+        KeywordIndex(Collection<TopicCluster> clusters) {
+            this.clusterIds = new String[clusters.size()];
+            List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+            List<List<Integer>> terminals = new ArrayList<>();
+            trie.add(new TreeMap<>());
+            terminals.add(new ArrayList<>());
+            
+            int c = 0;
+            for (TopicCluster cluster : clusters) {
+                clusterIds[c] = cluster.clusterId;
+                List<String> phrases = new ArrayList<>(cluster.keywords);
+                phrases.addAll(cluster.relatedTopics);
+                for (String phrase : phrases) {
+                    String joined = joinWords(phrase);
+                    if (joined.isEmpty()) {
+                        continue;
+                    }
+                    int state = 0;
+                    for (int i = 0; i < joined.length(); i++) {
+                        Integer next = trie.get(state).get(joined.charAt(i));
+                        if (next == null) {
+                            next = trie.size();
+                            trie.add(new TreeMap<>());
+                            terminals.add(new ArrayList<>());
+                            trie.get(state).put(joined.charAt(i), next);
+                        }
+                        state = next;
+                    }
+                    if (!terminals.get(state).contains(c)) {
+                        terminals.get(state).add(c);
+                    }
                 }
+                c++;
             }
+            
+            int states = trie.size();
+            this.edgeChars = new char[states][];
+            this.edgeTargets = new int[states][];
+            this.terminalClusters = new int[states][];
+            for (int s = 0; s < states; s++) {
+                TreeMap<Character, Integer> edges = trie.get(s);
+                edgeChars[s] = new char[edges.size()];
+                edgeTargets[s] = new int[edges.size()];
+                int e = 0;
+                for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                    edgeChars[s][e] = edge.getKey();
+                    edgeTargets[s][e] = edge.getValue();
+                    e++;
+                }
+                List<Integer> terminal = terminals.get(s);
+                terminalClusters[s] = new int[terminal.size()];
+                for (int t = 0; t < terminal.size(); t++) {
+                    terminalClusters[s][t] = terminal.get(t);
+                }
+            }
+            int clusterCount = clusterIds.length;
+            this.scratch = ThreadLocal.withInitial(() -> new Scratch(clusterCount));
         }
         
-        // Check for pattern matches
-        for (TopicCluster cluster : topicClusters.values()) {
-            for (String pattern : cluster.keywords) {
-                if (Pattern.compile("\\b" + pattern + "\\b", Pattern.CASE_INSENSITIVE).matcher(lowerInput).find()) {
-                    if (!topics.contains(cluster.clusterId)) {
-                        topics.add(cluster.clusterId);
+        /**
+         * Adds the clusters found in the input to topics, most hits first, ties by index
+         */
+        void identify(String input, List<String> topics) {
+            Scratch s = scratch.get();
+            int length = input.length();
+            int position = 0;
+            while (position < length) {
+                while (position < length && !isWordChar(input.charAt(position))) {
+                    position++;
+                }
+                if (position >= length) {
+                    break;
+                }
+                walk(input, position, s);
+                while (position < length && isWordChar(input.charAt(position))) {
+                    position++;
+                }
+            }
+            
+            // Insertion sort; only a handful of clusters match one message
+            int[] found = s.found;
+            int[] hits = s.hits;
+            for (int i = 1; i < s.foundCount; i++) {
+                int cluster = found[i];
+                int j = i - 1;
+                while (j >= 0 && (hits[found[j]] < hits[cluster]
+                        || (hits[found[j]] == hits[cluster] && found[j] > cluster))) {
+                    found[j + 1] = found[j];
+                    j--;
+                }
+                found[j + 1] = cluster;
+            }
+            for (int i = 0; i < s.foundCount; i++) {
+                topics.add(clusterIds[found[i]]);
+                hits[found[i]] = 0;
+            }
+            s.foundCount = 0;
+        }
+        
+        private void walk(String input, int position, Scratch s) {
+            int length = input.length();
+            int state = 0;
+            while (true) {
+                // Consume the word, counting keywords that end at it or before an inflection
+                while (position < length && isWordChar(input.charAt(position))) {
+                    state = step(state, Character.toLowerCase(input.charAt(position)));
+                    if (state < 0) {
+                        return;
                     }
+                    position++;
+                    if (terminalClusters[state].length > 0 && isWordEnding(input, position)) {
+                        for (int cluster : terminalClusters[state]) {
+                            if (s.hits[cluster]++ == 0) {
+                                s.found[s.foundCount++] = cluster;
+                            }
+                        }
+                    }
+                }
+                while (position < length && !isWordChar(input.charAt(position))) {
+                    position++;
+                }
+                if (position >= length) {
+                    return;
+                }
+                state = step(state, WORD_SEPARATOR);
+                if (state < 0) {
+                    return;
                 }
             }
         }
         
-        return topics;
+        /**
+         * True if the word ends at position or only an inflection follows
+         */
+        private static boolean isWordEnding(String input, int position) {
+            int end = position;
+            while (end < input.length() && isWordChar(input.charAt(end))) {
+                end++;
+            }
+            if (end == position) {
+                return true;
+            }
+            for (String inflection : INFLECTIONS) {
+                if (inflection.length() == end - position && input.regionMatches(true, position, inflection, 0, inflection.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        private int step(int state, char c) {
+            int index = Arrays.binarySearch(edgeChars[state], c);
+            return index >= 0 ? edgeTargets[state][index] : -1;
+        }
+        
+        private static boolean isWordChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '\'';
+        }
+        
+        private static String joinWords(String phrase) {
+            StringBuilder joined = new StringBuilder();
+            boolean inWord = false;
+            for (int i = 0; i < phrase.length(); i++) {
+                char c = Character.toLowerCase(phrase.charAt(i));
+                if (isWordChar(c)) {
+                    if (!inWord && joined.length() > 0) {
+                        joined.append(WORD_SEPARATOR);
+                    }
+                    joined.append(c);
+                    inWord = true;
+                } else {
+                    inWord = false;
+                }
+            }
+            return joined.toString();
+        }
     }
     
     /**
@@ -229,31 +657,45 @@ public class TopicClusteringSystem {
      * Activates a topic cluster
      */
     public void activateCluster(String clusterId) {
+        activateCluster(clusterId, System.currentTimeMillis());
+    }
+    
+    /**
+     * Activates a topic cluster at the given time; once more clusters are active
+     * than topics.max_active_clusters, the one with the fewest decayed activations
+     * is dropped
+     */
+    void activateCluster(String clusterId, long now) {
         TopicCluster cluster = topicClusters.get(clusterId);
         if (cluster != null) {
-            cluster.activate();
-            activeClusters.put(clusterId, cluster);
+            cluster.activate(now);
+            activeClusters.update(cluster);
             
             // Maintain max history
             if (activeClusters.size() > maxClusterHistory) {
-                String oldestKey = activeClusters.entrySet().stream()
-                    .min(Comparator.comparingLong(e -> e.getValue().lastActiveTime))
-                    .map(Map.Entry::getKey)
-                    .orElse(null);
-                if (oldestKey != null) {
-                    activeClusters.remove(oldestKey);
-                }
+                activeClusters.pollLeastRelevant();
             }
+            activeSnapshot = null;
         }
     }
     
     /**
-     * Gets currently active topic clusters
+     * Gets currently active topic clusters, most relevant first
      */
     public List<TopicCluster> getActiveClusters() {
-        List<TopicCluster> clusters = new ArrayList<>(activeClusters.values());
-        clusters.sort((a, b) -> Long.compare(b.lastActiveTime, a.lastActiveTime));
-        return clusters;
+        if (activeSnapshot == null) {
+            List<TopicCluster> clusters = activeClusters.toList();
+            clusters.sort((a, b) -> Double.compare(b.relevanceKey(), a.relevanceKey()));
+            activeSnapshot = Collections.unmodifiableList(clusters);
+        }
+        return activeSnapshot;
+    }
+    
+    /**
+     * Gets the most relevant active cluster, or null if none is active
+     */
+    public TopicCluster getTopActiveCluster() {
+        return activeClusters.top();
     }
     
     /**
@@ -296,57 +738,190 @@ public class TopicClusteringSystem {
         return transitions;
     }
     
+    // ==================== TERM SPACE ====================
+    
+    private void seedTermVector(TopicCluster cluster) {
+        cluster.termVector = new SparseTermVector();
+        cluster.termNorm = -1;
+        List<String> phrases = new ArrayList<>(cluster.keywords);
+        phrases.addAll(cluster.relatedTopics);
+        for (String phrase : phrases) {
+            learnTerms(cluster, SparseTermVector.of(phrase, vocabulary, true), 1.0);
+        }
+    }
+    
+    private void learnTerms(TopicCluster cluster, SparseTermVector terms, double rate) {
+        for (int i = 0; i < terms.size(); i++) {
+            int id = terms.idAt(i);
+            if (cluster.termVector.get(id) == 0 && cluster.termVector.size() >= MAX_CLUSTER_TERMS) {
+                continue;
+            }
+            if (cluster.termVector.add(id, terms.weightAt(i) * rate)) {
+                if (id >= documentFrequency.length) {
+                    documentFrequency = Arrays.copyOf(documentFrequency, Math.max(id + 1, documentFrequency.length * 2));
+                }
+                documentFrequency[id]++;
+                idfStale = true;
+            }
+        }
+        cluster.termNorm = -1;
+    }
+    
+    /**
+     * IDF of every interned term over the clusters, recomputed in place only after
+     * terms changed; the array grows by doubling like documentFrequency
+     */
+    private double[] currentIdf() {
+        if (idfStale || idf.length < vocabulary.size()) {
+            double clusters = topicClusters.size();
+            int needed = Math.max(vocabulary.size(), documentFrequency.length);
+            if (idf.length < needed) {
+                idf = new double[Math.max(needed, idf.length * 2)];
+            }
+            for (int t = 0; t < idf.length; t++) {
+                int df = t < documentFrequency.length ? documentFrequency[t] : 0;
+                idf[t] = Math.log((1.0 + clusters) / (1.0 + df)) + 1.0;
+            }
+            idfVersion++;
+            idfStale = false;
+        }
+        return idf;
+    }
+    
+    private double clusterNorm(TopicCluster cluster, double[] weights) {
+        if (cluster.termNorm < 0 || cluster.termNormVersion != idfVersion) {
+            cluster.termNorm = cluster.termVector.norm(weights);
+            cluster.termNormVersion = idfVersion;
+        }
+        return cluster.termNorm;
+    }
+    
+    /**
+     * Cosine similarity between a term vector and a cluster's TF-IDF vector
+     */
+    private double clusterCosine(SparseTermVector terms, double termsNorm, TopicCluster cluster, double[] weights) {
+        double norms = termsNorm * clusterNorm(cluster, weights);
+        return norms == 0 ? 0.0 : terms.dot(cluster.termVector, weights) / norms;
+    }
+    
+    /**
+     * Folds a turn into the session centroid and teaches its terms to the first
+     * identified cluster, so clusters pick up the words people use around them.
+     * Only a cluster with room for more terms interns new words; the vocabulary
+     * stays bounded by the clusters' terms
+     * @param identifiedTopics the turn's identifyTopics result
+     */
+    public void recordTurn(String input, List<String> identifiedTopics) {
+        if (discovery != null) {
+            discovery.offer(sessionToken, input);
+        }
+        TopicCluster cluster = identifiedTopics.isEmpty() ? null : topicClusters.get(identifiedTopics.get(0));
+        boolean learning = cluster != null && cluster.termVector.size() < MAX_CLUSTER_TERMS;
+        SparseTermVector terms = SparseTermVector.of(input, vocabulary, learning);
+        if (cluster != null) {
+            learnTerms(cluster, terms, LEARNING_RATE);
+        }
+        sessionCentroid.scale(CENTROID_DECAY, MIN_CENTROID_WEIGHT);
+        sessionCentroid.addAll(terms, 1.0);
+    }
+    
+    /**
+     * Sets where this session's turns are offered for discovery (the shared job by
+     * default); null keeps synthetic sessions such as the server warm-up out of it
+     */
+    public void setDiscovery(TopicDiscovery discovery) {
+        this.discovery = discovery;
+    }
+    
+    /**
+     * Gets the cluster closest to the session's recent turns, or null until a turn
+     * has used any cluster's terms
+     */
+    public TopicCluster getDominantCluster() {
+        return closestCluster(sessionCentroid);
+    }
+    
     /**
      * Gets the dominant topic cluster from conversation history
      */
     public TopicCluster getDominantCluster(List<String> conversationHistory) {
-        Map<String, Integer> clusterFrequency = new HashMap<>();
-        
+        SparseTermVector centroid = new SparseTermVector();
         for (String message : conversationHistory) {
-            List<String> topics = identifyTopics(message);
-            for (String topic : topics) {
-                clusterFrequency.merge(topic, 1, Integer::sum);
-            }
+            centroid.addAll(SparseTermVector.of(message, vocabulary, false), 1.0);
         }
-        
-        if (clusterFrequency.isEmpty()) {
-            return topicClusters.get("general");
+        TopicCluster dominant = closestCluster(centroid);
+        return dominant != null ? dominant : topicClusters.get("general");
+    }
+    
+    private TopicCluster closestCluster(SparseTermVector centroid) {
+        double[] weights = currentIdf();
+        double centroidNorm = centroid.norm(weights);
+        TopicCluster best = null;
+        double bestSimilarity = 0;
+        for (TopicCluster cluster : topicClusters.values()) {
+            double similarity = clusterCosine(centroid, centroidNorm, cluster, weights);
+            if (similarity > bestSimilarity) {
+                best = cluster;
+                bestSimilarity = similarity;
+            }
         }
-        
-        String dominantTopic = clusterFrequency.entrySet().stream()
-            .max(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElse("general");
-        
-        return topicClusters.get(dominantTopic);
+        return best;
     }
     
     /**
-     * Calculates topic similarity between two inputs
+     * Calculates topic similarity between two inputs: the cosine between their
+     * similarities to each cluster, so "video games" and "fortnite" are close
+     * without sharing a word
      */
     public double calculateTopicSimilarity(String input1, String input2) {
-        List<String> topics1 = identifyTopics(input1);
-        List<String> topics2 = identifyTopics(input2);
+        double[] weights = currentIdf();
+        double[] affinity1 = clusterAffinities(input1, weights);
+        double[] affinity2 = clusterAffinities(input2, weights);
+        
+        double dot = 0, norm1 = 0, norm2 = 0;
+        for (int c = 0; c < affinity1.length; c++) {
+            dot += affinity1[c] * affinity2[c];
+            norm1 += affinity1[c] * affinity1[c];
+            norm2 += affinity2[c] * affinity2[c];
+        }
         
-        if (topics1.isEmpty() && topics2.isEmpty()) {
+        if (norm1 == 0 && norm2 == 0) {
             return 0.5; // Neutral similarity
         }
         
-        if (topics1.isEmpty() || topics2.isEmpty()) {
+        if (norm1 == 0 || norm2 == 0) {
             return 0.2; // Low similarity
         }
         
-        // Calculate Jaccard similarity
-        Set<String> set1 = new HashSet<>(topics1);
-        Set<String> set2 = new HashSet<>(topics2);
-        
-        Set<String> intersection = new HashSet<>(set1);
-        intersection.retainAll(set2);
-        
-        Set<String> union = new HashSet<>(set1);
-        union.addAll(set2);
-        
-        return (double) intersection.size() / union.size();
+        return dot / Math.sqrt(norm1 * norm2);
+    }
+    
+    private double[] clusterAffinities(String input, double[] weights) {
+        SparseTermVector terms = SparseTermVector.of(input, vocabulary, false);
+        double termsNorm = terms.norm(weights);
+        double[] affinities = new double[topicClusters.size()];
+        int c = 0;
+        for (TopicCluster cluster : topicClusters.values()) {
+            affinities[c++] = clusterCosine(terms, termsNorm, cluster, weights);
+        }
+        return affinities;
+    }
+    
+    /**
+     * Gets term space statistics
+     */
+    public Map<String, Object> getTermStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int clusterTerms = 0;
+        for (TopicCluster cluster : topicClusters.values()) {
+            clusterTerms += cluster.termVector.size();
+        }
+        stats.put("vocabulary", vocabulary.size());
+        stats.put("clusterTerms", clusterTerms);
+        stats.put("centroidTerms", sessionCentroid.size());
+        TopicCluster dominant = getDominantCluster();
+        stats.put("dominantCluster", dominant != null ? dominant.clusterId : "none");
+        return stats;
     }
     
     /**
@@ -389,8 +964,11 @@ public class TopicClusteringSystem {
             cluster.visitCount = 0;
             cluster.lastActiveTime = 0;
             cluster.relevanceScore = 0.5;
+            cluster.activationMass = 0;
         }
         activeClusters.clear();
+        activeSnapshot = null;
+        sessionCentroid = new SparseTermVector();
     }
     
     /**
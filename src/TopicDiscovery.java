@@ -0,0 +1,459 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.regex.*;
+
+/**
+ * Topic Discovery for VirtualXander
+ * Streaming clustering of user messages from every session, proposing new topic
+ * clusters for themes the hardcoded ones miss (a new game, exam season).
+ *
+ * Sessions hand messages to offer(), which only enqueues them. A background
+ * thread drains the queue in mini-batches:
+ * - Each message is anonymized down to its set of terms. Emails, links and long
+ *   numbers are removed, and terms that already belong to a cluster are dropped.
+ * - A MinHash signature of the terms is bucketed with LSH (16 bands of 2 rows).
+ *   Only the candidate themes sharing a bucket are compared, and the message
+ *   joins the one containing most of its terms, or starts a new theme.
+ * - Each theme's centroid (term frequency within the theme) moves towards the
+ *   batch mean, weighted by the batch's share of the theme's messages.
+ * - A theme with enough messages from enough sessions is published through the
+ *   TopicClusterRegistry and becomes a cluster in every live session.
+ * No message text or session identity is kept beyond the queue.
+ */
+public class TopicDiscovery {
+
+    private static final int SIGNATURE_SIZE = 32;
+    private static final int BAND_ROWS = 2;
+    private static final int BANDS = SIGNATURE_SIZE / BAND_ROWS;
+    // Terms of a theme that make up its signature
+    private static final int SIGNATURE_TERMS = 12;
+    // Share of a message's terms a theme must contain to absorb it
+    private static final double MIN_CONTAINMENT = 0.5;
+    private static final double MIN_CENTROID_WEIGHT = 0.02;
+    private static final double KEYWORD_WEIGHT = 0.3;
+    private static final double RELATED_WEIGHT = 0.15;
+    private static final int MAX_KEYWORDS = 6;
+    private static final int MAX_RELATED = 10;
+    private static final int MAX_THEMES = 512;
+    private static final int MAX_SESSIONS_TRACKED = 16;
+    private static final int MAX_BATCH = 1024;
+    private static final int QUEUE_CAPACITY = 4096;
+    // Themes unseen for this many batches are forgotten
+    private static final int THEME_IDLE_BATCHES = 50;
+
+    private static final Pattern IDENTIFYING = Pattern.compile(
+        "\\S+@\\S+|https?://\\S+|www\\.\\S+|\\d{3,}");
+
+    private static final Object SHARED_LOCK = new Object();
+    private static volatile TopicDiscovery shared;
+    private static volatile boolean sharedLoaded = false;
+
+    /**
+     * A message waiting in the queue
+     */
+    private static class Offered {
+        final int session;
+        final String text;
+
+        Offered(int session, String text) {
+            this.session = session;
+            this.text = text;
+        }
+    }
+
+    /**
+     * A candidate topic: its centroid and where it is bucketed
+     */
+    private static class Theme {
+        final int id;
+        final Map<String, Double> centroid = new HashMap<>();
+        final Set<Integer> sessions = new HashSet<>();
+        long messages;
+        long lastBatch;
+        long[] bucketKeys;
+        boolean published;
+        // Mini-batch accumulators
+        final Map<String, Integer> batchCounts = new HashMap<>();
+        int batchMessages;
+
+        Theme(int id) {
+            this.id = id;
+        }
+
+        List<String> topTerms(int limit, double minWeight) {
+            List<Map.Entry<String, Double>> entries = new ArrayList<>(centroid.entrySet());
+            entries.sort((a, b) -> {
+                int byWeight = Double.compare(b.getValue(), a.getValue());
+                return byWeight != 0 ? byWeight : a.getKey().compareTo(b.getKey());
+            });
+            List<String> terms = new ArrayList<>();
+            for (Map.Entry<String, Double> entry : entries) {
+                if (terms.size() >= limit || entry.getValue() < minWeight) {
+                    break;
+                }
+                terms.add(entry.getKey());
+            }
+            return terms;
+        }
+    }
+
+    private final BlockingQueue<Offered> queue;
+    private final TopicClusterRegistry registry;
+    private final Set<String> knownTerms;
+    private final int minSupport;
+    private final int minSessions;
+    private final long[] seeds;
+
+    // Only touched under this object's lock, in practice by the batch thread
+    private final Map<Integer, Theme> themes;
+    private final Map<Long, Set<Integer>> buckets;
+    private int nextThemeId;
+    private long batches;
+
+    private final AtomicLong messagesOffered = new AtomicLong();
+    private final AtomicLong messagesDropped = new AtomicLong();
+    private long clustersPublished;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param minSupport messages a theme needs before it is published
+     * @param minSessions distinct sessions those messages must come from
+     */
+    public TopicDiscovery(TopicClusterRegistry registry, int minSupport, int minSessions) {
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.registry = registry;
+        this.minSupport = Math.max(1, minSupport);
+        this.minSessions = Math.max(1, minSessions);
+        this.themes = new LinkedHashMap<>();
+        this.buckets = new HashMap<>();
+        this.knownTerms = new HashSet<>();
+        for (TopicClusteringSystem.TopicCluster cluster : TopicClusteringSystem.defaultClusters()) {
+            addKnownTerms(cluster);
+        }
+        Random random = new Random(0x70D1C5L);
+        this.seeds = new long[SIGNATURE_SIZE];
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Gets the process-wide discovery job, started on first use, or null when
+     * topics.discovery_enabled is false
+     */
+    public static TopicDiscovery getShared() {
+        if (!sharedLoaded) {
+            synchronized (SHARED_LOCK) {
+                if (!sharedLoaded) {
+                    Configuration config = Configuration.getInstance();
+                    if (config.getBooleanProperty("topics.discovery_enabled", false)) {
+                        TopicDiscovery discovery = new TopicDiscovery(TopicClusterRegistry.getShared(),
+                            config.getIntProperty("topics.discovery_min_support", 8),
+                            config.getIntProperty("topics.discovery_min_sessions", 2));
+                        discovery.start(config.getIntProperty("topics.discovery_interval_seconds", 60));
+                        shared = discovery;
+                    }
+                    sharedLoaded = true;
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Runs a mini-batch every intervalSeconds on a daemon thread
+     */
+    public synchronized void start(int intervalSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "topic-discovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, intervalSeconds);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                runBatch();
+            } catch (RuntimeException e) {
+                Logger.getInstance().warn("TopicDiscovery", "Batch failed: " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Queues a message for the next batch; never blocks, and drops the message when
+     * the queue is full
+     * @param session any number that differs between sessions
+     */
+    public void offer(int session, String message) {
+        if (message == null || message.isEmpty()) {
+            return;
+        }
+        if (queue.offer(new Offered(session, message))) {
+            messagesOffered.incrementAndGet();
+        } else {
+            messagesDropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Clusters the queued messages and publishes themes that reached support
+     * @return the number of clusters published
+     */
+    public synchronized int runBatch() {
+        List<Offered> batch = new ArrayList<>();
+        queue.drainTo(batch, MAX_BATCH);
+        batches++;
+        Set<Theme> touched = new LinkedHashSet<>();
+
+        for (Offered offered : batch) {
+            Set<String> terms = anonymize(offered.text);
+            if (terms.isEmpty()) {
+                continue;
+            }
+            long[] signature = signature(terms);
+            Theme theme = closestTheme(terms, bucketKeys(signature));
+            if (theme == null) {
+                theme = newTheme();
+                // Bucket the new theme on its first message so later messages in the batch find it
+                rebucket(theme, bucketKeys(signature));
+            }
+            for (String term : terms) {
+                theme.batchCounts.merge(term, 1, Integer::sum);
+            }
+            theme.batchMessages++;
+            if (theme.sessions.size() < MAX_SESSIONS_TRACKED) {
+                theme.sessions.add(offered.session);
+            }
+            theme.lastBatch = batches;
+            touched.add(theme);
+        }
+
+        int published = 0;
+        for (Theme theme : touched) {
+            updateCentroid(theme);
+            rebucket(theme, bucketKeys(signature(theme.topTerms(SIGNATURE_TERMS, 0))));
+            if (!theme.published && theme.messages >= minSupport && theme.sessions.size() >= minSessions
+                    && publish(theme)) {
+                published++;
+            }
+        }
+        forgetIdleThemes();
+        return published;
+    }
+
+    /**
+     * Terms of the message without identifying tokens or terms of existing clusters
+     */
+    private Set<String> anonymize(String text) {
+        Set<String> terms = SparseTermVector.termSet(IDENTIFYING.matcher(text).replaceAll(" "));
+        terms.removeAll(knownTerms);
+        return terms;
+    }
+
+    /**
+     * Among the themes sharing an LSH bucket, the one containing most of the terms
+     */
+    private Theme closestTheme(Set<String> terms, long[] keys) {
+        Set<Integer> candidates = new LinkedHashSet<>();
+        for (long key : keys) {
+            Set<Integer> bucket = buckets.get(key);
+            if (bucket != null) {
+                candidates.addAll(bucket);
+            }
+        }
+        Theme best = null;
+        double bestContainment = MIN_CONTAINMENT;
+        for (int id : candidates) {
+            Theme theme = themes.get(id);
+            if (theme == null) {
+                continue;
+            }
+            int shared = 0;
+            for (String term : terms) {
+                if (theme.centroid.containsKey(term) || theme.batchCounts.containsKey(term)) {
+                    shared++;
+                }
+            }
+            double containment = shared / (double) terms.size();
+            if (containment >= bestContainment) {
+                best = theme;
+                bestContainment = containment;
+            }
+        }
+        return best;
+    }
+
+    private Theme newTheme() {
+        if (themes.size() >= MAX_THEMES) {
+            // Forget the theme with the least support
+            Theme weakest = null;
+            for (Theme theme : themes.values()) {
+                if (!theme.published && (weakest == null || theme.messages < weakest.messages)) {
+                    weakest = theme;
+                }
+            }
+            if (weakest != null) {
+                remove(weakest);
+            }
+        }
+        Theme theme = new Theme(nextThemeId++);
+        themes.put(theme.id, theme);
+        return theme;
+    }
+
+    /**
+     * Mini-batch update: the centroid moves towards the batch's term frequencies by
+     * the batch's share of all messages the theme has seen
+     */
+    private void updateCentroid(Theme theme) {
+        if (theme.batchMessages == 0) {
+            return;
+        }
+        theme.messages += theme.batchMessages;
+        double rate = theme.batchMessages / (double) theme.messages;
+        for (Map.Entry<String, Double> entry : theme.centroid.entrySet()) {
+            entry.setValue(entry.getValue() * (1 - rate));
+        }
+        for (Map.Entry<String, Integer> entry : theme.batchCounts.entrySet()) {
+            theme.centroid.merge(entry.getKey(), rate * entry.getValue() / theme.batchMessages, Double::sum);
+        }
+        theme.centroid.values().removeIf(weight -> weight < MIN_CENTROID_WEIGHT);
+        theme.batchCounts.clear();
+        theme.batchMessages = 0;
+    }
+
+    private boolean publish(Theme theme) {
+        List<String> keywords = theme.topTerms(MAX_KEYWORDS, KEYWORD_WEIGHT);
+        if (keywords.isEmpty()) {
+            return false;
+        }
+        String clusterId = "discovered_" + keywords.get(0);
+        if (registry.contains(clusterId)) {
+            return false;
+        }
+        List<String> related = theme.topTerms(MAX_RELATED, RELATED_WEIGHT);
+        String name = "Discovered: " + String.join(", ", keywords.subList(0, Math.min(3, keywords.size())));
+        TopicClusteringSystem.TopicCluster cluster = new TopicClusteringSystem.TopicCluster(
+            clusterId, name, new ArrayList<>(related), new ArrayList<>(keywords));
+        registry.publish(cluster);
+        addKnownTerms(cluster);
+        theme.published = true;
+        clustersPublished++;
+        Logger.getInstance().info("TopicDiscovery", "Published cluster " + clusterId + " " + keywords
+            + " from " + theme.messages + " messages");
+        return true;
+    }
+
+    private void addKnownTerms(TopicClusteringSystem.TopicCluster cluster) {
+        for (String keyword : cluster.keywords) {
+            knownTerms.addAll(SparseTermVector.termSet(keyword));
+        }
+        for (String topic : cluster.relatedTopics) {
+            knownTerms.addAll(SparseTermVector.termSet(topic));
+        }
+    }
+
+    private void forgetIdleThemes() {
+        List<Theme> idle = new ArrayList<>();
+        for (Theme theme : themes.values()) {
+            if (batches - theme.lastBatch > THEME_IDLE_BATCHES || theme.published) {
+                idle.add(theme);
+            }
+        }
+        for (Theme theme : idle) {
+            remove(theme);
+        }
+    }
+
+    private void remove(Theme theme) {
+        rebucket(theme, new long[0]);
+        themes.remove(theme.id);
+    }
+
+    private void rebucket(Theme theme, long[] keys) {
+        if (theme.bucketKeys != null) {
+            for (long key : theme.bucketKeys) {
+                Set<Integer> bucket = buckets.get(key);
+                if (bucket != null) {
+                    bucket.remove(theme.id);
+                    if (bucket.isEmpty()) {
+                        buckets.remove(key);
+                    }
+                }
+            }
+        }
+        theme.bucketKeys = keys;
+        for (long key : keys) {
+            buckets.computeIfAbsent(key, k -> new HashSet<>()).add(theme.id);
+        }
+    }
+
+    // ==================== MINHASH ====================
+
+    private long[] signature(Collection<String> terms) {
+        long[] signature = new long[SIGNATURE_SIZE];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String term : terms) {
+            long hash = term.hashCode();
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                long value = mix(hash ^ seeds[i]);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * One key per band; an empty signature has no keys
+     */
+    private static long[] bucketKeys(long[] signature) {
+        if (signature[0] == Long.MAX_VALUE) {
+            return new long[0];
+        }
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long key = band;
+            for (int row = 0; row < BAND_ROWS; row++) {
+                key = mix(key * 31 + signature[band * BAND_ROWS + row]);
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Gets discovery statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("messagesOffered", messagesOffered.get());
+        stats.put("messagesDropped", messagesDropped.get());
+        stats.put("queued", queue.size());
+        synchronized (this) {
+            stats.put("batches", batches);
+            stats.put("candidateThemes", themes.size());
+            stats.put("clustersPublished", clustersPublished);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,623 @@
+import java.util.*;
+
+/**
+ * Turn Pipeline for VirtualXander
+ * Runs a single conversation turn through an ordered list of stages so the
+ * CLI, GUI and server surfaces all share the same turn logic.
+ * Stages can be disabled or reordered through Configuration, and budgeted
+ * stages are skipped or reduced once the per-turn latency budget runs low.
+ */
+public class TurnPipeline {
+
+    /**
+     * A single step of the turn pipeline
+     */
+    public interface Stage {
+        /**
+         * Unique name used in configuration (pipeline.stage_order, pipeline.disabled_stages)
+         */
+        String getName();
+
+        void process(TurnContext turn);
+
+        /**
+         * Optional stages can be turned off per deployment
+         */
+        default boolean isOptional() { return true; }
+
+        /**
+         * Whether this stage still runs after an earlier stage completed the turn
+         */
+        default boolean runsWhenComplete() { return false; }
+
+        /**
+         * Expected cost of this stage for the given turn, in microseconds. Only a
+         * prior: once the stage has run MEASURED_RUNS times the pipeline uses its
+         * measured cost instead. The standard stages' priors are rough hand
+         * estimates, not measurements.
+         */
+        default long getExpectedCostMicros(TurnContext turn) { return 0; }
+
+        /**
+         * Whether a low turn budget may drop this stage or run its reduced mode. Only
+         * stages whose output is cosmetic, or whose reduced mode keeps the state
+         * later turns depend on, should be budgeted.
+         */
+        default boolean isBudgeted() { return false; }
+
+        /**
+         * Cheaper version of process() used when the budget is too small for the full stage
+         * @return false if the stage has no reduced mode and should be dropped instead
+         */
+        default boolean processReduced(TurnContext turn) { return false; }
+    }
+
+    /**
+     * Observed cost and budget decisions for one stage
+     */
+    private static class StageStats {
+        long runs;
+        long totalNanos;
+        // Moving average of recent runs, so warm-up runs fade out of the estimate
+        double recentNanos;
+        long dropped;
+        long reduced;
+
+        void record(long nanos) {
+            runs++;
+            totalNanos += nanos;
+            recentNanos = runs == 1 ? nanos : recentNanos + (nanos - recentNanos) / RECENT_WEIGHT;
+        }
+    }
+
+    // Runs after which a stage's measured cost replaces its prior
+    static final int MEASURED_RUNS = 8;
+    private static final int RECENT_WEIGHT = 8;
+
+    /**
+     * Mutable state for one turn as it moves through the stages
+     */
+    public static class TurnContext {
+        private final String input;
+        private final String normalizedInput;
+        private final boolean endOnFarewell;
+        private EmotionDetector.EmotionResult emotionResult;
+        private List<String> identifiedTopics;
+        private String intent;
+        private List<IntentRecognizer.IntentMatch> rankedIntents;
+        private String response;
+        private boolean farewell;
+        private boolean complete;
+        private List<String> droppedStages;
+        private List<String> reducedStages;
+
+        /**
+         * @param input the user's (trimmed) input
+         * @param endOnFarewell true if a farewell should end the turn without a response (CLI)
+         */
+        public TurnContext(String input, boolean endOnFarewell) {
+            this.input = input;
+            this.normalizedInput = input.toLowerCase().trim();
+            this.endOnFarewell = endOnFarewell;
+            this.identifiedTopics = new ArrayList<>();
+            this.intent = "unknown";
+            this.droppedStages = new ArrayList<>();
+            this.reducedStages = new ArrayList<>();
+        }
+
+        public String getInput() { return input; }
+        public String getNormalizedInput() { return normalizedInput; }
+        public boolean isEndOnFarewell() { return endOnFarewell; }
+        public EmotionDetector.EmotionResult getEmotionResult() { return emotionResult; }
+        public void setEmotionResult(EmotionDetector.EmotionResult emotionResult) { this.emotionResult = emotionResult; }
+        public List<String> getIdentifiedTopics() { return identifiedTopics; }
+        public void setIdentifiedTopics(List<String> identifiedTopics) { this.identifiedTopics = identifiedTopics; }
+        public String getIntent() { return intent; }
+        public void setIntent(String intent) { this.intent = intent; }
+        /**
+         * Gets the intents the intent stage ranked, or null if the turn completed before it ran
+         */
+        public List<IntentRecognizer.IntentMatch> getRankedIntents() { return rankedIntents; }
+        public void setRankedIntents(List<IntentRecognizer.IntentMatch> rankedIntents) { this.rankedIntents = rankedIntents; }
+        public String getResponse() { return response; }
+        public void setResponse(String response) { this.response = response; }
+        public boolean isFarewell() { return farewell; }
+        public void setFarewell(boolean farewell) { this.farewell = farewell; }
+        public boolean isComplete() { return complete; }
+        public List<String> getDroppedStages() { return droppedStages; }
+        public List<String> getReducedStages() { return reducedStages; }
+
+        /**
+         * Gets the primary emotion, or NEUTRAL if emotion detection did not run
+         */
+        public EmotionDetector.Emotion getPrimaryEmotion() {
+            return emotionResult != null ? emotionResult.getPrimaryEmotion() : EmotionDetector.Emotion.NEUTRAL;
+        }
+
+        /**
+         * Marks the turn as complete with the given response; remaining stages are skipped
+         */
+        public void complete(String response) {
+            this.response = response;
+            this.complete = true;
+        }
+    }
+
+    private List<Stage> stages;
+    private Set<String> disabledStages;
+    private Map<String, StageStats> stageStats;
+    private long turnBudgetNanos;
+
+    public TurnPipeline() {
+        this.stages = new ArrayList<>();
+        this.disabledStages = new HashSet<>();
+        this.stageStats = new HashMap<>();
+        this.turnBudgetNanos = 0;
+    }
+
+    /**
+     * Appends a stage to the end of the pipeline
+     */
+    public TurnPipeline addStage(Stage stage) {
+        stages.add(stage);
+        stageStats.put(stage.getName(), new StageStats());
+        return this;
+    }
+
+    /**
+     * Sets the per-turn latency budget; 0 runs every stage regardless of time
+     */
+    public void setTurnBudgetMillis(long budgetMillis) {
+        this.turnBudgetNanos = Math.max(0, budgetMillis) * 1_000_000L;
+    }
+
+    public long getTurnBudgetMillis() {
+        return turnBudgetNanos / 1_000_000L;
+    }
+
+    /**
+     * Enables or disables an optional stage by name
+     */
+    public void setStageEnabled(String name, boolean enabled) {
+        Stage stage = getStage(name);
+        if (stage == null) {
+            return;
+        }
+        if (enabled) {
+            disabledStages.remove(name);
+        } else if (stage.isOptional()) {
+            disabledStages.add(name);
+        } else {
+            Logger.getInstance().warn("TurnPipeline", "Stage '" + name + "' is required and cannot be disabled");
+        }
+    }
+
+    public boolean isStageEnabled(String name) {
+        return getStage(name) != null && !disabledStages.contains(name);
+    }
+
+    /**
+     * Reorders the stages; named stages come first in the given order,
+     * any stage not named keeps its relative position after them
+     */
+    public void setStageOrder(List<String> names) {
+        List<Stage> ordered = new ArrayList<>();
+        for (String name : names) {
+            Stage stage = getStage(name.trim());
+            if (stage != null && !ordered.contains(stage)) {
+                ordered.add(stage);
+            }
+        }
+        for (Stage stage : stages) {
+            if (!ordered.contains(stage)) {
+                ordered.add(stage);
+            }
+        }
+        stages = ordered;
+    }
+
+    /**
+     * Applies pipeline.stage_order, pipeline.disabled_stages and pipeline.turn_budget_ms from configuration
+     */
+    public void applyConfiguration(Configuration config) {
+        setTurnBudgetMillis(config.getIntProperty("pipeline.turn_budget_ms", 0));
+        String order = config.getProperty("pipeline.stage_order", "");
+        if (!order.trim().isEmpty()) {
+            setStageOrder(Arrays.asList(order.split(",")));
+        }
+        String disabled = config.getProperty("pipeline.disabled_stages", "");
+        for (String name : disabled.split(",")) {
+            if (!name.trim().isEmpty()) {
+                setStageEnabled(name.trim(), false);
+            }
+        }
+    }
+
+    public Stage getStage(String name) {
+        for (Stage stage : stages) {
+            if (stage.getName().equals(name)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the stage names in execution order
+     */
+    public List<String> getStageNames() {
+        List<String> names = new ArrayList<>();
+        for (Stage stage : stages) {
+            names.add(stage.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Runs the turn through every enabled stage, skipping or reducing budgeted
+     * stages whose expected cost no longer fits in the remaining budget
+     */
+    public TurnContext run(TurnContext turn) {
+        long turnStart = System.nanoTime();
+        for (Stage stage : stages) {
+            if (disabledStages.contains(stage.getName())) {
+                continue;
+            }
+            if (turn.isComplete() && !stage.runsWhenComplete()) {
+                continue;
+            }
+            StageStats stats = stageStats.get(stage.getName());
+            if (turnBudgetNanos > 0 && stage.isBudgeted()) {
+                long remaining = turnBudgetNanos - (System.nanoTime() - turnStart);
+                if (expectedCostNanos(stage, stats, turn) > remaining) {
+                    if (stage.processReduced(turn)) {
+                        turn.reducedStages.add(stage.getName());
+                        stats.reduced++;
+                    } else {
+                        turn.droppedStages.add(stage.getName());
+                        stats.dropped++;
+                    }
+                    continue;
+                }
+            }
+            long stageStart = System.nanoTime();
+            stage.process(turn);
+            stats.record(System.nanoTime() - stageStart);
+        }
+        if (!turn.droppedStages.isEmpty() || !turn.reducedStages.isEmpty()) {
+            Logger.getInstance().info("TurnPipeline", String.format(
+                "Turn budget of %d ms ran low after %.1f ms - dropped %s, reduced %s",
+                getTurnBudgetMillis(), (System.nanoTime() - turnStart) / 1_000_000.0,
+                turn.droppedStages, turn.reducedStages));
+        }
+        return turn;
+    }
+
+    /**
+     * Expected cost of a stage: its prior until it has been measured, then the
+     * moving average of its runs in this pipeline
+     */
+    private static long expectedCostNanos(Stage stage, StageStats stats, TurnContext turn) {
+        if (stats.runs >= MEASURED_RUNS) {
+            return (long) stats.recentNanos;
+        }
+        return stage.getExpectedCostMicros(turn) * 1000L;
+    }
+
+    /**
+     * Gets per-stage average cost and budget drop counts, for tuning the budget
+     */
+    public Map<String, Object> getStageStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        for (Stage stage : stages) {
+            StageStats stats = stageStats.get(stage.getName());
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("runs", stats.runs);
+            entry.put("averageMicros", stats.runs == 0 ? 0 : stats.totalNanos / stats.runs / 1000);
+            entry.put("expectedMicros", expectedCostNanos(stage, stats, new TurnContext("", false)) / 1000);
+            entry.put("dropped", stats.dropped);
+            entry.put("reduced", stats.reduced);
+            statistics.put(stage.getName(), entry);
+        }
+        return statistics;
+    }
+
+    // ==================== STANDARD STAGES ====================
+
+    /**
+     * Tracks the user message in ContextEngine threads and the implicit topic tracker
+     */
+    public static class ContextTrackingStage implements Stage {
+        private final ContextEngine contextEngine;
+        private final ContextEngine.ImplicitTopicTracker topicTracker;
+
+        public ContextTrackingStage(ContextEngine contextEngine, ContextEngine.ImplicitTopicTracker topicTracker) {
+            this.contextEngine = contextEngine;
+            this.topicTracker = topicTracker;
+        }
+
+        @Override
+        public String getName() { return "context_tracking"; }
+
+        @Override
+        public boolean isBudgeted() { return true; }
+
+        @Override
+        public long getExpectedCostMicros(TurnContext turn) { return 200 + 4L * turn.getInput().length(); }
+
+        /**
+         * Records the message in the thread but skips implicit topic tracking
+         */
+        @Override
+        public boolean processReduced(TurnContext turn) {
+            contextEngine.addMessageToCurrentThread("User", turn.getInput());
+            return true;
+        }
+
+        @Override
+        public void process(TurnContext turn) {
+            contextEngine.addMessageToCurrentThread("User", turn.getInput());
+
+            List<ContextEngine.ImplicitTopicTracker.TrackedTopic> detectedTopics =
+                topicTracker.processText(turn.getInput());
+            if (!detectedTopics.isEmpty()) {
+                ContextEngine.ImplicitTopicTracker.TrackedTopic dominant = topicTracker.getDominantTopic();
+                if (dominant != null) {
+                    contextEngine.getCurrentThread().setTopic(dominant.getTopicName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Detects the user's emotion and folds it into the session's trajectory, if any
+     */
+    public static class EmotionStage implements Stage {
+        private final EmotionDetector emotionDetector;
+        private final EmotionalTrajectory trajectory;
+
+        public EmotionStage(EmotionDetector emotionDetector) {
+            this(emotionDetector, null);
+        }
+
+        public EmotionStage(EmotionDetector emotionDetector, EmotionalTrajectory trajectory) {
+            this.emotionDetector = emotionDetector;
+            this.trajectory = trajectory;
+        }
+
+        @Override
+        public String getName() { return "emotion"; }
+
+        @Override
+        public boolean isBudgeted() { return true; }
+
+        @Override
+        public long getExpectedCostMicros(TurnContext turn) { return 150 + 4L * turn.getInput().length(); }
+
+        /**
+         * Skips detection but still counts the turn in the trajectory as a neutral one,
+         * so the trajectory's weights decay and its turn count stays in step
+         */
+        @Override
+        public boolean processReduced(TurnContext turn) {
+            if (trajectory != null) {
+                trajectory.record(null);
+            }
+            return true;
+        }
+
+        @Override
+        public void process(TurnContext turn) {
+            turn.setEmotionResult(emotionDetector.detectEmotion(turn.getInput()));
+            if (trajectory != null) {
+                trajectory.record(turn.getEmotionResult());
+            }
+        }
+    }
+
+    /**
+     * Identifies topic clusters and activates the dominant one
+     */
+    public static class TopicClusterStage implements Stage {
+        private final TopicClusteringSystem topicClusteringSystem;
+
+        public TopicClusterStage(TopicClusteringSystem topicClusteringSystem) {
+            this.topicClusteringSystem = topicClusteringSystem;
+        }
+
+        @Override
+        public String getName() { return "topic_clustering"; }
+
+        @Override
+        public void process(TurnContext turn) {
+            List<String> identifiedTopics = topicClusteringSystem.identifyTopics(turn.getInput());
+            turn.setIdentifiedTopics(identifiedTopics);
+            topicClusteringSystem.recordTurn(turn.getInput(), identifiedTopics);
+            if (!identifiedTopics.isEmpty()) {
+                topicClusteringSystem.activateCluster(identifiedTopics.get(0));
+            }
+        }
+    }
+
+    /**
+     * Answers mental health support needs (including crisis) and completes the turn
+     */
+    public static class MentalHealthStage implements Stage {
+        private final MentalHealthSupportHandler handler;
+
+        public MentalHealthStage(MentalHealthSupportHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public String getName() { return "mental_health"; }
+
+        @Override
+        public boolean isOptional() { return false; }
+
+        @Override
+        public void process(TurnContext turn) {
+            if (handler.isMentalHealthSupportNeeded(turn.getInput())) {
+                turn.complete(buildSupportResponse(turn.getInput()));
+            }
+        }
+
+        private String buildSupportResponse(String userInput) {
+            // First check if it's a crisis level
+            if (handler.isCrisisLevel(userInput)) {
+                return handler.getCrisisResponse();
+            }
+
+            MentalHealthSupportHandler.SupportCategory category = handler.detectSupportCategory(userInput);
+            MentalHealthSupportHandler.SupportResponse supportResponse = handler.getSupportResponse(category);
+
+            StringBuilder response = new StringBuilder();
+            response.append(supportResponse.response);
+
+            // Add coping suggestions for dark thoughts specifically
+            if (category == MentalHealthSupportHandler.SupportCategory.DARK_THOUGHTS) {
+                List<String> suggestions = handler.getCopingSuggestions(category);
+                if (suggestions != null && !suggestions.isEmpty()) {
+                    response.append("\n\nSome suggestions that might help:\n");
+                    for (int i = 0; i < Math.min(3, suggestions.size()); i++) {
+                        response.append("• ").append(suggestions.get(i)).append("\n");
+                    }
+                }
+                response.append("\n").append(handler.getEncouragement(category));
+            }
+
+            response.append("\n").append(supportResponse.followUp);
+            return response.toString();
+        }
+    }
+
+    /**
+     * Recognizes the top intents and flags farewells
+     */
+    public static class IntentStage implements Stage {
+        private static final int RANKED_INTENTS = 3;
+
+        private final IntentRecognizer intentRecognizer;
+
+        public IntentStage(IntentRecognizer intentRecognizer) {
+            this.intentRecognizer = intentRecognizer;
+        }
+
+        @Override
+        public String getName() { return "intent"; }
+
+        @Override
+        public boolean isOptional() { return false; }
+
+        @Override
+        public void process(TurnContext turn) {
+            List<IntentRecognizer.IntentMatch> ranked = intentRecognizer.recognizeIntents(turn.getInput(), RANKED_INTENTS);
+            String intent = ranked.isEmpty() ? "unknown" : ranked.get(0).getIntent();
+            turn.setRankedIntents(ranked);
+            turn.setIntent(intent);
+            if (intent.equals("farewell") || turn.getNormalizedInput().contains("exit")) {
+                turn.setFarewell(true);
+                if (turn.isEndOnFarewell()) {
+                    turn.complete(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Feeds the intent into the conversation state machine
+     */
+    public static class StateMachineStage implements Stage {
+        private final ConversationStateMachine stateMachine;
+
+        public StateMachineStage(ConversationStateMachine stateMachine) {
+            this.stateMachine = stateMachine;
+        }
+
+        @Override
+        public String getName() { return "state_machine"; }
+
+        @Override
+        public void process(TurnContext turn) {
+            stateMachine.processIntent(turn.getIntent());
+        }
+    }
+
+    /**
+     * Generates the base response for the intent
+     */
+    public static class ResponseGenerationStage implements Stage {
+        private final ResponseGenerator responseGenerator;
+        private final ConversationContext conversationContext;
+
+        public ResponseGenerationStage(ResponseGenerator responseGenerator, ConversationContext conversationContext) {
+            this.responseGenerator = responseGenerator;
+            this.conversationContext = conversationContext;
+        }
+
+        @Override
+        public String getName() { return "response"; }
+
+        @Override
+        public boolean isOptional() { return false; }
+
+        @Override
+        public void process(TurnContext turn) {
+            turn.setResponse(responseGenerator.generateResponse(turn.getIntent(), turn.getInput(), conversationContext));
+        }
+    }
+
+    /**
+     * Applies context-aware prefixes and suffixes to the base response
+     */
+    public static class ContextualEnhancementStage implements Stage {
+        private final ContextAwareResponseLogic contextAwareLogic;
+        private final ConversationContext conversationContext;
+
+        public ContextualEnhancementStage(ContextAwareResponseLogic contextAwareLogic, ConversationContext conversationContext) {
+            this.contextAwareLogic = contextAwareLogic;
+            this.conversationContext = conversationContext;
+        }
+
+        @Override
+        public String getName() { return "contextual_enhancement"; }
+
+        @Override
+        public boolean isBudgeted() { return true; }
+
+        @Override
+        public long getExpectedCostMicros(TurnContext turn) { return 50 + 2L * conversationContext.getTurnCount(); }
+
+        @Override
+        public void process(TurnContext turn) {
+            // Pass the base response to avoid duplication
+            turn.setResponse(contextAwareLogic.generateContextualResponse(
+                turn.getResponse(), turn.getIntent(), turn.getInput(), turn.getPrimaryEmotion(), conversationContext
+            ));
+        }
+    }
+
+    /**
+     * Records Xander's response in the current ContextEngine thread
+     */
+    public static class ResponseRecordingStage implements Stage {
+        private final ContextEngine contextEngine;
+
+        public ResponseRecordingStage(ContextEngine contextEngine) {
+            this.contextEngine = contextEngine;
+        }
+
+        @Override
+        public String getName() { return "context_recording"; }
+
+        @Override
+        public boolean runsWhenComplete() { return true; }
+
+        @Override
+        public void process(TurnContext turn) {
+            if (turn.getResponse() != null) {
+                contextEngine.addMessageToCurrentThread("Xander", turn.getResponse());
+            }
+        }
+    }
+}
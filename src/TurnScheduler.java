@@ -0,0 +1,244 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Turn Scheduler for VirtualXander servers
+ * Runs conversation turns on a shared worker pool. Every message is first
+ * pre-screened for crisis content; crisis messages skip the normal queue and
+ * are answered by a reserved worker so the crisis response is delivered
+ * quickly even when the turn workers are saturated.
+ *
+ * Each core's turns run in the order they were submitted. A crisis turn is
+ * answered out of line but recorded on the core in its place in that order,
+ * so the next message sees it in history.
+ */
+public class TurnScheduler {
+
+    /**
+     * Latency statistics over all samples, with a window of recent samples for percentiles
+     */
+    public static class LatencyStats {
+        private static final int WINDOW_SIZE = 1024;
+        private final long[] window;
+        private int windowCount;
+        private int windowNext;
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        public LatencyStats() {
+            this.window = new long[WINDOW_SIZE];
+        }
+
+        public synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            window[windowNext] = nanos;
+            windowNext = (windowNext + 1) % WINDOW_SIZE;
+            windowCount = Math.min(windowCount + 1, WINDOW_SIZE);
+        }
+
+        public synchronized long getCount() { return count; }
+
+        public synchronized double getAverageMs() {
+            return count == 0 ? 0.0 : totalNanos / (double) count / 1_000_000.0;
+        }
+
+        public synchronized double getMaxMs() { return maxNanos / 1_000_000.0; }
+
+        /**
+         * Gets a percentile (0.0 - 1.0) over the recent sample window
+         */
+        public synchronized double getPercentileMs(double percentile) {
+            if (windowCount == 0) {
+                return 0.0;
+            }
+            long[] sorted = Arrays.copyOf(window, windowCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * windowCount) - 1;
+            return sorted[Math.max(0, Math.min(windowCount - 1, index))] / 1_000_000.0;
+        }
+    }
+
+    private final ExecutorService turnWorkers;
+    private final ExecutorService crisisWorkers;
+    private final MentalHealthSupportHandler crisisScreen;
+    private final long crisisLatencyBoundNanos;
+    private final LatencyStats crisisLatency;
+    private final LatencyStats turnLatency;
+    private final AtomicLong crisisBoundViolations;
+    // Turn workers, or the calling thread once they have shut down
+    private final Executor orderedWorkers;
+    // Last scheduled step per core; every turn and crisis record waits for the one before it
+    private final Map<VirtualXanderCore, CompletableFuture<Void>> tails;
+
+    public TurnScheduler(int turnWorkerCount, int crisisWorkerCount, long crisisLatencyBoundMs) {
+        this.turnWorkers = Executors.newFixedThreadPool(Math.max(1, turnWorkerCount), namedThreads("turn-worker"));
+        this.crisisWorkers = Executors.newFixedThreadPool(Math.max(1, crisisWorkerCount), namedThreads("crisis-worker"));
+        this.crisisScreen = new MentalHealthSupportHandler(null, null);
+        this.crisisLatencyBoundNanos = TimeUnit.MILLISECONDS.toNanos(crisisLatencyBoundMs);
+        this.crisisLatency = new LatencyStats();
+        this.turnLatency = new LatencyStats();
+        this.crisisBoundViolations = new AtomicLong();
+        this.orderedWorkers = task -> {
+            try {
+                turnWorkers.execute(task);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; run here rather than lose the turn
+                task.run();
+            }
+        };
+        this.tails = new HashMap<>();
+    }
+
+    /**
+     * Creates a scheduler from server.turn_workers, server.crisis_workers and server.crisis_latency_bound_ms
+     */
+    public static TurnScheduler fromConfiguration(Configuration config) {
+        return new TurnScheduler(
+            config.getIntProperty("server.turn_workers", Runtime.getRuntime().availableProcessors()),
+            config.getIntProperty("server.crisis_workers", 1),
+            config.getIntProperty("server.crisis_latency_bound_ms", 100)
+        );
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Schedules a turn for the given core. Turns for the same core run one at a
+     * time in submission order.
+     * @return a future completed with Xander's response
+     */
+    public CompletableFuture<String> submit(VirtualXanderCore core, String message) {
+        long submittedAt = System.nanoTime();
+        CompletableFuture<String> result = new CompletableFuture<>();
+
+        if (crisisScreen.isCrisisLevel(message)) {
+            crisisWorkers.execute(() -> {
+                String response = crisisScreen.getCrisisResponse();
+                recordCrisisLatency(System.nanoTime() - submittedAt);
+                result.complete(response);
+            });
+            // The response does not wait for the core; recording it does, behind earlier turns
+            enqueue(core, result, () -> {
+                if (!result.isCompletedExceptionally()) {
+                    core.recordTurn(message, result.join());
+                }
+            });
+            return result;
+        }
+
+        enqueue(core, null, () -> {
+            try {
+                String response = core.processMessage(message);
+                turnLatency.record(System.nanoTime() - submittedAt);
+                result.complete(response);
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs a step on the core once its previous step, and the given future if any, is done
+     */
+    private void enqueue(VirtualXanderCore core, CompletableFuture<?> ready, Runnable step) {
+        synchronized (tails) {
+            CompletableFuture<Void> previous = tails.get(core);
+            CompletableFuture<?> after = previous == null ? ready
+                : ready == null ? previous : CompletableFuture.allOf(previous, ready);
+            if (after == null) {
+                after = CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> next = after.handleAsync((ignored, error) -> {
+                synchronized (core) {
+                    step.run();
+                }
+                return null;
+            }, orderedWorkers);
+            tails.put(core, next);
+            next.whenComplete((ignored, error) -> {
+                synchronized (tails) {
+                    tails.remove(core, next);
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits until every turn and crisis record scheduled so far for the core has run
+     */
+    public void awaitTurns(VirtualXanderCore core) {
+        CompletableFuture<Void> tail;
+        synchronized (tails) {
+            tail = tails.get(core);
+        }
+        if (tail == null) {
+            return;
+        }
+        try {
+            tail.get();
+        } catch (ExecutionException e) {
+            // Each step reports its own failure through its turn's future
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recordCrisisLatency(long nanos) {
+        crisisLatency.record(nanos);
+        if (nanos > crisisLatencyBoundNanos) {
+            crisisBoundViolations.incrementAndGet();
+            Logger.getInstance().warn("TurnScheduler", String.format(
+                "Crisis response took %.1f ms (bound %d ms)", nanos / 1_000_000.0,
+                TimeUnit.NANOSECONDS.toMillis(crisisLatencyBoundNanos)));
+        }
+    }
+
+    public LatencyStats getCrisisLatency() { return crisisLatency; }
+    public LatencyStats getTurnLatency() { return turnLatency; }
+    public long getCrisisBoundViolations() { return crisisBoundViolations.get(); }
+
+    /**
+     * Gets a summary of crisis-path and normal-path latency
+     */
+    public String getMetricsSummary() {
+        return String.format(
+            "Crisis turns: %d (avg %.2f ms, p99 %.2f ms, max %.2f ms, over bound %d)%n" +
+            "Normal turns: %d (avg %.2f ms, p99 %.2f ms, max %.2f ms)",
+            crisisLatency.getCount(), crisisLatency.getAverageMs(), crisisLatency.getPercentileMs(0.99),
+            crisisLatency.getMaxMs(), getCrisisBoundViolations(),
+            turnLatency.getCount(), turnLatency.getAverageMs(), turnLatency.getPercentileMs(0.99),
+            turnLatency.getMaxMs());
+    }
+
+    /**
+     * Stops accepting turns and waits briefly for queued ones to finish
+     */
+    public void shutdown() {
+        crisisWorkers.shutdown();
+        turnWorkers.shutdown();
+        try {
+            if (!turnWorkers.awaitTermination(5, TimeUnit.SECONDS)) {
+                turnWorkers.shutdownNow();
+            }
+            if (!crisisWorkers.awaitTermination(1, TimeUnit.SECONDS)) {
+                crisisWorkers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            turnWorkers.shutdownNow();
+            crisisWorkers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,1074 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Benchmarks for VirtualXander
+ * Run with: java VirtualXanderBenchmarks [benchmark ...]
+ * With no arguments every benchmark runs. Timings are wall-clock and only
+ * meant for comparing two code paths on the same machine.
+ */
+public class VirtualXanderBenchmarks {
+
+    // ==================== Cold Start ====================
+
+    private static final int COLD_START_RUNS = 7;
+
+    /**
+     * Times constructing the first and second core, alone and followed by the
+     * lazily built desktop engines (as the GUI does). Each run uses a fresh JVM
+     * so class loading and interpretation costs are included.
+     */
+    public static void benchmarkColdStart() throws Exception {
+        System.out.println("Cold start (" + COLD_START_RUNS + " fresh JVMs per path, median ms):");
+        System.out.println("  path          first core   second core");
+        for (String mode : new String[] { "core", "desktop" }) {
+            List<double[]> runs = new ArrayList<>();
+            for (int i = 0; i < COLD_START_RUNS; i++) {
+                runs.add(runColdStartChild(mode));
+            }
+            System.out.printf("  %-12s  %10.1f   %11.1f%n", mode, median(runs, 0), median(runs, 1));
+        }
+    }
+
+    private static double[] runColdStartChild(String mode) throws Exception {
+        Process process = new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", System.getProperty("java.class.path"),
+            "VirtualXanderBenchmarks", "coldstart-child", mode)
+            .redirectErrorStream(true).start();
+        String result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    result = line;
+                }
+            }
+        }
+        process.waitFor();
+        if (result == null) {
+            throw new IllegalStateException("Cold start child for '" + mode + "' produced no result");
+        }
+        String[] parts = result.split(" ");
+        return new double[] { Double.parseDouble(parts[1]), Double.parseDouble(parts[2]) };
+    }
+
+    /**
+     * Child side of the cold-start benchmark: builds two cores, as the first and
+     * second client of a server JVM would
+     */
+    private static void coldStartChild(String mode) {
+        Configuration.getInstance().setProperty("logging.console_output", "false");
+        boolean desktop = mode.equals("desktop");
+        double first = timeCoreConstruction(desktop);
+        double second = timeCoreConstruction(desktop);
+        System.out.println("RESULT " + first + " " + second);
+    }
+
+    private static double timeCoreConstruction(boolean desktop) {
+        long start = System.nanoTime();
+        VirtualXanderCore core = new VirtualXanderCore();
+        if (desktop) {
+            core.getDesktopEnhancements();
+            core.getUserProfileDashboard();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    private static double median(List<double[]> runs, int column) {
+        double[] values = new double[runs.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = runs.get(i)[column];
+        }
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    // ==================== Intent Recognition Throughput ====================
+
+    private static final String[] MESSAGES = {
+        "hello", "hey, how are you doing?", "what's your name?", "i'm good thanks, hbu",
+        "not so good today, kinda tired", "nothin much, just chilling", "can you help with my math homework?",
+        "i'm so stressed about exams", "feeling a bit lonely lately", "i'm really excited about the weekend!",
+        "let's play minecraft", "any game recommendations?", "tell me a story about a dragon",
+        "what do you think about music and art?", "idk, ngl it's been a weird day tbh",
+        "my friend is mad at me and i don't know why", "i finally graduated!", "um", "thanks, bye"
+    };
+
+    /**
+     * Compares the prefiltered single-pass matcher with one Matcher.find() per pattern
+     */
+    public static void benchmarkIntentRecognition() {
+        IntentRecognizer recognizer = new IntentRecognizer();
+        int rounds = 2000;
+        // Warm both paths before measuring
+        runIntents(recognizer, rounds / 4, false);
+        runIntents(recognizer, rounds / 4, true);
+
+        double legacy = runIntents(recognizer, rounds, false);
+        double combined = runIntents(recognizer, rounds, true);
+        System.out.println("Intent recognition (" + rounds * MESSAGES.length + " messages):");
+        System.out.printf("  per-pattern Matcher.find   %10.0f msg/s%n", legacy);
+        System.out.printf("  prefiltered single pass    %10.0f msg/s  (%.1fx)%n", combined, combined / legacy);
+    }
+
+    private static double runIntents(IntentRecognizer recognizer, int rounds, boolean combined) {
+        long start = System.nanoTime();
+        int checksum = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (String message : MESSAGES) {
+                String intent = combined ? recognizer.recognizeIntent(message)
+                                         : recognizer.recognizeIntentWithRegexLoop(message);
+                checksum += intent.length();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == 42) {
+            System.out.print("");
+        }
+        return rounds * (double) MESSAGES.length / (elapsed / 1_000_000_000.0);
+    }
+
+    // ==================== Keyword Prefilter ====================
+
+    /**
+     * Reports how many regexes the keyword prefilter leaves to evaluate per message
+     */
+    public static void benchmarkPrefilter() {
+        IntentRecognizer recognizer = new IntentRecognizer();
+        EmotionDetector detector = new EmotionDetector();
+        for (String message : MESSAGES) {
+            recognizer.recognizeIntent(message);
+            detector.detectEmotion(message);
+        }
+        System.out.println("Keyword prefilter (" + MESSAGES.length + " messages):");
+        printPrefilter("intent patterns", recognizer.getPrefilterStatistics());
+        printPrefilter("emotion patterns", detector.getPrefilterStatistics());
+    }
+
+    private static void printPrefilter(String label, Map<String, Object> stats) {
+        System.out.printf("  %-18s %3d patterns, %5.1f candidates/message (%d always evaluated)%n",
+            label, (Integer) stats.get("patterns"), (Double) stats.get("averageCandidatesPerMessage"),
+            (Integer) stats.get("alwaysEvaluated"));
+    }
+
+    // ==================== Emotion Scoring ====================
+
+    private static final String[] EMOTION_MESSAGES = {
+        "i'm so happy today!", "i'm feeling sad", "i'm so stressed about this", "i'm extremely happy and excited!",
+        "i feel so lonely and nobody cares", "ugh i'm so tired, i need a break", "that was hilarious lol",
+        "i'm worried about my exams tomorrow", "i finally did it, i'm so proud", "not what i expected, kind of a bummer",
+        "i'm freaking out, i can't breathe", "i feel great, best day ever", "i'm bored, nothing to do",
+        "hey how are you", "my heart goes out to you", "i'm burnt out and completely drained",
+        "looking forward to the weekend", "i messed up and it's my fault", "wow that's amazing", "ok"
+    };
+
+    /**
+     * Compares regex pattern scoring with single-pass lexicon scoring: throughput,
+     * agreement on the primary emotion, and bytes allocated per message
+     */
+    public static void benchmarkEmotionScoring() {
+        EmotionDetector patterns = new EmotionDetector();
+        patterns.setLexiconScoring(false);
+        EmotionDetector lexicon = new EmotionDetector();
+        lexicon.setLexiconScoring(true);
+
+        int agree = 0;
+        for (String message : EMOTION_MESSAGES) {
+            EmotionDetector.EmotionResult expected = patterns.detectEmotion(message);
+            EmotionDetector.EmotionResult actual = lexicon.detectEmotion(message);
+            if (expected.getAllEmotions().keySet().equals(actual.getAllEmotions().keySet())) {
+                agree++;
+            }
+        }
+
+        int rounds = 5000;
+        runEmotions(patterns, rounds / 4);
+        runEmotions(lexicon, rounds / 4);
+        double patternRate = runEmotions(patterns, rounds);
+        double lexiconRate = runEmotions(lexicon, rounds);
+
+        System.out.println("Emotion scoring (" + rounds * EMOTION_MESSAGES.length + " messages):");
+        System.out.printf("  patterns (prefiltered regexes)  %10.0f msg/s  %8.0f bytes/msg%n",
+            patternRate, allocatedBytesPerMessage(patterns));
+        System.out.printf("  lexicon (phrase trie)           %10.0f msg/s  %8.0f bytes/msg  (%.1fx)%n",
+            lexiconRate, allocatedBytesPerMessage(lexicon), lexiconRate / patternRate);
+        System.out.println("  same detected emotions on " + agree + " of " + EMOTION_MESSAGES.length + " messages");
+    }
+
+    private static double runEmotions(EmotionDetector detector, int rounds) {
+        long start = System.nanoTime();
+        int checksum = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (String message : EMOTION_MESSAGES) {
+                checksum += detector.detectEmotion(message).getPrimaryEmotion().ordinal();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == 42) {
+            System.out.print("");
+        }
+        return rounds * (double) EMOTION_MESSAGES.length / (elapsed / 1_000_000_000.0);
+    }
+
+    /**
+     * Bytes allocated by the current thread per detectEmotion call, or -1 where the JVM cannot tell
+     */
+    private static double allocatedBytesPerMessage(EmotionDetector detector) {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+        int rounds = 1000;
+        long before = allocations.getThreadAllocatedBytes(thread);
+        runEmotions(detector, rounds);
+        long after = allocations.getThreadAllocatedBytes(thread);
+        return (after - before) / (double) (rounds * EMOTION_MESSAGES.length);
+    }
+
+    // ==================== Intent Classifier vs Regexes ====================
+
+    private static final int CLASSIFIER_FOLDS = 5;
+
+    /**
+     * Compares the regex recognizer, the trained classifier and the classifier with
+     * regex fallback on data/intent_training.tsv. Accuracy is cross-validated: each
+     * fold is classified by a model trained on the other folds.
+     */
+    public static void benchmarkIntentClassifier() throws IOException {
+        Path labeled = Paths.get("data/intent_training.tsv");
+        if (!Files.isRegularFile(labeled)) {
+            System.out.println("Intent classifier: " + labeled + " not found, skipped");
+            return;
+        }
+        List<String[]> examples = IntentClassifier.readLabeled(labeled);
+        double minConfidence = Double.parseDouble(
+            Configuration.getInstance().getProperty("intent.classifier_min_confidence", "0.9"));
+        IntentRecognizer regexOnly = new IntentRecognizer();
+        regexOnly.setClassifier(null, 0);
+
+        int regexCorrect = 0, classifierCorrect = 0, hybridCorrect = 0;
+        for (int fold = 0; fold < CLASSIFIER_FOLDS; fold++) {
+            List<String[]> training = new ArrayList<>();
+            List<String[]> held = new ArrayList<>();
+            for (int i = 0; i < examples.size(); i++) {
+                (i % CLASSIFIER_FOLDS == fold ? held : training).add(examples.get(i));
+            }
+            IntentClassifier classifier = IntentClassifier.train(training);
+            IntentRecognizer hybrid = new IntentRecognizer();
+            hybrid.setClassifier(classifier, minConfidence);
+            for (String[] example : held) {
+                List<IntentClassifier.Prediction> predicted = classifier.predict(example[1], 1);
+                regexCorrect += regexOnly.recognizeIntent(example[1]).equals(example[0]) ? 1 : 0;
+                classifierCorrect += !predicted.isEmpty() && predicted.get(0).getIntent().equals(example[0]) ? 1 : 0;
+                hybridCorrect += hybrid.recognizeIntent(example[1]).equals(example[0]) ? 1 : 0;
+            }
+        }
+
+        IntentClassifier classifier = IntentClassifier.train(examples);
+        IntentRecognizer hybrid = new IntentRecognizer();
+        hybrid.setClassifier(classifier, minConfidence);
+        int rounds = 200;
+        for (int warm = 0; warm < 2; warm++) {
+            timeIntents(examples, rounds / 4, message -> regexOnly.recognizeIntent(message));
+            timeIntents(examples, rounds / 4, message -> topIntent(classifier, message));
+            timeIntents(examples, rounds / 4, message -> hybrid.recognizeIntent(message));
+        }
+        double regexMicros = timeIntents(examples, rounds, message -> regexOnly.recognizeIntent(message));
+        double classifierMicros = timeIntents(examples, rounds, message -> topIntent(classifier, message));
+        double hybridMicros = timeIntents(examples, rounds, message -> hybrid.recognizeIntent(message));
+
+        System.out.println("Intent classifier (" + examples.size() + " labeled messages, " + CLASSIFIER_FOLDS
+            + "-fold accuracy, fallback below " + minConfidence + "):");
+        System.out.printf("  regexes only              %5.1f%%  %6.2f us/msg%n",
+            100.0 * regexCorrect / examples.size(), regexMicros);
+        System.out.printf("  classifier only           %5.1f%%  %6.2f us/msg%n",
+            100.0 * classifierCorrect / examples.size(), classifierMicros);
+        System.out.printf("  classifier + fallback     %5.1f%%  %6.2f us/msg%n",
+            100.0 * hybridCorrect / examples.size(), hybridMicros);
+    }
+
+    private static String topIntent(IntentClassifier classifier, String message) {
+        List<IntentClassifier.Prediction> predicted = classifier.predict(message, 1);
+        return predicted.isEmpty() ? "unknown" : predicted.get(0).getIntent();
+    }
+
+    private static double timeIntents(List<String[]> examples, int rounds, java.util.function.Function<String, String> recognizer) {
+        long start = System.nanoTime();
+        int checksum = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (String[] example : examples) {
+                checksum += recognizer.apply(example[1]).length();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == 42) {
+            System.out.print("");
+        }
+        return elapsed / 1000.0 / (rounds * (double) examples.size());
+    }
+
+    // ==================== Topic Identification: Keyword Index ====================
+
+    private static final String[] TOPIC_MESSAGES = {
+        "I need help with my math homework",
+        "I love playing video games with my friends",
+        "minecraft and fortnite are my favorite games",
+        "I've been feeling really stressed about exams",
+        "can you help me write a story about a dragon",
+        "my family is going to a party this weekend",
+        "what do you think about the meaning of life",
+        "I started a new workout and diet plan",
+        "how do I learn programming and build an app",
+        "ok",
+        "the weather is nice today",
+        "i want to start drawing and painting more often"
+    };
+
+    /**
+     * Compares the keyword index against the previous scan (a contains() check per
+     * keyword plus a freshly compiled regex per cluster keyword) as synthetic
+     * clusters grow the keyword count to 10x and 100x of today's.
+     */
+    public static void benchmarkTopicIdentification() {
+        System.out.println("Topic identification (" + TOPIC_MESSAGES.length + " messages):");
+        System.out.println("  scale  clusters  keywords   previous us/msg   index us/msg   index bytes/msg");
+        for (int scale : new int[] { 1, 10, 100 }) {
+            TopicClusteringSystem system = scaledTopicSystem(scale);
+            Map<String, String> keywordClusters = new HashMap<>();
+            for (TopicClusteringSystem.TopicCluster cluster : system.getAllClusters()) {
+                for (String keyword : cluster.keywords) {
+                    keywordClusters.put(keyword.toLowerCase(), cluster.clusterId);
+                }
+                for (String topic : cluster.relatedTopics) {
+                    keywordClusters.put(topic.toLowerCase(), cluster.clusterId);
+                }
+            }
+            int rounds = Math.max(20, 2000 / scale);
+            timeTopics(rounds / 4, message -> previousIdentifyTopics(system, keywordClusters, message));
+            timeTopics(rounds, message -> system.identifyTopics(message));
+            double previous = timeTopics(rounds, message -> previousIdentifyTopics(system, keywordClusters, message));
+            double index = timeTopics(rounds * 10, message -> system.identifyTopics(message));
+            System.out.printf("  %4dx  %8d  %8d   %15.2f   %12.2f   %15.0f%n", scale, system.getAllClusters().size(),
+                keywordClusters.size(), previous, index, allocatedBytesPerTopicMessage(system));
+        }
+    }
+
+    /**
+     * Today's clusters plus synthetic ones with made-up keywords, up to scale times as many
+     */
+    private static TopicClusteringSystem scaledTopicSystem(int scale) {
+        TopicClusteringSystem system = new TopicClusteringSystem();
+        int base = system.getAllClusters().size();
+        Random random = new Random(42);
+        for (int c = 0; c < base * (scale - 1); c++) {
+            List<String> keywords = new ArrayList<>();
+            List<String> related = new ArrayList<>();
+            for (int k = 0; k < 10; k++) {
+                keywords.add(syntheticWord(random));
+            }
+            for (int k = 0; k < 8; k++) {
+                related.add(k % 4 == 0 ? syntheticWord(random) + " " + syntheticWord(random) : syntheticWord(random));
+            }
+            system.addCluster(new TopicClusteringSystem.TopicCluster("synthetic_" + c, "Synthetic " + c, related, keywords));
+        }
+        return system;
+    }
+
+    private static String syntheticWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        int length = 4 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    /**
+     * identifyTopics as it was before the keyword index
+     */
+    private static List<String> previousIdentifyTopics(TopicClusteringSystem system, Map<String, String> keywordClusters,
+                                                       String input) {
+        List<String> topics = new ArrayList<>();
+        String lowerInput = input.toLowerCase();
+        Set<String> foundClusters = new HashSet<>();
+        for (String keyword : keywordClusters.keySet()) {
+            if (lowerInput.contains(keyword)) {
+                String clusterId = keywordClusters.get(keyword);
+                if (foundClusters.add(clusterId)) {
+                    topics.add(clusterId);
+                }
+            }
+        }
+        for (TopicClusteringSystem.TopicCluster cluster : system.getAllClusters()) {
+            for (String pattern : cluster.keywords) {
+                if (java.util.regex.Pattern.compile("\\b" + pattern + "\\b", java.util.regex.Pattern.CASE_INSENSITIVE)
+                        .matcher(lowerInput).find()) {
+                    if (!topics.contains(cluster.clusterId)) {
+                        topics.add(cluster.clusterId);
+                    }
+                }
+            }
+        }
+        return topics;
+    }
+
+    private static double timeTopics(int rounds, java.util.function.Function<String, List<String>> identify) {
+        long start = System.nanoTime();
+        int checksum = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (String message : TOPIC_MESSAGES) {
+                checksum += identify.apply(message).size();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == 42) {
+            System.out.print("");
+        }
+        return elapsed / 1000.0 / (rounds * (double) TOPIC_MESSAGES.length);
+    }
+
+    private static double allocatedBytesPerTopicMessage(TopicClusteringSystem system) {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+        int rounds = 1000;
+        long before = allocations.getThreadAllocatedBytes(thread);
+        timeTopics(rounds, message -> system.identifyTopics(message));
+        long after = allocations.getThreadAllocatedBytes(thread);
+        return (after - before) / (double) (rounds * TOPIC_MESSAGES.length);
+    }
+
+    // ==================== Implicit Topic Tracking: Long Messages ====================
+
+    private static final String[] TRACKER_PARAGRAPHS = {
+        "I've been so stressed about school lately. The exam is on Friday and my teacher keeps adding homework, "
+            + "so I barely sleep and I skip breakfast most days.",
+        "On the weekend I just want to play minecraft with my friends or watch a movie on netflix. "
+            + "My parents think video games are a waste of time but it's how I relax after a long week.",
+        "We're planning a trip to the beach this summer, maybe a flight to another country if my dad's job "
+            + "gives him a vacation. I'd love to try the food there, every restaurant looks delicious online.",
+        "Honestly I think I need a better workout routine and a healthier diet. The gym near my office opens early, "
+            + "and a friend said exercise helps with anxiety and stress.",
+        "Also my phone keeps crashing whenever I open that app, and the website for my college assignment "
+            + "won't load any data. Can you help me figure out what's wrong with the software?"
+    };
+
+    /**
+     * Compares the tracker against the previous scan (a contains() per keyword, a
+     * compiled regex per hit, an O(n) history deque and a phrase set per n-gram) on
+     * messages of one to many paragraphs.
+     */
+    public static void benchmarkImplicitTopicTracking() {
+        System.out.println("Implicit topic tracking (multi-paragraph messages):");
+        System.out.println("  paragraphs     chars   previous us/msg   tracker us/msg   tracker bytes/msg");
+        for (int paragraphs : new int[] { 1, 5, 20 }) {
+            String message = trackerMessage(paragraphs);
+            int rounds = Math.max(50, 4000 / paragraphs);
+            PreviousTopicTracker previous = new PreviousTopicTracker();
+            ContextEngine.ImplicitTopicTracker tracker = new ContextEngine.ImplicitTopicTracker();
+            timeTracker(rounds / 4, message, previous::processText);
+            timeTracker(rounds, message, tracker::processText);
+            double previousTime = timeTracker(rounds, message, previous::processText);
+            double trackerTime = timeTracker(rounds * 4, message, tracker::processText);
+            System.out.printf("  %10d  %8d   %15.2f   %14.2f   %17.0f%n", paragraphs, message.length(),
+                previousTime, trackerTime, allocatedBytesPerTrackerMessage(tracker, message));
+        }
+    }
+
+    private static String trackerMessage(int paragraphs) {
+        StringBuilder message = new StringBuilder();
+        for (int p = 0; p < paragraphs; p++) {
+            if (p > 0) {
+                message.append("\n\n");
+            }
+            message.append(TRACKER_PARAGRAPHS[p % TRACKER_PARAGRAPHS.length]);
+        }
+        return message.toString();
+    }
+
+    /**
+     * ImplicitTopicTracker.processText as it was before the keyword trie
+     */
+    private static class PreviousTopicTracker {
+        private final Map<String, ContextEngine.ImplicitTopicTracker.TrackedTopic> trackedTopics = new HashMap<>();
+        private final Deque<ContextEngine.ImplicitTopicTracker.TrackedTopic> topicHistory = new ArrayDeque<>(20);
+        private final java.util.regex.Pattern ngramPattern = java.util.regex.Pattern.compile("\\b\\w+(?:\\s+\\w+){0,2}\\b");
+
+        List<ContextEngine.ImplicitTopicTracker.TrackedTopic> processText(String text) {
+            List<ContextEngine.ImplicitTopicTracker.TrackedTopic> detectedTopics = new ArrayList<>();
+            String lowerText = text.toLowerCase();
+            for (Map.Entry<String, List<String>> entry : ContextEngine.ImplicitTopicTracker.getTopicPatterns().entrySet()) {
+                double maxConfidence = 0;
+                String bestMatch = null;
+                for (String keyword : entry.getValue()) {
+                    if (lowerText.contains(keyword)) {
+                        java.util.regex.Matcher matcher = java.util.regex.Pattern
+                            .compile("\\b" + java.util.regex.Pattern.quote(keyword) + "\\b").matcher(lowerText);
+                        int count = 0;
+                        while (matcher.find()) count++;
+                        double confidence = Math.min(1.0, 0.3 + (count * 0.1));
+                        if (confidence > maxConfidence) {
+                            maxConfidence = confidence;
+                            bestMatch = keyword;
+                        }
+                    }
+                }
+                if (bestMatch != null && maxConfidence >= 0.3) {
+                    detectedTopics.add(getOrCreateTopic(bestMatch, entry.getKey(), maxConfidence));
+                }
+            }
+            java.util.regex.Matcher matcher = ngramPattern.matcher(lowerText);
+            while (matcher.find()) {
+                String phrase = matcher.group().trim();
+                Set<String> common = Set.of(
+                    "i think", "i feel", "i want", "i need", "i like", "i love",
+                    "what about", "how about", "do you", "can you", "would you"
+                );
+                if (phrase.length() > 3 && !common.contains(phrase)) {
+                    ContextEngine.ImplicitTopicTracker.TrackedTopic topic = getOrCreateTopic(phrase, "custom", 0.4);
+                    topic.addContextPhrase(phrase);
+                    if (!detectedTopics.contains(topic)) {
+                        detectedTopics.add(topic);
+                    }
+                }
+            }
+            return detectedTopics;
+        }
+
+        private ContextEngine.ImplicitTopicTracker.TrackedTopic getOrCreateTopic(String name, String category, double confidence) {
+            ContextEngine.ImplicitTopicTracker.TrackedTopic topic = trackedTopics.get(name);
+            if (topic == null) {
+                topic = new ContextEngine.ImplicitTopicTracker.TrackedTopic(name, category, confidence);
+                trackedTopics.put(name, topic);
+                topicHistory.addFirst(topic);
+                if (trackedTopics.size() > 50) {
+                    trackedTopics.remove(topicHistory.removeLast().getTopicName());
+                }
+            } else {
+                topic.update(confidence);
+                topicHistory.remove(topic);
+                topicHistory.addFirst(topic);
+            }
+            return topic;
+        }
+    }
+
+    private static double timeTracker(int rounds, String message,
+                                      java.util.function.Function<String, List<ContextEngine.ImplicitTopicTracker.TrackedTopic>> process) {
+        long start = System.nanoTime();
+        int checksum = 0;
+        for (int r = 0; r < rounds; r++) {
+            checksum += process.apply(message).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == 42) {
+            System.out.print("");
+        }
+        return elapsed / 1000.0 / rounds;
+    }
+
+    private static double allocatedBytesPerTrackerMessage(ContextEngine.ImplicitTopicTracker tracker, String message) {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+        int rounds = 200;
+        long before = allocations.getThreadAllocatedBytes(thread);
+        timeTracker(rounds, message, tracker::processText);
+        long after = allocations.getThreadAllocatedBytes(thread);
+        return (after - before) / (double) rounds;
+    }
+
+    // ==================== Thread Similarity: Inverted Index ====================
+
+    /**
+     * Compares findMostSimilarThread against the previous scan (a fresh HashSet
+     * intersection and union with every thread) for users with more and more
+     * threads, and reports how often both pick a thread of the same similarity.
+     */
+    public static void benchmarkThreadSimilarity() {
+        System.out.println("Thread similarity search (200 queries):");
+        System.out.println("  threads   previous us/query   index us/query   candidates   exact   agreement");
+        for (int threadCount : new int[] { 100, 1000, 5000 }) {
+            Random random = new Random(7);
+            String[] vocabulary = new String[3000];
+            for (int w = 0; w < vocabulary.length; w++) {
+                vocabulary[w] = syntheticWord(random);
+            }
+            ContextEngine engine = new ContextEngine();
+            for (int t = 0; t < threadCount; t++) {
+                ContextEngine.ConversationThread thread = engine.createThread("thread " + t);
+                for (int m = 0; m < 5; m++) {
+                    thread.addMessage("User", syntheticMessage(random, vocabulary, 6));
+                }
+            }
+            String[] queries = new String[200];
+            for (int q = 0; q < queries.length; q++) {
+                queries[q] = syntheticMessage(random, vocabulary, 8);
+            }
+
+            List<ContextEngine.ConversationThread> threads = engine.getAllThreads();
+            ContextEngine.ConversationThread current = engine.getCurrentThread();
+            ContextEngine.ConversationThread[] previous = new ContextEngine.ConversationThread[queries.length];
+            ContextEngine.ConversationThread[] indexed = new ContextEngine.ConversationThread[queries.length];
+            long start = System.nanoTime();
+            for (int q = 0; q < queries.length; q++) {
+                previous[q] = previousMostSimilarThread(threads, current, queries[q]);
+            }
+            double previousTime = (System.nanoTime() - start) / 1000.0 / queries.length;
+            for (String query : queries) {
+                engine.findMostSimilarThread(query);
+            }
+            start = System.nanoTime();
+            for (int q = 0; q < queries.length; q++) {
+                indexed[q] = engine.findMostSimilarThread(queries[q]);
+            }
+            double indexTime = (System.nanoTime() - start) / 1000.0 / queries.length;
+
+            int agreeing = 0;
+            for (int q = 0; q < queries.length; q++) {
+                ContextEngine.ConversationThread query = new ContextEngine.ConversationThread("query");
+                query.addMessage("User", queries[q]);
+                if (previous[q].getTopicSimilarity(query) == indexed[q].getTopicSimilarity(query)) {
+                    agreeing++;
+                }
+            }
+            Map<String, Object> stats = engine.getThreadIndexStatistics();
+            System.out.printf("  %7d   %17.2f   %14.2f   %10.1f   %5.1f   %8.1f%%%n", threadCount, previousTime, indexTime,
+                stats.get("averageCandidates"), stats.get("averageExactComparisons"), 100.0 * agreeing / queries.length);
+        }
+    }
+
+    /**
+     * Words drawn with a skew towards the start of the vocabulary, as real word use is
+     */
+    private static String syntheticMessage(Random random, String[] vocabulary, int words) {
+        StringBuilder message = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            double skewed = Math.pow(random.nextDouble(), 2.5);
+            message.append(vocabulary[(int) (skewed * vocabulary.length)]).append(' ');
+        }
+        return message.toString();
+    }
+
+    /**
+     * findMostSimilarThread as it was before the thread index
+     */
+    private static ContextEngine.ConversationThread previousMostSimilarThread(List<ContextEngine.ConversationThread> threads,
+                                                                             ContextEngine.ConversationThread current,
+                                                                             String content) {
+        ContextEngine.ConversationThread tempThread = new ContextEngine.ConversationThread("temp");
+        tempThread.addMessage("User", content);
+        Set<String> tempKeys = new HashSet<>();
+        for (Map.Entry<String, Double> keyword : tempThread.getTopKeywords()) {
+            tempKeys.add(keyword.getKey());
+        }
+        ContextEngine.ConversationThread best = null;
+        double bestScore = -1;
+        for (ContextEngine.ConversationThread thread : threads) {
+            if (thread == current) {
+                continue;
+            }
+            Set<String> threadKeys = new HashSet<>();
+            for (Map.Entry<String, Double> keyword : thread.getTopKeywords()) {
+                threadKeys.add(keyword.getKey());
+            }
+            double score;
+            if (threadKeys.isEmpty() && tempKeys.isEmpty()) {
+                score = 0.5;
+            } else if (threadKeys.isEmpty() || tempKeys.isEmpty()) {
+                score = 0.2;
+            } else {
+                Set<String> intersection = new HashSet<>(threadKeys);
+                intersection.retainAll(tempKeys);
+                Set<String> union = new HashSet<>(threadKeys);
+                union.addAll(tempKeys);
+                score = (double) intersection.size() / union.size();
+            }
+            if (score > bestScore) {
+                best = thread;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // ==================== Thread Retention: Compaction ====================
+
+    /**
+     * Feeds long sessions into one thread and reports the turns kept verbatim, the
+     * approximate bytes compaction released and the cost per added turn.
+     */
+    public static void benchmarkThreadRetention() {
+        System.out.println("Thread retention (retained turns from conversation.thread_retained_turns):");
+        System.out.println("     turns   retained   compacted   bytes saved   us/turn");
+        Random random = new Random(11);
+        String[] vocabulary = new String[500];
+        for (int w = 0; w < vocabulary.length; w++) {
+            vocabulary[w] = syntheticWord(random);
+        }
+        for (int turns : new int[] { 100, 1000, 10000 }) {
+            String[] messages = new String[turns];
+            for (int t = 0; t < turns; t++) {
+                messages[t] = syntheticMessage(random, vocabulary, 12).trim() + ". " + syntheticMessage(random, vocabulary, 8).trim() + ".";
+            }
+            ContextEngine.ConversationThread thread = new ContextEngine.ConversationThread("session");
+            long start = System.nanoTime();
+            for (String message : messages) {
+                thread.addMessage("User", message);
+            }
+            double perTurn = (System.nanoTime() - start) / 1000.0 / turns;
+            System.out.printf("  %8d   %8d   %9d   %11d   %7.2f%n", turns, thread.getRetainedMessageCount(),
+                thread.getCompactedMessageCount(), thread.getBytesSaved(), perTurn);
+        }
+    }
+
+    // ==================== Context Snapshots: Binary Format ====================
+
+    private static final int SNAPSHOT_RUNS = 20;
+
+    /**
+     * Saves the same long-term memory in the text and binary formats and compares
+     * file size, the time to decode the file and the time to load it into an engine.
+     */
+    public static void benchmarkContextSnapshots() throws IOException {
+        Random random = new Random(5);
+        String[] vocabulary = new String[800];
+        for (int w = 0; w < vocabulary.length; w++) {
+            vocabulary[w] = syntheticWord(random);
+        }
+        ContextEngine engine = new ContextEngine(new ExpiryService(1000));
+        for (int e = 0; e < 200; e++) {
+            engine.addEntity(syntheticWord(random), e % 3 == 0 ? "person" : "place", ContextEngine.MemoryTier.LONG_TERM);
+        }
+        for (int t = 0; t < 300; t++) {
+            ContextEngine.ConversationThread thread = engine.createThread(vocabulary[random.nextInt(40)]);
+            for (int turn = 0; turn < 40; turn++) {
+                thread.addMessage(turn % 2 == 0 ? "User" : "VirtualXander", syntheticMessage(random, vocabulary, 14).trim());
+            }
+        }
+        for (int q = 0; q < 50; q++) {
+            engine.createOpenQuestion(syntheticMessage(random, vocabulary, 8).trim() + "?", "User", "session");
+        }
+
+        Path dir = Files.createTempDirectory("vx-snapshot");
+        try {
+            ContextEngine.PersistenceManager persistence = new ContextEngine.PersistenceManager(dir.toString());
+            System.out.println("Context snapshots (200 entities, 300 threads x 40 turns, 50 questions):");
+            System.out.println("  format       bytes   decode ms   load ms");
+            for (boolean binary : new boolean[] { false, true }) {
+                String filename = binary ? "longterm.bin.mem" : "longterm.txt.mem";
+                persistence.setBinarySnapshots(binary);
+                persistence.saveLongTermMemory(engine, filename);
+
+                long decodeNanos = Long.MAX_VALUE;
+                long loadNanos = Long.MAX_VALUE;
+                for (int run = 0; run < SNAPSHOT_RUNS; run++) {
+                    long start = System.nanoTime();
+                    persistence.readFile(filename);
+                    decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+
+                    ContextEngine target = new ContextEngine(new ExpiryService(1000));
+                    start = System.nanoTime();
+                    persistence.loadLongTermMemory(target, filename);
+                    loadNanos = Math.min(loadNanos, System.nanoTime() - start);
+                }
+                System.out.printf("  %-6s  %10d   %9.2f   %7.2f%n", binary ? "binary" : "text",
+                    persistence.getMemorySize(filename), decodeNanos / 1e6, loadNanos / 1e6);
+                persistence.deleteMemory(filename);
+            }
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // ==================== Context Journal: Append vs Snapshot ====================
+
+    /**
+     * Compares the cost of persisting each turn by appending it to the journal
+     * (committed in groups) against rewriting a full snapshot after every turn.
+     */
+    public static void benchmarkContextJournal() throws IOException {
+        Random random = new Random(17);
+        String[] vocabulary = new String[500];
+        for (int w = 0; w < vocabulary.length; w++) {
+            vocabulary[w] = syntheticWord(random);
+        }
+        Path dir = Files.createTempDirectory("vx-journal");
+        try {
+            System.out.println("Context journal (cost of persisting one turn):");
+            System.out.println("     turns   journal us/turn   snapshot us/turn");
+            for (int turns : new int[] { 100, 500, 2000 }) {
+                String[] messages = new String[turns];
+                for (int t = 0; t < turns; t++) {
+                    messages[t] = syntheticMessage(random, vocabulary, 14).trim();
+                }
+
+                ContextEngine journaled = new ContextEngine(new ExpiryService(1000));
+                ContextJournal journal = ContextJournal.open(dir, "bench" + turns, journaled);
+                long start = System.nanoTime();
+                for (String message : messages) {
+                    journaled.addMessageToCurrentThread("User", message);
+                }
+                journal.sync();
+                double journalPerTurn = (System.nanoTime() - start) / 1000.0 / turns;
+                journal.close();
+
+                ContextEngine snapshotted = new ContextEngine(new ExpiryService(1000));
+                ContextEngine.PersistenceManager persistence = new ContextEngine.PersistenceManager(dir.toString());
+                start = System.nanoTime();
+                for (String message : messages) {
+                    snapshotted.addMessageToCurrentThread("User", message);
+                    persistence.saveShortTermMemory(snapshotted, "bench.mem");
+                }
+                double snapshotPerTurn = (System.nanoTime() - start) / 1000.0 / turns;
+                System.out.printf("  %8d   %15.2f   %16.2f%n", turns, journalPerTurn, snapshotPerTurn);
+            }
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // ==================== Autosave: Shared Scheduler ====================
+
+    /**
+     * Registers thousands of engines for autosave on the shared scheduler, changes
+     * a tenth of them, and reports saves, skips and how evenly saves spread over time.
+     */
+    public static void benchmarkAutosave() throws InterruptedException {
+        int engines = 5000;
+        long intervalMillis = 500;
+        AutosaveScheduler scheduler = new AutosaveScheduler(0.1);
+        int threadsBefore = Thread.activeCount();
+        long[] saveBuckets = new long[100];
+        long start = System.currentTimeMillis();
+        List<ContextEngine> sessions = new ArrayList<>();
+        ExpiryService expiry = new ExpiryService(1000);
+        for (int e = 0; e < engines; e++) {
+            ContextEngine engine = new ContextEngine(expiry);
+            sessions.add(engine);
+            scheduler.register(engine, () -> {
+                int bucket = (int) ((System.currentTimeMillis() - start) / 20);
+                synchronized (saveBuckets) {
+                    saveBuckets[Math.min(bucket, saveBuckets.length - 1)]++;
+                }
+                return true;
+            }, intervalMillis);
+        }
+        for (int e = 0; e < engines; e += 10) {
+            sessions.get(e).addMessageToCurrentThread("User", "hello");
+        }
+        Thread.sleep(2 * intervalMillis);
+        long busiest = 0;
+        synchronized (saveBuckets) {
+            for (long bucket : saveBuckets) {
+                busiest = Math.max(busiest, bucket);
+            }
+        }
+        Map<String, Object> stats = scheduler.getStatistics();
+        System.out.println("Autosave (" + engines + " engines, " + intervalMillis + " ms interval, 10% changed):");
+        System.out.println("  saves " + stats.get("saves") + ", skipped " + stats.get("skippedSaves")
+            + ", busiest 20 ms window " + busiest + " saves, extra threads " + (Thread.activeCount() - threadsBefore));
+        scheduler.shutdown();
+    }
+
+    // ==================== Long-Term Store: Off-Heap Entities ====================
+
+    /**
+     * Keeps the long-term entities and an archived thread of many users on the heap
+     * in their engines, then offloads them into a mapped LongTermStore with the
+     * engines still live, and reports the heap each way and the cost of a read.
+     */
+    public static void benchmarkLongTermStore() throws IOException {
+        int users = 20000;
+        int entitiesPerUser = 5;
+        int turnsPerThread = 20;
+        Random random = new Random(49);
+        ExpiryService expiry = new ExpiryService(1000);
+        String[] vocabulary = new String[500];
+        for (int w = 0; w < vocabulary.length; w++) {
+            vocabulary[w] = syntheticWord(random);
+        }
+
+        long before = usedHeap();
+        List<ContextEngine> engines = new ArrayList<>();
+        for (int u = 0; u < users; u++) {
+            ContextEngine engine = new ContextEngine(expiry);
+            for (int e = 0; e < entitiesPerUser; e++) {
+                engine.addEntity(syntheticWord(random), "fact", ContextEngine.MemoryTier.LONG_TERM)
+                    .setAttribute("note", syntheticWord(random));
+            }
+            ContextEngine.ConversationThread thread = engine.createThread(syntheticWord(random));
+            for (int t = 0; t < turnsPerThread; t++) {
+                thread.addMessage("User", syntheticMessage(random, vocabulary, 12));
+            }
+            thread.setStatus(ContextEngine.ConversationThread.ThreadStatus.ARCHIVED);
+            engines.add(engine);
+        }
+        long engineHeap = usedHeap() - before;
+
+        Path dir = Files.createTempDirectory("vx-bench-longterm");
+        try (LongTermStore store = new LongTermStore(dir, 64 * 1024 * 1024)) {
+            for (int u = 0; u < users; u++) {
+                engines.get(u).setLongTermStore(store, "user" + u);
+                engines.get(u).offloadLongTerm();
+            }
+            long storeHeap = usedHeap() - before;
+
+            int reads = 100000;
+            long start = System.nanoTime();
+            int found = 0;
+            for (int r = 0; r < reads; r++) {
+                found += store.getEntities("user" + random.nextInt(users)).get(0) != null ? 1 : 0;
+            }
+            double readMicros = (System.nanoTime() - start) / 1000.0 / reads;
+
+            Map<String, Object> stats = store.getStatistics();
+            System.out.println("Long-term store (" + users + " users x " + entitiesPerUser + " entities + "
+                + turnsPerThread + "-turn thread, engines kept live):");
+            System.out.printf("  heap in engines %.1f MB, heap with store %.1f MB (index %.1f MB, mapped %.1f MB)%n",
+                engineHeap / 1048576.0, storeHeap / 1048576.0,
+                ((Long) stats.get("indexBytes")) / 1048576.0, ((Long) stats.get("liveBytes")) / 1048576.0);
+            System.out.printf("  list + decode one entity %.2f us (%d found)%n", readMicros, found);
+            engines.clear();
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // ==================== Write-Behind: Saves Off The Request Thread ====================
+
+    /**
+     * Saves a busy engine after every turn, first synchronously and then through a
+     * WriteBehindQueue, and reports how long the caller waits and how many writes
+     * actually reach the disk.
+     */
+    public static void benchmarkWriteBehind() throws IOException {
+        int turns = 2000;
+        Random random = new Random(50);
+        String[] vocab = new String[500];
+        for (int i = 0; i < vocab.length; i++) {
+            vocab[i] = syntheticWord(random);
+        }
+        Path dir = Files.createTempDirectory("vx-bench-writebehind");
+        try {
+            ContextEngine.PersistenceManager manager = new ContextEngine.PersistenceManager(dir.toString());
+            ContextEngine engine = new ContextEngine(new ExpiryService(1000));
+            for (int e = 0; e < 50; e++) {
+                engine.addEntity(syntheticWord(random), "fact", ContextEngine.MemoryTier.SHORT_TERM);
+            }
+
+            long start = System.nanoTime();
+            for (int t = 0; t < turns; t++) {
+                engine.addMessageToCurrentThread("User", syntheticMessage(random, vocab, 12));
+                manager.saveShortTermMemory(engine, "sync.mem");
+            }
+            double syncMicros = (System.nanoTime() - start) / 1000.0 / turns;
+
+            WriteBehindQueue queue = new WriteBehindQueue(64);
+            manager.setWriteBehindQueue(queue);
+            start = System.nanoTime();
+            for (int t = 0; t < turns; t++) {
+                engine.addMessageToCurrentThread("User", syntheticMessage(random, vocab, 12));
+                manager.saveShortTermMemoryLater(engine, "async.mem");
+            }
+            double asyncMicros = (System.nanoTime() - start) / 1000.0 / turns;
+            manager.flushSaves();
+            double drainedMicros = (System.nanoTime() - start) / 1000.0 / turns;
+            Map<String, Object> stats = queue.getStatistics();
+            queue.close();
+
+            System.out.println("Write-behind (" + turns + " turns, save after every turn):");
+            System.out.printf("  caller waits: synchronous %.1f us, write-behind %.1f us (%.1f us until flushed)%n",
+                syncMicros, asyncMicros, drainedMicros);
+            System.out.println("  writes " + stats.get("writes") + ", coalesced " + stats.get("coalescedWrites")
+                + ", blocked submits " + stats.get("blockedSubmits"));
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // ==================== Runner ====================
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("coldstart-child")) {
+            coldStartChild(args[1]);
+            return;
+        }
+        Set<String> selected = new HashSet<>(Arrays.asList(args));
+        boolean all = selected.isEmpty();
+
+        System.out.println("========================================");
+        System.out.println("  VirtualXander Benchmarks");
+        System.out.println("========================================");
+
+        if (all || selected.contains("coldstart")) {
+            benchmarkColdStart();
+        }
+        if (all || selected.contains("intent")) {
+            benchmarkIntentRecognition();
+        }
+        if (all || selected.contains("prefilter")) {
+            benchmarkPrefilter();
+        }
+        if (all || selected.contains("emotion")) {
+            benchmarkEmotionScoring();
+        }
+        if (all || selected.contains("classifier")) {
+            benchmarkIntentClassifier();
+        }
+        if (all || selected.contains("topics")) {
+            benchmarkTopicIdentification();
+        }
+        if (all || selected.contains("tracker")) {
+            benchmarkImplicitTopicTracking();
+        }
+        if (all || selected.contains("threads")) {
+            benchmarkThreadSimilarity();
+        }
+        if (all || selected.contains("retention")) {
+            benchmarkThreadRetention();
+        }
+        if (all || selected.contains("snapshot")) {
+            benchmarkContextSnapshots();
+        }
+        if (all || selected.contains("journal")) {
+            benchmarkContextJournal();
+        }
+        if (all || selected.contains("autosave")) {
+            benchmarkAutosave();
+        }
+        if (all || selected.contains("longterm")) {
+            benchmarkLongTermStore();
+        }
+        if (all || selected.contains("writebehind")) {
+            benchmarkWriteBehind();
+        }
+    }
+}
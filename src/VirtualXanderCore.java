@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 import javax.swing.JFrame;
 
@@ -25,15 +27,21 @@ public class VirtualXanderCore {
     // Added in Version 0.2.0.0
     private EmpathyEngine empathyEngine;
     private MoodEngine moodEngine;
+    private EmotionalTrajectory emotionalTrajectory;
     private ContextEngine contextEngine;
     private ContextEngine.ImplicitTopicTracker topicTracker;
     private ContextEngine.PersistenceManager persistenceManager;
+    private ContextJournal contextJournal;
+    // Saved again under the same name, so queued saves of this session coalesce
+    private String contextSaveFile;
     
     // Added in Version 0.2.0.0 - New Engine Imports
     private InsightEngine insightEngine;
     private GrowthPartner growthPartner;
     private DailyCompanion dailyCompanion;
     private SocialDynamics socialDynamics;
+    // Built on first use: no turn reads them, and opening the Preferences backend
+    // and the first date format is a large share of a cold start
     private DesktopEnhancements desktopEnhancements;
     private UserProfileDashboard userProfileDashboard;
     private AdaptiveLearner adaptiveLearner;
@@ -63,11 +71,29 @@ public class VirtualXanderCore {
     private TestFramework testFramework;
     // private WellnessEngine wellnessEngine; // WellnessEngine class doesn't exist
 
+    // Added in Version 0.2.0.3
+    private TurnPipeline turnPipeline;
+    private String lastTurnInput;
+    private List<IntentRecognizer.IntentMatch> lastTurnIntents;
+
     // Added in Version 0.1.0.0
     private boolean isRunning;
     private Scanner scanner;
     
+    /**
+     * Creates a core that journals its context under context.journal_session
+     */
     public VirtualXanderCore() {
+        this(Configuration.getInstance().getProperty("context.journal_session", "default"));
+    }
+    
+    /**
+     * @param journalSession session to journal the context under when
+     *        context.journal_enabled is set, and to keep long-term memory under
+     *        when context.longterm_store_enabled is set, or null for neither; two
+     *        cores cannot hold the same session at once
+     */
+    public VirtualXanderCore(String journalSession) {
         this.intentRecognizer = new IntentRecognizer();
         this.conversationContext = new ConversationContext();
         this.responseGenerator = new ResponseGenerator();
@@ -88,14 +114,16 @@ public class VirtualXanderCore {
         this.contextEngine = new ContextEngine();
         this.topicTracker = new ContextEngine.ImplicitTopicTracker();
         this.persistenceManager = new ContextEngine.PersistenceManager();
+        this.contextJournal = openContextJournal(journalSession);
+        this.contextSaveFile = "shortterm_"
+            + (journalSession != null ? journalSession.replaceAll("[^A-Za-z0-9_-]", "_") : "local") + ".mem";
+        attachLongTermStore(journalSession);
         
         // Added in Version 0.2.0.1 - Initialize new engines
         this.insightEngine = new InsightEngine();
         this.growthPartner = new GrowthPartner();
         this.dailyCompanion = new DailyCompanion();
         this.socialDynamics = new SocialDynamics();
-        this.desktopEnhancements = new DesktopEnhancements(null); // Pass null for CLI mode
-        this.userProfileDashboard = new UserProfileDashboard();
         this.adaptiveLearner = new AdaptiveLearner();
         this.relationshipMemory = new RelationshipMemory();
         this.personalMemory = new PersonalMemory();
@@ -118,13 +146,40 @@ public class VirtualXanderCore {
         this.relationshipHandler = new RelationshipHandler();
         this.responseRouter = new ResponseRouter();
         this.storyEngine = new StoryEngine();
+        
+        // One trajectory per session, fed by the emotion stage and read by the mood engines
+        this.emotionalTrajectory = new EmotionalTrajectory();
+        this.moodEngine.setEmotionalTrajectory(emotionalTrajectory);
+        this.empathyEngine.setEmotionalTrajectory(emotionalTrajectory);
+        this.dailyCompanion.setEmotionalTrajectory(emotionalTrajectory);
         this.testFramework = null; // TestFramework - singleton pattern, not directly instantiated
         // this.wellnessEngine = new WellnessEngine(); // WellnessEngine class doesn't exist
         
+        // Added in Version 0.2.0.3 - Shared turn pipeline for every surface
+        this.turnPipeline = buildTurnPipeline();
+        
         this.isRunning = false;
         this.scanner = new Scanner(System.in);
     }
 
+    /**
+     * Builds the default turn pipeline and applies stage configuration
+     */
+    private TurnPipeline buildTurnPipeline() {
+        TurnPipeline pipeline = new TurnPipeline()
+            .addStage(new TurnPipeline.ContextTrackingStage(contextEngine, topicTracker))
+            .addStage(new TurnPipeline.EmotionStage(emotionDetector, emotionalTrajectory))
+            .addStage(new TurnPipeline.TopicClusterStage(topicClusteringSystem))
+            .addStage(new TurnPipeline.MentalHealthStage(mentalHealthSupportHandler))
+            .addStage(new TurnPipeline.IntentStage(intentRecognizer))
+            .addStage(new TurnPipeline.StateMachineStage(stateMachine))
+            .addStage(new TurnPipeline.ResponseGenerationStage(responseGenerator, conversationContext))
+            .addStage(new TurnPipeline.ContextualEnhancementStage(contextAwareLogic, conversationContext))
+            .addStage(new TurnPipeline.ResponseRecordingStage(contextEngine));
+        pipeline.applyConfiguration(configuration);
+        return pipeline;
+    }
+
     // Added in Version 0.1.0.0
     /**
      * Starts the conversation
@@ -222,57 +277,13 @@ public class VirtualXanderCore {
             conversationContext.setTopicClustersJustListed(false);
         }
         
-        // Phase 4: Track conversation in ContextEngine
-        contextEngine.addMessageToCurrentThread("User", userInput);
-        
-        // Track topics using ImplicitTopicTracker
-        List<ContextEngine.ImplicitTopicTracker.TrackedTopic> detectedTopics = 
-            topicTracker.processText(userInput);
-        if (!detectedTopics.isEmpty()) {
-            ContextEngine.ImplicitTopicTracker.TrackedTopic dominant = topicTracker.getDominantTopic();
-            if (dominant != null) {
-                contextEngine.getCurrentThread().setTopic(dominant.getTopicName());
-            }
-        }
-
-        // Added in Version 0.1.0.0
-        // Phase 2: Detect emotions
-        EmotionDetector.EmotionResult emotionResult = emotionDetector.detectEmotion(userInput);
-        // Phase 2: Identify topics
-        List<String> identifiedTopics = topicClusteringSystem.identifyTopics(userInput);
-        if (!identifiedTopics.isEmpty()) {
-            String dominantTopic = identifiedTopics.get(0);
-            topicClusteringSystem.activateCluster(dominantTopic);
-        }
-
-        // Added in Version 0.1.0.4
-        // Phase 3: Check for mental health support needs
-        String response;
-        if (mentalHealthSupportHandler.isMentalHealthSupportNeeded(userInput)) {
-            // Handle mental health support
-            response = handleMentalHealthSupport(userInput);
-        } else {
-            // Normal conversation flow
-            // Recognize intent
-            String intent = intentRecognizer.recognizeIntent(userInput);
-            // Check for farewell command
-            if (intent.equals("farewell") || userInput.toLowerCase().contains("exit")) {
-                farewell();
-                return;
-            }
-            // Process through state machine
-            stateMachine.processIntent(intent);
-            // Generate base response
-            response = responseGenerator.generateResponse(intent, userInput, conversationContext);
-            // Apply context-aware enhancements (pass base response to avoid duplication)
-            response = contextAwareLogic.generateContextualResponse(
-                response, intent, userInput, emotionResult.getPrimaryEmotion(), conversationContext
-            );
+        // Updated in Version 0.2.0.3 - Run the turn through the shared pipeline
+        TurnPipeline.TurnContext turn = runTurn(new TurnPipeline.TurnContext(userInput, true));
+        if (turn.isFarewell() && turn.getResponse() == null) {
+            farewell();
+            return;
         }
-
-        // Added in Version 0.2.0.0
-        // Add Xander response to ContextEngine
-        contextEngine.addMessageToCurrentThread("Xander", response);
+        String response = turn.getResponse();
         
         // Added in Version 0.1.0.0
         // Print response
@@ -282,47 +293,9 @@ public class VirtualXanderCore {
         // Log state and emotion info (for debugging)
 
         // Added in Version 0.1.0.0, Updated in Version 0.1.0.4
-        logStateInfo("mental_health_support", ConversationStateMachine.ConversationState.GENERAL_CHAT, emotionResult);
+        logStateInfo("mental_health_support", ConversationStateMachine.ConversationState.GENERAL_CHAT, turn.getEmotionResult());
     }
     
-    /**
-     * Handles mental health support including dark thoughts
-     */
-    private String handleMentalHealthSupport(String userInput) {
-        // First check if it's a crisis level
-        if (mentalHealthSupportHandler.isCrisisLevel(userInput)) {
-            return mentalHealthSupportHandler.getCrisisResponse();
-        }
-        
-        // Detect the specific support category
-        MentalHealthSupportHandler.SupportCategory category = 
-            mentalHealthSupportHandler.detectSupportCategory(userInput);
-        
-        // Get appropriate response
-        MentalHealthSupportHandler.SupportResponse supportResponse = 
-            mentalHealthSupportHandler.getSupportResponse(category);
-        
-        StringBuilder response = new StringBuilder();
-        response.append(supportResponse.response);
-        
-        // Add coping suggestions for dark thoughts specifically
-        if (category == MentalHealthSupportHandler.SupportCategory.DARK_THOUGHTS) {
-            List<String> suggestions = mentalHealthSupportHandler.getCopingSuggestions(category);
-            if (suggestions != null && !suggestions.isEmpty()) {
-                response.append("\n\nSome suggestions that might help:\n");
-                for (int i = 0; i < Math.min(3, suggestions.size()); i++) {
-                    response.append("• ").append(suggestions.get(i)).append("\n");
-                }
-            }
-            // Add encouragement
-            response.append("\n").append(mentalHealthSupportHandler.getEncouragement(category));
-        }
-        
-        // Add follow-up question
-        response.append("\n").append(supportResponse.followUp);
-        
-        return response.toString();
-    }
     // Added in Version 0.1.0.0
     private boolean handleSpecialCommands(String input) {
         String lowerInput = input.toLowerCase().trim();
@@ -502,12 +475,21 @@ public class VirtualXanderCore {
     }
     
     private void resetConversation() {
+        resetConversationState();
+        System.out.println("Xander: Conversation reset! Let's start fresh. Hi there!");
+        System.out.println();
+    }
+    
+    /**
+     * Starts a new conversation: clears the conversation context, state machine,
+     * topic clusters and the session's emotional trajectory
+     */
+    public void resetConversationState() {
         conversationContext.reset();
         stateMachine.reset();
         topicClusteringSystem.resetClusters();
         conversationContext.setTopicClustersJustListed(false);
-        System.out.println("Xander: Conversation reset! Let's start fresh. Hi there!");
-        System.out.println();
+        emotionalTrajectory.reset();
     }
     
     private void printStatus() {
@@ -831,35 +813,40 @@ public class VirtualXanderCore {
             return "Goodbye! It was great chatting with you.";
         }
         
-        // Phase 3: Check for mental health support needs
-        if (mentalHealthSupportHandler.isMentalHealthSupportNeeded(userInput)) {
-            return handleMentalHealthSupport(userInput);
-        }
-        
-        // Phase 2: Detect emotions
-        EmotionDetector.EmotionResult emotionResult = emotionDetector.detectEmotion(userInput);
-        
-        // Phase 2: Identify topics
-        List<String> identifiedTopics = topicClusteringSystem.identifyTopics(userInput);
-        if (!identifiedTopics.isEmpty()) {
-            topicClusteringSystem.activateCluster(identifiedTopics.get(0));
+        // Updated in Version 0.2.0.3 - Same pipeline as the CLI
+        TurnPipeline.TurnContext turn = runTurn(new TurnPipeline.TurnContext(userInput.trim(), false));
+        return turn.getResponse();
+    }
+    
+    private synchronized TurnPipeline.TurnContext runTurn(TurnPipeline.TurnContext turn) {
+        turnPipeline.run(turn);
+        lastTurnInput = turn.getInput();
+        lastTurnIntents = turn.getRankedIntents();
+        return turn;
+    }
+    
+    /**
+     * Gets the ranked intents of a turn, reusing the ones the pipeline recognized if the
+     * input was the last turn it ran. They are recognized now if the turn was answered
+     * outside the pipeline (e.g. the crisis fast path), or completed before the intent
+     * stage ran (e.g. by the mental health stage); the latter are kept for the next call.
+     */
+    public synchronized List<IntentRecognizer.IntentMatch> getTurnIntents(String userInput) {
+        if (lastTurnInput != null && userInput != null && lastTurnInput.equals(userInput.trim())) {
+            if (lastTurnIntents == null) {
+                lastTurnIntents = intentRecognizer.recognizeIntents(lastTurnInput, 3);
+            }
+            return lastTurnIntents;
         }
-        
-        // Recognize intent
-        String intent = intentRecognizer.recognizeIntent(userInput);
-        
-        // Process through state machine
-        stateMachine.processIntent(intent);
-        
-        // Generate base response
-        String response = responseGenerator.generateResponse(intent, userInput, conversationContext);
-        
-        // Apply context-aware enhancements (pass base response to avoid duplication)
-        response = contextAwareLogic.generateContextualResponse(
-            response, intent, userInput, emotionResult.getPrimaryEmotion(), conversationContext
-        );
-        
-        return response;
+        return intentRecognizer.recognizeIntents(userInput, 3);
+    }
+    
+    /**
+     * Records a turn that was answered outside the pipeline (e.g. the crisis fast path)
+     */
+    public void recordTurn(String userInput, String response) {
+        contextEngine.addMessageToCurrentThread("User", userInput);
+        contextEngine.addMessageToCurrentThread("Xander", response);
     }
     
     // Phase 2: Getters for advanced features
@@ -941,6 +928,13 @@ public class VirtualXanderCore {
         return moodEngine;
     }
     
+    /**
+     * Gets this session's emotional trajectory
+     */
+    public EmotionalTrajectory getEmotionalTrajectory() {
+        return emotionalTrajectory;
+    }
+    
     /**
      * Gets the ContextEngine for advanced context management
      */
@@ -955,6 +949,13 @@ public class VirtualXanderCore {
         return topicTracker;
     }
     
+    /**
+     * Gets the turn pipeline shared by the CLI and processMessage
+     */
+    public TurnPipeline getTurnPipeline() {
+        return turnPipeline;
+    }
+    
     /**
      * Gets the Insight Engine for pattern and behavior analysis
      */
@@ -984,16 +985,22 @@ public class VirtualXanderCore {
     }
     
     /**
-     * Gets the Desktop Enhancements
+     * Gets the Desktop Enhancements, creating them on first use
      */
-    public DesktopEnhancements getDesktopEnhancements() {
+    public synchronized DesktopEnhancements getDesktopEnhancements() {
+        if (desktopEnhancements == null) {
+            desktopEnhancements = new DesktopEnhancements(null); // Pass null for CLI mode
+        }
         return desktopEnhancements;
     }
     
     /**
-     * Gets the User Profile Dashboard
+     * Gets the User Profile Dashboard, creating it on first use
      */
-    public UserProfileDashboard getUserProfileDashboard() {
+    public synchronized UserProfileDashboard getUserProfileDashboard() {
+        if (userProfileDashboard == null) {
+            userProfileDashboard = new UserProfileDashboard();
+        }
         return userProfileDashboard;
     }
     
@@ -1040,6 +1047,57 @@ public class VirtualXanderCore {
         if (scanner != null) {
             scanner.close();
         }
+        contextEngine.offloadLongTerm();
+        contextEngine.flushSaves();
+        if (contextJournal != null) {
+            try {
+                contextJournal.close();
+            } catch (IOException e) {
+                Logger.getInstance().warn("VirtualXanderCore", "Could not close context journal: " + e.getMessage());
+            }
+            contextJournal = null;
+        }
+        contextEngine.close();
+    }
+    
+    /**
+     * Recovers the context engine from the session's journal and journals every
+     * change from then on, when context.journal_enabled is set
+     */
+    private ContextJournal openContextJournal(String session) {
+        Configuration config = Configuration.getInstance();
+        if (session == null || !config.getBooleanProperty("context.journal_enabled", false)) {
+            return null;
+        }
+        try {
+            return ContextJournal.open(Paths.get(config.getProperty("context.journal_path", "data/journal")),
+                session, contextEngine);
+        } catch (IOException | RuntimeException e) {
+            Logger.getInstance().warn("VirtualXanderCore", "Context journal disabled: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Keeps the context engine's long-term memory in the shared LongTermStore under
+     * the session, when context.longterm_store_enabled is set
+     */
+    private void attachLongTermStore(String session) {
+        if (session == null || !Configuration.getInstance().getBooleanProperty("context.longterm_store_enabled", false)) {
+            return;
+        }
+        try {
+            contextEngine.setLongTermStore(LongTermStore.getShared(), session);
+        } catch (IOException | RuntimeException e) {
+            Logger.getInstance().warn("VirtualXanderCore", "Long-term store disabled: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Gets the context journal, or null when journaling is off
+     */
+    public ContextJournal getContextJournal() {
+        return contextJournal;
     }
     
     // ==================== CONTEXT ENGINE COMMANDS ====================
@@ -1128,16 +1186,35 @@ public class VirtualXanderCore {
     }
     
     /**
-     * Save context to memory
+     * Save context to memory. The context is captured now and written on the
+     * write-behind queue, so the turn does not wait on the disk; the result is
+     * reported once the write has run. Every save of a session goes to the same
+     * file, so saves still waiting in the queue are merged into one write.
      */
     private void saveContext() {
-        boolean success = contextEngine.saveShortTermMemory();
-        if (success) {
-            System.out.println("Xander: Context saved successfully!");
-        } else {
-            System.out.println("Xander: Failed to save context.");
-        }
+        String filename = contextSaveFile;
+        System.out.println("Xander: Saving context to " + filename + "...");
         System.out.println();
+        try {
+            contextEngine.saveShortTermMemoryLater(filename).thenAccept(success -> {
+                if (success) {
+                    System.out.println("Xander: Context saved to " + filename + ".");
+                } else {
+                    Logger.getInstance().warn("VirtualXanderCore", "Failed to save context to " + filename);
+                    System.out.println("Xander: Sorry, I couldn't save the context to " + filename + ".");
+                }
+            });
+        } catch (IllegalStateException e) {
+            Logger.getInstance().warn("VirtualXanderCore", "Failed to save context: " + e.getMessage());
+            System.out.println("Xander: Sorry, I couldn't save the context right now.");
+        }
+    }
+    
+    /**
+     * Gets the file the save command writes this session's context to
+     */
+    public String getContextSaveFile() {
+        return contextSaveFile;
     }
     
     /**
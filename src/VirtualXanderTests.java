@@ -238,6 +238,34 @@ public class VirtualXanderTests {
             "academic", system.getActiveClusters().get(0).clusterId);
     }
     
+    public void testTopicClusteringDecayedRelevance() {
+        TopicClusteringSystem system = new TopicClusteringSystem();
+        long minute = 60_000L;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            system.activateCluster("academic", start);
+        }
+        String[] others = {"gaming", "mental_health", "creative", "social", "technology"};
+        for (int i = 0; i < others.length; i++) {
+            system.activateCluster(others[i], start + (i + 1) * minute);
+        }
+        List<String> active = new ArrayList<>();
+        for (TopicClusteringSystem.TopicCluster cluster : system.getActiveClusters()) {
+            active.add(cluster.clusterId);
+        }
+        test.assertEquals("Eviction keeps the max active clusters", 5, active.size());
+        test.assertTrue("A frequently activated cluster survives longer gaps", active.contains("academic"));
+        test.assertTrue("The least relevant cluster is evicted", !active.contains("gaming"));
+        test.assertEquals("Most relevant cluster first", "academic", active.get(0));
+        test.assertEquals("Top lookup matches the ordering", "academic", system.getTopActiveCluster().clusterId);
+        
+        system.activateCluster("lifestyle", start + 600 * minute);
+        test.assertEquals("Old activations decay away", "lifestyle", system.getTopActiveCluster().clusterId);
+        test.assertTrue("Relevance decays with time",
+            system.getCluster("academic").getRelevanceScore(start + 600 * minute)
+                < system.getCluster("academic").getRelevanceScore(start));
+    }
+    
     public void testTopicClusteringSystemSimilarity() {
         TopicClusteringSystem system = new TopicClusteringSystem();
         
@@ -249,6 +277,96 @@ public class VirtualXanderTests {
         test.assertTrue("Should calculate positive similarity", similarity > 0);
     }
     
+    public void testTopicClusteringKeywordIndex() {
+        TopicClusteringSystem system = new TopicClusteringSystem();
+        
+        test.assertTrue("Keywords match whole words only",
+            !system.identifyTopics("let's start over").contains("creative"));
+        test.assertTrue("Inflected keywords still match",
+            system.identifyTopics("she plays games").contains("gaming"));
+        test.assertTrue("Multi-word topics match across words",
+            system.identifyTopics("we should Hang-Out sometime").contains("social"));
+        test.assertEquals("The cluster with the most hits comes first", "academic",
+            system.identifyTopics("I feel ok about my math homework and the quiz").get(0));
+        test.assertEquals("Ties keep cluster definition order", Arrays.asList("academic", "gaming"),
+            system.identifyTopics("game after homework"));
+        
+        system.addCluster(new TopicClusteringSystem.TopicCluster("cooking", "Cooking",
+            Arrays.asList("recipe"), Arrays.asList("cook", "bake")));
+        test.assertEquals("Added clusters are indexed", Arrays.asList("cooking"),
+            system.identifyTopics("I cooked dinner"));
+    }
+    
+    public void testTopicClusteringTermSpace() {
+        TopicClusteringSystem system = new TopicClusteringSystem();
+        test.assertTrue("No dominant cluster before any turn", system.getDominantCluster() == null);
+        
+        String[] turns = {
+            "I need help with my math homework", "the quiz is tomorrow",
+            "minecraft with friends later", "we play fortnite every night", "the dragon boss in minecraft"
+        };
+        for (String turn : turns) {
+            system.recordTurn(turn, system.identifyTopics(turn));
+        }
+        test.assertEquals("Recent turns outweigh older ones", "gaming", system.getDominantCluster().clusterId);
+        test.assertEquals("History without the centroid still finds a cluster", "academic",
+            system.getDominantCluster(Arrays.asList("math homework", "history exam")).clusterId);
+        
+        test.assertEquals("Unknown words have no topic similarity", 0.5,
+            system.calculateTopicSimilarity("zebra", "quokka"));
+        test.assertTrue("Clusters learn the words used in their turns",
+            system.calculateTopicSimilarity("dragon", "fortnite") > 0.9);
+        test.assertTrue("Different clusters are dissimilar",
+            system.calculateTopicSimilarity("math homework", "fortnite") < 0.1);
+        
+        int vocabulary = (Integer) system.getTermStatistics().get("vocabulary");
+        for (int i = 0; i < 200; i++) {
+            system.recordTurn("zorp" + i + " blix" + i, Collections.emptyList());
+        }
+        test.assertEquals("Turns without a cluster add no terms", vocabulary,
+            system.getTermStatistics().get("vocabulary"));
+        for (int i = 0; i < 2000; i++) {
+            system.recordTurn("minecraft zorp" + i + " blix" + i, Arrays.asList("gaming"));
+        }
+        test.assertTrue("A full cluster stops growing the vocabulary",
+            (Integer) system.getTermStatistics().get("vocabulary") <= vocabulary + 512);
+        test.assertEquals("The session still follows its turns", "gaming", system.getDominantCluster().clusterId);
+    }
+    
+    public void testTopicDiscoveryPublishesClusters() {
+        TopicClusterRegistry registry = TopicClusterRegistry.getShared();
+        TopicDiscovery discovery = new TopicDiscovery(registry, 3, 2);
+        String[] messages = {
+            "anyone playing valorant ranked tonight", "valorant ranked is so sweaty",
+            "my valorant agent main is jett", "ranked valorant with my duo",
+            "email me at someone@example.com", "the weather is nice"
+        };
+        for (int i = 0; i < messages.length; i++) {
+            discovery.offer(i % 3, messages[i]);
+        }
+        try {
+            test.assertEquals("A theme with enough support is published", 1, discovery.runBatch());
+            TopicClusteringSystem.TopicCluster cluster = registry.getClusters().get(0);
+            test.assertTrue("Discovered keywords come from the theme", cluster.keywords.contains("valorant"));
+            test.assertTrue("Identifying tokens are never keywords",
+                !cluster.keywords.contains("someone") && !cluster.relatedTopics.contains("example"));
+            
+            TopicClusteringSystem session = new TopicClusteringSystem();
+            test.assertEquals("Live sessions pick up published clusters", cluster.clusterId,
+                session.identifyTopics("valorant later?").get(0));
+            test.assertEquals("Each theme is published once", 0, discovery.runBatch());
+            
+            session.setDiscovery(discovery);
+            session.recordTurn("valorant later?", session.identifyTopics("valorant later?"));
+            test.assertEquals("Sessions offer their turns", 1, discovery.getStatistics().get("queued"));
+            session.setDiscovery(null);
+            session.recordTurn("valorant again?", session.identifyTopics("valorant again?"));
+            test.assertEquals("Sessions without discovery offer nothing", 1, discovery.getStatistics().get("queued"));
+        } finally {
+            registry.clear();
+        }
+    }
+    
     // ==================== Configuration Tests ====================
     
     public void testConfigurationLoad() {
@@ -493,6 +611,1128 @@ public class VirtualXanderTests {
             CreativeWritingHandler.WritingGenre.SCIFI);
     }
     
+    // ==================== MultiPatternMatcher Tests ====================
+    
+    public void testMultiPatternMatcherAgreesWithRegex() {
+        List<String> regexes = Arrays.asList(
+            "^(hi|hello|hey)$", "\\b(hi|hello|hey)\\b", "what'?s your name|who are you|name\\?",
+            "\\b(name|who)\\b.*\\b(you|your)\\b", "(good|great|fine).*hbu|how about you",
+            "counter.?strike", "cs:?go", "(help with|homework).*\\?", "recommend.*games?",
+            "a+b*?c", "x*", "[a-c]+\\d", "[^aeiou ]{2}", "\\Bell", "(?:ab|a)(?:bc|c)", "(a|ab)(c|bcd)"
+        );
+        MultiPatternMatcher matcher = new MultiPatternMatcher(regexes, java.util.regex.Pattern.CASE_INSENSITIVE);
+        test.assertEquals("Only the bounded repeat should fall back to java.util.regex", 1, matcher.getFallbackCount());
+        
+        String[] inputs = {
+            "hi", "hello there", "well hi!", "what's your name?", "who are you", "my name is sam, what is yours",
+            "good thanks hbu", "how about you", "counter strike", "counterstrike and csgo", "cs:go",
+            "help with homework?", "recommend some games", "aaabbbc", "xx", "", "ab9 cc1", "hello bell",
+            "abcd", "Hi", "HELLO", "i like cs2\n", "hey\r\n", "caf\u00e9 hey", "\ud83d\ude00 hi"
+        };
+        int[] starts = new int[regexes.size()];
+        int[] ends = new int[regexes.size()];
+        for (String input : inputs) {
+            matcher.findAll(input, starts, ends);
+            for (int p = 0; p < regexes.size(); p++) {
+                java.util.regex.Matcher reference = java.util.regex.Pattern.compile(
+                    regexes.get(p), java.util.regex.Pattern.CASE_INSENSITIVE).matcher(input);
+                boolean found = reference.find();
+                String expected = found ? reference.start() + "-" + reference.end() : "none";
+                String actual = starts[p] >= 0 ? starts[p] + "-" + ends[p] : "none";
+                test.assertEquals("Span of '" + regexes.get(p) + "' in '" + input + "'", expected, actual);
+            }
+        }
+    }
+    
+    public void testIntentRecognizerMatchesRegexLoop() {
+        IntentRecognizer recognizer = new IntentRecognizer();
+        String[] words = {
+            "hi", "hello", "how are you", "good", "great", "not so good", "homework", "math", "help with",
+            "?", "fortnite", "play", "game", "recommend", "write", "story", "joke", "music", "netflix",
+            "sad", "stressed", "what", "um", "thanks", "bye", "i won", "a lot", "wbu", "who", "your name",
+            "love", "friend", "work", "tired", "exit", "relationship", "movies", "favourite", "favorite"
+        };
+        List<String> inputs = new ArrayList<>(Arrays.asList(words));
+        Random random = new Random(42);
+        for (int i = 0; i < 400; i++) {
+            StringBuilder input = new StringBuilder();
+            int count = 1 + random.nextInt(4);
+            for (int w = 0; w < count; w++) {
+                if (w > 0) {
+                    input.append(random.nextBoolean() ? " " : ", ");
+                }
+                input.append(words[random.nextInt(words.length)]);
+            }
+            inputs.add(input.toString());
+        }
+        
+        int mismatches = 0;
+        for (String input : inputs) {
+            if (!recognizer.recognizeIntentWithRegexLoop(input).equals(recognizer.recognizeIntent(input))) {
+                mismatches++;
+                test.assertEquals("Intent for '" + input + "'", 
+                    recognizer.recognizeIntentWithRegexLoop(input), recognizer.recognizeIntent(input));
+            }
+        }
+        test.assertEquals("Combined matcher should agree with the per-pattern loop", 0, mismatches);
+    }
+    
+    public void testIntentRecognizerRankedIntents() {
+        IntentRecognizer recognizer = new IntentRecognizer();
+        String[] inputs = {
+            "hello", "hi, can you help me with my math homework?", "i'm so stressed about exams",
+            "let's play minecraft", "thanks, bye", "um", "tell me a joke lol", "zzzz"
+        };
+        for (String input : inputs) {
+            List<IntentRecognizer.IntentMatch> ranked = recognizer.recognizeIntents(input, 3);
+            String expected = recognizer.recognizeIntent(input);
+            test.assertEquals("Top intent for '" + input + "'", expected,
+                ranked.isEmpty() ? "unknown" : ranked.get(0).getIntent());
+            test.assertTrue("At most k intents", ranked.size() <= 3);
+            
+            double total = 0;
+            String normalized = input.toLowerCase().trim();
+            for (int i = 0; i < ranked.size(); i++) {
+                IntentRecognizer.IntentMatch match = ranked.get(i);
+                total += match.getConfidence();
+                test.assertTrue("Confidence in (0, 1)", match.getConfidence() > 0 && match.getConfidence() < 1);
+                if (i > 0) {
+                    test.assertTrue("Ranked by score", ranked.get(i - 1).getScore() >= match.getScore());
+                }
+                test.assertFalse("Every ranked intent has a matched span", match.getSpans().isEmpty());
+                for (int[] span : match.getSpans()) {
+                    test.assertTrue("Span within the input", span[0] >= 0 && span[0] <= span[1] && span[1] <= normalized.length());
+                }
+            }
+            test.assertTrue("Confidences leave room for unknown", total < 1.0);
+        }
+        
+        test.assertTrue("No intents for blank input", recognizer.recognizeIntents("  ", 3).isEmpty());
+        test.assertEquals("Confidence of an unmatched input", 0.0, recognizer.getConfidence("zzzz"));
+        test.assertTrue("An exact greeting is confident",
+            recognizer.getConfidence("hello") > recognizer.getConfidence("i need help with my homework?"));
+        
+        boolean greetingRanked = false;
+        for (IntentRecognizer.IntentMatch match : recognizer.recognizeIntents("well hello there", 10)) {
+            if (match.getIntent().equals("greeting")) {
+                greetingRanked = true;
+                int[] span = match.getSpans().get(0);
+                test.assertEquals("Span covers the matched word", "hello", "well hello there".substring(span[0], span[1]));
+            }
+        }
+        test.assertTrue("Greeting is among the ranked intents", greetingRanked);
+        
+        // Tied intents resolve in the established order
+        test.assertEquals("Tie resolves to breakup", "breakup", recognizer.recognizeIntent("my girlfriend dumped me"));
+        test.assertEquals("Tie resolves to creative_project", "creative_project", recognizer.recognizeIntent("developing a game"));
+        
+        VirtualXanderCore core = new VirtualXanderCore(null);
+        String support = "i have dark thoughts and i need help";
+        core.processMessage(support);
+        List<String> expected = new ArrayList<>();
+        recognizer.recognizeIntents(support, 3).forEach(match -> expected.add(match.getIntent()));
+        List<String> recorded = new ArrayList<>();
+        core.getTurnIntents(support).forEach(match -> recorded.add(match.getIntent()));
+        test.assertTrue("The support turn matches some intent", !expected.isEmpty());
+        test.assertEquals("Intents are ranked when the mental health stage answered the turn", expected, recorded);
+        core.stop();
+    }
+    
+    public void testKeywordPrefilterNeverDropsAMatch() {
+        List<String> regexes = Arrays.asList(
+            "\\b(happy|glad|joyful)\\b", "\\b(i feel (good|great))\\b", "counter.?strike", "cs:?go",
+            "(help with|homework).*\\?", "recommend.*games?", "\\b(OMG|oh my)\\b", "[a-c]+\\d",
+            "x*", ".*", "(not (so )?good|bad)", "what'?s up|wyd", "[^aeiou ]{2}"
+        );
+        KeywordPrefilter prefilter = new KeywordPrefilter(regexes, java.util.regex.Pattern.CASE_INSENSITIVE);
+        test.assertEquals("Patterns without a literal requirement are always evaluated", 3,
+            prefilter.getAlwaysEvaluatedCount());
+        
+        String[] inputs = {
+            "i am so HAPPY", "i feel great today", "counter-strike", "CS:GO or csgo", "help with this?",
+            "recommend games", "omg", "oh my god", "b7", "not so good", "bad day", "whats up", "wyd",
+            "nothing here", "", "glad\nyou came", "gladly"
+        };
+        boolean[] selected = new boolean[regexes.size()];
+        for (String input : inputs) {
+            prefilter.select(input, selected);
+            for (int p = 0; p < regexes.size(); p++) {
+                boolean matches = java.util.regex.Pattern.compile(
+                    regexes.get(p), java.util.regex.Pattern.CASE_INSENSITIVE).matcher(input).find();
+                if (matches) {
+                    test.assertTrue("'" + regexes.get(p) + "' matches '" + input + "' so it must be a candidate",
+                        selected[p]);
+                }
+            }
+        }
+        prefilter.select("nothing here", selected);
+        test.assertEquals("Only the always-evaluated patterns are candidates", 3, prefilter.getLastCandidateCount());
+        
+        EmotionDetector detector = new EmotionDetector();
+        detector.detectEmotion("i'm so stressed about my exams");
+        Map<String, Object> stats = detector.getPrefilterStatistics();
+        test.assertTrue("A short message should evaluate a small fraction of the emotion patterns",
+            (Integer) stats.get("lastCandidates") * 10 <= (Integer) stats.get("patterns"));
+    }
+    
+    public void testEmotionLexiconMatchesPatterns() {
+        EmotionDetector detector = new EmotionDetector();
+        test.assertEquals("Every emotion pattern expands into phrases", 0,
+            detector.getLexiconStatistics().get("fallbackPatterns"));
+        
+        String[] inputs = {
+            "I'm so happy today", "i feel really anxious about the test", "I HATE this",
+            "  my dog died and I miss him  ", "wow that's amazing!", "i'm bored", "nothing much",
+            "ugh, I'm so frustrated and angry", "hello"
+        };
+        for (String input : inputs) {
+            detector.setLexiconScoring(false);
+            EmotionDetector.EmotionResult patterns = detector.detectEmotion(input);
+            detector.setLexiconScoring(true);
+            EmotionDetector.EmotionResult lexicon = detector.detectEmotion(input);
+            test.assertEquals("Both modes detect the same emotion for '" + input + "'",
+                patterns.getPrimaryEmotion(), lexicon.getPrimaryEmotion());
+            test.assertEquals("Both modes score the same emotions for '" + input + "'",
+                patterns.getAllEmotions().keySet(), lexicon.getAllEmotions().keySet());
+        }
+        
+        detector.setLexiconScoring(true);
+        test.assertTrue("Multi-word keywords are matched across word boundaries",
+            detector.detectEmotion("honestly I'm burnt out").getAllEmotions().size() > 0);
+    }
+    
+    public void testEmotionalTrajectoryFoldsTurns() {
+        EmotionDetector detector = new EmotionDetector();
+        EmotionalTrajectory trajectory = new EmotionalTrajectory(3);
+        test.assertEquals("An empty trajectory is neutral", EmotionDetector.Emotion.NEUTRAL,
+            trajectory.getDominantEmotion());
+        
+        trajectory.record(detector.detectEmotion("I feel so sad"));
+        trajectory.record(detector.detectEmotion("I'm really sad today"));
+        test.assertEquals("Repeated sadness dominates", EmotionDetector.Emotion.SAD, trajectory.getDominantEmotion());
+        test.assertTrue("Sadness gives a negative valence", trajectory.getValence() < 0);
+        
+        double sadWeight = trajectory.getWeight(EmotionDetector.Emotion.SAD);
+        for (int i = 0; i < 3; i++) {
+            trajectory.record(detector.detectEmotion("ok"));
+        }
+        test.assertTrue("Weights halve after the half-life in neutral turns",
+            Math.abs(trajectory.getWeight(EmotionDetector.Emotion.SAD) - sadWeight / 2) < 1e-9);
+        
+        trajectory.record(detector.detectEmotion("I'm so happy now"));
+        test.assertEquals("A happy turn after sadness is improving", EmotionalTrajectory.Trend.IMPROVING,
+            trajectory.getTrend());
+        test.assertTrue("Swinging between moods is volatile", trajectory.getVolatility() > 0.1);
+        test.assertEquals("Every turn is counted", 6L, trajectory.getTurnCount());
+        
+        VirtualXanderCore core = new VirtualXanderCore();
+        core.processMessage("I feel so sad");
+        test.assertEquals("The emotion stage feeds the session trajectory", 1L,
+            core.getEmotionalTrajectory().getTurnCount());
+        test.assertEquals("A neutral follow-up reflects the session's mood", EmotionDetector.Emotion.SAD,
+            core.getEmpathyEngine().reflectEmotion("yeah").getPrimaryEmotion());
+        core.resetConversationState();
+        test.assertEquals("Resetting the conversation clears the trajectory", 0L,
+            core.getEmotionalTrajectory().getTurnCount());
+        test.assertEquals("A reset trajectory is neutral", EmotionDetector.Emotion.NEUTRAL,
+            core.getEmotionalTrajectory().getDominantEmotion());
+    }
+    
+    // ==================== ImplicitTopicTracker Tests ====================
+    
+    public void testImplicitTopicTrackerMatching() {
+        ContextEngine.ImplicitTopicTracker tracker = new ContextEngine.ImplicitTopicTracker(256, 2);
+        String message = "I think! I'd play Minecraft.\n\nMinecraft is my favourite video   game, I'm playing it after homework again";
+        List<ContextEngine.ImplicitTopicTracker.TrackedTopic> topics = tracker.processText(message);
+        
+        ContextEngine.ImplicitTopicTracker.TrackedTopic gaming = topics.get(0);
+        test.assertEquals("Repeated whole words pick the category keyword", "minecraft", gaming.getTopicName());
+        test.assertEquals("Confidence grows with occurrences", 0.5, gaming.getConfidence());
+        test.assertTrue("Keywords inside other words are not matched", !tracker.hasTopicBeenDiscussed("ai"));
+        test.assertTrue("Phrases seen in one turn are not tracked", !tracker.hasTopicBeenDiscussed("favourite video   game"));
+        
+        topics = tracker.processText(message);
+        test.assertTrue("Phrases that recur across turns are tracked", tracker.hasTopicBeenDiscussed("favourite video   game"));
+        test.assertTrue("Common phrases are skipped", !tracker.hasTopicBeenDiscussed("i think"));
+        
+        long distinct = topics.stream().distinct().count();
+        test.assertEquals("Each topic is reported once per message", (long) topics.size(), distinct);
+        
+        for (int i = 0; i < 60; i++) {
+            tracker.processText("topic" + i);
+            tracker.processText("topic" + i);
+            if (i % 10 == 0) {
+                tracker.processText("minecraft");
+            }
+        }
+        test.assertTrue("Recently mentioned topics survive eviction", tracker.hasTopicBeenDiscussed("minecraft"));
+        test.assertTrue("Least recently mentioned topics are evicted", !tracker.hasTopicBeenDiscussed("homework"));
+        test.assertEquals("The tracker stays bounded", 50, tracker.getStatistics().get("totalTopics"));
+        test.assertNotNull("Topics can be looked up", tracker.getTopic("topic58"));
+        tracker.suggestRelatedTopics("topic57");
+        tracker.hasTopicBeenDiscussed("topic56");
+        test.assertEquals("Most recent mentions come first", "topic59", tracker.getRecentTopics(1).get(0).getTopicName());
+        test.assertEquals("Reads do not count as mentions", "topic58", tracker.getRecentTopics(2).get(1).getTopicName());
+        List<ContextEngine.ImplicitTopicTracker.TrackedTopic> byMention = tracker.getRecentTopics(50);
+        String eldest = byMention.get(byMention.size() - 1).getTopicName();
+        tracker.getTopic(eldest);
+        tracker.processText("newcomer");
+        tracker.processText("newcomer");
+        test.assertTrue("Reading a topic does not save it from eviction", !tracker.hasTopicBeenDiscussed(eldest));
+    }
+    
+    public void testSpaceSavingSketchBoundsCounts() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(4);
+        for (int turn = 0; turn < 20; turn++) {
+            sketch.offer("video games", turn);
+            sketch.offer("video games", turn);
+            sketch.offer("noise" + turn, turn);
+            if (turn % 2 == 0) {
+                sketch.offer("homework", turn);
+            }
+        }
+        test.assertEquals("Memory stays at the capacity", 4, sketch.size());
+        test.assertEquals("Repeats within a turn count once", 20L, sketch.getGuaranteedCount("video games"));
+        test.assertEquals("The heaviest hitter ranks first", "video games", sketch.getTop(1).get(0));
+        test.assertTrue("Counts overestimate by at most their error",
+            sketch.getCount("homework") - sketch.getError("homework") <= 10 && sketch.getCount("homework") >= 10);
+        test.assertEquals("One-off items are never guaranteed more than once", 1L, sketch.getGuaranteedCount("noise19"));
+    }
+    
+    // ==================== ContextEngine Thread Tests ====================
+    
+    public void testThreadIndexFindsMostSimilarThread() {
+        ContextEngine engine = new ContextEngine();
+        ContextEngine.ConversationThread games = engine.createThread("games");
+        games.addMessage("User", "minecraft servers and redstone builds");
+        ContextEngine.ConversationThread school = engine.createThread("school");
+        school.addMessage("User", "algebra homework and chemistry exam");
+        ContextEngine.ConversationThread empty = engine.createThread("empty");
+        
+        test.assertEquals("Shared keywords pick the closest thread", school, engine.findMostSimilarThread("my chemistry homework"));
+        games.addMessage("User", "chemistry homework mod for minecraft");
+        test.assertEquals("Keywords added later are indexed", games, engine.findMostSimilarThread("minecraft chemistry homework"));
+        test.assertEquals("Messages without keywords pick an empty thread", empty, engine.findMostSimilarThread("hi"));
+        test.assertEquals("Unrelated messages fall back to an empty thread", empty, engine.findMostSimilarThread("zebra quokka"));
+        ContextEngine.ConversationThread algebra = new ContextEngine.ConversationThread("algebra");
+        algebra.addMessage("User", "algebra homework");
+        test.assertEquals("Similarity is the keyword Jaccard index", 0.5, school.getTopicSimilarity(algebra));
+        
+        ContextEngine crowded = new ContextEngine();
+        ContextEngine.ConversationThread target = null;
+        for (int i = 0; i < 300; i++) {
+            ContextEngine.ConversationThread thread = crowded.createThread("thread " + i);
+            thread.addMessage("User", "weather chat number" + i);
+            if (i == 250) {
+                thread.addMessage("User", "volcano eruption");
+                target = thread;
+            }
+        }
+        test.assertEquals("Rare keywords find the thread among common ones", target,
+            crowded.findMostSimilarThread("weather volcano eruption"));
+        ContextEngine.ConversationThread chat = new ContextEngine.ConversationThread("chat");
+        chat.addMessage("User", "weather chat");
+        test.assertTrue("Only common keywords still find a close thread",
+            crowded.findMostSimilarThread("weather chat").getTopicSimilarity(chat) > 0.6);
+    }
+    
+    public void testConversationThreadCompactsOldTurns() {
+        ContextEngine.ConversationThread thread = new ContextEngine.ConversationThread("pets", 3);
+        List<ContextEngine.ConversationThread.ConversationTurn> view = thread.getMessages();
+        String[] turns = {
+            "My dog chewed the sofa. Oh no.", "The dog also barks at night!", "Hello there",
+            "Dog training classes start soon", "My cat ignores the dog", "The vet said the dog is healthy"
+        };
+        for (String turn : turns) {
+            thread.addMessage("User", turn);
+        }
+        
+        test.assertEquals("Every turn is counted", 6, thread.getMessageCount());
+        test.assertEquals("Only the newest turns are kept verbatim", 3, view.size());
+        test.assertEquals("The view is oldest first", "Dog training classes start soon", view.get(0).getContent());
+        test.assertEquals("Older turns are compacted", 3, thread.getCompactedMessageCount());
+        test.assertTrue("Compacted sentences about the thread's keywords are summarized",
+            thread.getCompactedSummary().contains("The dog also barks at night!"));
+        test.assertTrue("Sentences without keywords are dropped", !thread.getCompactedSummary().contains("Oh no"));
+        test.assertTrue("Compaction saves memory", thread.getBytesSaved() > 0);
+        test.assertEquals("Compacted turns still count towards keywords", "dog", thread.getTopKeywords().get(0).getKey());
+        boolean readOnly = false;
+        try {
+            view.add(new ContextEngine.ConversationThread.ConversationTurn("User", "sneaky"));
+        } catch (UnsupportedOperationException e) {
+            readOnly = true;
+        }
+        test.assertTrue("The view is read-only", readOnly);
+        
+        ContextEngine.ConversationThread merged = new ContextEngine.ConversationThread("merged", 10);
+        merged.mergeThread(thread);
+        test.assertEquals("Merging keeps the compacted turns' count", 6, merged.getMessageCount());
+        test.assertEquals("Merging keeps the compacted keywords",
+            thread.getTopKeywords().get(0).getValue(), merged.getTopKeywords().get(0).getValue());
+        test.assertEquals("Merging keeps the summary", thread.getCompactedSummary(), merged.getCompactedSummary());
+    }
+    
+    public void testContextEngineExpiresEntities() {
+        long start = System.currentTimeMillis();
+        ExpiryService wheel = new ExpiryService(1000, start);
+        long[] runs = new long[1];
+        ExpiryService.Timeout repeating = wheel.schedule(start + 5000, now -> ++runs[0] < 2 ? now + 5000 : -1);
+        ExpiryService.Timeout cancelled = wheel.schedule(start + 5000, now -> { runs[0] += 100; return -1; });
+        cancelled.cancel();
+        wheel.advance(start + 6000);
+        test.assertEquals("A task runs once its deadline passes", 1L, runs[0]);
+        wheel.advance(start + 12000);
+        test.assertEquals("A task that returns a later deadline runs again", 2L, runs[0]);
+        test.assertTrue("Cancelled tasks never run", cancelled.isCancelled() && !repeating.isCancelled());
+        test.assertEquals("Nothing is left on the wheel", 0, wheel.getStatistics().get("pending"));
+        
+        ExpiryService service = new ExpiryService(1000, start);
+        ContextEngine engine = new ContextEngine(service);
+        engine.addEntity("alpha", "person", ContextEngine.MemoryTier.WORKING);
+        engine.addEntity("keep", "person", ContextEngine.MemoryTier.FLASHBULB);
+        service.advance(start + 30000);
+        test.assertNotNull("Entities live until their TTL passes", engine.findEntityByName("alpha"));
+        service.advance(start + 62000);
+        test.assertNull("Expired entities are dropped", engine.findEntityByName("alpha"));
+        test.assertNotNull("Permanent entities never expire", engine.findEntityByName("keep"));
+        test.assertEquals("Expiries are counted", 1L, engine.getStatistics().get("expiredEntities"));
+        
+        service = new ExpiryService(1000, start);
+        engine = new ContextEngine(service);
+        for (int i = 0; i < 12; i++) {
+            engine.addEntity("e" + i, "thing", ContextEngine.MemoryTier.WORKING);
+        }
+        test.assertEquals("Tier limits are not enforced on the caller's thread", 12,
+            engine.getEntitiesByTier(ContextEngine.MemoryTier.WORKING).size());
+        service.advance(start + 2000);
+        test.assertEquals("A full tier is trimmed on the next tick", 10,
+            engine.getEntitiesByTier(ContextEngine.MemoryTier.WORKING).size());
+        test.assertNull("The oldest entities are evicted first", engine.findEntityByName("e0"));
+        
+        service = new ExpiryService(1000, start);
+        engine = new ContextEngine(service);
+        engine.setExpiryHandler((owner, entity, overCapacity) -> ContextEngine.MemoryTier.SHORT_TERM);
+        engine.addEntity("beta", "place", ContextEngine.MemoryTier.WORKING);
+        service.advance(start + 62000);
+        test.assertEquals("The handler can demote instead of dropping", ContextEngine.MemoryTier.SHORT_TERM,
+            engine.findEntityByName("beta").getMemoryTier());
+        test.assertEquals("Demotions are counted", 1L, engine.getStatistics().get("demotedEntities"));
+        engine.close();
+        test.assertEquals("Closing an engine takes its timeouts off the wheel", 0, service.getStatistics().get("pending"));
+        
+        java.nio.file.Path dir = null;
+        try {
+            dir = java.nio.file.Files.createTempDirectory("vx-expiry");
+            ContextEngine.PersistenceManager persistence = new ContextEngine.PersistenceManager(dir.toString());
+            service = new ExpiryService(1000, start);
+            engine = new ContextEngine(service);
+            engine.setExpiryHandler(persistence.archivingExpiryHandler("archive.mem"));
+            engine.addEntity("gamma", "pet", ContextEngine.MemoryTier.WORKING);
+            engine.addEntity("Pipe|Dream\\", "band", ContextEngine.MemoryTier.WORKING);
+            service.advance(start + 62000);
+            test.assertNull("Rarely used entities are archived and dropped", engine.findEntityByName("gamma"));
+            persistence.flushSaves();
+            ContextEngine restored = new ContextEngine(new ExpiryService(1000, start));
+            test.assertTrue("The archive loads like a saved memory",
+                persistence.loadFromFile(restored, "archive.mem", ContextEngine.MemoryTier.WORKING));
+            test.assertNotNull("Archived entities are restored", restored.findEntityByName("gamma"));
+            test.assertNotNull("Archived names are escaped", restored.findEntityByName("Pipe|Dream\\"));
+            persistence.deleteMemory("archive.mem");
+        } catch (java.io.IOException e) {
+            test.assertTrue("Archive directory should be created: " + e, false);
+        } finally {
+            if (dir != null) {
+                dir.toFile().delete();
+            }
+        }
+    }
+    
+    public void testContextSnapshotRoundTrip() {
+        java.nio.file.Path dir = null;
+        try {
+            dir = java.nio.file.Files.createTempDirectory("vx-snapshot");
+            ContextEngine.PersistenceManager persistence = new ContextEngine.PersistenceManager(dir.toString());
+            ContextEngine engine = new ContextEngine(new ExpiryService(1000));
+            ContextEngine.ReferenceEntity entity = engine.addEntity("Pipe|Dream", "band", ContextEngine.MemoryTier.SHORT_TERM);
+            entity.setAttribute("genre", "rock");
+            entity.setAttribute("albums", 3);
+            entity.setAttribute("touring", true);
+            engine.getCurrentThread().addMessage("User", "I like a|b\nand\nnewlines");
+            engine.createOpenQuestion("Who is your favourite | singer?", "User", null);
+            ContextEngine.ConversationThread pets = engine.createThread("pets");
+            for (int i = 0; i < 60; i++) {
+                pets.addMessage("User", i % 3 == 0 ? "The dog barked at the mailman " + i + " times. Oh no." : "Hello there");
+            }
+            
+            persistence.setBinarySnapshots(true);
+            test.assertTrue("Binary snapshot saves", persistence.saveShortTermMemory(engine, "binary.mem"));
+            test.assertTrue("Saved file is a binary snapshot",
+                ContextSnapshot.isSnapshot(dir.resolve("binary.mem")));
+            ContextEngine.PersistenceManager.PersistedData data = persistence.readFile("binary.mem");
+            ContextEngine.PersistenceManager.PersistedEntity saved = data.getEntities().get(0);
+            test.assertEquals("Names with pipes survive", "Pipe|Dream", saved.getName());
+            test.assertEquals("String attributes survive", "rock", saved.getAttributes().get("genre"));
+            test.assertEquals("Number attributes survive", 3L, saved.getAttributes().get("albums"));
+            test.assertEquals("Boolean attributes survive", true, saved.getAttributes().get("touring"));
+            test.assertEquals("Turn contents survive unescaped", "I like a|b\nand\nnewlines",
+                data.getThreads().get(0).getMessages().get(0).getContent());
+            test.assertEquals("Turn timestamps survive",
+                engine.getCurrentThread().getMessages().get(0).getTimestamp(),
+                data.getThreads().get(0).getMessages().get(0).getTimestamp());
+            test.assertNull("Missing values stay null", data.getQuestions().get(0).getContext());
+            
+            ContextEngine loaded = new ContextEngine(new ExpiryService(1000));
+            test.assertTrue("Binary snapshot loads", persistence.loadShortTermMemory(loaded, "binary.mem"));
+            test.assertNotNull("Loaded entity is found by name", loaded.findEntityByName("Pipe|Dream"));
+            assertCompactedThreadRestored(pets, loaded, "binary");
+            persistence.setBinarySnapshots(false);
+            test.assertTrue("Compacted threads save as text", persistence.saveShortTermMemory(engine, "compacted.mem"));
+            ContextEngine loadedText = new ContextEngine(new ExpiryService(1000));
+            test.assertTrue("Compacted threads load from text", persistence.loadShortTermMemory(loadedText, "compacted.mem"));
+            assertCompactedThreadRestored(pets, loadedText, "text");
+            
+            ContextEngine plain = new ContextEngine(new ExpiryService(1000));
+            plain.addEntity("Oasis", "band", ContextEngine.MemoryTier.SHORT_TERM);
+            test.assertTrue("Text format still saves", persistence.saveShortTermMemory(plain, "text.mem"));
+            test.assertTrue("Text file is not a binary snapshot", !ContextSnapshot.isSnapshot(dir.resolve("text.mem")));
+            ContextEngine fromText = new ContextEngine(new ExpiryService(1000));
+            test.assertTrue("Text format still loads", persistence.loadShortTermMemory(fromText, "text.mem"));
+            test.assertEquals("Text format keeps the entity type", "band",
+                persistence.readFile("text.mem").getEntities().get(0).getType());
+            
+            byte[] bytes = java.nio.file.Files.readAllBytes(dir.resolve("binary.mem"));
+            bytes[bytes.length / 2] ^= 0x40;
+            java.nio.file.Files.write(dir.resolve("corrupt.mem"), bytes);
+            boolean rejected = false;
+            try {
+                ContextSnapshot.read(dir.resolve("corrupt.mem"));
+            } catch (java.io.IOException e) {
+                rejected = true;
+            }
+            test.assertTrue("A corrupted snapshot is rejected", rejected);
+            java.nio.file.Files.write(dir.resolve("truncated.mem"), Arrays.copyOf(bytes, bytes.length - 9));
+            test.assertTrue("A truncated snapshot does not load",
+                !persistence.loadShortTermMemory(new ContextEngine(new ExpiryService(1000)), "truncated.mem"));
+            
+            for (String name : new String[] { "binary.mem", "compacted.mem", "text.mem", "corrupt.mem", "truncated.mem" }) {
+                persistence.deleteMemory(name);
+            }
+        } catch (java.io.IOException e) {
+            test.assertTrue("Snapshot files should be written and read: " + e, false);
+        } finally {
+            if (dir != null) {
+                dir.toFile().delete();
+            }
+        }
+    }
+    
+    private void assertCompactedThreadRestored(ContextEngine.ConversationThread original, ContextEngine loaded, String format) {
+        ContextEngine.ConversationThread restored = null;
+        for (ContextEngine.ConversationThread thread : loaded.getAllThreads()) {
+            if (thread.getTopic().equals(original.getTopic())) {
+                restored = thread;
+            }
+        }
+        test.assertNotNull("The compacted thread loads (" + format + ")", restored);
+        test.assertEquals("The summary is restored as a summary (" + format + ")",
+            original.getCompactedSummary(), restored.getCompactedSummary());
+        test.assertEquals("The compacted turn count survives (" + format + ")",
+            original.getCompactedMessageCount(), restored.getCompactedMessageCount());
+        test.assertEquals("Every turn is still counted (" + format + ")",
+            original.getMessageCount(), restored.getMessageCount());
+        test.assertEquals("Compacted keyword counts survive (" + format + ")",
+            new HashSet<>(original.getTopKeywords()), new HashSet<>(restored.getTopKeywords()));
+        for (ContextEngine.ConversationThread.ConversationTurn turn : restored.getMessages()) {
+            test.assertTrue("No summary turn is invented (" + format + ")", !"Summary".equals(turn.getSender()));
+        }
+    }
+    
+    public void testContextJournalRecovers() {
+        java.nio.file.Path dir = null;
+        try {
+            dir = java.nio.file.Files.createTempDirectory("vx-journal");
+            ContextEngine engine = new ContextEngine(new ExpiryService(1000));
+            ContextJournal journal = ContextJournal.open(dir, "session", engine);
+            boolean locked = false;
+            try {
+                ContextJournal.open(dir, "session", new ContextEngine(new ExpiryService(1000)));
+            } catch (java.io.IOException e) {
+                locked = true;
+            }
+            test.assertTrue("A session is journaled by one engine at a time", locked);
+            ContextEngine.ReferenceEntity kept = engine.addEntity("Rex", "pet", ContextEngine.MemoryTier.SHORT_TERM);
+            ContextEngine.ReferenceEntity removed = engine.addEntity("Tom", "person", ContextEngine.MemoryTier.WORKING);
+            engine.moveEntityToTier(kept.getEntityId(), ContextEngine.MemoryTier.LONG_TERM);
+            engine.setEntityAttribute(kept.getEntityId(), "age", 3);
+            engine.removeEntity(removed.getEntityId());
+            engine.addMessageToCurrentThread("User", "My dog Rex | loves the park");
+            engine.addMessageToCurrentThread("Xander", "That sounds fun!");
+            ContextEngine.OpenQuestion question = engine.createOpenQuestion("What breed is Rex?", "Xander", "pets");
+            engine.markQuestionAnswered(question.getQuestionId(), "A beagle");
+            journal.sync();
+            test.assertEquals("Every change is one record", 9L, journal.getStatistics().get("committedRecords"));
+            
+            journal.compact();
+            engine.addMessageToCurrentThread("User", "He is three years old");
+            journal.close();
+            test.assertEquals("Compaction starts a new log", 1L, journal.getStatistics().get("generation"));
+            
+            // A record cut off halfway through, as if the process died mid-write
+            java.nio.file.Path log = dir.resolve("session.1.journal");
+            long intact = java.nio.file.Files.size(log);
+            java.nio.file.Files.write(log, new byte[] { 0, 0, 0, 40, 2, 0 }, java.nio.file.StandardOpenOption.APPEND);
+            
+            ContextEngine recovered = new ContextEngine(new ExpiryService(1000));
+            ContextJournal reopened = ContextJournal.open(dir, "session", recovered);
+            test.assertEquals("Recovered entity keeps its id and tier", ContextEngine.MemoryTier.LONG_TERM,
+                recovered.getEntity(kept.getEntityId()).getMemoryTier());
+            test.assertEquals("Entity attributes are recovered", 3L,
+                recovered.getEntity(kept.getEntityId()).getAttribute("age"));
+            test.assertNull("Removed entities stay removed", recovered.findEntityByName("Tom"));
+            test.assertEquals("Turns from the snapshot and the log tail are recovered", 3,
+                recovered.getCurrentThread().getMessageCount());
+            test.assertEquals("Turn contents survive", "My dog Rex | loves the park",
+                recovered.getCurrentThread().getMessages().get(0).getContent());
+            test.assertEquals("Question updates are recovered", "A beagle",
+                recovered.getAllQuestions().get(0).getAnswerText());
+            test.assertEquals("The torn record is truncated", intact, java.nio.file.Files.size(log));
+            test.assertEquals("Truncated bytes are counted", 6L, reopened.getStatistics().get("truncatedBytes"));
+            
+            recovered.addEntity("Luna", "pet", ContextEngine.MemoryTier.SHORT_TERM);
+            reopened.close();
+            ContextEngine again = new ContextEngine(new ExpiryService(1000));
+            ContextJournal.open(dir, "session", again).close();
+            test.assertNotNull("Appends after recovery go to the truncated log", again.findEntityByName("Luna"));
+            
+            try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(dir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+        } catch (java.io.IOException e) {
+            test.assertTrue("Journal files should be written and read: " + e, false);
+        } finally {
+            if (dir != null) {
+                dir.toFile().delete();
+            }
+        }
+    }
+    
+    public void testContextJournalCompactsEveryLiveLog() {
+        java.nio.file.Path dir = null;
+        try {
+            dir = java.nio.file.Files.createTempDirectory("vx-journal");
+            ContextEngine engine = new ContextEngine(new ExpiryService(1000));
+            ContextJournal journal = ContextJournal.open(dir, "session", engine);
+            engine.addMessageToCurrentThread("User", "First turn");
+            journal.close();
+            // The next log holds only its header, as when the process dies mid-compaction
+            java.nio.file.Files.write(dir.resolve("session.1.journal"), java.nio.ByteBuffer.allocate(8)
+                .putInt(ContextJournal.MAGIC).putInt(ContextJournal.FORMAT_VERSION).array());
+            
+            ContextEngine recovered = new ContextEngine(new ExpiryService(1000));
+            ContextJournal reopened = ContextJournal.open(dir, "session", recovered);
+            test.assertEquals("Recovery replays every live log", 1, recovered.getCurrentThread().getMessageCount());
+            recovered.addMessageToCurrentThread("User", "Second turn");
+            reopened.compact();
+            reopened.close();
+            
+            ContextEngine again = new ContextEngine(new ExpiryService(1000));
+            ContextJournal.open(dir, "session", again).close();
+            List<ContextEngine.ConversationThread.ConversationTurn> turns = again.getCurrentThread().getMessages();
+            test.assertEquals("Compaction folds every live log into the snapshot", 2, turns.size());
+            test.assertEquals("The oldest log's turn survives compaction", "First turn", turns.get(0).getContent());
+            
+            try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(dir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+        } catch (java.io.IOException e) {
+            test.assertTrue("Journal files should be written and read: " + e, false);
+        } finally {
+            if (dir != null) {
+                dir.toFile().delete();
+            }
+        }
+    }
+    
+    public void testAutosaveSchedulerSkipsCleanEngines() {
+        AutosaveScheduler scheduler = new AutosaveScheduler(0.0);
+        ContextEngine engine = new ContextEngine(new ExpiryService(1000));
+        int[] saves = new int[1];
+        AutosaveScheduler.Registration registration = scheduler.register(engine, () -> ++saves[0] > 0, 60000);
+        
+        test.assertTrue("An unchanged engine is not saved", !registration.saveIfDirty());
+        engine.addMessageToCurrentThread("User", "hello");
+        engine.addEntity("Rex", "pet", ContextEngine.MemoryTier.WORKING);
+        engine.createOpenQuestion("How old is Rex?", "Xander", "pets");
+        test.assertTrue("A changed engine is saved", registration.saveIfDirty());
+        test.assertEquals("Changes since the last save share one save", 1, saves[0]);
+        test.assertTrue("Saving clears the dirty state", !registration.saveIfDirty());
+        
+        Map<String, Object> stats = scheduler.getStatistics();
+        test.assertEquals("Saves are counted", 1L, stats.get("saves"));
+        test.assertEquals("Skipped saves are counted", 2L, stats.get("skippedSaves"));
+        test.assertEquals("Coalesced changes are counted", 2L, stats.get("coalescedSaves"));
+        registration.cancel();
+        test.assertEquals("Cancelled registrations are released", 0L, scheduler.getStatistics().get("registrations"));
+        scheduler.shutdown();
+    }
+    
+    public void testLongTermStoreKeepsEntitiesOffHeap() {
+        java.nio.file.Path dir = null;
+        try {
+            dir = java.nio.file.Files.createTempDirectory("vx-longterm");
+            LongTermStore store = new LongTermStore(dir, 4096);
+            ContextEngine engine = new ContextEngine(new ExpiryService(1000));
+            ContextEngine.ReferenceEntity rex = engine.addEntity("Rex", "pet", ContextEngine.MemoryTier.LONG_TERM);
+            rex.setAttribute("breed", "beagle");
+            rex.setAttribute("age", 3);
+            rex.setAttribute("weight", 9.5);
+            rex.setAttribute("neutered", true);
+            engine.addEntity("Paris", "place", ContextEngine.MemoryTier.LONG_TERM);
+            engine.addEntity("Today", "time", ContextEngine.MemoryTier.WORKING);
+            ContextEngine.ConversationThread archived = engine.createThread("pets");
+            archived.addMessage("User", "Rex chased a squirrel");
+            archived.setStatus(ContextEngine.ConversationThread.ThreadStatus.ARCHIVED);
+            
+            test.assertEquals("Without a store nothing is offloaded", 0, engine.offloadLongTerm());
+            engine.setLongTermStore(store, "alice");
+            test.assertEquals("Long-term entities and archived threads are offloaded", 3, engine.offloadLongTerm());
+            test.assertTrue("Offloaded entities leave the heap",
+                engine.getEntitiesByTier(ContextEngine.MemoryTier.LONG_TERM).isEmpty());
+            test.assertTrue("Offloaded threads leave the heap", !engine.getAllThreads().contains(archived));
+            test.assertNotNull("Other tiers stay in the engine", engine.findEntityByName("Today"));
+            ContextEngine.ReferenceEntity stored = store.getEntity("alice", rex.getEntityId());
+            test.assertEquals("Stored entities decode with their fields", "Rex", stored.getName());
+            test.assertEquals("Stored entities keep their attributes", "beagle", stored.getAttribute("breed"));
+            test.assertEquals("Whole-number attributes decode as numbers", 3L, stored.getAttribute("age"));
+            test.assertEquals("Decimal attributes decode as numbers", 9.5, stored.getAttribute("weight"));
+            test.assertEquals("Boolean attributes decode as booleans", Boolean.TRUE, stored.getAttribute("neutered"));
+            test.assertNull("Entities are kept per user", store.getEntity("bob", rex.getEntityId()));
+            test.assertEquals("Archived threads are stored", "Rex chased a squirrel",
+                store.getThread("alice", archived.getThreadId()).getMessages().get(0).getContent());
+            
+            ContextEngine.ReferenceEntity pagedIn = engine.findEntityByName("paris");
+            test.assertNotNull("Looking an entity up by name pages it back in", pagedIn);
+            test.assertNull("A paged-in entity leaves the store", store.getEntity("alice", pagedIn.getEntityId()));
+            test.assertEquals("A paged-in entity is back in its tier", 1,
+                engine.getEntitiesByTier(ContextEngine.MemoryTier.LONG_TERM).size());
+            ContextEngine.ConversationThread resumed = engine.getThread(archived.getThreadId());
+            test.assertEquals("Looking a thread up by id pages it back in", "Rex chased a squirrel",
+                resumed.getMessages().get(0).getContent());
+            test.assertEquals("A paged-in thread keeps its status",
+                ContextEngine.ConversationThread.ThreadStatus.ARCHIVED, resumed.getStatus());
+            test.assertTrue("A paged-in thread is back in the engine", engine.getAllThreads().contains(resumed));
+            test.assertNull("A paged-in thread leaves the store", store.getThread("alice", archived.getThreadId()));
+            
+            ContextEngine.ConversationThread compacted = new ContextEngine.ConversationThread("walks", 3);
+            long weekAgo = System.currentTimeMillis() - 7L * 24 * 60 * 60 * 1000;
+            for (int i = 0; i < 8; i++) {
+                compacted.addMessage("User", "The dog walked " + i + " miles. Oh no.", weekAgo + i);
+            }
+            store.putThread("alice", compacted);
+            ContextEngine.ConversationThread decoded = store.getThread("alice", compacted.getThreadId());
+            test.assertEquals("Stored threads keep their summary", compacted.getCompactedSummary(), decoded.getCompactedSummary());
+            test.assertEquals("Stored threads keep every turn's count", 8, decoded.getMessageCount());
+            test.assertEquals("Stored threads keep compacted keyword counts",
+                new HashSet<>(compacted.getTopKeywords()), new HashSet<>(decoded.getTopKeywords()));
+            test.assertTrue("No summary turn is stored", decoded.getMessages().stream().noneMatch(t -> "Summary".equals(t.getSender())));
+            test.assertEquals("Stored turns keep when they were made", weekAgo + 7,
+                decoded.getMessages().get(decoded.getMessages().size() - 1).getTimestamp());
+            test.assertEquals("A decoded thread was last active when its last turn was made",
+                compacted.getLastActivityAt(), decoded.getLastActivityAt());
+            test.assertTrue("Removing a thread removes it", store.removeThread("alice", compacted.getThreadId()));
+            
+            for (int i = 0; i < 60; i++) {
+                store.putEntity("bob", new ContextEngine.ReferenceEntity("Friend " + i, "person", ContextEngine.MemoryTier.LONG_TERM));
+            }
+            rex.setName("Rexy");
+            store.putEntity("alice", rex);
+            test.assertEquals("Writing an entity again replaces it", "Rexy", store.getEntity("alice", rex.getEntityId()).getName());
+            test.assertEquals("Users list only their own live entities", 1, store.getEntities("alice").size());
+            test.assertEquals("Every stored entity is listed", 60, store.getEntities("bob").size());
+            test.assertTrue("Records span several segments", (Integer) store.getStatistics().get("segments") > 1);
+            test.assertTrue("Removing an entity removes it", store.removeEntity("bob", store.getEntities("bob").get(0).getEntityId()));
+            store.close();
+            
+            LongTermStore reopened = new LongTermStore(dir, 4096);
+            test.assertEquals("Reopening rebuilds the index", "Rexy", reopened.getEntity("alice", rex.getEntityId()).getName());
+            test.assertEquals("Removed entities stay removed", 59, reopened.getEntities("bob").size());
+            test.assertEquals("Reopened store counts live records", 60, reopened.getStatistics().get("records"));
+            
+            ContextEngine.ReferenceEntity faded = engine.addEntity("Old friend", "person", ContextEngine.MemoryTier.LONG_TERM);
+            test.assertNull("Expiring entities leave the engine",
+                reopened.expiryHandler("carol").onExpire(engine, faded, false));
+            test.assertEquals("Expiring long-term entities land in the store", "Old friend",
+                reopened.getEntity("carol", faded.getEntityId()).getName());
+            reopened.close();
+            
+            try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(dir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+        } catch (java.io.IOException e) {
+            test.assertTrue("Store segments should be mapped: " + e, false);
+        } finally {
+            if (dir != null) {
+                dir.toFile().delete();
+            }
+        }
+    }
+    
+    public void testLongTermStoreDropsTornRecords() {
+        java.nio.file.Path dir = null;
+        try {
+            dir = java.nio.file.Files.createTempDirectory("vx-longterm");
+            LongTermStore store = new LongTermStore(dir, 4096);
+            ContextEngine.ReferenceEntity kept = new ContextEngine.ReferenceEntity("Rex", "pet", ContextEngine.MemoryTier.LONG_TERM);
+            ContextEngine.ReferenceEntity torn = new ContextEngine.ReferenceEntity("Tom", "person", ContextEngine.MemoryTier.LONG_TERM);
+            store.putEntity("alice", kept);
+            store.putEntity("alice", torn);
+            store.close();
+            
+            // Flip the last written byte, as if the process died before the page holding it reached disk
+            java.nio.file.Path segment = dir.resolve("segment-00000.lts");
+            byte[] bytes = java.nio.file.Files.readAllBytes(segment);
+            int last = bytes.length - 1;
+            while (bytes[last] == 0) {
+                last--;
+            }
+            bytes[last] ^= 0x5A;
+            java.nio.file.Files.write(segment, bytes);
+            
+            LongTermStore reopened = new LongTermStore(dir, 4096);
+            test.assertEquals("Records before the torn one are kept", "Rex",
+                reopened.getEntity("alice", kept.getEntityId()).getName());
+            test.assertNull("The torn record is dropped", reopened.getEntity("alice", torn.getEntityId()));
+            test.assertEquals("Dropped records are counted", 1L, reopened.getStatistics().get("droppedRecords"));
+            ContextEngine.ReferenceEntity later = new ContextEngine.ReferenceEntity("Luna", "pet", ContextEngine.MemoryTier.LONG_TERM);
+            reopened.putEntity("alice", later);
+            reopened.close();
+            
+            LongTermStore again = new LongTermStore(dir, 4096);
+            test.assertNotNull("Writes after a torn record replay", again.getEntity("alice", later.getEntityId()));
+            test.assertEquals("Nothing is dropped once the torn record is overwritten", 0L,
+                again.getStatistics().get("droppedRecords"));
+            again.close();
+            
+            try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(dir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+        } catch (java.io.IOException e) {
+            test.assertTrue("Store segments should be mapped: " + e, false);
+        } finally {
+            if (dir != null) {
+                dir.toFile().delete();
+            }
+        }
+    }
+    
+    public void testWriteBehindQueueSavesOffRequestThread() {
+        java.nio.file.Path dir = null;
+        WriteBehindQueue queue = new WriteBehindQueue(2);
+        try {
+            dir = java.nio.file.Files.createTempDirectory("vx-writebehind");
+            ContextEngine.PersistenceManager manager = new ContextEngine.PersistenceManager(dir.toString());
+            manager.setWriteBehindQueue(queue);
+            ContextEngine engine = new ContextEngine(new ExpiryService(1000));
+            engine.addEntity("Rex", "pet", ContextEngine.MemoryTier.SHORT_TERM);
+            
+            // Hold the I/O thread so the queue fills up behind it
+            java.util.concurrent.CountDownLatch started = new java.util.concurrent.CountDownLatch(1);
+            java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+            queue.submit("gate", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            started.await();
+            
+            java.util.concurrent.CompletableFuture<Boolean> first = manager.saveShortTermMemoryLater(engine, "a.mem");
+            test.assertTrue("Saving returns before the write happens", !first.isDone());
+            engine.addEntity("Paris", "place", ContextEngine.MemoryTier.SHORT_TERM);
+            java.util.concurrent.CompletableFuture<Boolean> second = manager.saveShortTermMemoryLater(engine, "b.mem");
+            java.util.concurrent.CompletableFuture<Boolean> again = manager.saveShortTermMemoryLater(engine, "b.mem");
+            test.assertEquals("A waiting save of the same file is replaced", 1L, queue.getStatistics().get("coalescedWrites"));
+            
+            Thread blocked = new Thread(() -> manager.saveShortTermMemoryLater(engine, "c.mem"));
+            blocked.start();
+            blocked.join(200);
+            test.assertTrue("A full queue holds the caller back", blocked.isAlive());
+            release.countDown();
+            blocked.join(5000);
+            test.assertTrue("The caller continues once the queue drains", !blocked.isAlive());
+            
+            manager.flushSaves();
+            test.assertTrue("Flushed saves are complete", first.getNow(false) && second.getNow(false) && again.getNow(false));
+            test.assertEquals("Saves keep the state they were made with", 1, manager.readFile("a.mem").getEntities().size());
+            test.assertEquals("Later saves see later changes", 2, manager.readFile("b.mem").getEntities().size());
+            test.assertTrue("Every queued file is written", java.nio.file.Files.exists(dir.resolve("c.mem")));
+            test.assertEquals("Blocked submits are counted", 1L, queue.getStatistics().get("blockedSubmits"));
+            test.assertEquals("Writes are counted", 4L, queue.getStatistics().get("writes"));
+            
+            queue.close();
+            boolean refused = false;
+            try {
+                queue.submit("late", () -> { });
+            } catch (IllegalStateException e) {
+                refused = true;
+            }
+            test.assertTrue("A closed queue refuses writes", refused);
+            
+            VirtualXanderCore core = new VirtualXanderCore(null);
+            test.assertEquals("A core without a session saves to one file", "shortterm_local.mem", core.getContextSaveFile());
+            VirtualXanderCore client = new VirtualXanderCore("Client-1/2");
+            test.assertEquals("Each session saves to its own stable file", "shortterm_Client-1_2.mem", client.getContextSaveFile());
+            core.stop();
+            client.stop();
+            
+            try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(dir)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+        } catch (java.io.IOException | InterruptedException e) {
+            test.assertTrue("Write-behind saves should complete: " + e, false);
+        } finally {
+            queue.close();
+            if (dir != null) {
+                dir.toFile().delete();
+            }
+        }
+    }
+    
+    // ==================== TurnPipeline Tests ====================
+    
+    public void testTurnPipelineTracksContext() {
+        VirtualXanderCore core = new VirtualXanderCore();
+        
+        String response = core.processMessage("I love playing minecraft with my friends");
+        
+        test.assertNotNull("processMessage should return a response", response);
+        test.assertEquals("Current thread should hold the user message and the reply", 
+            2, core.getContextEngine().getCurrentThread().getMessageCount());
+        test.assertTrue("Topic tracker should have seen the message", 
+            core.getTopicTracker().hasTopicBeenDiscussed("minecraft"));
+    }
+    
+    public void testTurnPipelineConfiguration() {
+        VirtualXanderCore core = new VirtualXanderCore();
+        TurnPipeline pipeline = core.getTurnPipeline();
+        
+        pipeline.setStageEnabled("context_tracking", false);
+        pipeline.setStageEnabled("response", false);
+        test.assertFalse("Optional stage should be disabled", pipeline.isStageEnabled("context_tracking"));
+        test.assertTrue("Required stage should stay enabled", pipeline.isStageEnabled("response"));
+        
+        core.processMessage("hello there");
+        test.assertEquals("Only the reply should be recorded when tracking is off", 
+            1, core.getContextEngine().getCurrentThread().getMessageCount());
+        
+        pipeline.setStageOrder(Arrays.asList("intent", "emotion"));
+        test.assertEquals("Named stages should move to the front", 
+            "intent", pipeline.getStageNames().get(0));
+        test.assertEquals("Unnamed stages keep their relative order", 
+            "context_tracking", pipeline.getStageNames().get(2));
+    }
+    
+    public void testTurnPipelineBudgetDegradation() {
+        VirtualXanderCore core = new VirtualXanderCore();
+        TurnPipeline pipeline = core.getTurnPipeline();
+        
+        // A stage that always overruns leaves no budget for the optional stages after it
+        pipeline.addStage(new TurnPipeline.Stage() {
+            public String getName() { return "slow"; }
+            public void process(TurnPipeline.TurnContext turn) {
+                try { Thread.sleep(5); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+        });
+        pipeline.setStageOrder(Arrays.asList("slow"));
+        pipeline.setTurnBudgetMillis(1);
+        
+        TurnPipeline.TurnContext turn = pipeline.run(new TurnPipeline.TurnContext("I love playing minecraft", false));
+        
+        test.assertNotNull("Required stages should still produce a response", turn.getResponse());
+        test.assertTrue("Emotion detection should be skipped", turn.getReducedStages().contains("emotion"));
+        test.assertEquals("A skipped emotion stage still counts a neutral turn", 1L,
+            core.getEmotionalTrajectory().getTurnCount());
+        test.assertTrue("Context tracking should run in reduced mode", 
+            turn.getReducedStages().contains("context_tracking"));
+        test.assertEquals("Reduced tracking and recording should still record both messages", 
+            2, core.getContextEngine().getCurrentThread().getMessageCount());
+        test.assertFalse("Topic tracker should be skipped in reduced mode", 
+            core.getTopicTracker().hasTopicBeenDiscussed("minecraft"));
+        test.assertTrue("Cosmetic stages are dropped", turn.getDroppedStages().contains("contextual_enhancement"));
+        test.assertFalse("The state machine always runs", turn.getDroppedStages().contains("state_machine"));
+        test.assertFalse("Topic clustering always runs", turn.getDroppedStages().contains("topic_clustering"));
+        
+        // A stage that claims to be free is measured, and dropped once its real cost is known
+        TurnPipeline measured = new TurnPipeline().addStage(new TurnPipeline.Stage() {
+            public String getName() { return "underestimated"; }
+            public boolean isBudgeted() { return true; }
+            public void process(TurnPipeline.TurnContext turn) {
+                try { Thread.sleep(3); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+        });
+        measured.setTurnBudgetMillis(2);
+        for (int i = 0; i < TurnPipeline.MEASURED_RUNS; i++) {
+            test.assertTrue("The prior lets an unmeasured stage run",
+                measured.run(new TurnPipeline.TurnContext("hi", false)).getDroppedStages().isEmpty());
+        }
+        test.assertTrue("The measured cost replaces the prior",
+            measured.run(new TurnPipeline.TurnContext("hi", false)).getDroppedStages().contains("underestimated"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stats = (Map<String, Object>) measured.getStageStatistics().get("underestimated");
+        test.assertTrue("Statistics report the measured expectation", (Long) stats.get("expectedMicros") >= 2000);
+    }
+    
+    // ==================== TurnScheduler Tests ====================
+    
+    public void testTurnSchedulerCrisisPriority() {
+        TurnScheduler scheduler = new TurnScheduler(1, 1, 1000);
+        boolean[] followUpSawCrisis = new boolean[1];
+        VirtualXanderCore core = new VirtualXanderCore() {
+            @Override
+            public String processMessage(String message) {
+                if (message.equals("hello again")) {
+                    followUpSawCrisis[0] = countTurns(this, "I want to kill myself") > 0;
+                }
+                return super.processMessage(message);
+            }
+        };
+        
+        try {
+            List<java.util.concurrent.CompletableFuture<String>> normalTurns = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                normalTurns.add(scheduler.submit(core, "tell me about video games " + i));
+            }
+            String crisis = scheduler.submit(core, "I want to end it all").get(5, java.util.concurrent.TimeUnit.SECONDS);
+            
+            test.assertEquals("Crisis message should get the crisis response", 
+                core.getMentalHealthSupportHandler().getCrisisResponse(), crisis);
+            test.assertEquals("Crisis latency should be recorded", 
+                1L, scheduler.getCrisisLatency().getCount());
+            
+            for (java.util.concurrent.CompletableFuture<String> turn : normalTurns) {
+                test.assertNotNull("Normal turn should still complete", turn.get(30, java.util.concurrent.TimeUnit.SECONDS));
+            }
+            test.assertEquals("Normal latency should be recorded", 
+                20L, scheduler.getTurnLatency().getCount());
+            
+            String second;
+            java.util.concurrent.CompletableFuture<String> followUp;
+            synchronized (core) {
+                // A busy core must not hold up later crisis messages on the one crisis worker
+                scheduler.submit(core, "I want to end it all").get(5, java.util.concurrent.TimeUnit.SECONDS);
+                second = scheduler.submit(core, "I want to kill myself").get(5, java.util.concurrent.TimeUnit.SECONDS);
+                followUp = scheduler.submit(core, "hello again");
+            }
+            test.assertEquals("A crisis message is answered while the core is busy",
+                core.getMentalHealthSupportHandler().getCrisisResponse(), second);
+            followUp.get(30, java.util.concurrent.TimeUnit.SECONDS);
+            test.assertEquals("Crisis turns are recorded once the core is free", 1L,
+                countTurns(core, "I want to kill myself"));
+            test.assertTrue("A follow-up message is processed after the crisis turn before it", followUpSawCrisis[0]);
+            
+            long recorded = countTurns(core, "I want to end it all");
+            scheduler.submit(core, "I want to end it all");
+            scheduler.awaitTurns(core);
+            test.assertEquals("awaitTurns returns once queued crisis records have run", recorded + 1,
+                countTurns(core, "I want to end it all"));
+        } catch (Exception e) {
+            test.assertTrue("Scheduled turns should not fail: " + e, false);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+    
+    private static long countTurns(VirtualXanderCore core, String content) {
+        return core.getContextEngine().getAllThreads().stream()
+            .flatMap(thread -> thread.getMessages().stream())
+            .filter(turn -> turn.getContent().equals(content))
+            .count();
+    }
+    
+    // ==================== ServerWarmup Tests ====================
+    
+    public void testServerWarmupLimits() {
+        ServerWarmup byIterations = new ServerWarmup(3, 60000, 0.10);
+        byIterations.run();
+        test.assertEquals("Warm-up should stop after the configured iterations", 3, byIterations.getIterationsRun());
+        test.assertTrue("Warm-up should record turn latency", byIterations.getLastPassAverageMs() > 0);
+        test.assertFalse("Three passes are too few to call latency steady", byIterations.isSteadyStateReached());
+        
+        ServerWarmup byTime = new ServerWarmup(1000, 1, 0.10);
+        byTime.run();
+        test.assertEquals("Warm-up should stop once the time limit is used up", 1, byTime.getIterationsRun());
+    }
+    
+    // ==================== Cold Start Tests ====================
+    
+    public void testDesktopEnginesCreatedOnFirstUse() {
+        VirtualXanderCore core = new VirtualXanderCore();
+        DesktopEnhancements desktop = core.getDesktopEnhancements();
+        UserProfileDashboard dashboard = core.getUserProfileDashboard();
+        test.assertNotNull("Desktop enhancements should be created when first asked for", desktop);
+        test.assertNotNull("Profile dashboard should be created when first asked for", dashboard);
+        test.assertTrue("Later calls should return the same desktop enhancements", desktop == core.getDesktopEnhancements());
+        test.assertTrue("Later calls should return the same profile dashboard", dashboard == core.getUserProfileDashboard());
+    }
+    
+    // ==================== IntentClassifier Tests ====================
+    
+    public void testIntentClassifierTrainAndFallback() {
+        IntentClassifier.Trainer trainer = new IntentClassifier.Trainer();
+        String[][] examples = {
+            {"greeting", "hi there"}, {"greeting", "hello friend"}, {"greeting", "hey hey"},
+            {"gaming", "let's play minecraft"}, {"gaming", "i love playing fortnite"}, {"gaming", "wanna game tonight"},
+            {"farewell", "bye for now"}, {"farewell", "see you later"}, {"farewell", "gotta go, goodbye"}
+        };
+        for (String[] example : examples) {
+            trainer.add(example[0], example[1]);
+        }
+        IntentClassifier classifier = trainer.build();
+        test.assertEquals("Three intents learned", 3, classifier.getIntentCount());
+        
+        List<IntentClassifier.Prediction> predicted = classifier.predict("playing minecraft", 3);
+        test.assertEquals("Top prediction", "gaming", predicted.get(0).getIntent());
+        test.assertEquals("Every intent ranked", 3, predicted.size());
+        double total = 0;
+        for (IntentClassifier.Prediction prediction : predicted) {
+            total += prediction.getConfidence();
+        }
+        test.assertTrue("Posteriors sum to 1", Math.abs(total - 1.0) < 1e-9);
+        test.assertTrue("Unseen words give no prediction", classifier.predict("zzzz qqqq", 1).isEmpty());
+        test.assertEquals("Apostrophes are ignored", classifier.predict("lets play", 1).get(0).getConfidence(),
+            classifier.predict("let's play", 1).get(0).getConfidence());
+        
+        java.nio.file.Path path = null;
+        try {
+            path = java.nio.file.Files.createTempFile("vx-test", ".model");
+            classifier.save(path);
+            IntentClassifier loaded = IntentClassifier.load(path);
+            test.assertEquals("Loaded model predicts the same",
+                classifier.predict("see you, bye", 1).toString(), loaded.predict("see you, bye", 1).toString());
+        } catch (java.io.IOException e) {
+            test.assertTrue("Model should save and load: " + e, false);
+        } finally {
+            if (path != null) {
+                path.toFile().delete();
+            }
+        }
+        
+        IntentRecognizer recognizer = new IntentRecognizer();
+        String regexAnswer = recognizer.recognizeIntent("hey, what's your name?");
+        recognizer.setClassifier(classifier, 1.1);
+        test.assertEquals("An unconfident classifier falls back to the regexes", regexAnswer,
+            recognizer.recognizeIntent("hey, what's your name?"));
+        recognizer.setClassifier(classifier, 0.0);
+        test.assertEquals("A confident classifier answers", "gaming", recognizer.recognizeIntent("playing minecraft"));
+        test.assertTrue("Classifier matches carry no spans",
+            recognizer.recognizeIntents("playing minecraft", 1).get(0).getSpans().isEmpty());
+        Map<String, Object> stats = recognizer.getClassifierStatistics();
+        test.assertEquals("Classifier answers counted", 2L, stats.get("classifierAnswers"));
+        test.assertEquals("Fallbacks counted", 1L, stats.get("regexFallbacks"));
+    }
+    
     // ==================== Test Runner ====================
     
     public static void main(String[] args) {
@@ -522,7 +1762,23 @@ public class VirtualXanderTests {
         
         testFramework.runTest("TopicClustering - Identification", () -> tests.testTopicClusteringSystemIdentification());
         testFramework.runTest("TopicClustering - Activation", () -> tests.testTopicClusteringSystemActivation());
+        testFramework.runTest("TopicClustering - Decayed Relevance", () -> tests.testTopicClusteringDecayedRelevance());
         testFramework.runTest("TopicClustering - Similarity", () -> tests.testTopicClusteringSystemSimilarity());
+        testFramework.runTest("TopicClustering - Keyword Index", () -> tests.testTopicClusteringKeywordIndex());
+        testFramework.runTest("TopicClustering - Term Space", () -> tests.testTopicClusteringTermSpace());
+        testFramework.runTest("TopicDiscovery - Publishes Clusters", () -> tests.testTopicDiscoveryPublishesClusters());
+        testFramework.runTest("ImplicitTopicTracker - Matching", () -> tests.testImplicitTopicTrackerMatching());
+        testFramework.runTest("SpaceSavingSketch - Bounds Counts", () -> tests.testSpaceSavingSketchBoundsCounts());
+        testFramework.runTest("ThreadIndex - Most Similar Thread", () -> tests.testThreadIndexFindsMostSimilarThread());
+        testFramework.runTest("ConversationThread - Compacts Old Turns", () -> tests.testConversationThreadCompactsOldTurns());
+        testFramework.runTest("ContextEngine - Expires Entities", () -> tests.testContextEngineExpiresEntities());
+        testFramework.runTest("ContextSnapshot - Round Trip", () -> tests.testContextSnapshotRoundTrip());
+        testFramework.runTest("ContextJournal - Recovers", () -> tests.testContextJournalRecovers());
+        testFramework.runTest("ContextJournal - Compacts Every Live Log", () -> tests.testContextJournalCompactsEveryLiveLog());
+        testFramework.runTest("AutosaveScheduler - Skips Clean Engines", () -> tests.testAutosaveSchedulerSkipsCleanEngines());
+        testFramework.runTest("LongTermStore - Keeps Entities Off Heap", () -> tests.testLongTermStoreKeepsEntitiesOffHeap());
+        testFramework.runTest("LongTermStore - Drops Torn Records", () -> tests.testLongTermStoreDropsTornRecords());
+        testFramework.runTest("WriteBehindQueue - Saves Off Request Thread", () -> tests.testWriteBehindQueueSavesOffRequestThread());
         
         testFramework.runTest("Configuration - Load", () -> tests.testConfigurationLoad());
         testFramework.runTest("Configuration - Defaults", () -> tests.testConfigurationDefaults());
@@ -544,6 +1800,20 @@ public class VirtualXanderTests {
         testFramework.runTest("EntertainmentHandler", () -> tests.testEntertainmentHandler());
         testFramework.runTest("CreativeWritingHandler", () -> tests.testCreativeWritingHandler());
         
+        testFramework.runTest("MultiPatternMatcher - Agrees With Regex", () -> tests.testMultiPatternMatcherAgreesWithRegex());
+        testFramework.runTest("IntentRecognizer - Matches Regex Loop", () -> tests.testIntentRecognizerMatchesRegexLoop());
+        testFramework.runTest("IntentRecognizer - Ranked Intents", () -> tests.testIntentRecognizerRankedIntents());
+        testFramework.runTest("KeywordPrefilter - Never Drops A Match", () -> tests.testKeywordPrefilterNeverDropsAMatch());
+        testFramework.runTest("EmotionLexicon - Matches Patterns", () -> tests.testEmotionLexiconMatchesPatterns());
+        testFramework.runTest("EmotionalTrajectory - Folds Turns", () -> tests.testEmotionalTrajectoryFoldsTurns());
+        testFramework.runTest("TurnPipeline - Context Tracking", () -> tests.testTurnPipelineTracksContext());
+        testFramework.runTest("TurnPipeline - Configuration", () -> tests.testTurnPipelineConfiguration());
+        testFramework.runTest("TurnPipeline - Budget Degradation", () -> tests.testTurnPipelineBudgetDegradation());
+        testFramework.runTest("TurnScheduler - Crisis Priority", () -> tests.testTurnSchedulerCrisisPriority());
+        testFramework.runTest("ServerWarmup - Limits", () -> tests.testServerWarmupLimits());
+        testFramework.runTest("VirtualXanderCore - Desktop Engines On First Use", () -> tests.testDesktopEnginesCreatedOnFirstUse());
+        testFramework.runTest("IntentClassifier - Train And Fallback", () -> tests.testIntentClassifierTrainAndFallback());
+        
         // Print results
         testFramework.printResults();
         
@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Write-Behind Queue for VirtualXander
+ * One daemon I/O thread that performs persistence writes handed over by request
+ * threads. Callers capture what they want saved, submit a write and return at
+ * once; the thread takes every queued write in one batch and runs them in order.
+ * A write submitted for a key that already has one waiting replaces it, so a
+ * file saved many times while the disk is busy is written once with the newest
+ * state. The queue holds at most `capacity` waiting writes; further submits
+ * block until the thread catches up, so a slow disk slows callers down instead
+ * of filling the heap.
+ */
+public class WriteBehindQueue {
+
+    private static final Object SHARED_LOCK = new Object();
+    private static volatile WriteBehindQueue shared;
+
+    /**
+     * A write to run on the I/O thread
+     */
+    public interface Write {
+        void write() throws IOException;
+    }
+
+    private static final class Pending {
+        final Write write;
+        final List<CompletableFuture<Boolean>> results = new ArrayList<>(1);
+
+        Pending(Write write, CompletableFuture<Boolean> result) {
+            this.write = write;
+            results.add(result);
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<String, Pending> queue = new LinkedHashMap<>();
+    private final Thread thread;
+    private long submitted;
+    private long completed;
+    private boolean closed;
+
+    private long writes;
+    private long coalesced;
+    private long failures;
+    private long blockedSubmits;
+    private long batches;
+    private int largestBatch;
+
+    /**
+     * @param capacity most writes that may wait before submit() blocks
+     */
+    public WriteBehindQueue(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.thread = new Thread(this::run, "context-write-behind");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Gets the process-wide queue, holding up to context.write_behind_capacity writes
+     */
+    public static WriteBehindQueue getShared() {
+        if (shared == null) {
+            synchronized (SHARED_LOCK) {
+                if (shared == null) {
+                    shared = new WriteBehindQueue(
+                        Configuration.getInstance().getIntProperty("context.write_behind_capacity", 64));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Queues a write, replacing one still waiting for the same key. Blocks while
+     * the queue is full.
+     * @param key what the write covers, usually its file path
+     * @return completes with true once the write, or the one replacing it, succeeded
+     */
+    public CompletableFuture<Boolean> submit(String key, Write write) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        boolean interrupted = false;
+        synchronized (this) {
+            boolean blocked = false;
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("Write-behind queue is closed");
+                }
+                Pending waiting = queue.get(key);
+                if (waiting != null) {
+                    // The newer state supersedes the waiting write and takes over its place in line
+                    Pending replacement = new Pending(write, result);
+                    replacement.results.addAll(waiting.results);
+                    queue.put(key, replacement);
+                    coalesced++;
+                    break;
+                }
+                if (queue.size() < capacity) {
+                    queue.put(key, new Pending(write, result));
+                    submitted++;
+                    notifyAll();
+                    break;
+                }
+                blocked = true;
+                interrupted |= await();
+            }
+            if (blocked) {
+                blockedSubmits++;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    /**
+     * Waits until every write submitted before this call has run
+     */
+    public void flush() {
+        boolean interrupted = false;
+        synchronized (this) {
+            long target = submitted;
+            while (completed < target) {
+                interrupted |= await();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the remaining writes and stops the thread; later submits are refused
+     */
+    public void close() {
+        flush();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                while (queue.isEmpty() && !closed) {
+                    await();
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                batch.addAll(queue.values());
+                queue.clear();
+                batches++;
+                largestBatch = Math.max(largestBatch, batch.size());
+                // Room has opened for blocked submitters
+                notifyAll();
+            }
+            for (Pending pending : batch) {
+                boolean success;
+                try {
+                    pending.write.write();
+                    success = true;
+                } catch (IOException | RuntimeException e) {
+                    Logger.getInstance().warn("WriteBehindQueue", "Write failed: " + e.getMessage());
+                    success = false;
+                }
+                for (CompletableFuture<Boolean> result : pending.results) {
+                    result.complete(success);
+                }
+                synchronized (this) {
+                    if (success) {
+                        writes++;
+                    } else {
+                        failures++;
+                    }
+                    completed++;
+                    notifyAll();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Waits on this queue's monitor
+     * @return true if the thread was interrupted, which callers restore once done waiting
+     */
+    private boolean await() {
+        try {
+            wait();
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Gets write-behind statistics
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("capacity", capacity);
+        stats.put("pending", queue.size());
+        stats.put("writes", writes);
+        stats.put("coalescedWrites", coalesced);
+        stats.put("failedWrites", failures);
+        stats.put("blockedSubmits", blockedSubmits);
+        stats.put("batches", batches);
+        stats.put("largestBatch", largestBatch);
+        return stats;
+    }
+}